@@ -64,6 +64,7 @@ import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.base._BaseRootDAO;
 import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.security.evaluation.PermissionCacheInterceptor;
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.Text;
@@ -265,6 +266,9 @@ public class HibernateUtil {
         
         UniqueIdGenerator.configure(cfg);
         
+        cfg.setInterceptor(new PermissionCacheInterceptor());
+        sLog.debug("  -- permission cache interceptor set");
+        
         (new _BaseRootDAO() {
     		void setConf(Configuration cfg) {
     			_BaseRootDAO.sConfiguration = cfg;
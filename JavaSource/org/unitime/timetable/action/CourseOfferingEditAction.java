@@ -80,6 +80,7 @@ import org.unitime.timetable.model.dao.TeachingResponsibilityDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.permissions.Permission;
 import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.InstrOfferingPermIdGenerator;
 import org.unitime.timetable.util.LookupTables;
@@ -478,6 +479,8 @@ public class CourseOfferingEditAction extends Action {
 
             hibSession.flush();
             tx.commit();
+            
+            CurriculumProjectionEngine.invalidate(io.getSessionId());
 
             hibSession.refresh(co);
 
@@ -633,6 +636,8 @@ public class CourseOfferingEditAction extends Action {
             
             hibSession.flush();
             tx.commit();
+            
+            CurriculumProjectionEngine.invalidate(io.getSessionId());
 
             hibSession.refresh(co);
 
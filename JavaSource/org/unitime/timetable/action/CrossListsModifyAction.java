@@ -69,6 +69,7 @@ import org.unitime.timetable.model.dao.CourseOfferingDAO;
 import org.unitime.timetable.model.dao.InstructionalOfferingDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.LookupTables;
 
@@ -567,6 +568,8 @@ public class CrossListsModifyAction extends Action {
                     null);
 	        
             tx.commit();
+            
+            CurriculumProjectionEngine.invalidate(io.getSessionId());
 	        hibSession.flush();
 	        hibSession.clear();
 	        hibSession.refresh(io);
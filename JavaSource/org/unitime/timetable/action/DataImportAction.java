@@ -19,19 +19,23 @@
 */
 package org.unitime.timetable.action;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.DecimalFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.xml.stream.XMLEventReader;
 
 import org.apache.struts.action.Action;
 import org.apache.struts.action.ActionForm;
@@ -39,10 +43,7 @@ import org.apache.struts.action.ActionForward;
 import org.apache.struts.action.ActionMapping;
 import org.apache.struts.action.ActionMessages;
 import org.cpsolver.ifs.util.Progress;
-import org.dom4j.Document;
-import org.dom4j.io.OutputFormat;
-import org.dom4j.io.SAXReader;
-import org.dom4j.io.XMLWriter;
+import org.dom4j.Element;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.unitime.commons.Debug;
@@ -52,6 +53,7 @@ import org.unitime.commons.web.WebTable.WebTableLine;
 import org.unitime.timetable.backup.BackupProgress;
 import org.unitime.timetable.backup.SessionBackupInterface;
 import org.unitime.timetable.backup.SessionRestoreInterface;
+import org.unitime.timetable.dataexchange.BaseImport;
 import org.unitime.timetable.dataexchange.DataExchangeHelper;
 import org.unitime.timetable.dataexchange.DataExchangeHelper.LogWriter;
 import org.unitime.timetable.defaults.ApplicationProperty;
@@ -207,6 +209,7 @@ public class DataImportAction extends Action {
 		boolean iImport;
 		String iSessionName;
 		String iFileName = null;
+		Long iTargetSessionId = null;
 		
 		public DataExchangeQueueItem(Session session, UserContext owner, DataImportForm form, HttpServletRequest request, boolean isImport) {
 			super(session, owner);
@@ -222,6 +225,17 @@ public class DataImportAction extends Action {
 			return "Data Exchange";
 		}
 		
+		@Override
+		public String exclusiveKey() {
+			// an import is never executed in parallel with another import or a roll-forward into the same academic session
+			return (iImport ? sessionUpdateKey(iTargetSessionId != null ? iTargetSessionId : getSessionId()) : null);
+		}
+		
+		@Override
+		public int priority() {
+			return (iImport ? -1 : 0);
+		}
+		
 		@Override
 		public String name() {
 			return (iImport ? "Import of " + iFileName : "Export of " + iForm.getExportType().getLabel());
@@ -302,6 +316,34 @@ public class DataImportAction extends Action {
 
 		public ImportQueItem(Session session, UserContext owner, DataImportForm form, HttpServletRequest request) {
 			super(session, owner, form, request, true);
+			iTargetSessionId = getTargetSessionId();
+		}
+		
+		/**
+		 * Academic session of the imported XML file (as given by the campus, year, and term attributes of the root element),
+		 * null when it cannot be determined (e.g., a session backup or a zip file)
+		 */
+		protected Long getTargetSessionId() {
+			String name = (iForm.getFile() == null ? null : iForm.getFile().getFileName().toLowerCase());
+			if (name == null || !(name.endsWith(".xml") || name.endsWith(".xml.gz") || name.endsWith(".zxml"))) return null;
+			try {
+				InputStream input = iForm.getFile().getInputStream();
+				try {
+					XMLEventReader reader = BaseImport.createXMLEventReader(name.endsWith(".xml") ? input : new GZIPInputStream(input));
+					try {
+						Element root = BaseImport.readRootElement(reader);
+						if (root.attributeValue("campus") == null || root.attributeValue("year") == null || root.attributeValue("term") == null) return null;
+						Session session = Session.getSessionUsingInitiativeYearTerm(root.attributeValue("campus"), root.attributeValue("year"), root.attributeValue("term"));
+						return (session == null ? null : session.getUniqueId());
+					} finally {
+						reader.close();
+					}
+				} finally {
+					input.close();
+				}
+			} catch (Exception e) {
+				return null;
+			}
 		}
 
 		@Override
@@ -316,7 +358,7 @@ public class DataImportAction extends Action {
 				gzipInput.close();
 			} else if (iForm.getFile().getFileName().toLowerCase().endsWith(".xml.gz") || iForm.getFile().getFileName().toLowerCase().endsWith(".zxml")) {
 				GZIPInputStream gzipInput = new GZIPInputStream(iForm.getFile().getInputStream());
-				DataExchangeHelper.importDocument((new SAXReader()).read(gzipInput), getOwnerId(), this);
+				DataExchangeHelper.importStream(gzipInput, getOwnerId(), this);
 				gzipInput.close();
 			} else if (iForm.getFile().getFileName().toLowerCase().endsWith(".zip")) {
 				ZipInputStream zipInput = new ZipInputStream(iForm.getFile().getInputStream());
@@ -328,12 +370,17 @@ public class DataImportAction extends Action {
 						SessionRestoreInterface restore = (SessionRestoreInterface)Class.forName(ApplicationProperty.SessionRestoreInterface.value()).getConstructor().newInstance();
 						restore.restore(zipInput, this);
 					} else {
-						DataExchangeHelper.importDocument((new SAXReader()).read(new NotClosingInputStream(zipInput)), getOwnerId(), this);
+						DataExchangeHelper.importStream(new NotClosingInputStream(zipInput), getOwnerId(), this);
 					}
 				}
 				zipInput.close();
 			} else {
-				DataExchangeHelper.importDocument((new SAXReader()).read(iForm.getFile().getInputStream()), getOwnerId(), this);
+				InputStream input = iForm.getFile().getInputStream();
+				try {
+					DataExchangeHelper.importStream(input, getOwnerId(), this);
+				} finally {
+					input.close();
+				}
 			}
 		}
 
@@ -360,17 +407,22 @@ public class DataImportAction extends Action {
         	} else {
                 Properties params = new Properties();
                 type.setOptions(params);
-                Document document = DataExchangeHelper.exportDocument(type.getType(), getSession(), params, this);
-                if (document==null) {
-                    error("XML document not created: unknown reason.");
-                } else {
-                    FileOutputStream fos = new FileOutputStream(createOutput(type.getType(), "xml"));
-                    try {
-                        (new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(document);
-                        fos.flush();
-                    } finally {
-                    	fos.close();
-                    }
+                boolean gzip = ApplicationProperty.DataExchangeExportCompress.isTrue();
+                File file = createOutput(type.getType(), gzip ? "xml.gz" : "xml");
+                try {
+                	OutputStream out = new FileOutputStream(file);
+                	if (gzip) out = new GZIPOutputStream(out);
+                	try {
+                		DataExchangeHelper.exportStream(type.getType(), getSession(), params, out, this);
+                		out.flush();
+                	} finally {
+                		out.close();
+                	}
+                } catch (Exception e) {
+                	// the file is written while the export is running, do not offer a truncated output
+                	setOutput(null);
+                	file.delete();
+                	throw e;
                 }
         	}
 		}
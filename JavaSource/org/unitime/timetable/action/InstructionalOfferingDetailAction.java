@@ -76,6 +76,7 @@ import org.unitime.timetable.model.dao.CourseOfferingDAO;
 import org.unitime.timetable.model.dao.InstructionalOfferingDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine;
 import org.unitime.timetable.solver.ClassAssignmentProxy;
 import org.unitime.timetable.solver.service.AssignmentService;
 import org.unitime.timetable.util.DefaultRoomAvailabilityService;
@@ -331,6 +332,8 @@ public class InstructionalOfferingDetailAction extends Action {
 	        hibSession.delete(io);
 	        
 	        tx.commit();
+	        
+	        CurriculumProjectionEngine.invalidate(io.getSessionId());
             hibSession.flush();
             hibSession.clear();
             
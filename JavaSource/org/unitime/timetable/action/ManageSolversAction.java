@@ -63,6 +63,8 @@ import org.unitime.timetable.solver.CommonSolverInterface;
 import org.unitime.timetable.solver.SolverProxy;
 import org.unitime.timetable.solver.exam.ExamSolverProxy;
 import org.unitime.timetable.solver.instructor.InstructorSchedulingProxy;
+import org.unitime.timetable.solver.jgroups.RemoteSolverBatch;
+import org.unitime.timetable.solver.jgroups.RemoteSolverProtocol;
 import org.unitime.timetable.solver.jgroups.SolverServer;
 import org.unitime.timetable.solver.service.SolverServerService;
 import org.unitime.timetable.solver.service.SolverService;
@@ -586,9 +588,23 @@ public class ManageSolversAction extends Action {
 		CommonSolverInterface selected = service.getSolverNoSessionCheck();
 		String selectedId = (selected == null ? null : selected.getUser());
 		
-		List<CommonSolverInterface> solvers = new ArrayList<CommonSolverInterface>(service.getSolvers().values());
-		for (CommonSolverInterface solver: solvers) {
+		// remote solvers: request the properties and the info of all the solvers at once, in a single round trip for each solver
+		List<RemoteSolverBatch<CommonSolverInterface>> batches = new ArrayList<RemoteSolverBatch<CommonSolverInterface>>();
+		for (CommonSolverInterface solver: service.getSolvers().values()) {
 			if (solver == null) continue;
+			RemoteSolverBatch<CommonSolverInterface> batch = new RemoteSolverBatch<CommonSolverInterface>(solver);
+			if (batch.isRemote()) {
+				batch.record().getProperties();
+				batch.record().statusSolutionInfo();
+				batch.record().getLoadedDate();
+				batch.record().getLastUsed();
+				batch.record().getProgress();
+				batch.submit();
+			}
+			batches.add(batch);
+		}
+		for (RemoteSolverBatch<CommonSolverInterface> batch: batches) {
+			CommonSolverInterface solver = batch.getSolver();
 			DataProperties properties = solver.getProperties();
 			if (properties == null) continue;
 			Map<String,String> info = solver.statusSolutionInfo();
@@ -618,10 +634,10 @@ public class ManageSolversAction extends Action {
 		try {
 			WebTable.setOrder(sessionContext,"manageSolvers.ord[SERVERS]", request.getParameter("ords"),1);
 			
-			WebTable webTable = new WebTable( 12,
+			WebTable webTable = new WebTable( 13,
 					"Available Servers", "manageSolvers.do?ords=%%",
-					new String[] {"Host", "Version", "Started", "Available Memory", "NrCores", "Ping", "Usage", "NrInstances", "Active", "Working", "Passivated", "Operation(s)"},
-					new String[] {"left", "left", "left", "left", "left", "left", "left", "left", "left","left","left","left"},
+					new String[] {"Host", "Version", "Started", "Available Memory", "NrCores", "Ping", "Usage", "NrInstances", "Active", "Working", "Passivated", "RPC", "Operation(s)"},
+					new String[] {"left", "left", "left", "left", "left", "left", "left", "left", "left","left","left","left","left"},
 					null );
 			webTable.setRowStyle("white-space:nowrap");
 			
@@ -643,6 +659,7 @@ public class ManageSolversAction extends Action {
                                 "",
                                 "",
                                 "",
+                                "",
                                 ""
                                 },
                             new Comparable[] {
@@ -657,6 +674,7 @@ public class ManageSolversAction extends Action {
                                 new Integer(-1),
                                 new Integer(-1),
                                 new Integer(-1),
+                                Double.valueOf(-1),
                                 null
                         });
                         continue;
@@ -704,6 +722,7 @@ public class ManageSolversAction extends Action {
                     if (!local) {
                     	op+="<input type=\"button\" value=\"Shutdown\" onClick=\"if (confirm('Do you really want to shutdown server "+server.getHost()+"?')) document.location='manageSolvers.do?op=Shutdown&solver="+server.getHost()+"';\">&nbsp;&nbsp;";
                     }
+                    RemoteSolverProtocol.Statistics rpc = (local ? null : RemoteSolverProtocol.getStatistics(server.getAddress()));
                     Set<String> flags = new TreeSet<String>();
                     if (local) flags.add("tomcat");
                     if (server.isCoordinator()) flags.add("coordinator");
@@ -720,6 +739,8 @@ public class ManageSolversAction extends Action {
                             String.valueOf(nrActive),
                             String.valueOf(nrWorking),
                             String.valueOf(nrPassivated),
+                            (rpc == null || rpc.getRoundTrips() == 0 ? "" : rpc.getRoundTrips() + " calls, " + df.format(rpc.getMeanLatency()) + " ms (p99 " + df.format(rpc.getLatency(99.0)) + " ms)<br>" +
+                            		"sent " + df.format(rpc.getBytesSent() / 1024.0) + " kB, received " + df.format(rpc.getBytesReceived() / 1024.0) + " kB"),
                             op
                             },
                         new Comparable[] {
@@ -734,6 +755,7 @@ public class ManageSolversAction extends Action {
                             new Integer(nrActive),
                             new Integer(nrWorking),
                             new Integer(nrPassivated),
+                            Double.valueOf(rpc == null ? -1.0 : rpc.getMeanLatency()),
                             null
                     });
                     nrLines++;
@@ -754,10 +776,10 @@ public class ManageSolversAction extends Action {
            try {
                WebTable.setOrder(sessionContext,"manageSolvers.ord[ONLINE]",request.getParameter("ordo"),1);
                
-               WebTable webTable = new WebTable( 14,
+               WebTable webTable = new WebTable( 16,
                        "Manage Online Scheduling Servers", "manageSolvers.do?ordo=%%",
-                       new String[] {"Created", "Session", "Host", "Mode", "Mem", "Assign", "Total", "CompSched", "DistConf", "TimeConf", "FreeConf", "AvgDisb", "Disb[>=10%]", "Operation(s)"},
-                       new String[] {"left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left"},
+                       new String[] {"Created", "Session", "Host", "Mode", "Mem", "Assign", "Total", "CompSched", "DistConf", "TimeConf", "FreeConf", "AvgDisb", "Disb[>=10%]", "Queue", "Latency", "Operation(s)"},
+                       new String[] {"left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left", "left"},
                        null );
                webTable.setRowStyle("white-space:nowrap");
                
@@ -782,6 +804,10 @@ public class ManageSolversAction extends Action {
                        String free = (info == null ? null : info.get("Free time overlapping conflicts"));
                        String disb = (info == null ? null : info.get("Average disbalance"));
                        String disb10 = (info == null ? null : info.get("Sections disbalanced by 10% or more"));
+                       String queue = (info == null ? null : info.get("Asynchronous calls in queue"));
+                       String queueWait = (info == null ? null : info.get("Asynchronous calls wait time"));
+                       String latency = (info == null ? null : info.get("Action latency"));
+                       String slowest = (info == null ? null : info.get("Slowest action"));
                        Date loaded = new Date(solver.getConfig().getPropertyLong("General.StartUpDate", 0));
 
                        String op = "";
@@ -821,6 +847,8 @@ public class ManageSolversAction extends Action {
                                    (free==null?"N/A":free),
                                    (disb==null?"N/A":disb),
                                    (disb10==null?"N/A":disb10),
+                                   (queue==null?"N/A":queue + (queueWait==null?"":"<br>" + queueWait)),
+                                   (latency==null?"N/A":latency + (slowest==null?"":"<br>" + slowest)),
                                    op},
                                new Comparable[] {
                                    loaded,
@@ -836,6 +864,8 @@ public class ManageSolversAction extends Action {
                                    (free==null?"":free),
                                    (disb==null?"":disb),
                                    (disb10==null?"":disb10),
+                                   (queue==null?"":queue),
+                                   (latency==null?"":latency),
                                    null});
                            nrLines++;
                    }
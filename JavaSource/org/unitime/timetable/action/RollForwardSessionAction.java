@@ -432,6 +432,16 @@ public class RollForwardSessionAction extends Action {
 			return "Roll Forward";
 		}
 		
+		@Override
+		public String exclusiveKey() {
+			return sessionUpdateKey(iForm.getSessionToRollForwardTo());
+		}
+		
+		@Override
+		public int priority() {
+			return -1;
+		}
+		
 	}
 	
 	protected void setToFromSessionsInForm(RollForwardSessionForm rollForwardSessionForm){
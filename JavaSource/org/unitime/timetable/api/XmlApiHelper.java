@@ -20,6 +20,7 @@
 package org.unitime.timetable.api;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.lang.reflect.Type;
@@ -56,6 +57,13 @@ public class XmlApiHelper extends AbstractApiHelper {
 			reader.close();
 		}
 	}
+	
+	/**
+	 * Raw request body, to be used when the request is too large to be parsed into a {@link Document}
+	 */
+	public InputStream getInputStream() throws IOException {
+		return iRequest.getInputStream();
+	}
 
 	@Override
 	public <R> void setResponse(R response) throws IOException {
@@ -20,6 +20,7 @@
 package org.unitime.timetable.api.connectors;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -79,11 +80,11 @@ public class DataExchangeConnector extends ApiConnector {
 	public void doPost(ApiHelper helper) throws IOException {
 		helper.getSessionContext().checkPermissionAnyAuthority(Right.ApiDataExchangeConnector);
 		
-		Document document = helper.getRequest(Document.class);
+		InputStream input = ((XmlApiHelper)helper).getInputStream();
 		Document output = DocumentHelper.createDocument();
 		final Element messages = output.addElement("html");
 		try {
-			DataExchangeHelper.importDocument(document, helper.getSessionContext().isAuthenticated() ? helper.getSessionContext().getUser().getExternalUserId() : null, new Log() {
+			DataExchangeHelper.importStream(input, helper.getSessionContext().isAuthenticated() ? helper.getSessionContext().getUser().getExternalUserId() : null, new Log() {
 				protected void log(QueueMessage.Level level, Object message, Throwable t) {
 					messages.addElement("p").setText(new QueueMessage(level, messages, t).toHTML());
 				}
@@ -181,6 +182,8 @@ public class DataExchangeConnector extends ApiConnector {
 			helper.setResponse(output);
 		} catch (Exception e) {
 			throw new IOException(e.getMessage(), e);
+		} finally {
+			input.close();
 		}
 	}
 
@@ -0,0 +1,88 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.api.connectors;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.unitime.timetable.api.ApiConnector;
+import org.unitime.timetable.api.ApiHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.basic.GetActionStatistics;
+import org.unitime.timetable.onlinesectioning.server.ActionStatistics.ActionSummary;
+import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.solver.service.SolverServerService;
+
+/**
+ * Live execution statistics of the online student scheduling server of an academic session (number of calls, failures,
+ * execution time percentiles, CPU time, and lock wait time of each action). Times are in milliseconds.
+ * <br>
+ * Parameters: term (academic session), action (optional, only return the statistics of the given action)
+ *
+ * @author Tomas Muller
+ */
+@Service("/api/sectioning-statistics")
+public class OnlineSectioningStatisticsConnector extends ApiConnector {
+	@Autowired SolverServerService solverServerService;
+	
+	@Override
+	public void doGet(ApiHelper helper) throws IOException {
+		Long sessionId = helper.getAcademicSessionId();
+		if (sessionId == null)
+			throw new IllegalArgumentException("Academic session not provided, please set the term parameter.");
+		
+		helper.getSessionContext().checkPermissionAnyAuthority(sessionId, "Session", Right.ManageSolvers);
+		
+		OnlineSectioningServer server = solverServerService.getOnlineStudentSchedulingContainer().getSolver(sessionId.toString());
+		if (server == null || !server.isReady()) {
+			helper.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Online student scheduling server is not available for the academic session.");
+			return;
+		}
+		
+		List<ActionSummary> statistics = server.execute(server.createAction(GetActionStatistics.class).forAction(helper.getParameter("action")), null);
+		if (statistics == null) {
+			helper.sendError(HttpServletResponse.SC_NOT_FOUND, "Action statistics are disabled (unitime.enrollment.server.actionStatistics is false).");
+			return;
+		}
+		
+		helper.setResponse(new StatisticsResponse(sessionId, server.getHost(), statistics));
+	}
+	
+	@Override
+	protected String getName() {
+		return "sectioning-statistics";
+	}
+	
+	class StatisticsResponse {
+		Long iSessionId;
+		String iHost;
+		List<ActionSummary> iActions;
+		
+		StatisticsResponse(Long sessionId, String host, List<ActionSummary> actions) {
+			iSessionId = sessionId;
+			iHost = host;
+			iActions = actions;
+		}
+	}
+}
@@ -82,6 +82,7 @@ import org.unitime.timetable.model.TimePref;
 import org.unitime.timetable.model.VariableFixedCreditUnitConfig;
 import org.unitime.timetable.model.VariableRangeCreditUnitConfig;
 import org.unitime.timetable.model.dao.CourseOfferingDAO;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine;
 import org.unitime.timetable.test.MakeAssignmentsForClassEvents;
 import org.unitime.timetable.test.UpdateExamConflicts;
 import org.unitime.timetable.util.CalendarUtils;
@@ -155,6 +156,9 @@ public abstract class BaseCourseOfferingImport extends EventRelatedImports {
 	        deleteUnmatchedClasses();
 	        commitTransaction();
 	        
+	        if (session != null)
+	        	CurriculumProjectionEngine.invalidate(session.getUniqueId());
+	        
 		} catch (Exception e) {
 			fatal("Exception: " + e.getMessage(), e);
 			rollbackTransaction();
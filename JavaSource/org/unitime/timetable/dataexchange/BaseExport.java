@@ -21,14 +21,14 @@ package org.unitime.timetable.dataexchange;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
-import org.dom4j.io.OutputFormat;
-import org.dom4j.io.XMLWriter;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.Session;
 
 /**
@@ -39,6 +39,7 @@ import org.unitime.timetable.model.Session;
 
 public abstract class BaseExport extends DataExchangeHelper {
     protected static Log sLog = LogFactory.getLog(BaseExport.class);
+    private StreamingXMLWriter iWriter = null;
     
     public BaseExport() {
         super();
@@ -46,11 +47,10 @@ public abstract class BaseExport extends DataExchangeHelper {
     
     public void saveXml(String fileName, Session session, Properties parameters) throws Exception {
         debug("Saving "+fileName);
-        Document doc = saveXml(session, parameters);
         FileOutputStream fos = null;
         try {
             fos = new FileOutputStream(fileName);
-            (new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(doc);
+            saveXml(fos, session, parameters);
             fos.flush();fos.close();fos=null;
         } finally {
             try {
@@ -62,6 +62,41 @@ public abstract class BaseExport extends DataExchangeHelper {
         }
     }
     
+    /**
+     * Export into the given output stream (pretty printed, the output stream is not closed).
+     * When {@link ApplicationProperty#DataExchangeStreamingExport} is enabled, the elements that an export passes to
+     * {@link #streamElements(Document)} are written right away and removed from the document.
+     */
+    public void saveXml(OutputStream out, Session session, Properties parameters) throws Exception {
+        Document document = DocumentHelper.createDocument();
+        StreamingXMLWriter writer = new StreamingXMLWriter(out);
+        if (ApplicationProperty.DataExchangeStreamingExport.isTrue())
+            iWriter = writer;
+        try {
+            saveXml(document, session, parameters);
+            writer.finish(document);
+            if (writer.isStreaming())
+                debug(writer.getStreamedElements() + " elements streamed.");
+        } finally {
+            iWriter = null;
+        }
+    }
+    
+    /**
+     * Write the children of the root element that have been created so far and remove them from the document.
+     * Does nothing when the export is not streamed (the document is then written as a whole at the end).
+     * The root element attributes and the document type must be set before this method is called for the first time.
+     */
+    protected void streamElements(Document document) throws IOException {
+        if (iWriter != null)
+            iWriter.streamElements(document);
+    }
+    
+    /** True if the export is being written as it is created, see {@link #streamElements(Document)} */
+    protected boolean isStreaming() {
+        return iWriter != null;
+    }
+    
     public Document saveXml(Session session, Properties parameters) throws Exception {
         Document document = DocumentHelper.createDocument();
         saveXml(document, session, parameters);
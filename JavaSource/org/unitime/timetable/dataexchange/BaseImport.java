@@ -22,13 +22,23 @@ package org.unitime.timetable.dataexchange;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.text.DecimalFormat;
+import java.util.Iterator;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.XMLEvent;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 import org.dom4j.io.SAXReader;
+import org.dom4j.io.STAXEventReader;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.TimetableManager;
 
 /**
@@ -40,6 +50,7 @@ import org.unitime.timetable.model.TimetableManager;
 public abstract class BaseImport extends DataExchangeHelper {
     protected static Log sLog = LogFactory.getLog(BaseImport.class);
 	private TimetableManager iManager = null;
+	private boolean iStreaming = false;
 
     public BaseImport() {
         super();
@@ -62,6 +73,18 @@ public abstract class BaseImport extends DataExchangeHelper {
     }
     
     public void loadXml(InputStream inputStream) throws Exception {
+    	if (isStreamingSupported() && ApplicationProperty.DataExchangeStreamingImport.isTrue()) {
+    		XMLEventReader reader = null;
+    		try {
+    			reader = createXMLEventReader(inputStream);
+    			loadXml(reader, readRootElement(reader));
+    		} catch (XMLStreamException e) {
+    			fatal("Unable to parse given XML, reason:"+e.getMessage(), e);
+    		} finally {
+    			if (reader != null) reader.close();
+    		}
+    		return;
+    	}
         try {
             Document document = (new SAXReader()).read(inputStream);
             loadXml(document.getRootElement());
@@ -72,6 +95,145 @@ public abstract class BaseImport extends DataExchangeHelper {
     
     public abstract void loadXml(Element rootElement) throws Exception;
     
+    /**
+     * Streaming import: the child elements of the root element are read one by one from the given reader and passed to
+     * {@link #importElement(Element)}, so that the whole document is never kept in memory.
+     * @param reader XML reader, positioned right after the start of the root element
+     * @param rootElement root element (with its attributes, but no child elements), see {@link #readRootElement(XMLEventReader)}
+     */
+    public void loadXml(XMLEventReader reader, Element rootElement) throws Exception {
+    	if (!isStreamingSupported()) {
+    		// read the rest of the document
+    		STAXEventReader stax = new STAXEventReader();
+    		while (reader.hasNext()) {
+    			XMLEvent event = reader.peek();
+    			if (event.isEndElement() || event.isEndDocument()) break;
+    			rootElement.add(stax.readNode(reader));
+    		}
+    		loadXml(rootElement);
+    		return;
+    	}
+    	final STAXEventReader stax = new STAXEventReader();
+    	final XMLEventReader xml = reader;
+    	importElements(rootElement, new Iterator<Element>() {
+    		Element iNext = null;
+    		
+			@Override
+			public boolean hasNext() {
+				try {
+					while (iNext == null && xml.hasNext()) {
+						XMLEvent event = xml.peek();
+						if (event.isEndElement() || event.isEndDocument()) return false;
+						if (event.isStartElement())
+							iNext = stax.readElement(xml);
+						else
+							xml.nextEvent();
+					}
+					return iNext != null;
+				} catch (XMLStreamException e) {
+					throw new RuntimeException("Unable to parse given XML, reason: " + e.getMessage(), e);
+				}
+			}
+
+			@Override
+			public Element next() {
+				Element next = (hasNext() ? iNext : null);
+				iNext = null;
+				return next;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		}, true);
+    }
+    
+    /**
+     * Import all the child elements of the given root element, used by imports that support streaming (see {@link #isStreamingSupported()}).
+     * {@link #beginImport(Element)} is called first, followed by {@link #importElement(Element)} for each element and {@link #endImport(Element)}.
+     * The transaction is rolled back when any of these fails. The number of imported elements per second and the used heap are logged as the import progresses.
+     */
+    protected void importElements(Element rootElement, Iterator<Element> elements, boolean streaming) throws Exception {
+    	iStreaming = streaming;
+    	long t0 = System.currentTimeMillis();
+    	int count = 0;
+    	long maxHeap = usedHeap();
+    	DecimalFormat df = new DecimalFormat("0.0");
+    	try {
+    		beginImport(rootElement);
+    		while (elements.hasNext()) {
+    			importElement(elements.next());
+    			count ++;
+    			if ((count % sProgressInterval) == 0) {
+    				long heap = usedHeap();
+    				if (heap > maxHeap) maxHeap = heap;
+    				long time = System.currentTimeMillis() - t0;
+    				info("  " + count + " elements imported (" + df.format(1000.0 * count / Math.max(1, time)) + " elements/s, heap used: " + df.format(heap / 1048576.0) + " MB)");
+    			}
+    		}
+    		endImport(rootElement);
+    		long time = System.currentTimeMillis() - t0;
+    		long heap = usedHeap();
+    		if (heap > maxHeap) maxHeap = heap;
+    		info(count + " elements imported in " + df.format(time / 1000.0) + " s (" + df.format(1000.0 * count / Math.max(1, time)) +
+    				" elements/s, heap used: " + df.format(heap / 1048576.0) + " MB, max " + df.format(maxHeap / 1048576.0) + " MB" + (streaming ? ", streaming" : "") + ")");
+    	} catch (Exception e) {
+			fatal("Exception: " + e.getMessage(), e);
+			rollbackTransaction();
+			throw e;
+    	} finally {
+    		iStreaming = false;
+    	}
+    }
+    
+    private static int sProgressInterval = 1000;
+    
+    private static long usedHeap() {
+    	Runtime rt = Runtime.getRuntime();
+    	return rt.totalMemory() - rt.freeMemory();
+    }
+    
+    /**
+     * True if the import can process the child elements of the root element one by one, using {@link #beginImport(Element)},
+     * {@link #importElement(Element)}, and {@link #endImport(Element)}. Such an import is not given the whole document,
+     * it is expected to periodically flush and clear the hibernate session when {@link #isStreaming()}.
+     */
+    public boolean isStreamingSupported() { return false; }
+    
+    /** True while a streaming import is in progress: elements are read from the input as they are imported and the hibernate session can be cleared between elements */
+    protected boolean isStreaming() { return iStreaming; }
+    
+    /** Streaming import: called before the first element is imported, the root element only contains its attributes when streaming */
+    protected void beginImport(Element rootElement) throws Exception {}
+    
+    /** Streaming import: import one child element of the root element */
+    protected void importElement(Element element) throws Exception {}
+    
+    /** Streaming import: called after the last element has been imported, expected to commit the transaction */
+    protected void endImport(Element rootElement) throws Exception {}
+    
+    /** Create a StAX reader, external entities are not resolved */
+    public static XMLEventReader createXMLEventReader(InputStream inputStream) throws XMLStreamException {
+    	XMLInputFactory factory = XMLInputFactory.newInstance();
+    	factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    	return factory.createXMLEventReader(inputStream);
+    }
+    
+    /** Read the start of the root element, the returned element contains the attributes (and namespaces) of the root element */
+    public static Element readRootElement(XMLEventReader reader) throws XMLStreamException {
+    	STAXEventReader stax = new STAXEventReader();
+    	while (reader.hasNext()) {
+    		XMLEvent event = reader.nextEvent();
+    		if (event.isStartElement()) {
+    			Element root = stax.createElement(event.asStartElement());
+    			DocumentHelper.createDocument(root);
+    			return root;
+    		}
+    	}
+    	throw new XMLStreamException("No root element found.");
+    }
+    
     protected String getRequiredStringAttribute(Element element, String attributeName, String elementName) throws Exception{		
 		String attributeValue = element.attributeValue(attributeName);
 		if (attributeValue == null || attributeValue.trim().length() == 0){
@@ -134,12 +134,14 @@ public class CourseOfferingExport extends BaseExport {
                     for (Iterator i=new TreeSet(Exam.findAllFinal(session.getUniqueId())).iterator();i.hasNext();) {
                         Exam exam = (Exam)i.next();
                         exportExam(root, null, exam, session);
+                        streamElements(document);
                     }
                 }
                 if ("all".equals(parameters.getProperty("tmtbl.export.exam.type", "all")) || "midterm".equals(parameters.getProperty("tmtbl.export.exam.type", "all"))) {
                     for (Iterator i=new TreeSet(Exam.findAllMidterm(session.getUniqueId())).iterator();i.hasNext();) {
                         Exam exam = (Exam)i.next();
                         exportExam(root, null, exam, session);
+                        streamElements(document);
                     }
                 }
             } else {
@@ -211,6 +213,7 @@ public class CourseOfferingExport extends BaseExport {
                 for (Iterator i=offerings.iterator();i.hasNext();) {
                     InstructionalOffering io = (InstructionalOffering)i.next();
                     exportInstructionalOffering(root, io, session);
+                    streamElements(document);
                 }
             }
             
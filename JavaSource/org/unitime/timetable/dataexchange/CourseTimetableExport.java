@@ -92,6 +92,7 @@ public class CourseTimetableExport extends CourseOfferingExport {
             			}
             		}
             	}
+            	streamElements(document);
             }
             
             commitTransaction();
@@ -19,12 +19,19 @@
 */
 package org.unitime.timetable.dataexchange;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Hashtable;
 import java.util.Properties;
 
+import javax.xml.stream.XMLEventReader;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.Class_;
 import org.unitime.timetable.model.Session;
 import org.unitime.timetable.model.TimetableManager;
@@ -270,12 +277,56 @@ public class DataExchangeHelper {
         imp.loadXml(document.getRootElement());
     }
     
+    /**
+     * Import an XML file without parsing it into a document first. The type of the import is given by the name of the root element.
+     * Imports that support streaming (see {@link BaseImport#isStreamingSupported()}) read the file one element at a time,
+     * the other imports get the whole document as with {@link #importDocument(Document, String, Log)}.
+     */
+    public static void importStream(InputStream inputStream, String userId, Log log) throws Exception {
+    	importStream(inputStream, userId, false, log);
+    }
+    
+    /**
+     * Same as {@link #importStream(InputStream, String, Log)}, but when managerFromRoot is true, the manager of the import is
+     * given by the manager attribute of the root element (if present, the given user id is used otherwise)
+     */
+    public static void importStream(InputStream inputStream, String userId, boolean managerFromRoot, Log log) throws Exception {
+    	if (!ApplicationProperty.DataExchangeStreamingImport.isTrue()) {
+    		Document document = (new SAXReader()).read(inputStream);
+    		importDocument(document, managerFromRoot ? document.getRootElement().attributeValue("manager", userId) : userId, log);
+    		return;
+    	}
+    	XMLEventReader reader = BaseImport.createXMLEventReader(inputStream);
+    	try {
+    		Element rootElement = BaseImport.readRootElement(reader);
+    		if (managerFromRoot)
+    			userId = rootElement.attributeValue("manager", userId);
+    		BaseImport imp = createImportBase(rootElement.getName());
+            imp.setLog(log);
+            if (userId != null)
+            	imp.setManager(TimetableManager.findByExternalId(userId));
+            imp.loadXml(reader, rootElement);
+    	} finally {
+    		reader.close();
+    	}
+    }
+    
     public static Document exportDocument(String rootName, Session session, Properties parameters, Log log) throws Exception {
         BaseExport exp = createExportBase(rootName);
         exp.setLog(log);
         return exp.saveXml(session, parameters);
     }
     
+    /**
+     * Export an XML file into the given output stream. Unlike {@link #exportDocument(String, Session, Properties, Log)}, the exports
+     * that support streaming (see {@link BaseExport#streamElements(Document)}) do not need to keep the whole document in memory.
+     */
+    public static void exportStream(String rootName, Session session, Properties parameters, OutputStream outputStream, Log log) throws Exception {
+        BaseExport exp = createExportBase(rootName);
+        exp.setLog(log);
+        exp.saveXml(outputStream, session, parameters);
+    }
+    
     public interface LogWriter {
     	public void println(String message);
     }
@@ -20,7 +20,9 @@
 package org.unitime.timetable.dataexchange;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 
@@ -50,8 +52,31 @@ public class DataExchangeIntegrationHelper {
 	}
 
 	public String importDocument(Document document) throws Exception {
-		final StringBuffer log = new StringBuffer("<html><header><title>XML Import Log</title></header><body>\n");
-		Log logger = new Log() {
+		StringBuffer log = new StringBuffer("<html><header><title>XML Import Log</title></header><body>\n");
+		String manager = document.getRootElement().attributeValue("manager", ApplicationProperty.DataExchangeXmlManager.value());
+		DataExchangeHelper.importDocument(document, manager, createLog(log));
+		log.append("</body></html>");
+		return log.toString();
+	}
+	
+	/**
+	 * Import the given XML file without parsing it into a document first (see {@link DataExchangeHelper#importStream(InputStream, String, boolean, Log)}),
+	 * the manager is given by the manager attribute of the root element (defaults to unitime.xml.manager)
+	 */
+	public String importFile(File file) throws Exception {
+		StringBuffer log = new StringBuffer("<html><header><title>XML Import Log</title></header><body>\n");
+		InputStream input = new FileInputStream(file);
+		try {
+			DataExchangeHelper.importStream(input, ApplicationProperty.DataExchangeXmlManager.value(), true, createLog(log));
+		} finally {
+			input.close();
+		}
+		log.append("</body></html>");
+		return log.toString();
+	}
+	
+	protected Log createLog(final StringBuffer log) {
+		return new Log() {
 			protected void log(QueueMessage.Level level, Object message, Throwable t) {
 				log.append(new QueueMessage(level, message, t).toHTML() + "<br>\n");
 			}
@@ -146,9 +171,5 @@ public class DataExchangeIntegrationHelper {
 				log(QueueMessage.Level.DEBUG, message, null);
 			}
 		};
-        String manager = document.getRootElement().attributeValue("manager", ApplicationProperty.DataExchangeXmlManager.value());
-		DataExchangeHelper.importDocument(document, manager, logger);
-		log.append("</body></html>");
-		return log.toString();
 	}
 }
@@ -34,6 +34,7 @@ import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.SubjectArea;
 import org.unitime.timetable.model.TimetableManager;
 import org.unitime.timetable.model.dao.SubjectAreaDAO;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine;
 
 /**
  * 
@@ -50,89 +51,99 @@ public class LastLikeCourseDemandImport extends BaseImport {
 	private HashMap<String, SubjectArea> externalIdSubjectArea = new HashMap<String, SubjectArea>();
 	protected TimetableManager manager = null;
 	protected boolean trimLeadingZerosFromExternalId = false;
+	protected Session session = null;
 	
 	public LastLikeCourseDemandImport() {
 		super();
 	}
 
+	@Override
+	public boolean isStreamingSupported() {
+		return true;
+	}
+
 	public void loadXml(Element root) throws Exception {
+		importElements(root, root.elementIterator(), false);
+	}
+	
+	@Override
+	protected void beginImport(Element root) throws Exception {
 		trimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
-		try {
-			String rootElementName = "lastLikeCourseDemand";
-	        if (!root.getName().equalsIgnoreCase(rootElementName)) {
-	        	throw new Exception("Given XML file is not a Course Offerings load file.");
-	        }
-
-	        String campus = root.attributeValue("campus");
-	        String year   = root.attributeValue("year");
-	        String term   = root.attributeValue("term");
-	        String created = getOptionalStringAttribute(root, "created");
-	        Session session = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
-	        if(session == null) {
-	           	throw new Exception("No session found for the given campus, year, and term.");
-	        }
-	        loadSubjectAreas(session.getSessionId());
-	        loadCourseOfferings(session.getSessionId());
-
-			beginTransaction();
-	        if (created != null) {
-				ChangeLog.addChange(getHibSession(), getManager(), session, session, created, ChangeLog.Source.DATA_IMPORT_LASTLIKE_DEMAND, ChangeLog.Operation.UPDATE, null, null);
-	        }
-           
-            getHibSession().createQuery("delete LastLikeCourseDemand ll where ll.subjectArea.uniqueId in " +
-                    "(select s.uniqueId from SubjectArea s where s.session.uniqueId=:sessionId)").
-                    setLong("sessionId", session.getUniqueId()).executeUpdate();
-            
-            flush(true);
-            
-	        for ( Iterator it = root.elementIterator(); it.hasNext(); ) {
-	            Element element = (Element) it.next();
-	            String externalId = element.attributeValue("externalId");
-	            if (trimLeadingZerosFromExternalId){
-	            	try {
-	            		Integer num = new Integer(externalId);
-	            		externalId = num.toString();
-					} catch (Exception e) {
-						// do nothing
-					}
-	            }
-	            Student student = fetchStudent(externalId, session.getSessionId());
-	            if (student == null){
-	            	student = new Student();
-	            	student.setFirstName("Unknown");
-	            	student.setLastName("Student");
-	            	student.setExternalUniqueId(externalId);
-	            	student.setFreeTimeCategory(new Integer(0));
-	            	student.setSchedulePreference(new Integer(0));
-	            	student.setSession(session);
-	            	getHibSession().save(student);
-	            	getHibSession().flush();
-	            	getHibSession().refresh(student);
-	            }
-	            loadCourses(element, student, session);
-	            flushIfNeeded(true);
-	        }
-	        
-	        flush(true);
-	        
-            getHibSession().createQuery("update CourseOffering c set c.demand="+
-                    "(select count(distinct d.student) from LastLikeCourseDemand d where "+
-                    "(c.subjectArea=d.subjectArea and c.courseNbr=d.courseNbr)) where "+
-                    "c.permId is null and c.subjectArea.uniqueId in (select sa.uniqueId from SubjectArea sa where sa.session.uniqueId=:sessionId)").
-                    setLong("sessionId", session.getUniqueId()).executeUpdate();
-
-            getHibSession().createQuery("update CourseOffering c set c.demand="+
-	                "(select count(distinct d.student) from LastLikeCourseDemand d where "+
-	                "d.student.session=c.subjectArea.session and c.permId=d.coursePermId) where "+
-	                "c.permId is not null and c.subjectArea.uniqueId in (select sa.uniqueId from SubjectArea sa where sa.session.uniqueId=:sessionId)").
-	                setLong("sessionId", session.getUniqueId()).executeUpdate();
-            
-            commitTransaction();
-		} catch (Exception e) {
-			fatal("Exception: " + e.getMessage(), e);
-			rollbackTransaction();
-			throw e;
-		}
+		String rootElementName = "lastLikeCourseDemand";
+        if (!root.getName().equalsIgnoreCase(rootElementName)) {
+        	throw new Exception("Given XML file is not a Course Offerings load file.");
+        }
+
+        String campus = root.attributeValue("campus");
+        String year   = root.attributeValue("year");
+        String term   = root.attributeValue("term");
+        String created = getOptionalStringAttribute(root, "created");
+        session = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
+        if(session == null) {
+           	throw new Exception("No session found for the given campus, year, and term.");
+        }
+        loadSubjectAreas(session.getSessionId());
+        loadCourseOfferings(session.getSessionId());
+
+		beginTransaction();
+        if (created != null) {
+			ChangeLog.addChange(getHibSession(), getManager(), session, session, created, ChangeLog.Source.DATA_IMPORT_LASTLIKE_DEMAND, ChangeLog.Operation.UPDATE, null, null);
+        }
+       
+        getHibSession().createQuery("delete LastLikeCourseDemand ll where ll.subjectArea.uniqueId in " +
+                "(select s.uniqueId from SubjectArea s where s.session.uniqueId=:sessionId)").
+                setLong("sessionId", session.getUniqueId()).executeUpdate();
+        
+        flush(true);
+	}
+	
+	@Override
+	protected void importElement(Element element) throws Exception {
+        String externalId = element.attributeValue("externalId");
+        if (trimLeadingZerosFromExternalId){
+        	try {
+        		Integer num = new Integer(externalId);
+        		externalId = num.toString();
+			} catch (Exception e) {
+				// do nothing
+			}
+        }
+        Student student = fetchStudent(externalId, session.getSessionId());
+        if (student == null){
+        	student = new Student();
+        	student.setFirstName("Unknown");
+        	student.setLastName("Student");
+        	student.setExternalUniqueId(externalId);
+        	student.setFreeTimeCategory(new Integer(0));
+        	student.setSchedulePreference(new Integer(0));
+        	student.setSession(session);
+        	getHibSession().save(student);
+        	getHibSession().flush();
+        	getHibSession().refresh(student);
+        }
+        loadCourses(element, student, session);
+        flushIfNeeded(true);
+	}
+	
+	@Override
+	protected void endImport(Element root) throws Exception {
+        flush(true);
+        
+        getHibSession().createQuery("update CourseOffering c set c.demand="+
+                "(select count(distinct d.student) from LastLikeCourseDemand d where "+
+                "(c.subjectArea=d.subjectArea and c.courseNbr=d.courseNbr)) where "+
+                "c.permId is null and c.subjectArea.uniqueId in (select sa.uniqueId from SubjectArea sa where sa.session.uniqueId=:sessionId)").
+                setLong("sessionId", session.getUniqueId()).executeUpdate();
+
+        getHibSession().createQuery("update CourseOffering c set c.demand="+
+                "(select count(distinct d.student) from LastLikeCourseDemand d where "+
+                "d.student.session=c.subjectArea.session and c.permId=d.coursePermId) where "+
+                "c.permId is not null and c.subjectArea.uniqueId in (select sa.uniqueId from SubjectArea sa where sa.session.uniqueId=:sessionId)").
+                setLong("sessionId", session.getUniqueId()).executeUpdate();
+        
+        commitTransaction();
+        
+        CurriculumProjectionEngine.invalidate(session.getUniqueId());
 	}
 
 	Student fetchStudent(String externalId, Long sessionId) {
@@ -0,0 +1,104 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.dataexchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+
+/**
+ * Pretty print XML writer that writes the children of the root element as they are created and removes them from the document
+ * (see {@link #streamElements(Document)}), so that an export does not need to keep the whole document in memory.
+ * The output is the same as when the complete document is written by {@link XMLWriter#write(Document)}
+ * using {@link OutputFormat#createPrettyPrint()}, provided that the root element does not have any text content
+ * and that its attributes and the document type are set before the first child is streamed.
+ *
+ * @author Tomas Muller
+ */
+public class StreamingXMLWriter extends XMLWriter {
+	private Element iRoot = null;
+	private long iElements = 0;
+	
+	public StreamingXMLWriter(OutputStream out) throws IOException {
+		super(out, OutputFormat.createPrettyPrint());
+	}
+	
+	/**
+	 * Write all children of the root element that have been created so far and remove them from the document.
+	 * The XML declaration, the document type, and the opening tag of the root element are written on the first call.
+	 */
+	public void streamElements(Document document) throws IOException {
+		Element root = document.getRootElement();
+		if (root == null || root.nodeCount() == 0) return;
+		if (iRoot == null) {
+			iRoot = root;
+			writeDeclaration();
+			if (document.getDocType() != null) {
+				indent();
+				writeDocType(document.getDocType());
+			}
+			writePrintln();
+			indent();
+			writeOpen(root);
+			setIndentLevel(1);
+		}
+		List<Node> nodes = new ArrayList<Node>(root.content());
+		root.clearContent();
+		for (Node node: nodes) {
+			writeNode(node);
+			if (node instanceof Element) iElements ++;
+		}
+		flush();
+	}
+	
+	/**
+	 * Write the rest of the document. If nothing has been streamed, the document is written as a whole.
+	 */
+	public void finish(Document document) throws IOException {
+		if (iRoot == null) {
+			write(document);
+		} else {
+			streamElements(document);
+			setIndentLevel(0);
+			writePrintln();
+			indent();
+			writeClose(iRoot);
+			writePrintln();
+		}
+		flush();
+	}
+	
+	/** True if the opening tag of the root element has been written */
+	public boolean isStreaming() {
+		return iRoot != null;
+	}
+	
+	/** Number of elements that have been streamed */
+	public long getStreamedElements() {
+		return iElements;
+	}
+}
@@ -19,11 +19,12 @@
 */
 package org.unitime.timetable.dataexchange;
 
-import java.util.List;
 import java.util.Properties;
 
 import org.dom4j.Document;
 import org.dom4j.Element;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.unitime.timetable.model.Class_;
 import org.unitime.timetable.model.CourseOffering;
 import org.unitime.timetable.model.Session;
@@ -46,9 +47,19 @@ public class StudentEnrollmentExport extends BaseExport {
 	        root.addAttribute("term", session.getAcademicTerm());
 	        document.addDocType("studentEnrollments", "-//UniTime//UniTime Student Enrollments DTD/EN", "http://www.unitime.org/interface/StudentEnrollment.dtd");
 	        
-	        for (Student student: (List<Student>)getHibSession().createQuery(
+	        org.hibernate.Query q = getHibSession().createQuery(
 	        		"select s from Student s where s.session.uniqueId = :sessionId")
-	        		.setLong("sessionId", session.getUniqueId()).list()) {
+	        		.setLong("sessionId", session.getUniqueId());
+	        q.setFetchSize(1000);
+	        ScrollableResults students = q.scroll(ScrollMode.FORWARD_ONLY);
+	        int count = 0;
+	        while (students.next()) {
+	        	// write the students that have been exported so far and release them from the hibernate session
+	        	if (++count % sBatchSize == 0) {
+	        		streamElements(document);
+	        		getHibSession().clear();
+	        	}
+	        	Student student = (Student)students.get(0);
 	        	if (student.getClassEnrollments().isEmpty()) continue;
 	        	Element studentEl = root.addElement("student");
 	        	studentEl.addAttribute("externalId",
@@ -71,6 +82,7 @@ public class StudentEnrollmentExport extends BaseExport {
 	        		classEl.addAttribute("suffix", getClassSuffix(clazz));
 	        	}
 	        }
+	        students.close();
 	        
             commitTransaction();
         } catch (Exception e) {
@@ -44,120 +44,161 @@ import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.StudentEnrollmentMessage;
 import org.unitime.timetable.model.StudentSectioningQueue;
+import org.unitime.timetable.model.dao.StudentDAO;
 import org.unitime.timetable.test.UpdateExamConflicts;
 
 /**
  * @author Tomas Muller, Stephanie Schluttenhofer
  */
 public class StudentEnrollmentImport extends BaseImport {
+	private boolean iTrimLeadingZerosFromExternalId = false, iIncremental = false, iCanPreRegister = false;
+	private Session iSession = null;
+	private Date iTimeStamp = null;
+	private Set<Long> iUpdatedStudents = new HashSet<Long>();
+	private HashMap<String, Set<Class_>> iExtId2Class = new HashMap<String, Set<Class_>>();
+	private HashMap<String, Class_> iName2Class = new HashMap<String, Class_>();
+	private HashMap<Long, Class_> iId2Class = new HashMap<Long, Class_>();
+	private HashMap<String, Set<CourseOffering>> iExtId2Course = new HashMap<String, Set<CourseOffering>>();
+	private HashMap<String, CourseOffering> iName2Course = new HashMap<String, CourseOffering>();
+	private HashMap<String, CourseOffering> iCourseExtId2Course = new HashMap<String, CourseOffering>();
+	private HashMap<String, CourseOffering> iCourseName2Course = new HashMap<String, CourseOffering>();
+	private HashMap<Long, Set<CourseOffering>> iClass2Courses = new HashMap<Long, Set<CourseOffering>>();
+	// students of the session (with their requests and enrollments), not used when streaming
+	private Hashtable<String, Student> iStudents = null;
+	// external id -> student unique id, students are loaded as they are imported when streaming
+	private Map<String, Long> iStudentIds = null;
 
 	public StudentEnrollmentImport() {
 		super();
 	}
+	
+	@Override
+	public boolean isStreamingSupported() {
+		return true;
+	}
 
 	@Override
 	public void loadXml(Element rootElement) throws Exception {
-		boolean trimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
+		importElements(rootElement, rootElement.elementIterator(), false);
+	}
+	
+	@Override
+	protected void beginImport(Element rootElement) throws Exception {
+		iTrimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
 
         if (!rootElement.getName().equalsIgnoreCase("studentEnrollments"))
         	throw new Exception("Given XML file is not a Student Enrollments load file.");
         
-        Session session = null;
+        String campus = rootElement.attributeValue("campus");
+        String year   = rootElement.attributeValue("year");
+        String term   = rootElement.attributeValue("term");
+        String created = rootElement.attributeValue("created");
+        iIncremental = "true".equals(rootElement.attributeValue("incremental", "false"));
+		
+        beginTransaction();
         
-        Set<Long> updatedStudents = new HashSet<Long>(); 
+        iSession = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
         
-		try {
-	        String campus = rootElement.attributeValue("campus");
-	        String year   = rootElement.attributeValue("year");
-	        String term   = rootElement.attributeValue("term");
-	        String created = rootElement.attributeValue("created");
-	        boolean incremental = "true".equals(rootElement.attributeValue("incremental", "false"));
-			
-	        beginTransaction();
-	        
-	        session = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
-	        
-	        if(session == null)
-	           	throw new Exception("No session found for the given campus, year, and term.");
+        if(iSession == null)
+           	throw new Exception("No session found for the given campus, year, and term.");
+        
+        iCanPreRegister = (iSession.getStatusType() != null && iSession.getStatusType().canPreRegisterStudents());
 
-	    	HashMap<String, Set<Class_>> extId2class = new HashMap<String, Set<Class_>>();
-	    	HashMap<String, Class_> name2class = new HashMap<String, Class_>();
-	    	HashMap<Long, Class_> id2class = new HashMap<Long, Class_>();
-	    	HashMap<String, Set<CourseOffering>> extId2course = new HashMap<String, Set<CourseOffering>>();
-	    	HashMap<String, CourseOffering> name2course = new HashMap<String, CourseOffering>();
-	    	HashMap<String, CourseOffering> cextId2course = new HashMap<String, CourseOffering>();
-	    	HashMap<String, CourseOffering> cname2course = new HashMap<String, CourseOffering>();
-	    	HashMap<Long, Set<CourseOffering>> class2courses = new HashMap<Long, Set<CourseOffering>>();
-	    	
 	    	info("Loading classes...");
 	 		for (Object[] o: (List<Object[]>)getHibSession().createQuery(
 	 				"select c, co from Class_ c inner join c.schedulingSubpart.instrOfferingConfig.instructionalOffering.courseOfferings co where " +
     				"c.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessionId")
-    				.setLong("sessionId", session.getUniqueId()).list()) {
+    				.setLong("sessionId", iSession.getUniqueId()).list()) {
 	 			Class_ clazz = (Class_)o[0];
 	 			CourseOffering course = (CourseOffering)o[1];
 				String extId = clazz.getExternalId(course);
 				if (extId != null && !extId.isEmpty()) {
-					Set<Class_> sameExtIdClasses = extId2class.get(extId);
+					Set<Class_> sameExtIdClasses = iExtId2Class.get(extId);
 					if (sameExtIdClasses == null) {
 						sameExtIdClasses = new HashSet<Class_>();
-						extId2class.put(extId, sameExtIdClasses);
+						iExtId2Class.put(extId, sameExtIdClasses);
 					}
 					sameExtIdClasses.add(clazz);
 				}
 				String name = course.getCourseName() + " " + clazz.getItypeDesc().trim() + " " + getClassSuffix(clazz);
-				name2class.put(name, clazz);
-				name2course.put(name, course);
-				id2class.put(clazz.getUniqueId(), clazz);
+				iName2Class.put(name, clazz);
+				iName2Course.put(name, course);
+				iId2Class.put(clazz.getUniqueId(), clazz);
 				if (extId != null && !extId.isEmpty()) {
-					Set<CourseOffering> sameExtIdCourses = extId2course.get(extId);
+					Set<CourseOffering> sameExtIdCourses = iExtId2Course.get(extId);
 					if (sameExtIdCourses == null) {
 						sameExtIdCourses = new HashSet<CourseOffering>();
-						extId2course.put(extId, sameExtIdCourses);
+						iExtId2Course.put(extId, sameExtIdCourses);
 					}
 					sameExtIdCourses.add(course);
 				}
-				Set<CourseOffering> courses = class2courses.get(clazz.getUniqueId());
+				Set<CourseOffering> courses = iClass2Courses.get(clazz.getUniqueId());
 				if (course.getExternalUniqueId() != null && !course.getExternalUniqueId().isEmpty())
-					cextId2course.put(course.getExternalUniqueId(), course);
-				cname2course.put(course.getCourseName(), course);
+					iCourseExtId2Course.put(course.getExternalUniqueId(), course);
+				iCourseName2Course.put(course.getCourseName(), course);
 				if (courses == null) {
 					courses = new HashSet<CourseOffering>();
-					class2courses.put(clazz.getUniqueId(), courses);
+					iClass2Courses.put(clazz.getUniqueId(), courses);
 				}
 				courses.add(course);
 			}
-	        
-	        if (created != null)
-				ChangeLog.addChange(getHibSession(), getManager(), session, session, created, ChangeLog.Source.DATA_IMPORT_STUDENT_ENROLLMENTS, ChangeLog.Operation.UPDATE, null, null);
-         
-	        info("Loading students...");
-	        Hashtable<String, Student> students = new Hashtable<String, Student>();
-	        for (Student student: (List<Student>)getHibSession().createQuery(
+        
+        if (created != null)
+			ChangeLog.addChange(getHibSession(), getManager(), iSession, iSession, created, ChangeLog.Source.DATA_IMPORT_STUDENT_ENROLLMENTS, ChangeLog.Operation.UPDATE, null, null);
+     
+        info("Loading students...");
+        if (isStreaming()) {
+        	iStudentIds = new HashMap<String, Long>();
+        	for (Object[] o: (List<Object[]>)getHibSession().createQuery(
+        			"select s.externalUniqueId, s.uniqueId from Student s where s.session.uniqueId=:sessionId and s.externalUniqueId is not null").
+        			setLong("sessionId", iSession.getUniqueId()).list()) {
+        		iStudentIds.put((String)o[0], (Long)o[1]);
+        	}
+        } else {
+        	iStudents = new Hashtable<String, Student>();
+            for (Student student: (List<Student>)getHibSession().createQuery(
                     "select distinct s from Student s " +
                     "left join fetch s.courseDemands as cd " +
                     "left join fetch cd.courseRequests as cr " +
                     "left join fetch s.classEnrollments as e " +
                     "where s.session.uniqueId=:sessionId and s.externalUniqueId is not null").
-                    setLong("sessionId",session.getUniqueId()).list()) { 
-	        	students.put(student.getExternalUniqueId(), student);
-	        }
-	        
-	        info("Importing enrollments...");
-	        Date ts = new Date();
-	        for (Iterator i = rootElement.elementIterator("student"); i.hasNext(); ) {
-	            Element studentElement = (Element) i.next();
+                    setLong("sessionId", iSession.getUniqueId()).list()) { 
+            	iStudents.put(student.getExternalUniqueId(), student);
+            }
+        }
+        
+        info("Importing enrollments...");
+        iTimeStamp = new Date();
+	}
+	
+	/** Student of the given external id (with its course requests and enrollments), null if there is no such student */
+	protected Student lookupStudent(String externalId) {
+		if (iStudents != null) return iStudents.remove(externalId);
+		Long studentId = iStudentIds.remove(externalId);
+		if (studentId == null) return null;
+		return (Student)getHibSession().createQuery(
+                "select distinct s from Student s " +
+                "left join fetch s.courseDemands as cd " +
+                "left join fetch cd.courseRequests as cr " +
+                "left join fetch s.classEnrollments as e " +
+                "where s.uniqueId=:studentId").
+                setLong("studentId", studentId).uniqueResult();
+	}
+	
+	@Override
+	protected void importElement(Element studentElement) throws Exception {
+		if (!"student".equals(studentElement.getName())) return;
 	            
 	            String externalId = studentElement.attributeValue("externalId");
-	            if (externalId == null) continue;
-	            while (trimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
+	            if (externalId == null) return;
+	            while (iTrimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
 	            
 	            boolean fixCourseDemands = false;
 	 	        
-            	Student student = students.remove(externalId);
+            	Student student = lookupStudent(externalId);
             	if (student == null) {
             		student = new Student();
-	                student.setSession(session);
+	                student.setSession(iSession);
 		            student.setFirstName(studentElement.attributeValue("firstName", "Name"));
 		            student.setMiddleName(studentElement.attributeValue("middleName"));
 		            student.setLastName(studentElement.attributeValue("lastName", "Unknown"));
@@ -190,15 +231,15 @@ public class StudentEnrollmentImport extends BaseImport {
             		Set<CourseOffering> courses = null;
 
             		if (clazz == null && classElement.attributeValue("id") != null)
-            			clazz = id2class.get(Long.valueOf(classElement.attributeValue("id")));
+            			clazz = iId2Class.get(Long.valueOf(classElement.attributeValue("id")));
             		
             		String classExternalId  = classElement.attributeValue("externalId");
             		if (clazz == null && classExternalId != null) {
-            			classes = extId2class.get(classExternalId);
-            			courses = extId2course.get(classExternalId);
+            			classes = iExtId2Class.get(classExternalId);
+            			courses = iExtId2Course.get(classExternalId);
             			if (classes == null) {
-                			clazz = name2class.get(classExternalId);
-                			course = name2course.get(classExternalId);
+                			clazz = iName2Class.get(classExternalId);
+                			course = iName2Course.get(classExternalId);
             			} else {
             				if (classes.size() == 1)
             					clazz = classes.iterator().next();
@@ -209,22 +250,22 @@ public class StudentEnrollmentImport extends BaseImport {
             		
             		if (clazz == null && classElement.attributeValue("name") != null) {
             			String className = classElement.attributeValue("name");
-            			clazz = name2class.get(className);
-            			course = name2course.get(className);
+            			clazz = iName2Class.get(className);
+            			course = iName2Course.get(className);
             		}
             		
             		if (course == null && classElement.attributeValue("courseId") != null)
-            			course = cextId2course.get(classElement.attributeValue("courseId"));
+            			course = iCourseExtId2Course.get(classElement.attributeValue("courseId"));
             		
             		if (course == null) {
                 		String courseName = classElement.attributeValue("course");
             			if (courseName != null) {
-            				course = cname2course.get(courseName);
+            				course = iCourseName2Course.get(courseName);
             			} else {
                     		String subject = classElement.attributeValue("subject");
                     		String courseNbr = classElement.attributeValue("courseNbr");
                     		if (subject != null && courseNbr != null)
-                    			course = cname2course.get(subject + " " + courseNbr);
+                    			course = iCourseName2Course.get(subject + " " + courseNbr);
                 		}
             		}
             		
@@ -232,7 +273,7 @@ public class StudentEnrollmentImport extends BaseImport {
                 		String type = classElement.attributeValue("type");
                 		String suffix = classElement.attributeValue("suffix");
                 		if (type != null && suffix != null)
-                			clazz = name2class.get(course.getCourseName() + " " + type.trim() + " " + suffix);
+                			clazz = iName2Class.get(course.getCourseName() + " " + type.trim() + " " + suffix);
             		}
             		
             		if (clazz == null && classes == null) {
@@ -243,7 +284,7 @@ public class StudentEnrollmentImport extends BaseImport {
             		}
             		
             		if (clazz != null) {
-            			Set<CourseOffering> coursesThisClass = class2courses.get(clazz.getUniqueId());
+            			Set<CourseOffering> coursesThisClass = iClass2Courses.get(clazz.getUniqueId());
             			if (course == null && courses != null)
             				for (CourseOffering co: courses)
                 				if (co.isIsControl() && coursesThisClass.contains(co))
@@ -260,7 +301,7 @@ public class StudentEnrollmentImport extends BaseImport {
             			selected.add(new Enrollment(course, clazz));
             		} else {
             			classes: for (Class_ c: classes) {
-            				Set<CourseOffering> coursesThisClass = class2courses.get(c.getUniqueId());
+            				Set<CourseOffering> coursesThisClass = iClass2Courses.get(c.getUniqueId());
             				if (course != null) {
             					if (coursesThisClass.contains(course))
             						selected.add(new Enrollment(course, c));
@@ -293,7 +334,7 @@ public class StudentEnrollmentImport extends BaseImport {
                 		enrollment.setStudent(student);
                 		enrollment.setClazz(clazz);
                 		enrollment.setCourseOffering(course);
-                		enrollment.setTimestamp(ts);
+                		enrollment.setTimestamp(iTimeStamp);
                 		enrollment.setChangedBy(StudentClassEnrollment.SystemChange.IMPORT.toString());
                 		student.getClassEnrollments().add(enrollment);
                 		
@@ -306,7 +347,7 @@ public class StudentEnrollmentImport extends BaseImport {
                 			}
                 		}
                 		
-                		if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
+                		if (student.getUniqueId() != null) iUpdatedStudents.add(student.getUniqueId());
             		}
             		
             		if (enrollment.getCourseRequest() != null) {
@@ -318,7 +359,7 @@ public class StudentEnrollmentImport extends BaseImport {
             				// course demand has been already removed -> need to split the course demand
             				enrollment.getCourseRequest().getCourseDemand().getCourseRequests().remove(enrollment.getCourseRequest());
             				CourseDemand cd = new CourseDemand();
-                			cd.setTimestamp(ts);
+                			cd.setTimestamp(iTimeStamp);
                 			cd.setCourseRequests(new HashSet<CourseRequest>());
                 			cd.setEnrollmentMessages(new HashSet<StudentEnrollmentMessage>());
                 			cd.setStudent(student);
@@ -329,7 +370,7 @@ public class StudentEnrollmentImport extends BaseImport {
                 			enrollment.getCourseRequest().setCourseDemand(cd);
                 			cd.getCourseRequests().add(enrollment.getCourseRequest());
                 			fixCourseDemands = true;
-                			if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
+                			if (student.getUniqueId() != null) iUpdatedStudents.add(student.getUniqueId());
             			}
             			for (Iterator<StudentEnrollmentMessage> j = enrollment.getCourseRequest().getCourseDemand().getEnrollmentMessages().iterator(); j.hasNext(); ) {
             				StudentEnrollmentMessage message = j.next();
@@ -338,7 +379,7 @@ public class StudentEnrollmentImport extends BaseImport {
             			}
             		} else {
             			CourseDemand cd = new CourseDemand();
-    					cd.setTimestamp(ts);
+    					cd.setTimestamp(iTimeStamp);
     					cd.setCourseRequests(new HashSet<CourseRequest>());
     					cd.setEnrollmentMessages(new HashSet<StudentEnrollmentMessage>());
     					cd.setStudent(student);
@@ -357,7 +398,7 @@ public class StudentEnrollmentImport extends BaseImport {
 						enrollment.setCourseRequest(cr);
 						cr.getClassEnrollments().add(enrollment);
 						fixCourseDemands = true;
-						if (student.getUniqueId() != null) updatedStudents.add(student.getUniqueId());
+						if (student.getUniqueId() != null) iUpdatedStudents.add(student.getUniqueId());
             		}
             	}
             	
@@ -365,19 +406,19 @@ public class StudentEnrollmentImport extends BaseImport {
             		for (StudentClassEnrollment enrollment: enrollments.values()) {
             			student.getClassEnrollments().remove(enrollment);
             			getHibSession().delete(enrollment);
-                		updatedStudents.add(student.getUniqueId());
+                		iUpdatedStudents.add(student.getUniqueId());
             		}
             	}
 
             	if (student.getUniqueId() == null) {
-            		updatedStudents.add((Long)getHibSession().save(student));
+            		iUpdatedStudents.add((Long)getHibSession().save(student));
             	} else {
             		getHibSession().update(student);
             	}
             	
             	if (fixCourseDemands) {
             		// removed unused course demands (only when not in the registration mode)
-            		if (student.getSession().getStatusType() == null || !student.getSession().getStatusType().canPreRegisterStudents())
+            		if (!iCanPreRegister)
                 		for (CourseDemand cd: remaining) {
                 			if (cd.getFreeTime() != null)
                 				getHibSession().delete(cd.getFreeTime());
@@ -392,37 +433,43 @@ public class StudentEnrollmentImport extends BaseImport {
             			getHibSession().saveOrUpdate(cd);
             		}
             	}
+            	
+            	if (isStreaming()) flushIfNeeded(false);
+	}
+	
+	@Override
+	protected void endImport(Element rootElement) throws Exception {
+        if (!iIncremental) {
+        	if (iStudents != null) {
+     	        for (Student student: iStudents.values())
+     	        	removeEnrollments(student);
+        	} else {
+        		// only students with an enrollment need to be loaded
+        		Set<Long> remaining = new HashSet<Long>(iStudentIds.values());
+        		for (Long studentId: (List<Long>)getHibSession().createQuery(
+        				"select distinct e.student.uniqueId from StudentClassEnrollment e where e.student.session.uniqueId=:sessionId").
+        				setLong("sessionId", iSession.getUniqueId()).list()) {
+        			if (!remaining.contains(studentId)) continue;
+        			Student student = StudentDAO.getInstance().get(studentId, getHibSession());
+        			if (student == null) continue;
+        			removeEnrollments(student);
+        			flushIfNeeded(false);
+        		}
+        	}
+        }
+	        
+        info(iUpdatedStudents.size() + " students changed");
 
-	        }
- 	        
-	        if (!incremental)
-	 	        for (Student student: students.values()) {
-	        		for (Iterator<StudentClassEnrollment> i = student.getClassEnrollments().iterator(); i.hasNext(); ) {
-	        			StudentClassEnrollment enrollment = i.next();
-	        			getHibSession().delete(enrollment);
-	        			i.remove();
-	     	        	updatedStudents.add(student.getUniqueId());
-	        		}
-	        		getHibSession().update(student);
-	 	        }
- 	        
-            info(updatedStudents.size() + " students changed");
-
- 	        if (!updatedStudents.isEmpty())
- 	 	        StudentSectioningQueue.studentChanged(getHibSession(), null, session.getUniqueId(), updatedStudents);
-            
-            commitTransaction();
-		} catch (Exception e) {
-			fatal("Exception: " + e.getMessage(), e);
-			rollbackTransaction();
-			throw e;
-		}
+        if (!iUpdatedStudents.isEmpty())
+ 	        StudentSectioningQueue.studentChanged(getHibSession(), null, iSession.getUniqueId(), iUpdatedStudents);
+        
+        commitTransaction();
 		
-        if (session!=null && ApplicationProperty.DataExchangeUpdateStudentConflictsFinal.isTrue()) {
+        if (ApplicationProperty.DataExchangeUpdateStudentConflictsFinal.isTrue()) {
             try {
                 beginTransaction();
                 for (ExamType type: ExamType.findAllOfType(ExamType.sExamTypeFinal))
-                	new UpdateExamConflicts(this).update(session.getUniqueId(), type.getUniqueId(), getHibSession());
+                	new UpdateExamConflicts(this).update(iSession.getUniqueId(), type.getUniqueId(), getHibSession());
                 commitTransaction();
             } catch (Exception e) {
                 fatal("Exception: " + e.getMessage(), e);
@@ -430,33 +477,28 @@ public class StudentEnrollmentImport extends BaseImport {
             }
         }
 
-        if (session!=null && ApplicationProperty.DataExchangeUpdateStudentConflictsMidterm.isTrue()) {
+        if (ApplicationProperty.DataExchangeUpdateStudentConflictsMidterm.isTrue()) {
             try {
                 beginTransaction();
                 for (ExamType type: ExamType.findAllOfType(ExamType.sExamTypeMidterm))
-                	new UpdateExamConflicts(this).update(session.getUniqueId(), type.getUniqueId(), getHibSession());
+                	new UpdateExamConflicts(this).update(iSession.getUniqueId(), type.getUniqueId(), getHibSession());
                 commitTransaction();
             } catch (Exception e) {
                 fatal("Exception: " + e.getMessage(), e);
                 rollbackTransaction();
             }
         }
-        
-        /*
-        if (session != null && "true".equals(ApplicationProperties.getProperty("tmtbl.data.import.studentEnrl.class.updateEnrollments","true"))){
-        	org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-            try {
-                info("  Updating class enrollments...");
-                Class_.updateClassEnrollmentForSession(session, hibSession);
-                info("  Updating course offering enrollments...");
-                CourseOffering.updateCourseOfferingEnrollmentForSession(session, hibSession);
-            } catch (Exception e) {
-                fatal("Exception: " + e.getMessage(), e);
-            } finally {
-            	hibSession.close();
-            }
-        }
-        */
+	}
+	
+	/** Remove all enrollments of a student that is not included in the (non-incremental) import */
+	protected void removeEnrollments(Student student) {
+		for (Iterator<StudentClassEnrollment> i = student.getClassEnrollments().iterator(); i.hasNext(); ) {
+			StudentClassEnrollment enrollment = i.next();
+			getHibSession().delete(enrollment);
+			i.remove();
+			iUpdatedStudents.add(student.getUniqueId());
+		}
+		getHibSession().update(student);
 	}
 	
 	public static class Pair {
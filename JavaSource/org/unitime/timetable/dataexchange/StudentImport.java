@@ -45,120 +45,203 @@ import org.unitime.timetable.model.StudentAreaClassificationMinor;
 import org.unitime.timetable.model.StudentClassEnrollment;
 import org.unitime.timetable.model.StudentGroup;
 import org.unitime.timetable.model.StudentSectioningQueue;
+import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine;
 
 /**
  * @author Tomas Muller, Timothy Almon
  */
 public class StudentImport extends BaseImport {
+	private boolean iTrimLeadingZerosFromExternalId = false, iIncremental = false;
+	private Session iSession = null;
+	private Set<Long> iUpdatedStudents = new HashSet<Long>();
+	// students of the session, not used when streaming
+	private Hashtable<String, Student> iStudents = null;
+	// external id -> student unique id, students are loaded as they are imported when streaming
+	private Map<String, Long> iStudentIds = null;
+	private Map<String, AcademicArea> iAbbv2Area = new Hashtable<String, AcademicArea>();
+	private Map<String, AcademicClassification> iCode2Clasf = new Hashtable<String, AcademicClassification>();
+	private Map<String, PosMajor> iCode2Major = new Hashtable<String, PosMajor>();
+	private Map<String, PosMajorConcentration> iCode2Concentration = new Hashtable<String, PosMajorConcentration>();
+	private Map<String, PosMinor> iCode2Minor = new Hashtable<String, PosMinor>();
+	private Map<String, StudentGroup> iCode2Group = new Hashtable<String, StudentGroup>();
+	private Map<String, StudentAccomodation> iCode2Accomodation = new Hashtable<String, StudentAccomodation>();
+	private int iBatch = 0;
 
 	public StudentImport() {
 		super();
 	}
 
+	@Override
+	public boolean isStreamingSupported() {
+		return true;
+	}
+
 	@Override
 	public void loadXml(Element rootElement) throws Exception {
-		try {
-			boolean trimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
-			
-	        String campus = rootElement.attributeValue("campus");
-	        String year   = rootElement.attributeValue("year");
-	        String term   = rootElement.attributeValue("term");
-	        boolean incremental = "true".equals(rootElement.attributeValue("incremental", "false"));
+		importElements(rootElement, rootElement.elementIterator(), false);
+	}
+	
+	@Override
+	protected void beginImport(Element rootElement) throws Exception {
+		iTrimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
+		
+        String campus = rootElement.attributeValue("campus");
+        String year   = rootElement.attributeValue("year");
+        String term   = rootElement.attributeValue("term");
+        iIncremental = "true".equals(rootElement.attributeValue("incremental", "false"));
 
-	        Session session = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
-	        if(session == null)
-	           	throw new Exception("No session found for the given campus, year, and term.");
-	        
-	        if (incremental) {
-	        	info("Incremental mode enabled: only included students will be updated.");
-	        } else {
-	        	info("Incremental mode disabled: students not included in this file will be deleted.");
-	        }
+        iSession = Session.getSessionUsingInitiativeYearTerm(campus, year, term);
+        if(iSession == null)
+           	throw new Exception("No session found for the given campus, year, and term.");
+        
+        if (iIncremental) {
+        	info("Incremental mode enabled: only included students will be updated.");
+        } else {
+        	info("Incremental mode disabled: students not included in this file will be deleted.");
+        }
 
-			beginTransaction();
-            
-	        Hashtable<String, Student> students = new Hashtable<String, Student>();
+		beginTransaction();
+		
+		if (isStreaming()) {
+        	iStudentIds = new HashMap<String, Long>();
+        	for (Object[] o: (List<Object[]>)getHibSession().createQuery(
+        			"select s.externalUniqueId, s.uniqueId from Student s where s.session.uniqueId=:sessionId and s.externalUniqueId is not null").
+        			setLong("sessionId", iSession.getUniqueId()).list()) {
+        		iStudentIds.put((String)o[0], (Long)o[1]);
+        	}
+		} else {
+			iStudents = new Hashtable<String, Student>();
 	        for (Student student: (List<Student>)getHibSession().createQuery(
 	        		"from Student s where s.session.uniqueId=:sessionId and s.externalUniqueId is not null").
-                    setLong("sessionId",session.getUniqueId()).list()) { 
-	        	students.put(student.getExternalUniqueId(), student);
+                    setLong("sessionId",iSession.getUniqueId()).list()) { 
+	        	iStudents.put(student.getExternalUniqueId(), student);
 	        }
-	        
-            Map<String, AcademicArea> abbv2area = new Hashtable<String, AcademicArea>();
-            for (AcademicArea area: (List<AcademicArea>)getHibSession().createQuery(
-            		"from AcademicArea where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	abbv2area.put(area.getAcademicAreaAbbreviation(), area);
-            }
-
-            Map<String, AcademicClassification> code2clasf = new Hashtable<String, AcademicClassification>();
-            for (AcademicClassification clasf: (List<AcademicClassification>)getHibSession().createQuery(
-            		"from AcademicClassification where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	code2clasf.put(clasf.getCode(), clasf);
-            }
-            
-            Map<String, PosMajor> code2major = new Hashtable<String, PosMajor>();
-            for (PosMajor major: (List<PosMajor>)getHibSession().createQuery(
-            		"from PosMajor where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	for (AcademicArea area: major.getAcademicAreas())
-            		code2major.put(area.getAcademicAreaAbbreviation() + ":" + major.getCode(), major);
-            }
-            
-            Map<String, PosMajorConcentration> code2concentration = new Hashtable<String, PosMajorConcentration>();
-            for (PosMajorConcentration conc: (List<PosMajorConcentration>)getHibSession().createQuery(
-            		"from PosMajorConcentration where major.session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	for (AcademicArea area: conc.getMajor().getAcademicAreas())
-            		code2concentration.put(area.getAcademicAreaAbbreviation() + ":" + conc.getMajor().getCode() + ":" + conc.getCode(), conc);
-            }
-            
-            Map<String, PosMinor> code2minor = new Hashtable<String, PosMinor>();
-            for (PosMinor minor: (List<PosMinor>)getHibSession().createQuery(
-            		"from PosMinor where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	for (AcademicArea area: minor.getAcademicAreas())
-            		code2minor.put(area.getAcademicAreaAbbreviation() + ":" + minor.getCode(), minor);
-            }
-
-            Map<String, StudentGroup> code2group = new Hashtable<String, StudentGroup>();
-            for (StudentGroup group: (List<StudentGroup>)getHibSession().createQuery(
-            		"from StudentGroup where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	code2group.put(group.getGroupAbbreviation(), group);
-            }
-            
-            Map<String, StudentAccomodation> code2accomodation = new Hashtable<String, StudentAccomodation>();
-            for (StudentAccomodation accomodation: (List<StudentAccomodation>)getHibSession().createQuery(
-            		"from StudentAccomodation where session.uniqueId=:sessionId").setLong("sessionId", session.getUniqueId()).list()) {
-            	code2accomodation.put(accomodation.getAbbreviation(), accomodation);
-            }
-	        
-	        Set<Long> updatedStudents = new HashSet<Long>(); 
-	        
-	        for (Iterator i1 = rootElement.elementIterator(); i1.hasNext(); ) {
-	            Element element = (Element) i1.next();
+		}
+        
+        loadCodes();
+	}
+	
+	/**
+	 * Load academic areas, classifications, majors, concentrations, minors, groups, and accommodations of the academic session.
+	 */
+	protected void loadCodes() {
+		iAbbv2Area.clear(); iCode2Clasf.clear(); iCode2Major.clear(); iCode2Concentration.clear(); iCode2Minor.clear(); iCode2Group.clear(); iCode2Accomodation.clear();
+		
+        for (AcademicArea area: (List<AcademicArea>)getHibSession().createQuery(
+        		"from AcademicArea where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	iAbbv2Area.put(area.getAcademicAreaAbbreviation(), area);
+        }
 
-	            String externalId = element.attributeValue("externalId");
-	            if (externalId == null) continue;
-	            while (trimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
+        for (AcademicClassification clasf: (List<AcademicClassification>)getHibSession().createQuery(
+        		"from AcademicClassification where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	iCode2Clasf.put(clasf.getCode(), clasf);
+        }
+        
+        for (PosMajor major: (List<PosMajor>)getHibSession().createQuery(
+        		"from PosMajor where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	for (AcademicArea area: major.getAcademicAreas())
+        		iCode2Major.put(area.getAcademicAreaAbbreviation() + ":" + major.getCode(), major);
+        }
+        
+        for (PosMajorConcentration conc: (List<PosMajorConcentration>)getHibSession().createQuery(
+        		"from PosMajorConcentration where major.session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	for (AcademicArea area: conc.getMajor().getAcademicAreas())
+        		iCode2Concentration.put(area.getAcademicAreaAbbreviation() + ":" + conc.getMajor().getCode() + ":" + conc.getCode(), conc);
+        }
+        
+        for (PosMinor minor: (List<PosMinor>)getHibSession().createQuery(
+        		"from PosMinor where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	for (AcademicArea area: minor.getAcademicAreas())
+        		iCode2Minor.put(area.getAcademicAreaAbbreviation() + ":" + minor.getCode(), minor);
+        }
 
-	            importStudent(element, externalId, students, session, updatedStudents,
-	            		abbv2area, code2clasf, code2major, code2minor, code2group, code2accomodation, code2concentration);
-	        }
+        for (StudentGroup group: (List<StudentGroup>)getHibSession().createQuery(
+        		"from StudentGroup where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	iCode2Group.put(group.getGroupAbbreviation(), group);
+        }
+        
+        for (StudentAccomodation accomodation: (List<StudentAccomodation>)getHibSession().createQuery(
+        		"from StudentAccomodation where session.uniqueId=:sessionId").setLong("sessionId", iSession.getUniqueId()).list()) {
+        	iCode2Accomodation.put(accomodation.getAbbreviation(), accomodation);
+        }
+	}
+	
+	/**
+	 * When streaming, the hibernate session is cleared after each batch of students. Instead of loading the codes again,
+	 * replace the cached instances with their (not initialized) proxies in the current session, so that the students are always
+	 * linked with persistent instances and no additional queries are needed unless an instance is actually used.
+	 */
+	protected void reattachCodes() {
+		for (Map.Entry<String, AcademicArea> e: iAbbv2Area.entrySet())
+			e.setValue((AcademicArea)getHibSession().load(AcademicArea.class, e.getValue().getUniqueId()));
+		for (Map.Entry<String, AcademicClassification> e: iCode2Clasf.entrySet())
+			e.setValue((AcademicClassification)getHibSession().load(AcademicClassification.class, e.getValue().getUniqueId()));
+		for (Map.Entry<String, PosMajor> e: iCode2Major.entrySet())
+			e.setValue((PosMajor)getHibSession().load(PosMajor.class, e.getValue().getUniqueId()));
+		for (Map.Entry<String, PosMajorConcentration> e: iCode2Concentration.entrySet())
+			e.setValue((PosMajorConcentration)getHibSession().load(PosMajorConcentration.class, e.getValue().getUniqueId()));
+		for (Map.Entry<String, PosMinor> e: iCode2Minor.entrySet())
+			e.setValue((PosMinor)getHibSession().load(PosMinor.class, e.getValue().getUniqueId()));
+		for (Map.Entry<String, StudentGroup> e: iCode2Group.entrySet())
+			e.setValue((StudentGroup)getHibSession().load(StudentGroup.class, e.getValue().getUniqueId()));
+		for (Map.Entry<String, StudentAccomodation> e: iCode2Accomodation.entrySet())
+			e.setValue((StudentAccomodation)getHibSession().load(StudentAccomodation.class, e.getValue().getUniqueId()));
+	}
+	
+	@Override
+	protected void importElement(Element element) throws Exception {
+        String externalId = element.attributeValue("externalId");
+        if (externalId == null) return;
+        while (iTrimLeadingZerosFromExternalId && externalId.startsWith("0")) externalId = externalId.substring(1);
+        
+        Hashtable<String, Student> students = iStudents;
+        if (students == null) {
+        	// streaming: only the imported student is loaded
+        	students = new Hashtable<String, Student>();
+        	Long studentId = iStudentIds.remove(externalId);
+        	Student student = (studentId == null ? null : StudentDAO.getInstance().get(studentId, getHibSession()));
+        	if (student != null) students.put(externalId, student);
+        }
 
-	        if (!incremental)
-	 	        for (Student student: students.values()) {
-	        		updatedStudents.add(student.getUniqueId());
-	        		getHibSession().delete(student);
-	 	        }
-	        
-            info(updatedStudents.size() + " students changed");
+        importStudent(element, externalId, students, iSession, iUpdatedStudents,
+        		iAbbv2Area, iCode2Clasf, iCode2Major, iCode2Minor, iCode2Group, iCode2Accomodation, iCode2Concentration);
+        
+        if (isStreaming() && ++iBatch >= sBatchSize) {
+        	iBatch = 0;
+        	flush(false);
+        	reattachCodes();
+        }
+	}
+	
+	@Override
+	protected void endImport(Element rootElement) throws Exception {
+        if (!iIncremental) {
+        	if (iStudents != null) {
+     	        for (Student student: iStudents.values()) {
+     	        	iUpdatedStudents.add(student.getUniqueId());
+            		getHibSession().delete(student);
+     	        }
+        	} else {
+        		for (Long studentId: iStudentIds.values()) {
+        			Student student = StudentDAO.getInstance().get(studentId, getHibSession());
+        			if (student == null) continue;
+        			iUpdatedStudents.add(studentId);
+        			getHibSession().delete(student);
+        			flushIfNeeded(false);
+        		}
+        	}
+        }
+        
+        info(iUpdatedStudents.size() + " students changed");
 
- 	        if (!updatedStudents.isEmpty())
- 	 	        StudentSectioningQueue.studentChanged(getHibSession(), null, session.getUniqueId(), updatedStudents);
-            
-            commitTransaction();
-		} catch (Exception e) {
-			fatal("Exception: " + e.getMessage(), e);
-			rollbackTransaction();
-			throw e;
-		}
+        if (!iUpdatedStudents.isEmpty())
+ 	        StudentSectioningQueue.studentChanged(getHibSession(), null, iSession.getUniqueId(), iUpdatedStudents);
+        
+        commitTransaction();
+        
+        if (!iUpdatedStudents.isEmpty())
+        	CurriculumProjectionEngine.invalidate(iSession.getUniqueId());
 	}
 	
 	protected Student importStudent(Element element, String externalId, Hashtable<String, Student> students, Session session, Set<Long> updatedStudents,
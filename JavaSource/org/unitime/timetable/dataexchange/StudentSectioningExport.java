@@ -21,13 +21,14 @@ package org.unitime.timetable.dataexchange;
 
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
-import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
 import java.util.TreeSet;
 
 import org.dom4j.Document;
 import org.dom4j.Element;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.unitime.timetable.model.AdvisorClassPref;
 import org.unitime.timetable.model.AdvisorCourseRequest;
 import org.unitime.timetable.model.AdvisorInstrMthPref;
@@ -64,9 +65,19 @@ public class StudentSectioningExport extends BaseExport {
 	        
 	        document.addDocType("request", "-//UniTime//UniTime Student Sectioning DTD/EN", "http://www.unitime.org/interface/StudentSectioning.dtd");
 	        
-	        for (Student student: (List<Student>)getHibSession().createQuery(
+	        org.hibernate.Query q = getHibSession().createQuery(
 	        		"select s from Student s where s.session.uniqueId = :sessionId")
-	        		.setLong("sessionId", session.getUniqueId()).list()) {
+	        		.setLong("sessionId", session.getUniqueId());
+	        q.setFetchSize(1000);
+	        ScrollableResults students = q.scroll(ScrollMode.FORWARD_ONLY);
+	        int count = 0;
+	        while (students.next()) {
+	        	// write the students that have been exported so far and release them from the hibernate session
+	        	if (++count % sBatchSize == 0) {
+	        		streamElements(document);
+	        		getHibSession().clear();
+	        	}
+	        	Student student = (Student)students.get(0);
 	        	Element studentEl = root.addElement("student");
 	        	studentEl.addAttribute("key", student.getExternalUniqueId() == null || student.getExternalUniqueId().isEmpty() ? student.getUniqueId().toString() : student.getExternalUniqueId());
 	        	if (student.getSectioningStatus() != null)
@@ -235,6 +246,7 @@ public class StudentSectioningExport extends BaseExport {
         			}
 	        	}
 	        }
+	        students.close();
 	        
             commitTransaction();
         } catch (Exception e) {
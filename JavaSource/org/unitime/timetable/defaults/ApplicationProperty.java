@@ -566,6 +566,24 @@ public enum ApplicationProperty {
 	@Description("Student Enrollment Import: update examination student conflicts for midterm exams")
 	DataExchangeUpdateStudentConflictsMidterm("tmtbl.data.import.studentEnrl.midtermExam.updateConflicts"),
 
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Data Exchange: streaming import, imports that support it (students, student enrollments, last-like course demands) read the XML file one element at a time and periodically clear the hibernate session instead of keeping the whole document in memory")
+	@Since(4.6)
+	DataExchangeStreamingImport("unitime.data.import.streaming"),
+
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Data Exchange: streaming export, exports that support it (students, student enrollments, course offerings, course timetable) write the XML file as it is being created instead of building the whole document in memory first (the output is the same)")
+	@Since(4.6)
+	DataExchangeStreamingExport("unitime.data.export.streaming"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Data Exchange: compress XML exports made from the Data Exchange page using gzip (the file name ends with .xml.gz, such files can be imported back directly)")
+	@Since(4.6)
+	DataExchangeExportCompress("unitime.data.export.gzip"),
+
 	@Type(Boolean.class)
 	@DefaultValue("false")
 	@Description("Time Patterns: set to true if used time patterns are to be editable during the initial data load (a session status that allows for roll forward)")
@@ -650,6 +668,24 @@ public enum ApplicationProperty {
 
 	@Description("Online Student Scheduling Log: besides of the database, also log the actions in the given file (if set)")
 	OnlineSchedulingLogFile("unitime.sectioning.log.file"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Online Student Scheduling Log: write the actions into the log file as length-delimited binary protobuf messages (when false, the actions are written in the protobuf text format)")
+	@Since(4.6)
+	OnlineSchedulingLogFileBinary("unitime.sectioning.log.file.binary"),
+
+	@Type(Integer.class)
+	@DefaultValue("100")
+	@Description("Online Student Scheduling Log: number of records persisted at once (the records are also persisted as soon as there are this many records waiting)")
+	@Since(4.6)
+	OnlineSchedulingLogBatchSize("unitime.sectioning.log.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Online Student Scheduling Log: how often are the records persisted (in seconds)")
+	@Since(4.6)
+	OnlineSchedulingLogFlushInterval("unitime.sectioning.log.flushInterval"),
 	
 	@Type(Boolean.class)
 	@DefaultValue("true")
@@ -987,6 +1023,18 @@ public enum ApplicationProperty {
 	@Description("Examinations: cache examination conflicts with solution")
 	ExaminationCacheConflicts("tmtbl.exams.conflicts.cache"),
 
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Examinations: compute conflicts of the assigned examinations (e.g., on the Assigned Examinations and the Examination Reports pages) from data that are loaded in bulk for the whole academic session")
+	@Since(4.6)
+	ExaminationBulkConflicts("tmtbl.exams.conflicts.bulk"),
+
+	@Type(Integer.class)
+	@DefaultValue("600")
+	@Description("Examinations: time in seconds for which the student and instructor data loaded in bulk are cached (the cache is also cleared when an examination assignment is changed, 0 disables the cache)")
+	@Since(4.6)
+	ExaminationBulkConflictsCacheTimeToLive("tmtbl.exams.conflicts.bulk.ttl"),
+
 	/**
 	 * Required minimal travel time between class event and an exam (in the number of 5-minute long time slots).
 	 */
@@ -1282,6 +1330,18 @@ public enum ApplicationProperty {
 	@Description("Re-Create Curriculum: minimal number of last-like students")
 	CurriculumLastLikeDemandsEnrollmentLimit("tmtbl.curriculum.lldemands.enrlLimit"),
 
+	@Type(Integer.class)
+	@DefaultValue("3600")
+	@Description("Curriculum: time in seconds for which the last-like students of an academic session are kept in memory to compute curriculum projections (the cache is also dropped when students, last-like course demands, or course offerings are imported and when course offerings are edited, other changes may not be reflected until the time runs out, 0 disables the cache)")
+	@Since(4.6)
+	CurriculumProjectionCacheTimeToLive("unitime.curriculum.projections.ttl"),
+
+	@Type(Integer.class)
+	@DefaultValue("4")
+	@Description("Curriculum: number of threads used to compute curriculum projections of multiple academic areas at once (e.g., when curricula are updated by projections, 0 means the number of available processors)")
+	@Since(4.6)
+	CurriculumProjectionThreads("unitime.curriculum.projections.threads"),
+
 	@Type(Integer.class)
 	@DefaultValue("-1")
 	@Description("Events: indicate that a meeting is at an unusual time (too early); the value is the last time slot that is considered too early (e.g., 72 means 6 am)")
@@ -1838,6 +1898,168 @@ public enum ApplicationProperty {
 	@DefaultValue("10")
 	@Description("Online Student Scheduling: asynchronous execution thread pool size")
 	OnlineSchedulingServerAsyncPoolSize("unitime.enrollment.server.asyncPoolSize"),
+	
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Online Student Scheduling: maximal number of asynchronous calls waiting for execution (zero or a negative number for an unbounded queue)")
+	@Since(4.6)
+	OnlineSchedulingServerAsyncQueueSize("unitime.enrollment.server.asyncQueueSize"),
+	
+	@Type(String.class)
+	@DefaultValue("CallerRuns")
+	@Description("Online Student Scheduling: what to do with an asynchronous call when the queue is full (Block: wait for a space in the queue, CallerRuns: execute the call synchronously, Abort: reject the call, DiscardLowest: reject the last queued call of a lower priority)")
+	@Since(4.6)
+	OnlineSchedulingServerAsyncRejectionPolicy("unitime.enrollment.server.asyncRejectionPolicy"),
+	
+	@Type(String.class)
+	@Description("Online Student Scheduling: priority of an asynchronous call of the given action (High, Normal, or Low; reload-all, check all offerings, and persist-expectations are Low by default, all other actions are Normal)")
+	@Parameter("action name")
+	@Since(4.6)
+	OnlineSchedulingServerAsyncPriority("unitime.enrollment.server.asyncPriority.%"),
+	
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Online Student Scheduling: use striped multi-lock for student and offering locks (instead of the multi-lock with a single global monitor)")
+	@Since(4.6)
+	OnlineSchedulingServerStripedLocking("unitime.enrollment.server.stripedLocking"),
+	
+	@Type(Integer.class)
+	@DefaultValue("64")
+	@Description("Online Student Scheduling: number of stripes of the striped multi-lock (when unitime.enrollment.server.stripedLocking is enabled)")
+	@Since(4.6)
+	OnlineSchedulingServerLockStripes("unitime.enrollment.server.lockStripes"),
+	
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Online Student Scheduling: cache the structural part of the offerings (section times, rooms, instructors, ignore conflict distributions) that are cloned into the sectioning model by the scheduling assistant")
+	@Since(4.6)
+	OnlineSchedulingServerCompiledOfferingCache("unitime.enrollment.server.compiledOfferingCache"),
+	
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Online Student Scheduling: keep live execution statistics (number of calls, failures, execution, CPU, and lock wait time histograms) of each action, see the /api/sectioning-statistics API and the Online Scheduling Servers table")
+	@Since(4.6)
+	OnlineSchedulingServerActionStatistics("unitime.enrollment.server.actionStatistics"),
+	
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Online Student Scheduling: in-memory server reads without taking the server read lock (writers publish new copies of the changed offering requests, courses, and instructor offerings instead of changing them in place)")
+	@Since(4.6)
+	OnlineSchedulingServerSnapshotReads("unitime.enrollment.server.snapshotReads"),
+	
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Online Student Scheduling: replicated server writes the offering requests in the compact format, which only makes the replicated entries smaller (each change still replicates all the requests of the offering; all the nodes of the cluster must be able to read it, enable only when the whole cluster has been upgraded)")
+	@Since(4.6)
+	OnlineSchedulingServerCompactRequests("unitime.enrollment.server.compactRequests"),
+	
+	@Type(Integer.class)
+	@DefaultValue("4")
+	@Description("Online Student Scheduling: number of threads that are used to load offerings and students when the server is (re)loaded (1 to load on the calling thread only)")
+	@Since(4.6)
+	OnlineSchedulingServerLoadThreads("unitime.enrollment.server.load.threads"),
+	
+	@Type(Integer.class)
+	@DefaultValue("500")
+	@Description("Online Student Scheduling: number of offerings or students that are read from the database at once (each batch in its own hibernate session) when the server is (re)loaded")
+	@Since(4.6)
+	OnlineSchedulingServerLoadBatchSize("unitime.enrollment.server.load.batchSize"),
+	
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Online Student Scheduling: keep enrollment counts (enrolled, reserved, wait-listed, unassigned, consent and override needed) of each offering, dropped when the offering or its requests are changed; used by the dashboard when the filter does not depend on students")
+	@Since(4.6)
+	OnlineSchedulingServerEnrollmentAggregates("unitime.enrollment.server.enrollmentAggregates"),
+	
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Course Timetabling: store solver infos (solution, assignment, and constraint infos) in a compact binary format instead of a GZIP-compressed XML (both formats can be read, see the SolverInfoMigration to convert the existing infos)")
+	@Since(4.6)
+	SolverInfoBinaryFormat("unitime.solverInfo.binary"),
+	
+	@Type(Integer.class)
+	@DefaultValue("50000")
+	@Description("Course Timetabling: maximal number of classes in the shared cache of the class assignments and assignment infos that are returned by the course timetabling solvers (shared by all the requests and kept until the solver assignment changes, 0 to disable)")
+	@Since(4.6)
+	ClassAssignmentSharedCacheSize("unitime.classAssignment.sharedCache.size"),
+
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Solver: write solver backups (used when the solver server is restarted) and passivated solvers in the compact binary format of the solver infos instead of a pretty-printed XML (both formats can be restored); this only makes the backup files smaller and faster to write, the backup is still created and restored as a whole XML document in memory")
+	@Since(4.6)
+	SolverBackupBinary("unitime.solver.backup.binary"),
+
+	@Type(Integer.class)
+	@DefaultValue("20")
+	@Description("GWT RPC: maximal number of asynchronous requests (requests that can be cancelled by the user) that are executed at the same time")
+	@Since(4.6)
+	GwtRpcAsyncThreads("unitime.rpc.async.threads"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("GWT RPC: execute asynchronous requests on virtual threads (only when supported by the Java runtime, the number of requests executed at the same time is still limited)")
+	@Since(4.6)
+	GwtRpcAsyncVirtualThreads("unitime.rpc.async.virtualThreads"),
+
+	@Type(Integer.class)
+	@DefaultValue("1000")
+	@Description("GWT RPC: maximal number of asynchronous requests that are waiting to be executed, further requests are rejected")
+	@Since(4.6)
+	GwtRpcAsyncQueueSize("unitime.rpc.async.queueSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("3")
+	@Description("GWT RPC: maximal number of asynchronous requests of one user that are executed at the same time (0 for no limit)")
+	@Since(4.6)
+	GwtRpcAsyncUserLimit("unitime.rpc.async.userLimit"),
+
+	@Type(Integer.class)
+	@DefaultValue("10")
+	@Description("GWT RPC: maximal number of asynchronous requests of the same type that are executed at the same time (0 for no limit)")
+	@Since(4.6)
+	GwtRpcAsyncRequestLimit("unitime.rpc.async.requestLimit"),
+
+	@Type(Integer.class)
+	@Description("GWT RPC: maximal number of asynchronous requests of type % that are executed at the same time (overrides unitime.rpc.async.requestLimit, 0 for no limit)")
+	@Parameter("request class name")
+	@Since(4.6)
+	GwtRpcAsyncRequestLimitOverride("unitime.rpc.async.requestLimit.%"),
+
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Permissions: cache permission decisions (for a user, a right and a domain object) for the duration of a request")
+	@Since(4.6)
+	PermissionCache("unitime.permissions.cache"),
+
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Calendar: maximal number of rendered iCalendar feeds that are cached (0 to disable the cache)")
+	@Since(4.6)
+	CalendarFeedCacheSize("unitime.calendar.cache.size"),
+
+	@Type(Integer.class)
+	@DefaultValue("900")
+	@Description("Calendar: time in seconds after which a cached iCalendar feed is rendered again (to pick up changes that are not tracked by the cache, e.g., changes that have been made on other servers)")
+	@Since(4.6)
+	CalendarFeedCacheTimeToLive("unitime.calendar.cache.ttl"),
+
+	@Type(Integer.class)
+	@DefaultValue("3")
+	@Description("Queue Processor: number of background tasks (e.g., reports, data exchange, roll forward, scripts) that can be executed at the same time")
+	@Since(4.6)
+	QueueProcessorWorkers("unitime.queue.workers"),
+
+	@Type(Integer.class)
+	@Description("Queue Processor: maximal number of background tasks of the given resource class (defaults to the task type, with spaces replaced by underscores, e.g., Roll_Forward) that can be executed at the same time")
+	@Parameter("resource class")
+	@Since(4.6)
+	QueueProcessorLimit("unitime.queue.limit.%"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Queue Processor: when there are multiple servers in the cluster, execute background tasks that do not depend on the local server (e.g., an uploaded file or a loaded solver) on the least loaded server")
+	@Since(4.6)
+	QueueProcessorDistribute("unitime.queue.distribute"),
 
 	@Type(Integer.class)
 	@DefaultValue("366")
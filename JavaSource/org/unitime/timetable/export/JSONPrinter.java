@@ -20,10 +20,8 @@
 package org.unitime.timetable.export;
 
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,13 +31,17 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
 /**
+ * JSON printer, the lines are written as an array of objects. Each line is written to the output as soon
+ * as it is printed, the array is closed by {@link #close()}.
+ * 
  * @author Tomas Muller
  */
 public class JSONPrinter implements Printer {
 	private PrintWriter iOut;
 	private Set<Integer> iHiddenColumns = new HashSet<Integer>();
 	private String[] iHeader = null;
-	private List<Map<String,Object>> iList = new ArrayList<Map<String,Object>>();
+	private Gson iGson = null;
+	private int iLines = 0;
 	
 	public JSONPrinter(PrintWriter writer) {
 		iOut = writer;
@@ -80,7 +82,10 @@ public class JSONPrinter implements Printer {
 			else if ("false".equals(f)) entry.put(h, Boolean.FALSE);
 			else entry.put(h, f);
 		}
-		iList.add(entry);
+		if (iGson == null) iGson = createGson();
+		iOut.print(iLines == 0 ? "[\n" : ",\n");
+		iOut.print(iGson.toJson(entry));
+		iLines ++;
 	}
 	
 	protected Gson createGson() {
@@ -89,11 +94,11 @@ public class JSONPrinter implements Printer {
 	
 	@Override
 	public void flush() {
-		iOut.print(createGson().toJson(iList));
-		iOut.flush();
 	}
 	
 	@Override
 	public void close() {
+		iOut.print(iLines == 0 ? "[]" : "\n]");
+		iOut.flush();
 	}
 }
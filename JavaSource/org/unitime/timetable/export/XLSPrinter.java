@@ -42,6 +42,7 @@ import org.apache.poi.hssf.usermodel.HSSFRow;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.BorderStyle;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
@@ -60,9 +61,15 @@ import org.unitime.timetable.export.PDFPrinter.A;
 import org.unitime.timetable.export.PDFPrinter.F;
 
 /**
+ * Excel (.xls) printer. The binary Excel format is limited to 65536 rows per sheet, when the limit is reached
+ * a new sheet is started (with the same header), so that large exports are not cut off.
+ * The workbook itself is kept in memory until the printer is closed (there is no streaming variant of the .xls format),
+ * so the exports that use this printer (e.g., meetings.xls, rooms.xls) are not streamed.
+ * 
  * @author Tomas Muller
  */
 public class XLSPrinter implements Printer {
+	private static final int sMaxRows = SpreadsheetVersion.EXCEL97.getMaxRows();
 	private static Pattern sNumber = Pattern.compile("[+-]?[0-9]*\\.?[0-9]*[a-z]?");
 	private OutputStream iOutput;
 	private Workbook iWorkbook;
@@ -74,22 +81,14 @@ public class XLSPrinter implements Printer {
 	private Map<String, CellStyle> iStyles;
 	private Map<String, Font> iFonts = new HashMap<String, Font>();
 	private Map<String, Short> iColors = new HashMap<String, Short>();
+	private String[] iHeader = null;
 	
 	
 	public XLSPrinter(OutputStream output, boolean checkLast) {
 		iOutput = output;
 		iCheckLast = checkLast;
 		iWorkbook = new HSSFWorkbook();
-		iSheet = iWorkbook.createSheet();
-		iSheet.setDisplayGridlines(false);
-		iSheet.setPrintGridlines(false);
-		iSheet.setFitToPage(true);
-		iSheet.setHorizontallyCenter(true);
-        PrintSetup printSetup = iSheet.getPrintSetup();
-        printSetup.setLandscape(true);
-        iSheet.setAutobreaks(true);
-        printSetup.setFitHeight((short)1);
-        printSetup.setFitWidth((short)1);
+		createSheet();
         iStyles = new HashMap<String, CellStyle>();
         
         CellStyle style;
@@ -119,6 +118,31 @@ public class XLSPrinter implements Printer {
         iStyles.put("number", style);
 	}
 	
+	protected void createSheet() {
+		iSheet = iWorkbook.createSheet();
+		iRowNum = 0;
+		iSheet.setDisplayGridlines(false);
+		iSheet.setPrintGridlines(false);
+		iSheet.setFitToPage(true);
+		iSheet.setHorizontallyCenter(true);
+        PrintSetup printSetup = iSheet.getPrintSetup();
+        printSetup.setLandscape(true);
+        iSheet.setAutobreaks(true);
+        printSetup.setFitHeight((short)1);
+        printSetup.setFitWidth((short)1);
+	}
+	
+	/** Create a new row, a new sheet is started (repeating the header) when the current one is full */
+	protected Row createRow() {
+		if (iRowNum >= sMaxRows) {
+			autoSizeColumns();
+			createSheet();
+			if (iHeader != null) printHeader(iHeader);
+			iLastLine = null;
+		}
+		return iSheet.createRow(iRowNum++);
+	}
+	
 	@Override
 	public String getContentType() {
 		return "application/vnd.ms-excel";
@@ -131,7 +155,8 @@ public class XLSPrinter implements Printer {
 	
 	@Override
 	public void printHeader(String... fields) {
-		Row headerRow = iSheet.createRow(iRowNum++);
+		iHeader = fields;
+		Row headerRow = createRow();
 		
 		int cellIdx = 0;
 		int nrLines = 1;
@@ -150,7 +175,7 @@ public class XLSPrinter implements Printer {
 	@Override
 	public void printLine(String... fields) {
 		int cellIdx = 0;
-		Row row = iSheet.createRow(iRowNum++);
+		Row row = createRow();
 		int nrLines = 1;
 		for (int idx = 0; idx < fields.length; idx++) {
 			if (iHiddenColumns.contains(idx)) continue;
@@ -182,7 +207,7 @@ public class XLSPrinter implements Printer {
 	
 	public void printLine(A... fields) {
 		int cellIdx = 0;
-		Row row = iSheet.createRow(iRowNum++);
+		Row row = createRow();
 		int nrLines = 1;
 		for (int idx = 0; idx < fields.length; idx++) {
 			if (iHiddenColumns.contains(idx)) continue;
@@ -518,11 +543,16 @@ public class XLSPrinter implements Printer {
 		iLastLine = null;
 	}
 	
-	@Override
-	public void close() throws IOException {
+	protected void autoSizeColumns() {
+		if (iSheet.getRow(0) == null) return;
 		for (short col = 0; col <= iSheet.getRow(0).getLastCellNum(); col++)
 			if (iSheet.getColumnWidth(col) == 256 * iSheet.getDefaultColumnWidth())
 				iSheet.autoSizeColumn(col);
+	}
+	
+	@Override
+	public void close() throws IOException {
+		autoSizeColumns();
 		iWorkbook.write(iOutput);
 		iWorkbook.close();
 	}
@@ -25,20 +25,27 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
 import org.dom4j.Document;
 import org.hibernate.MappingException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.PersistenceContext;
 import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.type.CollectionType;
 import org.hibernate.type.Type;
 import org.springframework.stereotype.Service;
+import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.events.EventAction.EventContext;
 import org.unitime.timetable.export.BufferedPrinter;
@@ -68,6 +75,7 @@ import org.unitime.timetable.util.Formats;
 public class SavedHqlExportToCSV implements Exporter {
 	protected static GwtMessages MESSAGES = Localization.create(GwtMessages.class);
 	private static Logger sLog = Logger.getLogger(SavedHqlExportToCSV.class);
+	protected static int sBatchSize = 100;
 	
 	@Override
 	public String reference() {
@@ -170,16 +178,29 @@ public class SavedHqlExportToCSV implements Exporter {
 		}
 		if (!hasAppearancePermission) throw new AccessDeniedException();
 		
-		BufferedPrinter out = new BufferedPrinter(new CSVPrinter(helper, false));
+		String sort = helper.getParameter("sort");
+		Printer out = createPrinter(new CSVPrinter(helper, false), sort);
 		helper.setup(out.getContentType(), hql.getName().replace('/', '-').replace('\\', '-').replace(':', '-') + ".csv", false);
 		
 		execute(context.getUser(), out, hql.getQuery(), params, 0, -1, hql.getParameters());
 		
-		String sort = helper.getParameter("sort");
-		if (sort != null && !"0".equals(sort)) {
+		close(out, sort);
+	}
+	
+	/**
+	 * Lines only need to be buffered when they are to be sorted, otherwise they are passed to the printer
+	 * (and written to the output) as they are read from the query results.
+	 */
+	protected static Printer createPrinter(Printer printer, String sort) {
+		return (sort != null && !"0".equals(sort) ? new BufferedPrinter(printer) : printer);
+	}
+	
+	/** Sort the buffered lines (if needed) and close the printer */
+	protected static void close(Printer out, String sort) throws IOException {
+		if (out instanceof BufferedPrinter && sort != null && !"0".equals(sort)) {
 			final boolean asc = Integer.parseInt(sort) > 0;
 			final int col = Math.abs(Integer.parseInt(sort)) - 1;
-			Collections.sort(out.getBuffer(), new Comparator<String[]>() {
+			Collections.sort(((BufferedPrinter)out).getBuffer(), new Comparator<String[]>() {
 				int compare(String[] a, String[] b, int col) {
 					for (int i = 0; i < a.length; i++) {
 						int c = (col + i) % a.length;
@@ -203,6 +224,67 @@ public class SavedHqlExportToCSV implements Exporter {
 		out.close();
 	}
 	
+	private static int print(Printer out, org.hibernate.Query q, Object o, int len, SessionImplementor session) throws IOException {
+		if (len < 0) {
+			len = length(o);
+			String[] line = new String[len];
+			header(line, o, q.getReturnAliases());
+			if (line.length > 0 && line[0].startsWith("__")) out.hideColumn(0);
+			out.printHeader(line);
+		}
+		String[] line = new String[len];
+		line(line, o, session);
+		out.printLine(line);
+		out.flush();
+		return len;
+	}
+	
+	/**
+	 * Iterate over the query results using scrollable results, so that the whole result set is never kept in memory.
+	 * Every {@link #sBatchSize} lines, the entities that were loaded since the query was executed (by the query or while printing the lines,
+	 * e.g., lazy associations) are evicted from the Hibernate session. Entities that have been in the session before are kept
+	 * (when there are none, the session is simply cleared).
+	 * <br>
+	 * MySQL Connector/J ignores the fetch size and reads the whole result set into memory, unless the fetch size is {@link Integer#MIN_VALUE}.
+	 * Such a streaming result set does not allow any other statement on the same connection until it is closed, so it is only used
+	 * when the query returns no entities (which could be lazily initialized while printing). Other queries are buffered by the driver on MySQL.
+	 */
+	public static void scroll(org.hibernate.Session hibSession, org.hibernate.Query q, Printer out) throws IOException {
+		Set<EntityKey> existing = new HashSet<EntityKey>(hibSession.getStatistics().getEntityKeys());
+		q.setFetchSize(HibernateUtil.isMySQL() && isScalar(q) ? Integer.MIN_VALUE : 1000);
+		ScrollableResults results = q.scroll(ScrollMode.FORWARD_ONLY);
+		try {
+			int len = -1, count = 0;
+			while (results.next()) {
+				Object[] row = results.get();
+				len = print(out, q, row.length == 1 ? row[0] : row, len, (SessionImplementor)hibSession);
+				if (++count % sBatchSize == 0)
+					evict(hibSession, existing);
+			}
+		} finally {
+			results.close();
+		}
+	}
+	
+	private static boolean isScalar(org.hibernate.Query q) {
+		for (Type type: q.getReturnTypes())
+			if (type.isEntityType() || type.isCollectionType() || type.isComponentType()) return false;
+		return true;
+	}
+	
+	private static void evict(org.hibernate.Session hibSession, Set<EntityKey> existing) {
+		if (existing.isEmpty()) {
+			hibSession.clear();
+			return;
+		}
+		PersistenceContext context = ((SessionImplementor)hibSession).getPersistenceContext();
+		for (EntityKey key: new ArrayList<EntityKey>(hibSession.getStatistics().getEntityKeys())) {
+			if (existing.contains(key)) continue;
+			Object entity = context.getEntity(key);
+			if (entity != null) hibSession.evict(entity);
+		}
+	}
+	
 	public static void execute(UserContext user, Printer out, String hql, List<SavedHQLInterface.IdValue> options, int fromRow, int maxRows, Collection<SavedHQLParameter> parameters) throws SavedHQLException, PageAccessException {
 		try {
 			for (SavedHQL.Option o: SavedHQL.Option.values()) {
@@ -231,7 +313,6 @@ public class SavedHqlExportToCSV implements Exporter {
 				q.setMaxResults(maxRows);
 			if (fromRow > 0)
 				q.setFirstResult(fromRow);
-			q.setCacheable(true);
 			if (parameters != null && !parameters.isEmpty()) {
 				parameters: for (SavedHQLParameter parameter: parameters) {
 					String value = parameter.getDefaultValue();
@@ -291,19 +372,14 @@ public class SavedHqlExportToCSV implements Exporter {
 					}
 				}
 			}
-			int len = -1;
-			for (Object o: q.list()) {
-				if (len < 0) {
-					len = length(o);
-					String[] line = new String[len];
-					header(line, o, q.getReturnAliases());
-					if (line.length > 0 && line[0].startsWith("__")) out.hideColumn(0);
-					out.printHeader(line);
-				}
-				String[] line = new String[len];
-				line(line, o, (SessionImplementor)hibSession);
-				out.printLine(line);
-				out.flush();
+			if (maxRows > 0) {
+				// one page of the results (e.g., as displayed on the HQL Reports page)
+				q.setCacheable(true);
+				int len = -1;
+				for (Object o: q.list())
+					len = print(out, q, o, len, (SessionImplementor)hibSession);
+			} else {
+				scroll(hibSession, q, out);
 			}
 		} catch (PageAccessException e) {
 			throw e;
@@ -123,6 +123,18 @@ public class LoadingWidget extends Composite {
 		iCancelTimer.schedule(2500);
 	}
 	
+	protected void showQueuePosition(int position, String message) {
+		if (iCount == 0) return;
+		String text = (position > 0 ? MESSAGES.waitingInQueue(position) : message == null ? "" : message);
+		boolean showing = !iMessage.getText().isEmpty();
+		iMessage.setHTML(text);
+		if (!showing && !iMessage.getText().isEmpty()) {
+			RootPanel.get().add(iMessage, Window.getScrollLeft() + Window.getClientWidth() / 2 - 225, Window.getScrollTop() + Window.getClientHeight() / 3);
+		} else if (showing && iMessage.getText().isEmpty()) {
+			RootPanel.get().remove(iMessage);
+		}
+	}
+	
 	protected void hideCancel() {
 		iCancelTimer.cancel();
 		RootPanel.get().remove(iCancel);
@@ -211,6 +223,11 @@ public class LoadingWidget extends Composite {
 			public void onExecution(Long executionId) {
 				getInstance().showCancel(executionId);
 			}
+
+			@Override
+			public void onQueuePosition(Long executionId, int position) {
+				getInstance().showQueuePosition(position, loadingMessage);
+			}
 		});
 	}
 }
@@ -20,6 +20,7 @@
 package org.unitime.timetable.gwt.command.client;
 
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
 /**
@@ -42,14 +43,18 @@ public class GwtRpc {
 			@Override
 			public void onSuccess(Long executionId) {
 				callback.onExecution(executionId);
+				final QueuePositionTimer timer = new QueuePositionTimer(executionId, callback);
+				timer.schedule(QueuePositionTimer.DELAY);
 				RPC.waitForResults(executionId, new AsyncCallback<T>() {
 					@Override
 					public void onFailure(Throwable caught) {
+						timer.stop();
 						callback.onFailure(caught);
 					}
 
 					@Override
 					public void onSuccess(T result) {
+						timer.stop();
 						callback.onSuccess(result);
 					}
 				});
@@ -70,6 +75,47 @@ public class GwtRpc {
 	
 	public static interface CancellableCallback<T> extends AsyncCallback<T> {
 		public void onExecution(Long executionId);
+		
+		/**
+		 * Called while the request is waiting to be executed on the server
+		 * @param position position in the queue, 0 when the execution has started
+		 */
+		public void onQueuePosition(Long executionId, int position);
+	}
+	
+	/**
+	 * Polls the server for the position of the request in the execution queue, until the execution is started
+	 */
+	private static class QueuePositionTimer extends Timer {
+		private static final int DELAY = 1000;
+		private Long iExecutionId;
+		private CancellableCallback<?> iCallback;
+		private boolean iStopped = false;
+		
+		QueuePositionTimer(Long executionId, CancellableCallback<?> callback) {
+			iExecutionId = executionId; iCallback = callback;
+		}
+		
+		void stop() {
+			iStopped = true;
+			cancel();
+		}
+
+		@Override
+		public void run() {
+			RPC.getQueuePosition(iExecutionId, new AsyncCallback<Integer>() {
+				@Override
+				public void onFailure(Throwable caught) {
+				}
+
+				@Override
+				public void onSuccess(Integer position) {
+					if (iStopped || position == null) return;
+					iCallback.onQueuePosition(iExecutionId, position);
+					if (position > 0) schedule(DELAY);
+				}
+			});
+		}
 	}
 
 }
@@ -0,0 +1,394 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.gwt.command.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Session;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.gwt.command.client.GwtRpcException;
+import org.unitime.timetable.onlinesectioning.server.ActionStatistics.Histogram;
+
+/**
+ * Executor of the asynchronous GWT RPC requests (see {@link GwtRpcServlet#executeAsync(org.unitime.timetable.gwt.command.client.GwtRpcRequest)}).
+ * The requests are executed on a bounded pool of threads (unitime.rpc.async.threads, virtual threads can be used when supported by the
+ * Java runtime), the requests that cannot be started are kept in a bounded queue (unitime.rpc.async.queueSize) and started in the order
+ * in which they came, while respecting the limits on the number of requests of one user (unitime.rpc.async.userLimit) and of one
+ * request type (unitime.rpc.async.requestLimit) that can run at the same time.
+ * <br>
+ * A task that is waiting in the queue can be cancelled by simply removing it from the queue; a task that is running is interrupted and
+ * the Hibernate query that is being executed (if any) is cancelled. The time spent in the queue and the execution time are kept for each request type.
+ *
+ * @author Tomas Muller
+ */
+public class GwtRpcExecutor {
+	private static Log sLog = LogFactory.getLog(GwtRpcExecutor.class);
+	private static GwtRpcExecutor sInstance = null;
+	
+	private ExecutorService iExecutor;
+	private int iMaxRunning, iMaxQueue, iUserLimit, iRequestLimit;
+	private LinkedList<Task> iQueue = new LinkedList<Task>();
+	private Map<String, Integer> iRunningPerUser = new HashMap<String, Integer>();
+	private Map<String, Integer> iRunningPerRequest = new HashMap<String, Integer>();
+	private Map<String, Integer> iRequestLimits = new HashMap<String, Integer>();
+	private int iRunning = 0;
+	private ConcurrentMap<String, RequestCounter> iCounters = new ConcurrentHashMap<String, RequestCounter>();
+	
+	private GwtRpcExecutor() {
+		Integer threads = ApplicationProperty.GwtRpcAsyncThreads.intValue();
+		iMaxRunning = Math.max(1, threads == null ? 20 : threads);
+		Integer queue = ApplicationProperty.GwtRpcAsyncQueueSize.intValue();
+		iMaxQueue = (queue == null ? 1000 : queue);
+		Integer userLimit = ApplicationProperty.GwtRpcAsyncUserLimit.intValue();
+		iUserLimit = (userLimit == null ? 0 : userLimit);
+		Integer requestLimit = ApplicationProperty.GwtRpcAsyncRequestLimit.intValue();
+		iRequestLimit = (requestLimit == null ? 0 : requestLimit);
+		ThreadFactory factory = null;
+		if (ApplicationProperty.GwtRpcAsyncVirtualThreads.isTrue()) {
+			factory = createVirtualThreadFactory();
+			if (factory == null) sLog.warn("Virtual threads are not supported, platform threads will be used instead.");
+		}
+		if (factory == null) factory = new ExecutionThreadFactory();
+		iExecutor = Executors.newFixedThreadPool(iMaxRunning, factory);
+		sLog.info("Asynchronous RPC executor started (threads: " + iMaxRunning + ", queue: " + iMaxQueue + ", user limit: " + iUserLimit + ", request limit: " + iRequestLimit + ")");
+	}
+	
+	public static synchronized GwtRpcExecutor getInstance() {
+		if (sInstance == null) sInstance = new GwtRpcExecutor();
+		return sInstance;
+	}
+	
+	public static synchronized void shutdown() {
+		if (sInstance != null) {
+			sInstance.iExecutor.shutdownNow();
+			sInstance = null;
+		}
+	}
+	
+	/** Thread.ofVirtual().factory(), using reflection as virtual threads are not available in all supported Java versions */
+	private static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builder.getClass().getMethod("name", String.class, long.class).invoke(builder, "RPC-", 1l);
+			return (ThreadFactory)builder.getClass().getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	private int getRequestLimit(String request) {
+		Integer limit = iRequestLimits.get(request);
+		if (limit == null) {
+			limit = ApplicationProperty.GwtRpcAsyncRequestLimitOverride.intValue(request);
+			if (limit == null) limit = iRequestLimit;
+			iRequestLimits.put(request, limit);
+		}
+		return limit;
+	}
+	
+	private static int get(Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		return (count == null ? 0 : count);
+	}
+	
+	private static void inc(Map<String, Integer> counts, String key, int delta) {
+		int count = get(counts, key) + delta;
+		if (count <= 0)
+			counts.remove(key);
+		else
+			counts.put(key, count);
+	}
+	
+	private boolean canStart(Task task) {
+		if (iRunning >= iMaxRunning) return false;
+		if (iUserLimit > 0 && get(iRunningPerUser, task.getUser()) >= iUserLimit) return false;
+		int requestLimit = getRequestLimit(task.getRequest());
+		if (requestLimit > 0 && get(iRunningPerRequest, task.getRequest()) >= requestLimit) return false;
+		return true;
+	}
+	
+	/** Start the waiting tasks that can be started, in the order in which they have been submitted */
+	private synchronized void schedule() {
+		for (Iterator<Task> i = iQueue.iterator(); i.hasNext() && iRunning < iMaxRunning; ) {
+			Task task = i.next();
+			if (canStart(task)) {
+				i.remove();
+				iRunning ++;
+				inc(iRunningPerUser, task.getUser(), 1);
+				inc(iRunningPerRequest, task.getRequest(), 1);
+				iExecutor.execute(task);
+			}
+		}
+	}
+	
+	private synchronized void finished(Task task) {
+		iRunning --;
+		inc(iRunningPerUser, task.getUser(), -1);
+		inc(iRunningPerRequest, task.getRequest(), -1);
+		schedule();
+	}
+	
+	/**
+	 * Submit a task, it is started as soon as there is a free thread and the user and request limits allow it
+	 * @throws GwtRpcException when there are too many requests waiting
+	 */
+	public synchronized void submit(Task task) throws GwtRpcException {
+		if (iMaxQueue > 0 && iQueue.size() >= iMaxQueue) {
+			getCounter(task.getRequest()).iRejected.incrementAndGet();
+			throw new GwtRpcException("Server is too busy, please try again later.");
+		}
+		task.iExecutor = this;
+		iQueue.add(task);
+		schedule();
+	}
+	
+	/** Remove a task from the queue, returns false if the task is no longer waiting */
+	protected synchronized boolean remove(Task task) {
+		return iQueue.remove(task);
+	}
+	
+	/** Position of the task in the queue (1 is the first waiting task), 0 if the task is no longer waiting */
+	public synchronized int getQueuePosition(Task task) {
+		return iQueue.indexOf(task) + 1;
+	}
+	
+	public synchronized int getQueueSize() { return iQueue.size(); }
+	
+	public synchronized int getRunning() { return iRunning; }
+	
+	protected RequestCounter getCounter(String request) {
+		RequestCounter counter = iCounters.get(request);
+		if (counter == null) {
+			counter = new RequestCounter();
+			RequestCounter old = iCounters.putIfAbsent(request, counter);
+			if (old != null) counter = old;
+		}
+		return counter;
+	}
+	
+	/** Statistics for each request type, sorted by the request name */
+	public List<RequestStatistics> getStatistics() {
+		List<RequestStatistics> ret = new ArrayList<RequestStatistics>();
+		for (Map.Entry<String, RequestCounter> e: iCounters.entrySet())
+			ret.add(new RequestStatistics(e.getKey(), e.getValue()));
+		Collections.sort(ret);
+		return ret;
+	}
+	
+	/** Statistics of the asynchronous requests, as an HTML table */
+	public static String getStatisticsHtml() {
+		GwtRpcExecutor executor = null;
+		synchronized (GwtRpcExecutor.class) {
+			executor = sInstance;
+		}
+		StringBuffer ret = new StringBuffer();
+		if (executor == null) {
+			ret.append("<i>No asynchronous request has been executed.</i>");
+			return ret.toString();
+		}
+		DecimalFormat df = new DecimalFormat("0.00");
+		ret.append("Running: " + executor.getRunning() + ", waiting: " + executor.getQueueSize() + "<br>");
+		ret.append("<table border='0' cellspacing='0' cellpadding='3'>");
+		ret.append("<tr><td><i>Request</i></td><td><i>Executions</i></td><td><i>Failed</i></td><td><i>Cancelled</i></td><td><i>Rejected</i></td>" +
+				"<td><i>Queue Mean [ms]</i></td><td><i>Queue P99 [ms]</i></td><td><i>Run Mean [ms]</i></td><td><i>Run P99 [ms]</i></td><td><i>Run Max [ms]</i></td><td><i>CPU Mean [ms]</i></td></tr>");
+		for (RequestStatistics s: executor.getStatistics()) {
+			ret.append("<tr><td>" + s.getRequest() + "</td><td>" + s.getExecutions() + "</td><td>" + s.getFailed() + "</td><td>" + s.getCancelled() + "</td><td>" + s.getRejected() +
+					"</td><td>" + df.format(s.getQueueMean()) + "</td><td>" + df.format(s.getQueueP99()) + "</td><td>" + df.format(s.getRunMean()) +
+					"</td><td>" + df.format(s.getRunP99()) + "</td><td>" + df.format(s.getRunMax()) + "</td><td>" + df.format(s.getCpuMean()) + "</td></tr>");
+		}
+		ret.append("</table>");
+		return ret.toString();
+	}
+	
+	private static long getCpuTime() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		return (bean.isCurrentThreadCpuTimeSupported() ? bean.getCurrentThreadCpuTime() : 0l);
+	}
+	
+	/**
+	 * Asynchronous request, the execution itself is implemented by {@link #execute()}
+	 */
+	public static abstract class Task implements Runnable {
+		private String iUser, iRequest;
+		private long iSubmitted = System.nanoTime();
+		private GwtRpcExecutor iExecutor = null;
+		private Thread iThread = null;
+		private Session iHibSession = null;
+		private boolean iCancelled = false;
+		
+		/**
+		 * @param user user (or HTTP session) making the request, for the user limit
+		 * @param request request type (class name), for the request limit and the statistics
+		 */
+		protected Task(String user, String request) {
+			iUser = (user == null ? "" : user);
+			iRequest = request;
+		}
+		
+		public String getUser() { return iUser; }
+		public String getRequest() { return iRequest; }
+		
+		/** Execute the request, called on the executor thread */
+		protected abstract void execute();
+		
+		/** Called when the task has been cancelled while waiting in the queue (it will never be executed) */
+		protected abstract void cancelled();
+		
+		/** Hibernate session of the executing thread, its query is cancelled when the task is cancelled */
+		protected synchronized void setHibSession(Session hibSession) {
+			iHibSession = hibSession;
+		}
+		
+		public synchronized boolean isCancelled() { return iCancelled; }
+		
+		/** Position in the queue, 0 when the task is running or finished */
+		public int getQueuePosition() {
+			return (iExecutor == null ? 0 : iExecutor.getQueuePosition(this));
+		}
+		
+		@Override
+		public final void run() {
+			RequestCounter counter = iExecutor.getCounter(iRequest);
+			long t0 = System.nanoTime();
+			counter.iQueueTime.record(t0 - iSubmitted);
+			long c0 = getCpuTime();
+			boolean failed = true;
+			try {
+				synchronized (this) {
+					if (iCancelled) { failed = false; return; }
+					iThread = Thread.currentThread();
+				}
+				execute();
+				failed = false;
+			} catch (Throwable t) {
+				sLog.error("Execution of " + iRequest + " failed: " + t.getMessage(), t);
+			} finally {
+				synchronized (this) {
+					iThread = null;
+					iHibSession = null;
+				}
+				// clear the interrupted flag, if the task has been cancelled
+				Thread.interrupted();
+				counter.iRunTime.record(System.nanoTime() - t0);
+				counter.iCpuTime.record(getCpuTime() - c0);
+				if (failed) counter.iFailed.incrementAndGet();
+				iExecutor.finished(this);
+			}
+		}
+		
+		/** Cancel the task: remove it from the queue or interrupt the executing thread and cancel the running Hibernate query */
+		public void cancel() {
+			if (iExecutor == null) return;
+			synchronized (this) {
+				if (iCancelled) return;
+				iCancelled = true;
+			}
+			iExecutor.getCounter(iRequest).iCancelled.incrementAndGet();
+			if (iExecutor.remove(this)) {
+				cancelled();
+				return;
+			}
+			synchronized (this) {
+				if (iHibSession != null) {
+					try {
+						iHibSession.cancelQuery();
+					} catch (Exception e) {
+						sLog.debug("Failed to cancel query: " + e.getMessage());
+					}
+				}
+				if (iThread != null) iThread.interrupt();
+			}
+		}
+	}
+	
+	protected static class RequestCounter {
+		private Histogram iQueueTime = new Histogram(), iRunTime = new Histogram(), iCpuTime = new Histogram();
+		private AtomicLong iFailed = new AtomicLong(0), iCancelled = new AtomicLong(0), iRejected = new AtomicLong(0);
+	}
+	
+	/**
+	 * Snapshot of the statistics of one request type (times are in milliseconds)
+	 */
+	public static class RequestStatistics implements Comparable<RequestStatistics> {
+		private String iRequest;
+		private long iExecutions, iFailed, iCancelled, iRejected;
+		private double iQueueMean, iQueueP99, iRunMean, iRunP99, iRunMax, iCpuMean;
+		
+		protected RequestStatistics(String request, RequestCounter counter) {
+			iRequest = request;
+			iExecutions = counter.iRunTime.getCount();
+			iFailed = counter.iFailed.get();
+			iCancelled = counter.iCancelled.get();
+			iRejected = counter.iRejected.get();
+			iQueueMean = counter.iQueueTime.getMean();
+			iQueueP99 = counter.iQueueTime.getPercentile(99.0);
+			iRunMean = counter.iRunTime.getMean();
+			iRunP99 = counter.iRunTime.getPercentile(99.0);
+			iRunMax = counter.iRunTime.getMax();
+			iCpuMean = counter.iCpuTime.getMean();
+		}
+		
+		public String getRequest() { return iRequest; }
+		public long getExecutions() { return iExecutions; }
+		public long getFailed() { return iFailed; }
+		public long getCancelled() { return iCancelled; }
+		public long getRejected() { return iRejected; }
+		public double getQueueMean() { return iQueueMean; }
+		public double getQueueP99() { return iQueueP99; }
+		public double getRunMean() { return iRunMean; }
+		public double getRunP99() { return iRunP99; }
+		public double getRunMax() { return iRunMax; }
+		public double getCpuMean() { return iCpuMean; }
+		
+		@Override
+		public int compareTo(RequestStatistics s) {
+			return getRequest().compareTo(s.getRequest());
+		}
+	}
+	
+	private static class ExecutionThreadFactory implements ThreadFactory {
+		private AtomicInteger iCounter = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "RPC-" + iCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
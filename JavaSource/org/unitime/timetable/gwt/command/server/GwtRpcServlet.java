@@ -52,6 +52,7 @@ import org.unitime.timetable.model.QueryLog;
 import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.context.HttpSessionContext;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 import org.unitime.timetable.security.evaluation.PermissionCheck;
 import org.unitime.timetable.util.Formats;
 
@@ -127,6 +128,7 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 	@Override
 	public void destroy() {
 		if (iSaver != null) iSaver.interrupt();
+		GwtRpcExecutor.shutdown();
 	}
 	
 	public static <T extends GwtRpcResponse> GwtRpcImplementation<GwtRpcRequest<T>, T> getImplementation(Class<? extends GwtRpcRequest<T>> requestClass, ApplicationContext applicationContext) throws BeansException {
@@ -265,12 +267,21 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 	@Override
 	public <T extends GwtRpcResponse> Long executeAsync(GwtRpcRequest<T> request) throws GwtRpcException {
 		try {
-			Execution<GwtRpcRequest<T>, T> execution = new Execution<GwtRpcRequest<T>, T>(request);
+			Execution<GwtRpcRequest<T>, T> execution = new Execution<GwtRpcRequest<T>, T>(request, new GwtRpcHelper(getSessionContext(), getPermissionCheck()));
 			synchronized (sExecutions) {
 				sExecutions.put(execution.getExecutionId(), execution);
 			}
-			execution.start();
+			try {
+				GwtRpcExecutor.getInstance().submit(execution);
+			} catch (GwtRpcException e) {
+				synchronized (sExecutions) {
+					sExecutions.remove(execution.getExecutionId());
+				}
+				throw e;
+			}
 			return execution.getExecutionId();
+		} catch (GwtRpcException e) {
+			throw e;
 		} catch (Exception e) {
 			sLog.warn("Execute async failed: " + e.getMessage());
 			throw new GwtRpcException(e.getMessage(), e);
@@ -319,6 +330,21 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 			throw new GwtRpcException(e.getMessage(), e);
 		}
 	}
+	
+	@Override
+	public Integer getQueuePosition(Long executionId) throws GwtRpcException {
+		try {
+			Execution execution = null;
+			synchronized (sExecutions) {
+				execution = sExecutions.get(executionId);
+			}
+			if (execution == null) return null;
+			return execution.getQueuePosition();
+		} catch (Exception e) {
+			sLog.warn("Queue position failed: " + e.getMessage());
+			throw new GwtRpcException(e.getMessage(), e);
+		}
+	}
 		
 	private static class IdGenerator {
 		long iNextId = 0;
@@ -327,34 +353,35 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 		}
 	}
 	
-	private class Execution<R extends GwtRpcRequest<T>, T extends GwtRpcResponse> extends Thread {
+	private class Execution<R extends GwtRpcRequest<T>, T extends GwtRpcResponse> extends GwtRpcExecutor.Task {
 		R iRequest;
 		T iResponse = null;
-		SessionContext iContext = null;
+		GwtRpcHelper iContext = null;
 		GwtRpcException iException = null;
-		Thread iWaitingThread = null;
 		long iExecutionId;
-		boolean iRunning = false;
+		boolean iDone = false;
 		String iLocale = null;
 		
-		Execution(R request) {
-			setName("RPC:" + request);
-			setDaemon(true);
+		Execution(R request, GwtRpcHelper context) {
+			super(context.getUser() != null ? context.getUser().getExternalUserId() : context.getHttpSessionId(), request.getClass().getSimpleName());
 			iRequest = request;
 			iExecutionId = sIdGenerator.generatedId();
-			iContext = new GwtRpcHelper(getSessionContext(), getPermissionCheck());
+			iContext = context;
 			iLocale = Localization.getLocale();
 		}
 
 		@Override
-		public void run() {
-			iRunning = true;
+		protected void execute() {
 			Localization.setLocale(iLocale);
 			ApplicationProperties.setSessionId(iContext.getUser() == null ? null : iContext.getUser().getCurrentAcademicSessionId());
 			// start time
 			long t0 = JProf.currentTimeMillis();
 			GwtRpcLogging logging = null;
+			PermissionCache.begin();
 			try {
+				// make the Hibernate session known, so that a running query can be cancelled
+				setHibSession(new _RootDAO().getSession());
+				
 				// retrieve implementation from given request
 				GwtRpcImplementation<GwtRpcRequest<T>, T> implementation = getImplementation(iRequest);
 				
@@ -362,7 +389,10 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 				logging = implementation.getClass().getAnnotation(GwtRpcLogging.class);
 				
 				// execute request
-				iResponse = implementation.execute(iRequest, iContext);
+				T response = implementation.execute(iRequest, iContext);
+				synchronized (this) {
+					iResponse = response;
+				}
 				
 				// log request
 				log(iRequest, iResponse, null, JProf.currentTimeMillis() - t0, iContext, logging);
@@ -371,9 +401,12 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 				log(iRequest, null, t, JProf.currentTimeMillis() - t0, iContext, logging);
 				
 				// re-throw exception as GwtRpcException or IsSerializable runtime exception
-				if (t instanceof GwtRpcException) {
-					iException = (GwtRpcException)t;
-					if (iException.hasCause())
+				GwtRpcException exception = null;
+				if (isCancelled()) {
+					sLog.info("Execution of " + iRequest + " cancelled: " + t.getMessage());
+				} else if (t instanceof GwtRpcException) {
+					exception = (GwtRpcException)t;
+					if (exception.hasCause())
 						sLog.warn("Seen server exception: " + t.getMessage(), t.getCause());
 					else
 						sLog.info("Seen server exception: " + t.getMessage());
@@ -382,45 +415,54 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 						sLog.error("Seen server exception: " + t.getMessage(), t);
 					else
 						sLog.warn("Seen server exception: " + t.getMessage(), t);
-					iException = new GwtRpcException(t.getMessage(), t);
+					exception = new GwtRpcException(t.getMessage(), t);
 				} else {
 					sLog.error("Seen exception: " + t.getMessage(), t);
-					iException = new GwtRpcException(t.getMessage());
+					exception = new GwtRpcException(t.getMessage());
+				}
+				synchronized (this) {
+					// do not replace the cancellation exception
+					if (iException == null) iException = exception;
 				}
 			} finally {
 				Localization.removeLocale();
 				Formats.removeFormats();
 				ApplicationProperties.setSessionId(null);
 				_RootDAO.closeCurrentThreadSessions();
-			}
-			synchronized (this) {
-				iWaitingThread = null;
-				iRunning = false;
-				iContext = null;
+				PermissionCache.end();
+				done();
 			}
 		}
 		
-		void waitToFinish() throws InterruptedException {
-			synchronized (this) {
-				if (iRunning) {
-					iWaitingThread = Thread.currentThread();
-					join();
-				}
-			}
+		@Override
+		protected void cancelled() {
+			done();
+		}
+		
+		private synchronized void done() {
+			iDone = true;
+			iContext = null;
+			notifyAll();
+		}
+		
+		synchronized void waitToFinish() throws InterruptedException {
+			while (!iDone && iException == null)
+				wait();
 		}
 		
 		void cancelExecution() {
 			synchronized (this) {
+				if (iDone) return;
 				iException = new GwtRpcCancelledException("Operation cancelled by the user.");
-				if (iWaitingThread != null) iWaitingThread.interrupt();
+				notifyAll();
 			}
-			interrupt();
+			cancel();
 		}
 		
-		T getResponse() { return iResponse; }
+		synchronized T getResponse() { return iResponse; }
 		
-		GwtRpcException getException() { return iException; }
+		synchronized GwtRpcException getException() { return iException; }
 		
 		Long getExecutionId() { return iExecutionId; }
 	}
-}
\ No newline at end of file
+}
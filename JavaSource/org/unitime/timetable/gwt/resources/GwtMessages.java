@@ -44,6 +44,9 @@ public interface GwtMessages extends Messages {
 	
 	@DefaultMessage("The operation may take a lot of time...<br>Click this message to cancel the operation.")
 	String warnLoadingTooLongCanCancel();
+	
+	@DefaultMessage("Waiting in the queue (position {0})...")
+	String waitingInQueue(int position);
 
 	@DefaultMessage("Login is required to access this page.")
 	String authenticationRequired();
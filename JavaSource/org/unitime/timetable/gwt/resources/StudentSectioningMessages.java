@@ -911,6 +911,12 @@ public interface StudentSectioningMessages extends Messages {
 	@DefaultMessage("Class schedule is not available at the moment.")
 	String exceptionClassScheduleNotAvaiable();
 	
+	@DefaultMessage("Course {0} is not available at the moment, the student scheduling server is still loading. Please try again later.")
+	String exceptionCourseNotReady(String course);
+	
+	@DefaultMessage("Student schedule is not available at the moment, the student scheduling server is still loading. Please try again later.")
+	String exceptionStudentNotReady();
+	
 	@DefaultMessage("Unable to compute a schedule ({0}).")
 	String exceptionSectioningFailed(String message);
 	
@@ -1021,6 +1027,9 @@ public interface StudentSectioningMessages extends Messages {
 	
 	@DefaultMessage("Academic session is not available for student scheduling.")
 	String exceptionNoServerForSession();
+	
+	@DefaultMessage("Student scheduling server is being loaded, please try again later.")
+	String exceptionServerNotReady();
 
 	@DefaultMessage("Wrong class or instructional offering.")
 	String exceptionBadClassOrOffering();
@@ -19,9 +19,12 @@
 */
 package org.unitime.timetable.gwt.server;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.io.Writer;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.text.SimpleDateFormat;
@@ -31,10 +34,12 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.TreeSet;
 
@@ -82,6 +87,7 @@ import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.UserContext;
 import org.unitime.timetable.server.CourseDetailsBackend;
 import org.unitime.timetable.solver.service.SolverServerService;
+import org.unitime.timetable.util.CalendarFeedCache;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.DateUtils;
 
@@ -169,10 +175,53 @@ public class CalendarServlet extends HttpServlet {
     	String userId = params.getParameter("uid");
     	if (q == null) userId = QueryEncoderBackend.decode(userId);
    
+		String key = sessionId + "|" + classIds + "|" + fts + "|" + examIds + "|" + eventIds + "|" + userId;
+		CalendarFeedCache cache = CalendarFeedCache.getInstance();
+		CalendarFeedCache.Feed feed = (CalendarFeedCache.isEnabled() ? cache.get(key, sessionId) : null);
+		if (feed == null) {
+			long version = cache.getVersion(sessionId), sequence = cache.getSequence();
+			Set<String> dependencies = new HashSet<String>();
+			try {
+				feed = cache.put(key, sessionId, version, sequence, render(session, classIds, fts, examIds, eventIds, userId, dependencies), cache.getLast(key), dependencies);
+			} catch (Exception e) {
+				Debug.error(e.getMessage(), e);
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+				return;
+			}
+		}
+		
+		response.setHeader("ETag", feed.getETag());
+		response.setDateHeader("Last-Modified", feed.getLastModified());
+		response.setHeader("Cache-Control", "private, no-cache");
+		long ifModifiedSince = -1;
+		try {
+			ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		} catch (IllegalArgumentException e) {}
+		if (feed.isNotModified(request.getHeader("If-None-Match"), ifModifiedSince)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		
 		response.setContentType("text/calendar; charset=UTF-8");
 		response.setCharacterEncoding("UTF-8");
 		response.setHeader( "Content-Disposition", "attachment; filename=\"schedule.ics\"" );
-        
+		response.setContentLength(feed.getData().length);
+		OutputStream out = response.getOutputStream();
+		try {
+			out.write(feed.getData());
+			out.flush();
+		} finally {
+			out.close();
+		}
+	}
+	
+	/**
+	 * Create the iCalendar feed of the given classes, free times, exams, events, and the classes and exams of the given user (student or instructor).
+	 * @param dependencies filled in with the objects the feed depends on (see {@link CalendarFeedCache.Dependency})
+	 * @return the feed, encoded in UTF-8
+	 */
+	protected byte[] render(Session session, String classIds, String fts, String examIds, String eventIds, String userId, Set<String> dependencies) throws Exception {
+		Long sessionId = session.getUniqueId();
 		ICalendar ical = new ICalendar();
 		ical.setVersion(ICalVersion.V2_0);
 		ical.setCalendarScale(CalendarScale.gregorian());
@@ -182,100 +231,100 @@ public class CalendarServlet extends HttpServlet {
 		ical.setProductId("-//UniTime LLC/UniTime " + Constants.getVersion() + " Schedule//EN");
 
 		org.hibernate.Session hibSession = CurriculumDAO.getInstance().getSession();
-		try {
-			EventsExportEventsToICal exporter = new EventsExportEventsToICal();
-        	if (classIds != null && !classIds.isEmpty()) {
-        		for (String classId: classIds.split(",")) {
-        			if (classId.isEmpty()) continue;
-        			String[] courseAndClassId = classId.split("-");
-        			if (courseAndClassId.length != 2) continue;
-    				CourseOffering course = CourseOfferingDAO.getInstance().get(Long.valueOf(courseAndClassId[0]), hibSession);
-    				Class_ clazz = Class_DAO.getInstance().get(Long.valueOf(courseAndClassId[1]), hibSession);
-    				if (course == null || clazz == null) continue;
-            		printClass(course, clazz, ical);
-        		}
-        	}
-        	if (fts != null && !fts.isEmpty()) {
-    			Date dpFirstDate = DateUtils.getDate(1, session.getPatternStartMonth(), session.getSessionStartYear());
-    			BitSet weekCode = session.getDefaultDatePattern().getPatternBitSet();
-        		for (String ft: fts.split(",")) {
-        			if (ft.isEmpty()) continue;
-        			String[] daysStartLen = ft.split("-");
-        			if (daysStartLen.length != 3) continue;
-        			printFreeTime(dpFirstDate, weekCode, daysStartLen[0], Integer.parseInt(daysStartLen[1]), Integer.parseInt(daysStartLen[2]), ical);
-        		}
-        	}
-            if (examIds != null && !examIds.isEmpty()) {
-            	for (String examId: examIds.split(",")) {
-            		if (examId.isEmpty()) continue;
-            		try {
-                		Exam exam = ExamDAO.getInstance().get(Long.valueOf(examId), hibSession);
-                		if (exam != null)
-                			printExam(exam, ical);
-            		} catch (NumberFormatException e) {}
-            	}
-            }
-            if (eventIds != null && !eventIds.isEmpty()) {
-            	for (String eventId: eventIds.split(",")) {
-            		if (eventId.isEmpty()) continue;
-            		try {
-            			Event event = EventDAO.getInstance().get(Long.valueOf(eventId), hibSession);
-            			if (event != null)
-            				exporter.print(ical, EventDetailBackend.getEventDetail(session, event, null));
-            		} catch (NumberFormatException e) {}
-            	}
-            }
-            if (userId != null && !userId.isEmpty()) {
-                for (DepartmentalInstructor instructor: (List<DepartmentalInstructor>)hibSession.createQuery("select i from DepartmentalInstructor i " +
-                		"where i.externalUniqueId = :externalId and i.department.session.uniqueId = :sessionId").
-                		setLong("sessionId", sessionId).setString("externalId", userId).list()) {
-                	if (!PersonalizedExamReportAction.canDisplay(instructor.getDepartment().getSession())) continue;
-                	for (ExamType t: ExamType.findAll(hibSession)) {
-                		ExamStatus status = ExamStatus.findStatus(hibSession, instructor.getSession().getUniqueId(), t.getUniqueId());
-                		DepartmentStatusType type = (status == null || status.getStatus() == null ? instructor.getSession().getStatusType() : status.getStatus());
-                		if (t.getType() == ExamType.sExamTypeFinal && type.canNoRoleReportExamFinal()) {
-                			for (Exam exam: instructor.getExams(t))
-                				printExam(exam, ical);
-                		} else if (t.getType() == ExamType.sExamTypeMidterm && type.canNoRoleReportExamMidterm()) {
-                			for (Exam exam: instructor.getExams(t))
-                				printExam(exam, ical);
-                		}
-                	}
-                    if (instructor.getDepartment().getSession().getStatusType().canNoRoleReportClass()) {
-                        for (ClassInstructor ci: instructor.getClasses()) {
-                            printClass(ci.getClassInstructing().getSchedulingSubpart().getInstrOfferingConfig().getControllingCourseOffering(), ci.getClassInstructing(), ical);
-                        }
-                    }
-                }
-                for (Student student: (List<Student>)hibSession.createQuery("select s from Student s where " +
-                		"s.externalUniqueId=:externalId and s.session.uniqueId = :sessionId").
-                		setLong("sessionId", sessionId).setString("externalId", userId).list()) {
-                	if (!PersonalizedExamReportAction.canDisplay(student.getSession())) continue;
-                	for (ExamType t: ExamType.findAll(hibSession)) {
-                		ExamStatus status = ExamStatus.findStatus(hibSession, student.getSession().getUniqueId(), t.getUniqueId());
-                		DepartmentStatusType type = (status == null || status.getStatus() == null ? student.getSession().getStatusType() : status.getStatus());
-                		if (t.getType() == ExamType.sExamTypeFinal && type.canNoRoleReportExamFinal()) {
-                			for (Exam exam: student.getExams(t))
-                				printExam(exam, ical);
-                		} else if (t.getType() == ExamType.sExamTypeMidterm && type.canNoRoleReportExamMidterm()) {
-                			for (Exam exam: student.getExams(t))
-                				printExam(exam, ical);
-                		}
-                	}
-                    if (student.getSession().getStatusType().canNoRoleReportClass()) {
-                        for (Iterator i=student.getClassEnrollments().iterator();i.hasNext();) {
-                            StudentClassEnrollment sce = (StudentClassEnrollment)i.next();
-                            printClass(sce.getCourseOffering(), sce.getClazz(), ical);
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-        	Debug.error(e.getMessage(), e);
-        	response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e.getMessage());
-        }
+		EventsExportEventsToICal exporter = new EventsExportEventsToICal();
+		if (classIds != null && !classIds.isEmpty()) {
+			for (String classId: classIds.split(",")) {
+				if (classId.isEmpty()) continue;
+				String[] courseAndClassId = classId.split("-");
+				if (courseAndClassId.length != 2) continue;
+				CourseOffering course = CourseOfferingDAO.getInstance().get(Long.valueOf(courseAndClassId[0]), hibSession);
+				Class_ clazz = Class_DAO.getInstance().get(Long.valueOf(courseAndClassId[1]), hibSession);
+				if (course == null || clazz == null) continue;
+				printClass(course, clazz, ical, dependencies);
+			}
+		}
+		if (fts != null && !fts.isEmpty()) {
+			Date dpFirstDate = DateUtils.getDate(1, session.getPatternStartMonth(), session.getSessionStartYear());
+			BitSet weekCode = session.getDefaultDatePattern().getPatternBitSet();
+			for (String ft: fts.split(",")) {
+				if (ft.isEmpty()) continue;
+				String[] daysStartLen = ft.split("-");
+				if (daysStartLen.length != 3) continue;
+				printFreeTime(dpFirstDate, weekCode, daysStartLen[0], Integer.parseInt(daysStartLen[1]), Integer.parseInt(daysStartLen[2]), ical);
+			}
+		}
+		if (examIds != null && !examIds.isEmpty()) {
+			for (String examId: examIds.split(",")) {
+				if (examId.isEmpty()) continue;
+				try {
+					Exam exam = ExamDAO.getInstance().get(Long.valueOf(examId), hibSession);
+					if (exam != null)
+						printExam(exam, ical, dependencies);
+				} catch (NumberFormatException e) {}
+			}
+		}
+		if (eventIds != null && !eventIds.isEmpty()) {
+			for (String eventId: eventIds.split(",")) {
+				if (eventId.isEmpty()) continue;
+				try {
+					Event event = EventDAO.getInstance().get(Long.valueOf(eventId), hibSession);
+					if (event != null) {
+						dependencies.add(CalendarFeedCache.Dependency.EVENT.key(event.getUniqueId()));
+						exporter.print(ical, EventDetailBackend.getEventDetail(session, event, null));
+					}
+				} catch (NumberFormatException e) {}
+			}
+		}
+		if (userId != null && !userId.isEmpty()) {
+			for (DepartmentalInstructor instructor: (List<DepartmentalInstructor>)hibSession.createQuery("select i from DepartmentalInstructor i " +
+					"where i.externalUniqueId = :externalId and i.department.session.uniqueId = :sessionId").
+					setLong("sessionId", sessionId).setString("externalId", userId).list()) {
+				dependencies.add(CalendarFeedCache.Dependency.INSTRUCTOR.key(instructor.getUniqueId()));
+				if (!PersonalizedExamReportAction.canDisplay(instructor.getDepartment().getSession())) continue;
+				for (ExamType t: ExamType.findAll(hibSession)) {
+					ExamStatus status = ExamStatus.findStatus(hibSession, instructor.getSession().getUniqueId(), t.getUniqueId());
+					DepartmentStatusType type = (status == null || status.getStatus() == null ? instructor.getSession().getStatusType() : status.getStatus());
+					if (t.getType() == ExamType.sExamTypeFinal && type.canNoRoleReportExamFinal()) {
+						for (Exam exam: instructor.getExams(t))
+							printExam(exam, ical, dependencies);
+					} else if (t.getType() == ExamType.sExamTypeMidterm && type.canNoRoleReportExamMidterm()) {
+						for (Exam exam: instructor.getExams(t))
+							printExam(exam, ical, dependencies);
+					}
+				}
+				if (instructor.getDepartment().getSession().getStatusType().canNoRoleReportClass()) {
+					for (ClassInstructor ci: instructor.getClasses()) {
+						printClass(ci.getClassInstructing().getSchedulingSubpart().getInstrOfferingConfig().getControllingCourseOffering(), ci.getClassInstructing(), ical, dependencies);
+					}
+				}
+			}
+			for (Student student: (List<Student>)hibSession.createQuery("select s from Student s where " +
+					"s.externalUniqueId=:externalId and s.session.uniqueId = :sessionId").
+					setLong("sessionId", sessionId).setString("externalId", userId).list()) {
+				dependencies.add(CalendarFeedCache.Dependency.STUDENT.key(student.getUniqueId()));
+				if (!PersonalizedExamReportAction.canDisplay(student.getSession())) continue;
+				for (ExamType t: ExamType.findAll(hibSession)) {
+					ExamStatus status = ExamStatus.findStatus(hibSession, student.getSession().getUniqueId(), t.getUniqueId());
+					DepartmentStatusType type = (status == null || status.getStatus() == null ? student.getSession().getStatusType() : status.getStatus());
+					if (t.getType() == ExamType.sExamTypeFinal && type.canNoRoleReportExamFinal()) {
+						for (Exam exam: student.getExams(t))
+							printExam(exam, ical, dependencies);
+					} else if (t.getType() == ExamType.sExamTypeMidterm && type.canNoRoleReportExamMidterm()) {
+						for (Exam exam: student.getExams(t))
+							printExam(exam, ical, dependencies);
+					}
+				}
+				if (student.getSession().getStatusType().canNoRoleReportClass()) {
+					for (Iterator i=student.getClassEnrollments().iterator();i.hasNext();) {
+						StudentClassEnrollment sce = (StudentClassEnrollment)i.next();
+						printClass(sce.getCourseOffering(), sce.getClazz(), ical, dependencies);
+					}
+				}
+			}
+		}
 		
-		PrintWriter out = response.getWriter();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Writer out = new OutputStreamWriter(bytes, "UTF-8");
         ICalWriter writer = new ICalWriter(out, ICalVersion.V2_0);
 		try {
 			try {
@@ -288,12 +337,13 @@ public class CalendarServlet extends HttpServlet {
         	writer.flush();
         	out.flush();
 		} finally {
-			out.close();
 			writer.close();
 		}
+		return bytes.toByteArray();
 	}
 
-	private void printExam(Exam exam, ICalendar ical) throws IOException {
+	private void printExam(Exam exam, ICalendar ical, Set<String> dependencies) throws IOException {
+		dependencies.add(CalendarFeedCache.Dependency.EXAM.key(exam.getUniqueId()));
 		if (exam.getAssignedPeriod() == null) return;
 
         VEvent vevent = new VEvent();
@@ -319,7 +369,9 @@ public class CalendarServlet extends HttpServlet {
         ical.addEvent(vevent);
 	}
 
-	private void printClass(CourseOffering course, Class_ clazz, ICalendar ical) throws IOException {
+	private void printClass(CourseOffering course, Class_ clazz, ICalendar ical, Set<String> dependencies) throws IOException {
+		dependencies.add(CalendarFeedCache.Dependency.CLASS.key(clazz.getUniqueId()));
+		dependencies.add(CalendarFeedCache.Dependency.OFFERING.key(clazz.getSchedulingSubpart().getInstrOfferingConfig().getInstructionalOffering().getUniqueId()));
 		Assignment assignment = clazz.getCommittedAssignment();
 		if (assignment == null) return;
 		TimeLocation time = assignment.getTimeLocation();
@@ -98,6 +98,9 @@ import org.unitime.timetable.security.UserContext;
 import org.unitime.timetable.security.permissions.Permission.PermissionDepartment;
 import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.server.curricula.CurriculumFilterBackend;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine.Projection;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine.ProjectionRequest;
 import org.unitime.timetable.test.MakeCurriculaFromLastlikeDemands;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.NameFormat;
@@ -2881,16 +2884,27 @@ public class CurriculaServlet implements CurriculaService {
 						curricula.add(CurriculumDAO.getInstance().get(id, hibSession));
 				}
 				
+				List<AcademicClassification> classifications = (List<AcademicClassification>)hibSession.createQuery(
+						"select c from AcademicClassification c where c.session.uniqueId = :sessionId")
+						.setLong("sessionId", sessionId).setCacheable(true).list();
+				
+				Hashtable<String, Hashtable<String, HashMap<String, Float>>> area2rules = getRules(hibSession);
+				
+				// compute the last-like students of all the curricula at once, in parallel by academic areas
+				List<ProjectionRequest> requests = new ArrayList<ProjectionRequest>();
+				for (Iterator<Curriculum> i = curricula.iterator(); i.hasNext(); ) {
+					Curriculum c = i.next();
+					if (c == null || !getSessionContext().hasPermission(c, Right.CurriculumEdit)) { i.remove(); continue; }
+					requests.add(new ProjectionRequest(c.getUniqueId(), c.getAcademicArea().getAcademicAreaAbbreviation(), getMajorCodes(c.getMajors()), c.isMultipleMajors()));
+				}
+				Map<Long, Projection> projections = CurriculumProjectionEngine.getInstance(hibSession, sessionId).computeProjections(requests, updateCurriculumCourses);
+				
 				for (Curriculum c: curricula) {
-					if (c == null || !getSessionContext().hasPermission(c, Right.CurriculumEdit)) continue;
+					Hashtable<String,HashMap<String, Float>> rules = area2rules.get(c.getAcademicArea().getAcademicAreaAbbreviation());
 					
-					List<AcademicClassification> classifications = (List<AcademicClassification>)hibSession.createQuery(
-							"select c from AcademicClassification c where c.session.uniqueId = :sessionId")
-							.setLong("sessionId", sessionId).setCacheable(true).list();
+					Projection projection = projections.get(c.getUniqueId());
 					
-					Hashtable<String,HashMap<String, Float>> rules = getRules(hibSession, c.getAcademicArea().getUniqueId());
-					
-					Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = loadClasfMajor2ll(hibSession, c);
+					Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = projection.getClasfMajor2ll();
 					
 					int totalProjection = 0;
 					for (AcademicClassification acadClasf: classifications) {
@@ -2942,7 +2956,7 @@ public class CurriculaServlet implements CurriculaService {
 						float shareLimit = ApplicationProperty.CurriculumLastLikeDemandsShareLimit.floatValue();
 						int enrollmentLimit = ApplicationProperty.CurriculumLastLikeDemandsEnrollmentLimit.intValue();
 
-						Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajorCourse2ll = loadClasfMajorCourse2ll(hibSession, c);
+						Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajorCourse2ll = projection.getClasfMajorCourse2ll();
 						
 						Hashtable<Long, Float> courseTotals = new Hashtable<Long, Float>();
 						for (Map.Entry<String, Hashtable<String, Hashtable<Long, Integer>>> clasf: clasfMajorCourse2ll.entrySet()) {
@@ -3502,6 +3516,14 @@ public class CurriculaServlet implements CurriculaService {
 				.setCacheable(true).list();
 	}
 	
+	/** Major codes in the order of the given collection (the first major matters for curricula with multiple majors) */
+	private static List<String> getMajorCodes(Collection<PosMajor> majors) {
+		List<String> codes = new ArrayList<String>();
+		for (PosMajor major: majors)
+			codes.add(major.getCode());
+		return codes;
+	}
+	
 	private Hashtable<Long, Integer> loadClasf2enrl(org.hibernate.Session hibSession, Curriculum c) {
 		List<Object[]> lines = null;
 		String select = "a.academicClassification.uniqueId, count(distinct s)";
@@ -3607,185 +3629,18 @@ public class CurriculaServlet implements CurriculaService {
 	}
 	
 	private Hashtable<String, Hashtable<String, Integer>> loadClasfMajor2ll(org.hibernate.Session hibSession, Curriculum c) {
-		List<Object[]> lines = null;
-		String select = "f.code, m.code, count(distinct s)";
-		String from = "LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f inner join a.major m";
-		String where = "x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv";
-		String group = "f.code, m.code";
-		if (c.getMajors().isEmpty()) {
-			// students with all majors
-			if (!c.isMultipleMajors()) {
-				select = "f.code, '', count(distinct s)";
-				group = "f.code";
-				lines = hibSession.createQuery("select " + select + " from " + from + " where " + where + " group by " + group)
-						.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation())
-						.setCacheable(true).list();
-			}
-		} else if (!c.isMultipleMajors() || c.getMajors().size() == 1) {
-			// students with one major
-			List<String> majorCodes = new ArrayList<String>();
-			for (PosMajor major: c.getMajors())
-				majorCodes.add(major.getCode());
-			lines = hibSession.createQuery("select " + select + " from " + from + " where " + where + " and m.code in :majorCodes group by " + group)
-					.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation())
-					.setParameterList("majorCodes", majorCodes)
-					.setCacheable(true).list();
-		} else {
-			// students with multiple majors
-			select = "f.code, '', count(distinct s)";
-			group = "f.code";
-			Map<String, String> params = new HashMap<String, String>();
-			int idx = 0;
-			for (PosMajor major: c.getMajors()) {
-				if (idx == 0) {
-					where += " and m.code = :m" + idx;
-				} else {
-					from += " inner join s.areaClasfMajors a" + idx;
-					where += " and a" + idx + ".academicArea.academicAreaAbbreviation = :acadAbbv and a" + idx + ".major.code = :m" + idx;
-				}
-				params.put("m" + idx, major.getCode());
-				idx ++;
-			}
-			org.hibernate.Query q = hibSession.createQuery("select " + select + " from " + from + " where " + where + " group by " + group)
-					.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation());
-			for (Map.Entry<String, String> e: params.entrySet())
-				q.setString(e.getKey(), e.getValue());
-			lines = q.setCacheable(true).list();
-		}
-		Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = new Hashtable<String, Hashtable<String,Integer>>();
-		if (lines != null)
-			for (Object[] o: lines) {
-				String clasfCode = (String)o[0];
-				if (clasfCode == null) continue;
-				String majorCode = (String)o[1];
-				if (majorCode == null) majorCode = "";
-				int enrl = ((Number)o[2]).intValue();
-				Hashtable<String, Integer> major2ll = clasfMajor2ll.get(clasfCode);
-				if (major2ll == null) {
-					major2ll = new Hashtable<String, Integer>();
-					clasfMajor2ll.put(clasfCode, major2ll);
-				}
-				major2ll.put(majorCode, enrl);
-			}
-		return clasfMajor2ll;
+		return CurriculumProjectionEngine.getInstance(hibSession, c.getAcademicArea().getSessionId()).getClasfMajor2ll(
+				c.getAcademicArea().getAcademicAreaAbbreviation(), getMajorCodes(c.getMajors()), c.isMultipleMajors());
 	}
 	
 	private Hashtable<String, Integer> loadClasf2ll(org.hibernate.Session hibSession, Curriculum c) {
-		List<Object[]> lines = null;
-		String select = "f.code, count(distinct s)";
-		String from = "LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f";
-		String where = "x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv";
-		String group = "f.code";
-		if (c.getMajors().isEmpty()) {
-			// students with all majors
-			if (!c.isMultipleMajors())
-				lines = hibSession.createQuery("select " + select + " from " + from + " where " + where + " group by " + group)
-					.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation())
-					.setCacheable(true).list();
-		} else if (!c.isMultipleMajors() || c.getMajors().size() == 1) {
-			// students with one major
-			List<String> majorCodes = new ArrayList<String>();
-			for (PosMajor major: c.getMajors())
-				majorCodes.add(major.getCode());
-			lines = hibSession.createQuery("select " + select + " from " + from + " where " + where + " and a.major.code in :majorCodes group by " + group)
-					.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation())
-					.setParameterList("majorCodes", majorCodes)
-					.setCacheable(true).list();
-		} else {
-			// students with multiple majors
-			Map<String, String> params = new HashMap<String, String>();
-			int idx = 0;
-			for (PosMajor major: c.getMajors()) {
-				if (idx == 0) {
-					where += " and a.major.code = :m" + idx;
-				} else {
-					from += " inner join s.areaClasfMajors a" + idx;
-					where += " and a" + idx + ".academicArea.academicAreaAbbreviation = :acadAbbv and a" + idx + ".major.code = :m" + idx;
-				}
-				params.put("m" + idx, major.getCode());
-				idx ++;
-			}
-			org.hibernate.Query q = hibSession.createQuery("select " + select + " from " + from + " where " + where + " group by " + group)
-					.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation());
-			for (Map.Entry<String, String> e: params.entrySet())
-				q.setString(e.getKey(), e.getValue());
-			lines = q.setCacheable(true).list();
-		}
-		Hashtable<String, Integer> clasf2ll = new Hashtable<String, Integer>();
-		if (lines != null)
-			for (Object[] o: lines) {
-				String clasfCode = (String)o[0];
-				int enrl = ((Number)o[1]).intValue();
-				if (clasfCode != null)
-					clasf2ll.put(clasfCode, enrl);
-			}
-		return clasf2ll;
+		return CurriculumProjectionEngine.getInstance(hibSession, c.getAcademicArea().getSessionId()).getClasf2ll(
+				c.getAcademicArea().getAcademicAreaAbbreviation(), getMajorCodes(c.getMajors()), c.isMultipleMajors());
 	}
 	
 	private Hashtable<String, HashMap<String, Set<Long>>> loadClasfMajor2ll(org.hibernate.Session hibSession, String acadAreaAbbv, Collection<PosMajor> majors, boolean multipleMajors) {
-		List<Object[]> lines = null;
-		String select = "f.code, m.code, s.uniqueId";
-		String from = "LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f inner join a.major m";
-		String where = "x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv";
-		if (majors.isEmpty()) {
-			// students with all majors
-			if (!multipleMajors) {
-				select = "f.code, '', s.uniqueId";
-				lines = hibSession.createQuery("select " + select + " from " + from + " where " + where)
-						.setLong("sessionId", getAcademicSessionId()).setString("acadAbbv", acadAreaAbbv)
-						.setCacheable(true).list();
-			}
-		} else if (!multipleMajors || majors.size() == 1) {
-			List<String> codes = new ArrayList<String>();
-			for (PosMajor major: majors)
-				codes.add(major.getCode());
-			// students with one major
-			lines = hibSession.createQuery("select " + select + " from " + from + " where " + where + " and m.code in :majorCodes")
-					.setLong("sessionId", getAcademicSessionId()).setString("acadAbbv", acadAreaAbbv)
-					.setParameterList("majorCodes", codes)
-					.setCacheable(true).list();
-		} else {
-			// students with multiple majors
-			select = "f.code, '', s.uniqueId";
-			Map<String, String> params = new HashMap<String, String>();
-			int idx = 0;
-			for (PosMajor major: majors) {
-				if (idx == 0) {
-					where += " and m.code = :m" + idx;
-				} else {
-					from += " inner join s.areaClasfMajors a" + idx;
-					where += " and a" + idx + ".academicArea.academicAreaAbbreviation = :acadAbbv and a" + idx + ".major.code = :m" + idx;
-				}
-				params.put("m" + idx, major.getCode());
-				idx ++;
-			}
-			org.hibernate.Query q = hibSession.createQuery("select " + select + " from " + from + " where " + where)
-					.setLong("sessionId", getAcademicSessionId()).setString("acadAbbv", acadAreaAbbv);
-			for (Map.Entry<String, String> e: params.entrySet())
-				q.setString(e.getKey(), e.getValue());
-			lines = q.setCacheable(true).list();
-		}
-		Hashtable<String, HashMap<String, Set<Long>>> clasf2ll = new Hashtable<String, HashMap<String, Set<Long>>>();
-		if (lines != null)
-			for (Object[] o : lines) {
-				String clasfCode = (String)o[0];
-				String majorCode = (String)o[1];
-				if (majorCode == null) majorCode = "";
-				Long studentId = (Long)o[2];
-				HashMap<String, Set<Long>> major2students = clasf2ll.get(clasfCode);
-				if (major2students == null) {
-					major2students = new HashMap<String, Set<Long>>();
-					clasf2ll.put(clasfCode, major2students);
-				}
-				Set<Long> students = major2students.get(majorCode);
-				if (students == null) {
-					students = new HashSet<Long>();
-					major2students.put(majorCode, students);
-				}
-				students.add(studentId);
-			}
-		
-		return clasf2ll;
+		return CurriculumProjectionEngine.getInstance(hibSession, getAcademicSessionId()).getClasfMajor2students(
+				acadAreaAbbv, getMajorCodes(majors), multipleMajors);
 	}
 	
 	private Hashtable<Long, Hashtable<Long, Integer>> loadClasfCourse2enrl(org.hibernate.Session hibSession, Curriculum c) {
@@ -3911,174 +3766,13 @@ public class CurriculaServlet implements CurriculaService {
 	}
 	
 	private Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> loadClasfMajorCourse2ll(org.hibernate.Session hibSession, Curriculum c) {
-		String select = "f.code, m.code, co.uniqueId, count(distinct s)";
-		String from = "CourseOffering co, LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f inner join a.major m";
-		String[] checks = new String[] {
-			"x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv and co.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is not null and co.permId=x.coursePermId",
-			"x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv and co.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is null and co.courseNbr=x.courseNbr",
-			"x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv and co.demandOffering.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is not null and co.demandOffering.permId=x.coursePermId",
-			"x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv and co.demandOffering.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is null and co.demandOffering.courseNbr=x.courseNbr"
-		};
-		String group = "f.code, m.code, co.uniqueId";
-		Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajor2course2ll = new Hashtable<String, Hashtable<String, Hashtable<Long,Integer>>>();
-		for (String where: checks) {
-			List<Object[]> lines = null;
-			if (c.getMajors().isEmpty()) {
-				// students with no major
-				if (!c.isMultipleMajors()) {
-					select = "f.code, '', co.uniqueId, count(distinct s)";
-					group = "f.code, co.uniqueId";
-					lines = hibSession.createQuery("select " + select + " from " + from + " where " + where + " group by " + group)
-							.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation())
-							.setCacheable(true).list();
-				}
-			} else if (!c.isMultipleMajors() || c.getMajors().size() == 1) {
-				// students with one major
-				List<String> majorCodes = new ArrayList<String>();
-				for (PosMajor major: c.getMajors())
-					majorCodes.add(major.getCode());
-				lines = hibSession.createQuery("select " + select + " from " + from + " where " + where + " and m.code in :majorCodes group by " + group)
-						.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation())
-						.setParameterList("majorCodes", majorCodes)
-						.setCacheable(true).list();
-			} else {
-				// students with multiple majors
-				select = "f.code, '', co.uniqueId, count(distinct s)";
-				group = "f.code, co.uniqueId";
-				Map<String, String> params = new HashMap<String, String>();
-				int idx = 0;
-				for (PosMajor major: c.getMajors()) {
-					if (idx == 0) {
-						where += " and m.code = :m" + idx;
-					} else {
-						from += " inner join s.areaClasfMajors a" + idx;
-						where += " and a" + idx + ".academicArea.academicAreaAbbreviation = :acadAbbv and a" + idx + ".major.code = :m" + idx;
-					}
-					params.put("m" + idx, major.getCode());
-					idx ++;
-				}
-				org.hibernate.Query q = hibSession.createQuery("select " + select + " from " + from + " where " + where + " group by " + group)
-						.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation());
-				for (Map.Entry<String, String> e: params.entrySet())
-					q.setString(e.getKey(), e.getValue());
-				lines = q.setCacheable(true).list();
-			}
-			if (lines != null)
-				for (Object[] o: lines) {
-					String clasfCode = (String)o[0];
-					if (clasfCode == null) continue;
-					String majorCode = (String)o[1];
-					if (majorCode == null) majorCode = "";
-					Long courseId = (Long)o[2];
-					int enrl = ((Number)o[3]).intValue();
-					Hashtable<String, Hashtable<Long, Integer>> major2course2ll = clasfMajor2course2ll.get(clasfCode);
-					if (major2course2ll == null) {
-						major2course2ll = new Hashtable<String, Hashtable<Long,Integer>>();
-						clasfMajor2course2ll.put(clasfCode, major2course2ll);
-					}
-					Hashtable<Long, Integer> course2enrl = major2course2ll.get(majorCode);
-					if (course2enrl == null) {
-						course2enrl = new Hashtable<Long, Integer>();
-						major2course2ll.put(majorCode, course2enrl);
-					}
-					course2enrl.put(courseId, enrl);
-				}
-		}
-		return clasfMajor2course2ll;
+		return CurriculumProjectionEngine.getInstance(hibSession, c.getAcademicArea().getSessionId()).getClasfMajorCourse2ll(
+				c.getAcademicArea().getAcademicAreaAbbreviation(), getMajorCodes(c.getMajors()), c.isMultipleMajors());
 	}
 	
 	private Hashtable<String, Hashtable<CourseInterface, HashMap<String, Set<Long>>>> loadClasfCourseMajor2ll(org.hibernate.Session hibSession, String acadAreaAbbv, Collection<PosMajor> majors, boolean multipleMajors) {
-		String select = "f.code, co.uniqueId, co.subjectArea.subjectAreaAbbreviation || ' ' || co.courseNbr, m.code, s.uniqueId";
-		String from = "CourseOffering co, LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f inner join a.major m";
-		String[] checks = new String[] {
-				"x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv and co.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is not null and co.permId=x.coursePermId",
-				"x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv and co.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is null and co.courseNbr=x.courseNbr",
-				"x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv and co.demandOffering.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is not null and co.demandOffering.permId=x.coursePermId",
-				"x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv and co.demandOffering.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is null and co.demandOffering.courseNbr=x.courseNbr"
-		};
-		Hashtable<String, Hashtable<CourseInterface, HashMap<String, Set<Long>>>> clasf2course2ll = new Hashtable<String, Hashtable<CourseInterface,HashMap<String,Set<Long>>>>();
-		for (String where: checks) {
-			List<Object[]> lines = new ArrayList<Object[]>();
-			if (majors.isEmpty()) {
-				// students with no major
-				if (!multipleMajors) {
-					select = "f.code, co.uniqueId, co.subjectArea.subjectAreaAbbreviation || ' ' || co.courseNbr, '', s.uniqueId";
-					lines = hibSession.createQuery("select " + select + " from " + from + " where " + where)
-							.setLong("sessionId", getAcademicSessionId()).setString("acadAbbv", acadAreaAbbv)
-							.setCacheable(true).list();
-				}
-			} else if (!multipleMajors || majors.size() == 1) {
-				List<String> codes = new ArrayList<String>();
-				for (PosMajor major: majors)
-					codes.add(major.getCode());
-				// students with one major
-				lines = hibSession.createQuery("select " + select + " from " + from + " where " + where + " and m.code in :majorCodes")
-						.setLong("sessionId", getAcademicSessionId()).setString("acadAbbv", acadAreaAbbv)
-						.setParameterList("majorCodes", codes)
-						.setCacheable(true).list();
-			} else {
-				// students with multiple majors
-				select = "f.code, co.uniqueId, co.subjectArea.subjectAreaAbbreviation || ' ' || co.courseNbr, '', s.uniqueId";
-				Map<String, String> params = new HashMap<String, String>();
-				int idx = 0;
-				for (PosMajor major: majors) {
-					if (idx == 0) {
-						where += " and m.code = :m" + idx;
-					} else {
-						from += " inner join s.areaClasfMajors a" + idx;
-						where += " and a" + idx + ".academicArea.academicAreaAbbreviation = :acadAbbv and a" + idx + ".major.code = :m" + idx;
-					}
-					params.put("m" + idx, major.getCode());
-					idx ++;
-				}
-				org.hibernate.Query q = hibSession.createQuery("select " + select + " from " + from + " where " + where)
-						.setLong("sessionId", getAcademicSessionId()).setString("acadAbbv", acadAreaAbbv);
-				for (Map.Entry<String, String> e: params.entrySet())
-					q.setString(e.getKey(), e.getValue());
-				lines = q.setCacheable(true).list();
-			}
-			if (lines != null)
-				for (Object[] o : lines) {
-					String clasfCode = (String)o[0];
-					Long courseId = (Long)o[1];
-					String courseName = (String)o[2];
-					String majorCode = (String)o[3];
-					if (majorCode == null) majorCode = "";
-					Long studentId = (Long)o[4];
-					CourseInterface course = new CourseInterface();
-					course.setId(courseId);
-					course.setCourseName(courseName);
-					Hashtable<CourseInterface, HashMap<String,Set<Long>>> course2ll = clasf2course2ll.get(clasfCode);
-					if (course2ll == null) {
-						course2ll = new Hashtable<CourseInterface, HashMap<String,Set<Long>>>();
-						clasf2course2ll.put(clasfCode, course2ll);
-					}
-					HashMap<String,Set<Long>> major2students = course2ll.get(course);
-					if (major2students == null) {
-						major2students = new HashMap<String, Set<Long>>();
-						course2ll.put(course, major2students);
-					}
-					if (multipleMajors && majors.size() > 1) {
-						for (PosMajor major: majors) {
-							Set<Long> students = major2students.get(major.getCode());
-							if (students == null) {
-								students = new HashSet<Long>();
-								major2students.put(major.getCode(), students);
-							}
-							students.add(studentId);
-						}
-					} else {
-						Set<Long> students = major2students.get(majorCode);
-						if (students == null) {
-							students = new HashSet<Long>();
-							major2students.put(majorCode, students);
-						}
-						students.add(studentId);
-					}
-				}			
-		}
-		
-		return clasf2course2ll;
+		return CurriculumProjectionEngine.getInstance(hibSession, getAcademicSessionId()).getClasfCourseMajor2students(
+				acadAreaAbbv, getMajorCodes(majors), multipleMajors);
 	}
 	
 	private Map<Long, Map<Long, Map<Long, Set<Long>>>> loadAreaMajorClasf2enrl(org.hibernate.Session hibSession, Long courseOfferingId) {
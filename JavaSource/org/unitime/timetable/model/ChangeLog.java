@@ -31,6 +31,7 @@ import org.unitime.timetable.model.base.BaseChangeLog;
 import org.unitime.timetable.model.dao.ChangeLogDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.security.SessionContext;
+import org.unitime.timetable.util.CalendarFeedCache;
 import org.unitime.timetable.util.Formats;
 
 
@@ -263,6 +264,7 @@ public class ChangeLog extends BaseChangeLog implements Comparable {
                 hibSession.saveOrUpdate(chl);
             else
                 new ChangeLogDAO().saveOrUpdate(chl); 
+            CalendarFeedCache.invalidateAfterCommit(hibSession, session.getUniqueId(), object);
             
         } catch (Exception e) {
             Debug.error(e);
@@ -47,6 +47,7 @@ import org.unitime.timetable.model.dao.StudentDAO;
 import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.solver.exam.ui.ExamAssignment;
 import org.unitime.timetable.solver.exam.ui.ExamAssignmentInfo;
+import org.unitime.timetable.solver.exam.ui.ExamAssignmentLoader;
 import org.unitime.timetable.solver.exam.ui.ExamInfo;
 import org.unitime.timetable.solver.exam.ui.ExamRoomInfo;
 import org.unitime.timetable.util.Constants;
@@ -605,6 +606,13 @@ public class Exam extends BaseExam implements Comparable<Exam> {
                 setLong("sessionId", sessionId).setLong("typeId", type.getUniqueId()).setCacheable(true).uniqueResult()).longValue()>0;
     }
 
+    private static List<Exam> toExams(List<?> list) {
+    	List<Exam> exams = new ArrayList<Exam>(list.size());
+    	for (Object o: list)
+    		exams.add((Exam)o);
+    	return exams;
+    }
+
     public static Collection<ExamAssignmentInfo> findAssignedExams(Long sessionId, Long examTypeId) {
         Vector<ExamAssignmentInfo> ret = new Vector<ExamAssignmentInfo>();
         List exams = new ExamDAO().getSession().createQuery(
@@ -613,6 +621,10 @@ public class Exam extends BaseExam implements Comparable<Exam> {
                 setLong("sessionId", sessionId).
                 setLong("examTypeId", examTypeId).
                 setCacheable(true).list();
+        if (ExamAssignmentLoader.isEnabled()) {
+        	ret.addAll(new ExamAssignmentLoader(sessionId, examTypeId).getAssignedExams(toExams(exams)));
+        	return ret;
+        }
         for (Iterator i=exams.iterator();i.hasNext();) {
             Exam exam = (Exam)i.next();
             ret.add(new ExamAssignmentInfo(exam));
@@ -647,6 +659,10 @@ public class Exam extends BaseExam implements Comparable<Exam> {
                 setLong("examTypeId", examTypeId).
                 setLong("subjectAreaId", subjectAreaId).
                 setCacheable(true).list();
+        if (ExamAssignmentLoader.isEnabled()) {
+        	ret.addAll(new ExamAssignmentLoader(sessionId, examTypeId).getAssignedExams(toExams(exams)));
+        	return ret;
+        }
         for (Iterator i=exams.iterator();i.hasNext();) {
             Exam exam = (Exam)i.next();
             ret.add(new ExamAssignmentInfo(exam));
@@ -682,6 +698,11 @@ public class Exam extends BaseExam implements Comparable<Exam> {
                 setLong("locationId", locationId).
                 setLong("examTypeId", examTypeId).
                 setCacheable(true).list();
+        if (ExamAssignmentLoader.isEnabled()) {
+        	if (!exams.isEmpty())
+        		ret.addAll(new ExamAssignmentLoader(((Exam)exams.get(0)).getSession().getUniqueId(), examTypeId).getAssignedExams(toExams(exams)));
+        	return ret;
+        }
         for (Iterator i=exams.iterator();i.hasNext();) {
             Exam exam = (Exam)i.next();
             ret.add(new ExamAssignmentInfo(exam));
@@ -698,6 +719,11 @@ public class Exam extends BaseExam implements Comparable<Exam> {
                 setLong("instructorId", instructorId).
                 setLong("examTypeId", examTypeId).
                 setCacheable(true).list();
+        if (ExamAssignmentLoader.isEnabled()) {
+        	if (!exams.isEmpty())
+        		ret.addAll(new ExamAssignmentLoader(((Exam)exams.get(0)).getSession().getUniqueId(), examTypeId).getAssignedExams(toExams(exams)));
+        	return ret;
+        }
         for (Iterator i=exams.iterator();i.hasNext();) {
             Exam exam = (Exam)i.next();
             ret.add(new ExamAssignmentInfo(exam));
@@ -861,6 +887,7 @@ public class Exam extends BaseExam implements Comparable<Exam> {
                     dept);
 
             tx.commit();
+            ExamAssignmentLoader.invalidate(getSession().getUniqueId());
             return null;
         } catch (Exception e) {
             if (tx!=null) tx.rollback();
@@ -926,6 +953,7 @@ public class Exam extends BaseExam implements Comparable<Exam> {
                     dept);
 
             if (tx!=null) tx.commit();
+            ExamAssignmentLoader.invalidate(getSession().getUniqueId());
             return null;
         } catch (Exception e) {
             if (tx!=null) tx.rollback();
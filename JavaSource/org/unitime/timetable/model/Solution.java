@@ -64,6 +64,7 @@ import org.unitime.timetable.model.dao.InstructionalOfferingDAO;
 import org.unitime.timetable.model.dao.LocationDAO;
 import org.unitime.timetable.model.dao.SolutionDAO;
 import org.unitime.timetable.model.dao.SolutionInfoDAO;
+import org.unitime.timetable.solver.ClassAssignmentCache;
 import org.unitime.timetable.solver.ClassAssignmentProxy;
 import org.unitime.timetable.solver.ui.AssignmentPreferenceInfo;
 import org.unitime.timetable.solver.ui.PropertiesInfo;
@@ -130,6 +131,7 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 	
 	public void uncommitSolution(org.hibernate.Session hibSession, String sendNotificationPuid) {
 		if (DEBUG) sLog.debug("uncommit["+getUniqueId()+","+getOwner().getName()+"] -------------------------------------------------------");
+		ClassAssignmentCache.clearInstance();
 		setCommitDate(null);
 		setCommited(Boolean.FALSE);
 
@@ -260,6 +262,7 @@ public class Solution extends BaseSolution implements ClassAssignmentProxy {
 			}
 		}
 		if (DEBUG) sLog.debug("commit["+getUniqueId()+","+getOwner().getName()+"] -------------------------------------------------------");
+		ClassAssignmentCache.clearInstance();
 			
 		boolean isOK = true;
 		if (ownerIds != null && ownerIds.length > 1 && ownerIds.length <= 1000) {
@@ -19,28 +19,22 @@
 */
 package org.unitime.timetable.model;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
-import org.dom4j.io.OutputFormat;
-import org.dom4j.io.SAXReader;
-import org.dom4j.io.XMLWriter;
 import org.hibernate.HibernateException;
 import org.unitime.commons.Debug;
 import org.unitime.timetable.model.base.BaseSolverInfo;
 import org.unitime.timetable.solver.ui.FileInfo;
 import org.unitime.timetable.solver.ui.TimetableInfo;
 import org.unitime.timetable.solver.ui.TimetableInfoFileProxy;
+import org.unitime.timetable.solver.ui.TimetableInfoFormat;
 import org.unitime.timetable.solver.ui.TimetableInfoUtil;
 
 
@@ -137,16 +131,16 @@ public class SolverInfo extends BaseSolverInfo {
 	
 	public void delete(org.hibernate.Session hibSession, TimetableInfoFileProxy proxy) throws Exception {
 		if (getData()!=null) {
-			Element root = getValue().getRootElement();
+			String rootName = TimetableInfoFormat.readRootName(getData());
             Class infoClass = null;
             try {
-                infoClass = Class.forName(root.getName());
+                infoClass = Class.forName(rootName);
             } catch (ClassNotFoundException ex) {
                 infoClass = Class.forName(getDefinition().getImplementation());
             }
 			TimetableInfo info = (TimetableInfo)infoClass.getConstructor(new Class[] {}).newInstance(new Object[] {});
 			if (info instanceof FileInfo) {
-				info.load(root);
+				info.load(getValue().getRootElement());
 				((FileInfo)info).deleteFile(proxy);
 			}
 		}
@@ -242,13 +236,12 @@ public class SolverInfo extends BaseSolverInfo {
     	}
     }
 	
+	/**
+	 * Decoded info document, both the binary and the legacy (GZIP-compressed XML) formats are read
+	 */
 	public Document getValue() {
 		try {
-			SAXReader reader = new SAXReader();
-			GZIPInputStream gzipInput = new GZIPInputStream(new ByteArrayInputStream(getData()));
-			Document document = reader.read(gzipInput);
-			gzipInput.close();
-			return document;
+			return TimetableInfoFormat.read(getData());
 		} catch (IOException e) {
 			throw new HibernateException(e.getMessage(),e);
 		} catch (DocumentException e) {
@@ -256,20 +249,37 @@ public class SolverInfo extends BaseSolverInfo {
 		}
 	}
 	
+	/**
+	 * Encode the info document, the binary format is used unless disabled by the unitime.solverInfo.binary property
+	 */
 	public void setValue(Document document) {
 		try {
 			if (document == null) {
 				setData(null);
 			} else {
-				 ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-	             XMLWriter writer = new XMLWriter(new GZIPOutputStream(bytes),OutputFormat.createCompactFormat());
-	             writer.write(document);
-	             writer.flush(); writer.close();
-	             setData(bytes.toByteArray());
+				setData(TimetableInfoFormat.write(document));
 			}
 		} catch (IOException e) {
 			throw new HibernateException(e.getMessage(),e);
 		}
 	}
 	
+	/**
+	 * Convert the stored info into the given format (without decoding it into a {@link TimetableInfo}).
+	 * @return true if the data have been changed
+	 */
+	public boolean convert(boolean binary) {
+		try {
+			byte[] data = getData();
+			byte[] converted = TimetableInfoFormat.convert(data, binary);
+			if (converted == data) return false;
+			setData(converted);
+			return true;
+		} catch (IOException e) {
+			throw new HibernateException(e.getMessage(),e);
+		} catch (DocumentException e) {
+			throw new HibernateException(e.getMessage(),e);
+		}
+	}
+	
 }
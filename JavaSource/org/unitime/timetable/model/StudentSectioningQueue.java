@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
@@ -40,6 +41,7 @@ import org.hibernate.HibernateException;
 import org.unitime.timetable.model.base.BaseStudentSectioningQueue;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.util.CalendarFeedCache;
 
 /**
  * @author Tomas Muller
@@ -140,6 +142,7 @@ public class StudentSectioningQueue extends BaseStudentSectioningQueue implement
 		}
 		q.setMessage(d);
 		hibSession.save(q);
+		invalidateCalendarFeeds(hibSession, sessionId, type, ids);
 	}
 	
 	protected static void addItem(org.hibernate.Session hibSession, UserContext user, Long sessionId, Type type, Long... ids) {
@@ -159,6 +162,32 @@ public class StudentSectioningQueue extends BaseStudentSectioningQueue implement
 		}
 		q.setMessage(d);
 		hibSession.save(q);
+		invalidateCalendarFeeds(hibSession, sessionId, type, ids == null ? null : Arrays.asList(ids));
+	}
+	
+	/**
+	 * Drop the cached calendar feeds that are affected by the change: the feeds of the changed students, classes, or offerings,
+	 * or all the feeds of the academic session when no ids are given or the session has changed.
+	 * The feeds are dropped once the transaction of the given hibernate session is committed, so that no feed is rendered from the old data in between.
+	 */
+	protected static void invalidateCalendarFeeds(org.hibernate.Session hibSession, Long sessionId, Type type, Collection<Long> ids) {
+		if (ids == null || ids.isEmpty()) {
+			CalendarFeedCache.invalidateAfterCommit(hibSession, sessionId);
+			return;
+		}
+		switch (type) {
+		case STUDENT_ENROLLMENT_CHANGE:
+			CalendarFeedCache.invalidateAfterCommit(hibSession, CalendarFeedCache.Dependency.STUDENT, ids);
+			break;
+		case CLASS_ASSIGNMENT_CHANGE:
+			CalendarFeedCache.invalidateAfterCommit(hibSession, CalendarFeedCache.Dependency.CLASS, ids);
+			break;
+		case OFFERING_CHANGE:
+			CalendarFeedCache.invalidateAfterCommit(hibSession, CalendarFeedCache.Dependency.OFFERING, ids);
+			break;
+		default:
+			CalendarFeedCache.invalidateAfterCommit(hibSession, sessionId);
+		}
 	}
 	
 	public List<Long> getIds() {
@@ -118,7 +118,7 @@ public class MultiLock {
 		}
 	}
 	
-	private void unlock(Collection<Long> ids) {
+	protected void unlock(Collection<Long> ids) {
 		iLock.lock();
 		try {
 			if (ids == null || ids.isEmpty()) return;
@@ -155,7 +155,7 @@ public class MultiLock {
 	public class Unlock implements OnlineSectioningServer.Lock {
 		private Collection<Long> iIds;
 		
-		private Unlock(Collection<Long> ids) {
+		protected Unlock(Collection<Long> ids) {
 			iIds = ids;
 		}
 		
@@ -166,7 +166,7 @@ public class MultiLock {
 
 	public class UnlockAll implements OnlineSectioningServer.Lock {
 		
-		private UnlockAll() {
+		protected UnlockAll() {
 		}
 		
 		public void release() {
@@ -19,36 +19,63 @@
 */
 package org.unitime.timetable.onlinesectioning;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.CacheMode;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.Session;
-import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.dao.OnlineSectioningLogDAO;
-import org.unitime.timetable.model.dao.SessionDAO;
-import org.unitime.timetable.model.dao.StudentDAO;
 
 /**
+ * Persists the online sectioning log actions. The actions are recorded into a bounded non-blocking queue
+ * (the recording thread never waits for a lock) and persisted by the logger thread in batches: either
+ * when the batch size is reached or after the flush interval has elapsed. When a log file is set,
+ * the actions are written there by the logger thread as well (in the protobuf text format, or as length-delimited
+ * protobuf messages when unitime.sectioning.log.file.binary is set to true, see
+ * {@link OnlineSectioningLog.Action#parseDelimitedFrom(java.io.InputStream)}). Actions that are dropped because the
+ * limit of unpersisted actions has been reached are still written into the log file (this is the only case when
+ * the recording thread writes into the file itself).
+ * 
  * @author Tomas Muller
  */
 public class OnlineSectioningLogger extends Thread {
 	private static Log sLog = LogFactory.getLog(OnlineSectioningLogger.class);
-	private List<OnlineSectioningLog.Action> iActions = new Vector<OnlineSectioningLog.Action>();
-	private boolean iActive = false;
+	private Queue<Record> iActions = new ConcurrentLinkedQueue<Record>();
+	private AtomicInteger iQueueSize = new AtomicInteger(0);
+	private volatile boolean iActive = false;
 	private boolean iEnabled = false;
 	private int iLogLimit = -1;
-	private PrintWriter iOut = null;
+	private int iBatchSize = 100;
+	private long iFlushInterval = 60000;
+	private OutputStream iOut = null;
+	private PrintWriter iTextOut = null;
+	private Object iFileLock = new Object();
+	
+	private AtomicLong iRecorded = new AtomicLong(0), iDropped = new AtomicLong(0), iPersisted = new AtomicLong(0), iFailed = new AtomicLong(0);
+	private AtomicLong iMaxLag = new AtomicLong(0), iFlushCount = new AtomicLong(0), iFlushTime = new AtomicLong(0), iMaxFlushTime = new AtomicLong(0);
+	private long iLastDropped = 0;
 	
 	private static OnlineSectioningLogger sInstance = null;
 	
@@ -80,9 +107,15 @@ public class OnlineSectioningLogger extends Thread {
 		setDaemon(true);
 		iEnabled = ApplicationProperty.OnlineSchedulingLoggingEnabled.isTrue(); 
 		iLogLimit = ApplicationProperty.OnlineSchedulingLogLimit.intValue();
+		iBatchSize = Math.max(1, ApplicationProperty.OnlineSchedulingLogBatchSize.intValue());
+		iFlushInterval = Math.max(1, ApplicationProperty.OnlineSchedulingLogFlushInterval.intValue()) * 1000l;
 		try {
-			if (ApplicationProperty.OnlineSchedulingLogFile.value() != null)
-				iOut = new PrintWriter(new FileWriter(new File(ApplicationProperty.OnlineSchedulingLogFile.value()), true));
+			if (ApplicationProperty.OnlineSchedulingLogFile.value() != null) {
+				if (ApplicationProperty.OnlineSchedulingLogFileBinary.isTrue())
+					iOut = new BufferedOutputStream(new FileOutputStream(new File(ApplicationProperty.OnlineSchedulingLogFile.value()), true));
+				else
+					iTextOut = new PrintWriter(new FileWriter(new File(ApplicationProperty.OnlineSchedulingLogFile.value()), true));
+			}
 		} catch (IOException e) {
 			sLog.warn("Unable to create sectioning log: " + e.getMessage(), e);
 		}
@@ -96,106 +129,248 @@ public class OnlineSectioningLogger extends Thread {
 		if (log == null || !isEnabled() || !isActive()) return;
 		for (OnlineSectioningLog.Action action: log.getActionList()) {
 			if (action.hasStartTime() && action.hasStudent() && action.hasOperation() && action.hasSession() && ApplicationProperty.OnlineSchedulingLogOperation.isTrue(action.getOperation())) {
-				synchronized (iActions) {
-					if (iLogLimit <= 0 || iActions.size() < iLogLimit)
-						iActions.add(action);
+				int size = iQueueSize.incrementAndGet();
+				if (iLogLimit > 0 && size > iLogLimit) {
+					iQueueSize.decrementAndGet();
+					iDropped.incrementAndGet();
+					// not persisted, but still written into the log file (if there is one)
+					if (iOut != null || iTextOut != null)
+						writeToFile(Collections.singletonList(new Record(action)));
+					continue;
+				}
+				iActions.offer(new Record(action));
+				iRecorded.incrementAndGet();
+				if (size == iBatchSize)
+					LockSupport.unpark(this);
+			}
+		}
+	}
+	
+	/** Number of actions waiting to be persisted */
+	public int getQueueSize() { return iQueueSize.get(); }
+	/** Number of actions recorded */
+	public long getRecordedCount() { return iRecorded.get(); }
+	/** Number of actions dropped (not persisted, only written into the log file if there is one) because the limit of unpersisted actions was reached */
+	public long getDroppedCount() { return iDropped.get(); }
+	/** Number of actions persisted */
+	public long getPersistedCount() { return iPersisted.get(); }
+	/** Number of actions that failed to persist */
+	public long getFailedCount() { return iFailed.get(); }
+	/** Longest time between an action was recorded and persisted in milliseconds */
+	public long getMaxLag() { return iMaxLag.get(); }
+	/** Number of flushes */
+	public long getFlushCount() { return iFlushCount.get(); }
+	/** Average time of a flush in milliseconds */
+	public double getAverageFlushTime() { long flushes = iFlushCount.get(); return (flushes == 0 ? 0.0 : iFlushTime.get() / 1000000.0 / flushes); }
+	/** Longest time of a flush in milliseconds */
+	public double getMaxFlushTime() { return iMaxFlushTime.get() / 1000000.0; }
+	
+	public Map<String, String> getStatistics() {
+		Map<String, String> ret = new HashMap<String, String>();
+		ret.put("Queued", String.valueOf(getQueueSize()));
+		ret.put("Recorded", String.valueOf(getRecordedCount()));
+		ret.put("Dropped", String.valueOf(getDroppedCount()));
+		ret.put("Persisted", String.valueOf(getPersistedCount()));
+		ret.put("Failed", String.valueOf(getFailedCount()));
+		ret.put("Max Lag [ms]", String.valueOf(getMaxLag()));
+		ret.put("Flushes", String.valueOf(getFlushCount()));
+		ret.put("Average Flush Time [ms]", String.valueOf(getAverageFlushTime()));
+		ret.put("Max Flush Time [ms]", String.valueOf(getMaxFlushTime()));
+		return ret;
+	}
+	
+	@Override
+	public String toString() {
+		return "OnlineSectioningLogger{queued=" + getQueueSize() + ", recorded=" + getRecordedCount() + ", dropped=" + getDroppedCount() +
+				", persisted=" + getPersistedCount() + ", failed=" + getFailedCount() + ", maxLag=" + getMaxLag() + "ms, flushes=" + getFlushCount() +
+				", avgFlush=" + getAverageFlushTime() + "ms, maxFlush=" + getMaxFlushTime() + "ms}";
+	}
+	
+	private List<Record> poll(int limit) {
+		List<Record> ret = new ArrayList<Record>(Math.min(limit, Math.max(1, iQueueSize.get())));
+		Record record;
+		while (ret.size() < limit && (record = iActions.poll()) != null) {
+			iQueueSize.decrementAndGet();
+			ret.add(record);
+		}
+		return ret;
+	}
+	
+	private void flush() {
+		long t0 = System.nanoTime();
+		long dropped = iDropped.get();
+		if (dropped > iLastDropped) {
+			sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, " + (dropped - iLastDropped) + " messages have been dropped" +
+					(iOut != null || iTextOut != null ? " (they are only in the " + ApplicationProperty.OnlineSchedulingLogFile.value() + " log file)." : "."));
+			iLastDropped = dropped;
+		}
+		List<Record> batch = poll(iBatchSize);
+		if (batch.isEmpty()) return;
+		org.hibernate.Session hibSession = createSession();
+		try {
+			while (!batch.isEmpty()) {
+				writeToFile(batch);
+				try {
+					persist(hibSession, batch);
+					iPersisted.addAndGet(batch.size());
+					long lag = System.currentTimeMillis() - batch.get(0).getTimeStamp();
+					long max = iMaxLag.get();
+					while (lag > max && !iMaxLag.compareAndSet(max, lag))
+						max = iMaxLag.get();
+				} catch (Throwable t) {
+					iFailed.addAndGet(batch.size());
+					sLog.warn("Failed to save " + batch.size() + " log actions: " + t.getMessage(), t);
+					// a hibernate session cannot be used after an exception, continue with a new one
+					try {
+						hibSession.close();
+					} catch (Throwable x) {}
+					hibSession = createSession();
 				}
+				batch = poll(iBatchSize);
+			}
+		} finally {
+			hibSession.close();
+		}
+		long time = System.nanoTime() - t0;
+		iFlushCount.incrementAndGet();
+		iFlushTime.addAndGet(time);
+		long max = iMaxFlushTime.get();
+		while (time > max && !iMaxFlushTime.compareAndSet(max, time))
+			max = iMaxFlushTime.get();
+		if (sLog.isDebugEnabled())
+			sLog.debug("Flushed in " + (time / 1000000) + " ms: " + this);
+	}
+	
+	private org.hibernate.Session createSession() {
+		org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
+		hibSession.setCacheMode(CacheMode.IGNORE);
+		return hibSession;
+	}
+	
+	/**
+	 * Write actions into the log file, called by the logger thread and also by the recording threads for the dropped actions
+	 */
+	private void writeToFile(List<Record> batch) {
+		synchronized (iFileLock) {
+			try {
 				if (iOut != null) {
-					synchronized (iOut) {
-						iOut.print(OnlineSectioningLog.Log.newBuilder().addAction(action).build().toString());
-						iOut.flush();
-					}
+					for (Record record: batch)
+						record.getAction().writeDelimitedTo(iOut);
+					iOut.flush();
+				} else if (iTextOut != null) {
+					for (Record record: batch)
+						iTextOut.print(OnlineSectioningLog.Log.newBuilder().addAction(record.getAction()).build().toString());
+					iTextOut.flush();
+				}
+			} catch (IOException e) {
+				sLog.warn("Failed to write " + batch.size() + " log actions: " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	private void persist(org.hibernate.Session hibSession, List<Record> batch) {
+		Set<Long> studentIds = new HashSet<Long>();
+		for (Record record: batch) {
+			OnlineSectioningLog.Action q = record.getAction();
+			if (!q.getStudent().hasExternalId() || q.getStudent().getExternalId().isEmpty())
+				studentIds.add(q.getStudent().getUniqueId());
+		}
+		Map<Long, String> externalIds = new HashMap<Long, String>();
+		if (!studentIds.isEmpty()) {
+			for (Object[] o: (List<Object[]>)hibSession.createQuery(
+					"select s.uniqueId, s.externalUniqueId from Student s where s.uniqueId in :studentIds"
+					).setParameterList("studentIds", studentIds).list()) {
+				externalIds.put((Long)o[0], (String)o[1]);
+			}
+		}
+		for (Record record: batch) {
+			OnlineSectioningLog.Action q = record.getAction();
+			org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
+			log.setAction(q.toByteArray());
+			log.setOperation(q.getOperation());
+			String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
+			if (studentExternalId == null || studentExternalId.isEmpty()) {
+				studentExternalId = externalIds.get(q.getStudent().getUniqueId());
+				if (studentExternalId == null) continue;
+			}
+			log.setStudent(studentExternalId);
+			log.setTimeStamp(new Date(q.getStartTime()));
+			if (q.hasResult())
+				log.setResult(q.getResult().getNumber());
+			if (q.hasUser() && q.getUser().hasExternalId())
+				log.setUser(q.getUser().getExternalId());
+			if (q.hasCpuTime())
+				log.setCpuTime(q.getCpuTime());
+			if (q.hasStartTime() && q.hasEndTime())
+				log.setWallTime(q.getEndTime() - q.getStartTime());
+			if (q.hasApiGetTime())
+				log.setApiGetTime(q.getApiGetTime());
+			if (q.hasApiPostTime())
+				log.setApiPostTime(q.getApiPostTime());
+			if (q.hasApiException())
+				log.setApiException(q.getApiException() != null && q.getApiException().length() > 255 ? q.getApiException().substring(0, 255) : q.getApiException());
+			if (!q.getMessageList().isEmpty()) {
+				String message = null; int level = 0;
+				for (OnlineSectioningLog.Message m: q.getMessageList()) {
+					if (message != null && !message.isEmpty() && (!m.hasLevel() || level < m.getLevel().getNumber())) continue;
+					if (m.hasText()) { message = m.getText(); level = m.getLevel().getNumber(); }
+					else if (m.hasException()) { message = m.getException(); level = m.getLevel().getNumber(); }
 				}
+				if (message != null && !message.isEmpty())
+					log.setMessage(message.length() > 255 ? message.substring(0, 255) : message);
 			}
+			log.setSession((Session)hibSession.load(Session.class, q.getSession().getUniqueId()));
+			hibSession.save(log);
 		}
+		// the inserts are sent to the database in JDBC batches of the hibernate.jdbc.batch_size
+		hibSession.flush();
+		hibSession.clear();
 	}
 	
 	public void run() {
 		sLog.info("Online Sectioning Logger is up.");
 		try {
 			iActive = true;
+			long nextFlush = System.currentTimeMillis() + iFlushInterval;
 			while (true) {
-				try {
-					sleep(60000);
-				} catch (InterruptedException e) {
-				}
-				List<OnlineSectioningLog.Action> actionsToSave = null;
-				synchronized (iActions) {
-					if (!iActions.isEmpty()) {
-						actionsToSave = new ArrayList<OnlineSectioningLog.Action>(iActions);
-						iActions.clear();
-					}
+				long now = System.currentTimeMillis();
+				if (iActive && now < nextFlush && iQueueSize.get() < iBatchSize) {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(nextFlush - now));
+					Thread.interrupted();
+					if (iActive && System.currentTimeMillis() < nextFlush && iQueueSize.get() < iBatchSize) continue;
 				}
 				try {
-					if (actionsToSave != null) {
-						sLog.debug("Persisting " + actionsToSave.size() + " actions...");
-						if (iLogLimit > 0 && actionsToSave.size() >= iLogLimit)
-							sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, some messages have been dropped.");
-						org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
-						hibSession.setCacheMode(CacheMode.IGNORE);
-						try {
-							Hashtable<Long, Session> sessions = new Hashtable<Long, Session>();
-							for (OnlineSectioningLog.Action q: actionsToSave) {
-								org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
-								log.setAction(q.toByteArray());
-								log.setOperation(q.getOperation());
-								String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
-								if (studentExternalId == null || studentExternalId.isEmpty()) {
-									Student student = StudentDAO.getInstance().get(q.getStudent().getUniqueId(), hibSession);
-									if (student == null) continue;
-									studentExternalId = student.getExternalUniqueId();
-								}
-								log.setStudent(studentExternalId);
-								log.setTimeStamp(new Date(q.getStartTime()));
-								if (q.hasResult())
-									log.setResult(q.getResult().getNumber());
-								if (q.hasUser() && q.getUser().hasExternalId())
-									log.setUser(q.getUser().getExternalId());
-								if (q.hasCpuTime())
-									log.setCpuTime(q.getCpuTime());
-								if (q.hasStartTime() && q.hasEndTime())
-									log.setWallTime(q.getEndTime() - q.getStartTime());
-								if (q.hasApiGetTime())
-									log.setApiGetTime(q.getApiGetTime());
-								if (q.hasApiPostTime())
-									log.setApiPostTime(q.getApiPostTime());
-								if (q.hasApiException())
-									log.setApiException(q.getApiException() != null && q.getApiException().length() > 255 ? q.getApiException().substring(0, 255) : q.getApiException());
-								if (!q.getMessageList().isEmpty()) {
-									String message = null; int level = 0;
-									for (OnlineSectioningLog.Message m: q.getMessageList()) {
-										if (message != null && !message.isEmpty() && (!m.hasLevel() || level < m.getLevel().getNumber())) continue;
-										if (m.hasText()) { message = m.getText(); level = m.getLevel().getNumber(); }
-										else if (m.hasException()) { message = m.getException(); level = m.getLevel().getNumber(); }
-									}
-									if (message != null && !message.isEmpty())
-										log.setMessage(message.length() > 255 ? message.substring(0, 255) : message);
-								}
-								Long sessionId = q.getSession().getUniqueId();
-								Session session = sessions.get(sessionId);
-								if (session == null) {
-									session = SessionDAO.getInstance().get(sessionId, hibSession);
-									sessions.put(sessionId, session);
-								}
-								log.setSession(session);
-								hibSession.save(log);
-							}
-							hibSession.flush();
-						} finally {
-							hibSession.close();
-						}
-					}
+					flush();
 				} catch (Throwable t) {
-					sLog.warn("Failed to save " + actionsToSave.size() + " log actions: " + t.getMessage(), t);
+					sLog.warn("Failed to save log actions: " + t.getMessage(), t);
 				}
+				nextFlush = System.currentTimeMillis() + iFlushInterval;
 				if (!iActive) break;
 			}
 		} catch (Throwable t) {
 			sLog.error("Online Sectioning Logger failed: " + t.getMessage(), t);
 		} finally {
 			iActive = false;
-			if (iOut != null) { iOut.flush(); iOut.close(); }
+			synchronized (iFileLock) {
+				try {
+					if (iOut != null) { iOut.flush(); iOut.close(); }
+				} catch (IOException e) {}
+				if (iTextOut != null) { iTextOut.flush(); iTextOut.close(); }
+			}
+			sLog.info("Online Sectioning Logger statistics: " + this);
 		}
 		sLog.info("Online Sectioning Logger is down.");	}
+	
+	private static class Record {
+		private OnlineSectioningLog.Action iAction;
+		private long iTimeStamp;
+		
+		private Record(OnlineSectioningLog.Action action) {
+			iAction = action; iTimeStamp = System.currentTimeMillis();
+		}
+		
+		public OnlineSectioningLog.Action getAction() { return iAction; }
+		public long getTimeStamp() { return iTimeStamp; }
+	}
 
 }
@@ -152,6 +152,12 @@ public interface OnlineSectioningServer {
 	@CheckMaster(Master.REQUIRED)
 	public boolean isReady();
 	
+	/**
+	 * True if the server is ready, or if the data of the given offering (its structure and enrollments) are already loaded while the server is still starting up
+	 */
+	@CheckMaster(Master.REQUIRED)
+	public boolean isReady(Long offeringId);
+	
 	public static enum Deadline { NEW, CHANGE, DROP };
 	
 	public boolean checkDeadline(Long courseId, XTime sectionTime, Deadline type);
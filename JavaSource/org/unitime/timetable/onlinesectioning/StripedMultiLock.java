@@ -0,0 +1,355 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Multi-lock with the same semantics as {@link MultiLock} (a set of ids is locked all at once or not at all,
+ * {@link MultiLock#lockAll()} waits for all the individual locks to be released and blocks the new ones),
+ * but without a single global monitor. The ids are spread across a number of stripes, each with its own lock,
+ * and a caller only locks the stripes of the ids it is interested in (always in the same order, so there is no deadlock).
+ * A caller that has to wait is only woken up when the holder of the id it is waiting for releases it.
+ *
+ * @author Tomas Muller
+ */
+public class StripedMultiLock extends MultiLock {
+	private Log iLog = LogFactory.getLog(StripedMultiLock.class);
+	private Stripe[] iStripes;
+	private AtomicReference<Holder> iAllLocked = new AtomicReference<Holder>();
+	private AtomicInteger iActive = new AtomicInteger(0);
+	private Object iDrained = new Object();
+
+	private AtomicLong iLockCount = new AtomicLong(0), iContendedCount = new AtomicLong(0), iWaitTime = new AtomicLong(0), iMaxWaitTime = new AtomicLong(0);
+	private AtomicLong iLockAllCount = new AtomicLong(0), iLockAllWaitTime = new AtomicLong(0);
+
+	public StripedMultiLock(int nrStripes) {
+		super();
+		iLog = LogFactory.getLog(StripedMultiLock.class.getName() + ".lock");
+		init(nrStripes);
+	}
+
+	public StripedMultiLock(AcademicSessionInfo session, int nrStripes) {
+		super(session);
+		iLog = LogFactory.getLog(StripedMultiLock.class.getName() + ".lock[" + session.toCompactString() + "]");
+		init(nrStripes);
+	}
+
+	public StripedMultiLock() {
+		this(64);
+	}
+
+	public StripedMultiLock(AcademicSessionInfo session) {
+		this(session, 64);
+	}
+
+	private void init(int nrStripes) {
+		int size = 1;
+		while (size < nrStripes) size <<= 1;
+		iStripes = new Stripe[size];
+		for (int i = 0; i < size; i++)
+			iStripes[i] = new Stripe();
+	}
+
+	private int stripe(Long id) {
+		long h = id.longValue() * 0x9E3779B97F4A7C15l;
+		return (int)(h >>> 32) & (iStripes.length - 1);
+	}
+
+	/** Stripes of the given ids, in the order in which they are to be locked */
+	private int[] stripes(Collection<Long> ids) {
+		int[] stripes = new int[ids.size()];
+		int idx = 0;
+		for (Long id: ids)
+			stripes[idx++] = stripe(id);
+		Arrays.sort(stripes);
+		int size = 0;
+		for (int i = 0; i < stripes.length; i++)
+			if (size == 0 || stripes[size - 1] != stripes[i]) stripes[size++] = stripes[i];
+		return (size == stripes.length ? stripes : Arrays.copyOf(stripes, size));
+	}
+	
+	private void lockStripes(int[] stripes) {
+		for (int i = 0; i < stripes.length; i++)
+			iStripes[stripes[i]].iLock.lock();
+	}
+	
+	private void unlockStripes(int[] stripes) {
+		for (int i = stripes.length - 1; i >= 0; i--)
+			iStripes[stripes[i]].iLock.unlock();
+	}
+
+	private void enter() {
+		iActive.incrementAndGet();
+	}
+
+	private void leave() {
+		if (iActive.decrementAndGet() == 0 && iAllLocked.get() != null) {
+			synchronized (iDrained) {
+				iDrained.notifyAll();
+			}
+		}
+	}
+
+	@Override
+	public UnlockAll lockAll() {
+		iLog.debug("Locking all ...");
+		long t0 = System.nanoTime();
+		Holder holder = new Holder();
+		while (true) {
+			Holder other = iAllLocked.get();
+			if (other == null) {
+				if (iAllLocked.compareAndSet(null, holder)) break;
+			} else {
+				other.await();
+			}
+		}
+		// new individual locks are blocked now, wait for the existing ones to be released
+		boolean interrupted = false;
+		synchronized (iDrained) {
+			while (iActive.get() > 0) {
+				try {
+					iDrained.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		iLockAllCount.incrementAndGet();
+		iLockAllWaitTime.addAndGet(System.nanoTime() - t0);
+		iLog.debug("Locked: all");
+		return new UnlockAll();
+	}
+
+	@Override
+	public void unlockAll() {
+		iLog.debug("Unlocking all ...");
+		Holder holder = iAllLocked.getAndSet(null);
+		if (holder != null) holder.release();
+		iLog.debug("Unlocked: all");
+	}
+
+	@Override
+	public Unlock lock(Collection<Long> ids) {
+		if (ids == null || ids.isEmpty()) return new Unlock(ids);
+		if (iLog.isDebugEnabled()) iLog.debug("Locking " + ids + " ...");
+		long t0 = System.nanoTime();
+		boolean contended = false;
+		int[] stripes = stripes(ids);
+		Holder holder = new Holder();
+		while (true) {
+			enter();
+			Holder other = iAllLocked.get();
+			if (other != null) {
+				leave();
+				contended = true;
+				other.await();
+				continue;
+			}
+			lockStripes(stripes);
+			try {
+				for (Long id: ids) {
+					other = iStripes[stripe(id)].iOwners.get(id);
+					if (other != null) break;
+				}
+				if (other == null)
+					for (Long id: ids)
+						iStripes[stripe(id)].iOwners.put(id, holder);
+			} finally {
+				unlockStripes(stripes);
+			}
+			if (other == null) break;
+			leave();
+			contended = true;
+			other.await();
+		}
+		iLockCount.incrementAndGet();
+		if (contended) {
+			long wait = System.nanoTime() - t0;
+			iContendedCount.incrementAndGet();
+			iWaitTime.addAndGet(wait);
+			long max = iMaxWaitTime.get();
+			while (wait > max && !iMaxWaitTime.compareAndSet(max, wait))
+				max = iMaxWaitTime.get();
+		}
+		if (iLog.isDebugEnabled()) iLog.debug("Locked: " + ids);
+		return new StripedUnlock(ids, stripes, holder);
+	}
+
+	@Override
+	protected void unlock(Collection<Long> ids) {
+		if (ids == null || ids.isEmpty()) return;
+		int[] stripes = stripes(ids);
+		Set<Holder> holders = new HashSet<Holder>();
+		lockStripes(stripes);
+		try {
+			for (Long id: ids) {
+				Holder holder = iStripes[stripe(id)].iOwners.remove(id);
+				if (holder != null) holders.add(holder);
+			}
+		} finally {
+			unlockStripes(stripes);
+		}
+		for (Holder holder: holders) {
+			holder.release();
+			leave();
+		}
+	}
+	
+	private void unlock(Collection<Long> ids, int[] stripes, Holder holder) {
+		if (iLog.isDebugEnabled()) iLog.debug("Unlocking " + ids + " ...");
+		boolean released = false;
+		lockStripes(stripes);
+		try {
+			for (Long id: ids) {
+				Map<Long, Holder> owners = iStripes[stripe(id)].iOwners;
+				if (owners.get(id) == holder) {
+					owners.remove(id);
+					released = true;
+				}
+			}
+		} finally {
+			unlockStripes(stripes);
+		}
+		if (released) {
+			holder.release();
+			leave();
+		}
+		if (iLog.isDebugEnabled()) iLog.debug("Unlocked: " + ids);
+	}
+
+	@Override
+	public Set<Long> locked() {
+		Set<Long> ret = new TreeSet<Long>();
+		for (Stripe stripe: iStripes) {
+			stripe.iLock.lock();
+			try {
+				ret.addAll(stripe.iOwners.keySet());
+			} finally {
+				stripe.iLock.unlock();
+			}
+		}
+		return ret;
+	}
+
+	@Override
+	public boolean isLocked(Long id) {
+		Stripe stripe = iStripes[stripe(id)];
+		stripe.iLock.lock();
+		try {
+			return stripe.iOwners.containsKey(id);
+		} finally {
+			stripe.iLock.unlock();
+		}
+	}
+
+	/** Number of successful {@link StripedMultiLock#lock(Collection)} calls */
+	public long getLockCount() { return iLockCount.get(); }
+	/** Number of {@link StripedMultiLock#lock(Collection)} calls that had to wait for another lock to be released */
+	public long getContendedCount() { return iContendedCount.get(); }
+	/** Total time spent waiting in {@link StripedMultiLock#lock(Collection)} in milliseconds */
+	public double getWaitTime() { return iWaitTime.get() / 1000000.0; }
+	/** Longest time spent waiting in {@link StripedMultiLock#lock(Collection)} in milliseconds */
+	public double getMaxWaitTime() { return iMaxWaitTime.get() / 1000000.0; }
+	/** Number of {@link StripedMultiLock#lockAll()} calls */
+	public long getLockAllCount() { return iLockAllCount.get(); }
+	/** Total time spent waiting in {@link StripedMultiLock#lockAll()} in milliseconds */
+	public double getLockAllWaitTime() { return iLockAllWaitTime.get() / 1000000.0; }
+	/** Number of lock holders (excluding lock all) */
+	public int getActiveCount() { return iActive.get(); }
+
+	public Map<String, String> getStatistics() {
+		Map<String, String> ret = new HashMap<String, String>();
+		ret.put("Locks", String.valueOf(getLockCount()));
+		ret.put("Contended", String.valueOf(getContendedCount()));
+		ret.put("Wait Time [ms]", String.valueOf(getWaitTime()));
+		ret.put("Max Wait Time [ms]", String.valueOf(getMaxWaitTime()));
+		ret.put("Lock All", String.valueOf(getLockAllCount()));
+		ret.put("Lock All Wait Time [ms]", String.valueOf(getLockAllWaitTime()));
+		ret.put("Active", String.valueOf(getActiveCount()));
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "StripedMultiLock{stripes=" + iStripes.length + ", locks=" + getLockCount() + ", contended=" + getContendedCount() +
+				", wait=" + getWaitTime() + "ms, maxWait=" + getMaxWaitTime() + "ms, lockAll=" + getLockAllCount() + ", active=" + getActiveCount() + "}";
+	}
+
+	private class StripedUnlock extends Unlock {
+		private Collection<Long> iIds;
+		private int[] iStripes;
+		private Holder iHolder;
+		
+		private StripedUnlock(Collection<Long> ids, int[] stripes, Holder holder) {
+			super(ids);
+			iIds = ids; iStripes = stripes; iHolder = holder;
+		}
+		
+		@Override
+		public void release() {
+			unlock(iIds, iStripes, iHolder);
+		}
+	}
+
+	private static class Stripe {
+		private ReentrantLock iLock = new ReentrantLock();
+		private Map<Long, Holder> iOwners = new HashMap<Long, Holder>();
+	}
+
+	/**
+	 * A single lock acquisition, the callers waiting for it are released all at once when it is released.
+	 */
+	private static class Holder {
+		private CountDownLatch iReleased = new CountDownLatch(1);
+
+		private void release() {
+			iReleased.countDown();
+		}
+
+		private void await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					iReleased.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+	}
+}
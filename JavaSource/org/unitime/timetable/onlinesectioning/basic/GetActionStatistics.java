@@ -0,0 +1,63 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.basic;
+
+import java.util.ArrayList;
+
+import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
+import org.unitime.timetable.onlinesectioning.server.ActionStatistics;
+import org.unitime.timetable.onlinesectioning.server.ActionStatistics.ActionSummary;
+
+/**
+ * Live execution statistics of the server's actions (see {@link ActionStatistics}), the first summary combines all the actions.
+ * Returns null when the server does not keep the statistics.
+ *
+ * @author Tomas Muller
+ */
+public class GetActionStatistics implements OnlineSectioningAction<ArrayList<ActionSummary>> {
+	private static final long serialVersionUID = 1L;
+	private String iAction = null;
+	
+	public GetActionStatistics forAction(String action) {
+		iAction = action;
+		return this;
+	}
+
+	@Override
+	public ArrayList<ActionSummary> execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		ActionStatistics stats = (server instanceof AbstractServer ? ((AbstractServer)server).getActionStatistics() : null);
+		if (stats == null) return null;
+		if (iAction != null && !iAction.isEmpty()) {
+			ArrayList<ActionSummary> ret = new ArrayList<ActionSummary>();
+			ActionSummary summary = stats.getSummary(iAction);
+			if (summary != null) ret.add(summary);
+			return ret;
+		}
+		return new ArrayList<ActionSummary>(stats.getSummaries());
+	}
+
+	@Override
+	public String name() {
+		return "action-stats";
+	}
+}
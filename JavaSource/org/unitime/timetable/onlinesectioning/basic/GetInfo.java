@@ -84,6 +84,10 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XStudent.XGroup;
 import org.unitime.timetable.onlinesectioning.model.XStudentId;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
+import org.unitime.timetable.onlinesectioning.server.ActionStatistics;
+import org.unitime.timetable.onlinesectioning.server.ActionStatistics.ActionSummary;
+import org.unitime.timetable.onlinesectioning.server.AsyncExecutionQueue;
 
 /**
  * @author Tomas Muller
@@ -397,6 +401,32 @@ public class GetInfo implements OnlineSectioningAction<Map<String, String>>{
 		} finally {
 			lock.release();
 		}
+		if (server instanceof AbstractServer) {
+			AsyncExecutionQueue queue = ((AbstractServer)server).getExecutionQueue();
+			if (queue != null) {
+				DecimalFormat df = new DecimalFormat("0.00", new DecimalFormatSymbols(Locale.US));
+				info.put("Asynchronous calls in queue", queue.size() + " (max " + queue.getMaxSize() + (queue.getCapacity() > 0 ? " of " + queue.getCapacity() : "") + ")");
+				info.put("Asynchronous calls wait time", df.format(queue.getAverageWaitTime()) + "ms (max " + df.format(queue.getMaxWaitTime()) + "ms)");
+				info.put("Asynchronous calls rejected", queue.getRejectedCount() + " (" + queue.getCallerRunsCount() + " executed synchronously)");
+			}
+			ActionStatistics stats = ((AbstractServer)server).getActionStatistics();
+			if (stats != null) {
+				DecimalFormat df = new DecimalFormat("0.00", new DecimalFormatSymbols(Locale.US));
+				ActionSummary slowest = null;
+				for (ActionSummary summary: stats.getSummaries()) {
+					if (ActionStatistics.ALL_ACTIONS.equals(summary.getName())) {
+						info.put("Action calls", summary.getCount() + " (" + summary.getErrors() + " failed)");
+						info.put("Action latency", "p50 " + df.format(summary.getP50()) + "ms, p99 " + df.format(summary.getP99()) + "ms (max " + df.format(summary.getMax()) + "ms)");
+						if (summary.getLockCount() > 0)
+							info.put("Action lock wait", df.format(summary.getLockMean()) + "ms (p99 " + df.format(summary.getLockP99()) + "ms)");
+					} else if (!name().equals(summary.getName()) && (slowest == null || slowest.getP99() < summary.getP99())) {
+						slowest = summary;
+					}
+				}
+				if (slowest != null)
+					info.put("Slowest action", slowest.getName() + " (p99 " + df.format(slowest.getP99()) + "ms)");
+			}
+		}
 		return info;		
 	}
 	
@@ -79,7 +79,7 @@ public class ListCourseOfferings implements OnlineSectioningAction<Collection<Cl
 		ret = new ArrayList<CourseAssignment>();
 		for (XCourseId id: server.findCourses(iQuery, iLimit, iMatcher)) {
 			XCourse course = server.getCourse(id.getCourseId());
-			if (course != null)
+			if (course != null && server.isReady(course.getOfferingId()))
 				ret.add(convert(course, server));
 		}
 		return ret;
@@ -92,7 +92,7 @@ public class ListCourseOfferings implements OnlineSectioningAction<Collection<Cl
 				if (courses != null && !courses.isEmpty()) {
 					List<CourseAssignment> ret = new ArrayList<CourseAssignment>();
 					for (XCourse course: courses) {
-						if (course != null && (iMatcher == null || iMatcher.match(course)))
+						if (course != null && server.isReady(course.getOfferingId()) && (iMatcher == null || iMatcher.match(course)))
 							ret.add(convert(course, server));
 					}
 					setSelection(ret);
@@ -0,0 +1,217 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format helpers used when a collection of X* objects is written at once (see {@link XCourseRequestSet}).
+ * Numbers are written as variable length integers (ids and counts are small positive numbers, mostly taking 3 to 5 bytes instead of 8)
+ * and strings and courses are interned: each distinct value is written only once, later occurrences are written as an index into
+ * the table of the values that have been written before. The tables are kept in a {@link Output} / {@link Input} context that
+ * is created for each stream (e.g., each cache entry).
+ *
+ * @author Tomas Muller
+ */
+public class XCompact {
+	/** Version of the compact format, written at the beginning of each compact stream */
+	public static final int VERSION = 1;
+
+	private XCompact() {}
+
+	/** Write a non-negative number as a variable length integer (7 bits per byte), negative numbers take 10 bytes */
+	public static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	public static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed variable length integer.");
+	}
+
+	public static void writeVarInt(DataOutput out, int value) throws IOException {
+		writeVarLong(out, value & 0xFFFFFFFFL);
+	}
+
+	public static int readVarInt(DataInput in) throws IOException {
+		return (int)readVarLong(in);
+	}
+
+	/** Write a nullable id (zig-zag encoded, so that negative ids are also short) */
+	public static void writeId(DataOutput out, Long id) throws IOException {
+		if (id == null)
+			writeVarLong(out, 0);
+		else
+			writeVarLong(out, ((id << 1) ^ (id >> 63)) + 1);
+	}
+
+	public static Long readId(DataInput in) throws IOException {
+		long value = readVarLong(in);
+		if (value == 0) return null;
+		value --;
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	/**
+	 * Writing context: strings and courses that have already been written
+	 */
+	public static class Output {
+		private ObjectOutput iOut;
+		private Map<String, Integer> iStrings = new HashMap<String, Integer>();
+		private Map<CourseKey, Integer> iCourses = new HashMap<CourseKey, Integer>();
+
+		public Output(ObjectOutput out) {
+			iOut = out;
+		}
+
+		public ObjectOutput getOutput() { return iOut; }
+
+		public void writeVarLong(long value) throws IOException { XCompact.writeVarLong(iOut, value); }
+		public void writeVarInt(int value) throws IOException { XCompact.writeVarInt(iOut, value); }
+		public void writeId(Long id) throws IOException { XCompact.writeId(iOut, id); }
+		public void writeBoolean(boolean value) throws IOException { iOut.writeBoolean(value); }
+
+		/** Write an interned string: 0 for null, 1 followed by the string for a new one, index + 2 for a string that has been written before */
+		public void writeString(String value) throws IOException {
+			if (value == null) {
+				writeVarInt(0);
+				return;
+			}
+			Integer index = iStrings.get(value);
+			if (index != null) {
+				writeVarInt(index + 2);
+			} else {
+				iStrings.put(value, iStrings.size());
+				writeVarInt(1);
+				iOut.writeUTF(value);
+			}
+		}
+
+		/**
+		 * Write an interned course: 0 followed by the course for a new one, index + 1 for a course that has been written before.
+		 * Courses are compared by all the written attributes, so an enrollment is never replaced by a plain course id.
+		 */
+		public void writeCourse(XCourseId course) throws IOException {
+			CourseKey key = new CourseKey(course);
+			Integer index = iCourses.get(key);
+			if (index != null) {
+				writeVarInt(index + 1);
+			} else {
+				iCourses.put(key, iCourses.size());
+				writeVarInt(0);
+				key.writeCompact(this);
+			}
+		}
+	}
+
+	/**
+	 * Reading context: strings and courses that have already been read
+	 */
+	public static class Input {
+		private ObjectInput iIn;
+		private List<String> iStrings = new ArrayList<String>();
+		private List<XCourseId> iCourses = new ArrayList<XCourseId>();
+
+		public Input(ObjectInput in) {
+			iIn = in;
+		}
+
+		public ObjectInput getInput() { return iIn; }
+
+		public long readVarLong() throws IOException { return XCompact.readVarLong(iIn); }
+		public int readVarInt() throws IOException { return XCompact.readVarInt(iIn); }
+		public Long readId() throws IOException { return XCompact.readId(iIn); }
+		public boolean readBoolean() throws IOException { return iIn.readBoolean(); }
+
+		public String readString() throws IOException {
+			int code = readVarInt();
+			if (code == 0) return null;
+			if (code == 1) {
+				String value = iIn.readUTF();
+				iStrings.add(value);
+				return value;
+			}
+			if (code - 2 >= iStrings.size()) throw new IOException("Unknown string reference " + (code - 2) + ".");
+			return iStrings.get(code - 2);
+		}
+
+		/** Read an interned course, each occurrence gets its own copy (the strings are shared) */
+		public XCourseId readCourse() throws IOException {
+			int code = readVarInt();
+			if (code == 0) {
+				XCourseId course = new XCourseId();
+				course.readCompact(this);
+				iCourses.add(course);
+				return course;
+			}
+			if (code - 1 >= iCourses.size()) throw new IOException("Unknown course reference " + (code - 1) + ".");
+			XCourseId course = iCourses.get(code - 1);
+			XCourseId copy = new XCourseId(course);
+			copy.setHasUniqueName(course.hasUniqueName());
+			return copy;
+		}
+	}
+
+	/**
+	 * XCourseId equals only compares course ids, interning needs to compare all the written attributes
+	 */
+	private static class CourseKey extends XCourseId {
+		private static final long serialVersionUID = 1L;
+
+		private CourseKey(XCourseId course) {
+			super(course);
+			setHasUniqueName(course.hasUniqueName());
+		}
+
+		@Override
+		public int hashCode() {
+			return getCourseId() == null ? 0 : getCourseId().hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null || !(o instanceof CourseKey)) return false;
+			CourseKey c = (CourseKey)o;
+			return eq(getOfferingId(), c.getOfferingId()) && eq(getCourseId(), c.getCourseId()) && eq(getCourseName(), c.getCourseName()) &&
+					eq(getTitle(), c.getTitle()) && eq(getType(), c.getType()) && hasUniqueName() == c.hasUniqueName();
+		}
+
+		private static boolean eq(Object o1, Object o2) {
+			return (o1 == null ? o2 == null : o1.equals(o2));
+		}
+	}
+}
@@ -177,6 +177,25 @@ public class XCourseId implements Serializable, Comparable<XCourseId>, Externali
 		out.writeObject(iType);
 	}
 	
+	/** Compact format, see {@link XCompact} */
+	public void writeCompact(XCompact.Output out) throws IOException {
+		out.writeId(iOfferingId);
+		out.writeId(iCourseId);
+		out.writeString(iCourseName);
+		out.writeString(iTitle);
+		out.writeBoolean(iHasUniqueName);
+		out.writeString(iType);
+	}
+
+	public void readCompact(XCompact.Input in) throws IOException {
+		iOfferingId = in.readId();
+		iCourseId = in.readId();
+		iCourseName = in.readString();
+		iTitle = in.readString();
+		iHasUniqueName = in.readBoolean();
+		iType = in.readString();
+	}
+	
 	public static class XCourseIdSerializer implements Externalizer<XCourseId> {
 		private static final long serialVersionUID = 1L;
 
@@ -88,6 +88,10 @@ public class XCourseRequest extends XRequest {
     	readExternal(in);
     }
     
+    public XCourseRequest(XCompact.Input in) throws IOException, ClassNotFoundException {
+    	readCompact(in);
+    }
+    
     public XCourseRequest(CourseDemand demand, OnlineSectioningHelper helper) {
     	super(demand);
     	TreeSet<CourseRequest> crs = new TreeSet<CourseRequest>(new Comparator<CourseRequest>() {
@@ -653,6 +657,130 @@ public class XCourseRequest extends XRequest {
 		out.writeInt(iCritical);
 	}
 	
+	private XCourseId findCourse(Long courseId) {
+		for (XCourseId course: iCourseIds)
+			if (course.getCourseId().equals(courseId)) return course;
+		return null;
+	}
+	
+	/**
+	 * Compact format, see {@link XCompact}: courses and course names are interned, ids and counts are variable length integers.
+	 * Section wait-lists, options, preferences and overrides are rare and they are written the same way as in {@link XCourseRequest#writeExternal(ObjectOutput)}.
+	 */
+	@Override
+	public void writeCompact(XCompact.Output out) throws IOException {
+		super.writeCompact(out);
+		
+		out.writeVarInt(iCourseIds.size());
+		for (XCourseId course: iCourseIds)
+			out.writeCourse(course);
+		
+		out.writeBoolean(iWaitlist);
+		
+		out.writeBoolean(iTimeStamp != null);
+		if (iTimeStamp != null)
+			out.writeVarLong(iTimeStamp.getTime());
+		
+		out.writeBoolean(iEnrollment != null);
+		if (iEnrollment != null)
+			iEnrollment.writeCompactEnrollment(out);
+		
+		out.writeVarInt(iSectionWaitlist == null ? 0 : iSectionWaitlist.size());
+		if (iSectionWaitlist != null)
+			for (Map.Entry<XCourseId, List<XWaitListedSection>> entry: iSectionWaitlist.entrySet()) {
+				out.writeId(entry.getKey().getCourseId());
+				out.writeVarInt(entry.getValue().size());
+				for (XWaitListedSection section: entry.getValue())
+					section.writeExternal(out.getOutput());
+			}
+		
+		out.writeVarInt(iOptions == null ? 0 : iOptions.size());
+		if (iOptions != null)
+			for (Map.Entry<XCourseId, byte[]> entry: iOptions.entrySet()) {
+				out.writeId(entry.getKey().getCourseId());
+				byte[] value = entry.getValue();
+				out.writeVarInt(value.length);
+				out.getOutput().write(value, 0, value.length);
+			}
+		
+		out.writeVarInt(iPreferences == null ? 0 : iPreferences.size());
+		if (iPreferences != null)
+			for (Map.Entry<XCourseId, List<XPreference>> entry: iPreferences.entrySet()) {
+				out.writeId(entry.getKey().getCourseId());
+				out.writeVarInt(entry.getValue().size());
+				for (XPreference p: entry.getValue())
+					p.writeExternal(out.getOutput());
+			}
+		
+		out.writeString(iMessage);
+		
+		out.writeVarInt(iOverrides == null ? 0 : iOverrides.size());
+		if (iOverrides != null)
+			for (Map.Entry<XCourseId, XOverride> entry: iOverrides.entrySet()) {
+				out.writeId(entry.getKey().getCourseId());
+				entry.getValue().writeExternal(out.getOutput());
+			}
+		
+		out.writeVarInt(iCritical);
+	}
+	
+	@Override
+	public void readCompact(XCompact.Input in) throws IOException, ClassNotFoundException {
+		super.readCompact(in);
+		
+		int nrCourses = in.readVarInt();
+		iCourseIds.clear();
+		for (int i = 0; i < nrCourses; i++)
+			iCourseIds.add(in.readCourse());
+		
+		iWaitlist = in.readBoolean();
+		iTimeStamp = (in.readBoolean() ? new Date(in.readVarLong()) : null);
+		iEnrollment = (in.readBoolean() ? new XEnrollment(in) : null);
+		
+		int nrWaitlists = in.readVarInt();
+		iSectionWaitlist = (nrWaitlists == 0 ? null : new HashMap<XCourseId, List<XWaitListedSection>>());
+		for (int i = 0; i < nrWaitlists; i++) {
+			XCourseId course = findCourse(in.readId());
+			int nrSections = in.readVarInt();
+			List<XWaitListedSection> sections = new ArrayList<XWaitListedSection>(nrSections);
+			for (int j = 0; j < nrSections; j++)
+				sections.add(new XWaitListedSection(in.getInput()));
+			if (course != null) iSectionWaitlist.put(course, sections);
+		}
+		
+		int nrOptions = in.readVarInt();
+		iOptions = (nrOptions == 0 ? null : new HashMap<XCourseId, byte[]>());
+		for (int i = 0; i < nrOptions; i++) {
+			XCourseId course = findCourse(in.readId());
+			byte[] data = new byte[in.readVarInt()];
+			in.getInput().readFully(data);
+			if (course != null) iOptions.put(course, data);
+		}
+		
+		int nrCoursePrefs = in.readVarInt();
+		iPreferences = (nrCoursePrefs == 0 ? null : new HashMap<XCourseId, List<XPreference>>());
+		for (int i = 0; i < nrCoursePrefs; i++) {
+			XCourseId course = findCourse(in.readId());
+			int nbrPrefs = in.readVarInt();
+			List<XPreference> prefs = new ArrayList<XPreference>(nbrPrefs);
+			for (int j = 0; j < nbrPrefs; j++)
+				prefs.add(new XPreference(in.getInput()));
+			if (course != null) iPreferences.put(course, prefs);
+		}
+		
+		iMessage = in.readString();
+		
+		int nrOverrides = in.readVarInt();
+		iOverrides = (nrOverrides == 0 ? null : new HashMap<XCourseId, XOverride>());
+		for (int i = 0; i < nrOverrides; i++) {
+			XCourseId course = findCourse(in.readId());
+			XOverride override = new XOverride(in.getInput());
+			if (course != null) iOverrides.put(course, override);
+		}
+		
+		iCritical = in.readVarInt();
+	}
+	
 	public static class XCourseRequestSerializer implements Externalizer<XCourseRequest> {
 		private static final long serialVersionUID = 1L;
 
@@ -23,12 +23,18 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.Collection;
 import java.util.HashSet;
 
 import org.infinispan.commons.marshall.Externalizer;
 import org.infinispan.commons.marshall.SerializeWith;
 
 /**
+ * Set of course requests of an offering. It is written in the compact format (see {@link XCompact}), where the courses
+ * that are shared by the requests are only written once. The legacy format (number of requests followed by the requests)
+ * can still be read.
+ * The set is always written as a whole; the format only reduces the size of each replicated offering requests entry.
+ *
  * @author Tomas Muller
  */
 @SerializeWith(XCourseRequestSet.XCourseRequestSetSerializer.class)
@@ -39,6 +45,10 @@ public class XCourseRequestSet extends HashSet<XCourseRequest> implements Extern
 		super();
 	}
 	
+	public XCourseRequestSet(Collection<XCourseRequest> requests) {
+		super(requests);
+	}
+	
 	public XCourseRequestSet(ObjectInput in) throws IOException, ClassNotFoundException {
 		super();
 		readExternal(in);
@@ -48,15 +58,28 @@ public class XCourseRequestSet extends HashSet<XCourseRequest> implements Extern
 	public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
 		int count = in.readInt();
 		if (!isEmpty()) clear();
+		if (count >= 0) {
+			// legacy format
+			for (int i = 0; i < count; i++)
+				add(new XCourseRequest(in));
+			return;
+		}
+		int version = -count;
+		if (version > XCompact.VERSION)
+			throw new IOException("Unsupported compact format version " + version + ".");
+		XCompact.Input input = new XCompact.Input(in);
+		count = input.readVarInt();
 		for (int i = 0; i < count; i++)
-			add(new XCourseRequest(in));
+			add(new XCourseRequest(input));
 	}
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
-		out.writeInt(size());
+		out.writeInt(-XCompact.VERSION);
+		XCompact.Output output = new XCompact.Output(out);
+		output.writeVarInt(size());
 		for (XCourseRequest request: this)
-			request.writeExternal(out);
+			request.writeCompact(output);
 	}
 
 	public static class XCourseRequestSetSerializer implements Externalizer<XCourseRequestSet> {
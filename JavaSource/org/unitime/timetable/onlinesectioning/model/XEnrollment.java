@@ -61,6 +61,23 @@ public class XEnrollment extends XCourseId implements Serializable {
 		readExternal(in);
 	}
 	
+	public XEnrollment(XCompact.Input in) throws IOException, ClassNotFoundException {
+		this(in.readCourse(), in);
+	}
+	
+	private XEnrollment(XCourseId course, XCompact.Input in) throws IOException, ClassNotFoundException {
+		super(course);
+		setHasUniqueName(course.hasUniqueName());
+		iStudentId = in.readId();
+		iConfigId = in.readId();
+		int nrSections = in.readVarInt();
+		for (int i = 0; i < nrSections; i++)
+			iSectionIds.add(in.readId());
+		iTimeStamp = (in.readBoolean() ? new Date(in.readVarLong()) : null);
+		iApproval = (in.readBoolean() ? new XApproval(in.getInput()) : null);
+		iReservation = (in.readBoolean() ? new XReservationId(in.getInput()) : null);
+	}
+	
 	public XEnrollment(Student student, CourseOffering course, OnlineSectioningHelper helper, Collection<StudentClassEnrollment> enrollments) {
 		super(course);
 		iStudentId = student.getUniqueId();
@@ -219,6 +236,27 @@ public class XEnrollment extends XCourseId implements Serializable {
 			iReservation.writeExternal(out);
 	}
 	
+	/**
+	 * Compact format, see {@link XCompact}: the course is interned (it is usually the same as one of the courses of the request)
+	 */
+	public void writeCompactEnrollment(XCompact.Output out) throws IOException {
+		out.writeCourse(this);
+		out.writeId(iStudentId);
+		out.writeId(iConfigId);
+		out.writeVarInt(iSectionIds.size());
+		for (Long sectionId: iSectionIds)
+			out.writeId(sectionId);
+		out.writeBoolean(iTimeStamp != null);
+		if (iTimeStamp != null)
+			out.writeVarLong(iTimeStamp.getTime());
+		out.writeBoolean(iApproval != null);
+		if (iApproval != null)
+			iApproval.writeExternal(out.getOutput());
+		out.writeBoolean(iReservation != null);
+		if (iReservation != null)
+			iReservation.writeExternal(out.getOutput());
+	}
+	
 	public static class XEnrollmentSerializer implements Externalizer<XEnrollment> {
 		private static final long serialVersionUID = 1L;
 
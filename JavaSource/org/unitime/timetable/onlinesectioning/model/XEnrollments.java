@@ -26,6 +26,7 @@ import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,12 +42,14 @@ public class XEnrollments implements Serializable, Externalizable {
 	private static final long serialVersionUID = 1L;
 	
 	private Long iOfferingId;
-	private List<XCourseRequest> iRequests = new ArrayList<XCourseRequest>();
-	private List<XEnrollment> iEnrollments = null;
-	private Map<Long, List<XEnrollment>> iConfig2Enrl = null;
-	private Map<Long, List<XEnrollment>> iCourse2Enrl = null;
-	private Map<Long, List<XEnrollment>> iSection2Enrl = null;
-	private Map<Long, List<XEnrollment>> iReservation2Enrl = null;
+	private Segments<Entry> iEntries = null;
+	private int iNrEnrollments = 0;
+	private Map<Long, Segments<XEnrollment>> iConfig2Enrl = null;
+	private Map<Long, Segments<XEnrollment>> iCourse2Enrl = null;
+	private Map<Long, Segments<XEnrollment>> iSection2Enrl = null;
+	private Map<Long, Segments<XEnrollment>> iReservation2Enrl = null;
+	private transient volatile List<XCourseRequest> iRequests = null;
+	private transient volatile List<XEnrollment> iEnrollments = null;
 	
 	public XEnrollments() {}
 	
@@ -56,119 +59,224 @@ public class XEnrollments implements Serializable, Externalizable {
 	
 	public XEnrollments(Long offeringId, Collection<XCourseRequest> requests) {
 		iOfferingId = offeringId;
+		init(requests);
+	}
+	
+	private void init(Collection<XCourseRequest> requests) {
+		List<Entry> entries = new ArrayList<Entry>();
+		Map<Long, List<XEnrollment>> config2enrl = new HashMap<Long, List<XEnrollment>>();
+		Map<Long, List<XEnrollment>> course2enrl = new HashMap<Long, List<XEnrollment>>();
+		Map<Long, List<XEnrollment>> section2enrl = new HashMap<Long, List<XEnrollment>>();
+		Map<Long, List<XEnrollment>> reservation2enrl = new HashMap<Long, List<XEnrollment>>();
+		iNrEnrollments = 0;
 		if (requests != null)
-			iRequests.addAll(requests);
-		init();
-	}
-	
-	private void init() {
-		iEnrollments = new ArrayList<XEnrollment>();
-		iConfig2Enrl = new HashMap<Long, List<XEnrollment>>();
-		iCourse2Enrl = new HashMap<Long, List<XEnrollment>>();
-		iSection2Enrl = new HashMap<Long, List<XEnrollment>>();
-		iReservation2Enrl = new HashMap<Long, List<XEnrollment>>();
-		for (XCourseRequest request: iRequests) {
-			XEnrollment enrollment = request.getEnrollment();
-			if (enrollment != null && enrollment.getOfferingId().equals(iOfferingId)) {
-				iEnrollments.add(enrollment);
-				
-				List<XEnrollment> cfgEnrl = iConfig2Enrl.get(enrollment.getConfigId());
-				if (cfgEnrl == null) {
-					cfgEnrl = new ArrayList<XEnrollment>();
-					iConfig2Enrl.put(enrollment.getConfigId(), cfgEnrl);
-				}
-				cfgEnrl.add(enrollment);
-				
-				List<XEnrollment> coEnrl = iCourse2Enrl.get(enrollment.getCourseId());
-				if (coEnrl == null) {
-					coEnrl = new ArrayList<XEnrollment>();
-					iCourse2Enrl.put(enrollment.getCourseId(), coEnrl);
-				}
-				coEnrl.add(enrollment);
-				
-				if (enrollment.getReservation() != null) {
-					List<XEnrollment> resEnrl = iReservation2Enrl.get(enrollment.getReservation().getReservationId());
-					if (resEnrl == null) {
-						resEnrl = new ArrayList<XEnrollment>();
-						iReservation2Enrl.put(enrollment.getReservation().getReservationId(), resEnrl);
-					}
-					resEnrl.add(enrollment);
+			for (XCourseRequest request: requests) {
+				XEnrollment enrollment = request.getEnrollment();
+				if (enrollment != null && enrollment.getOfferingId().equals(iOfferingId)) {
+					entries.add(new Entry(request, enrollment));
+					iNrEnrollments ++;
+					collect(config2enrl, enrollment.getConfigId(), enrollment);
+					collect(course2enrl, enrollment.getCourseId(), enrollment);
+					if (enrollment.getReservation() != null)
+						collect(reservation2enrl, enrollment.getReservation().getReservationId(), enrollment);
+					for (Long sectionId: enrollment.getSectionIds())
+						collect(section2enrl, sectionId, enrollment);
+				} else {
+					entries.add(new Entry(request, null));
 				}
-				
-				for (Long sectionId: enrollment.getSectionIds()) {
-					List<XEnrollment> enrl = iSection2Enrl.get(sectionId);
-					if (enrl == null) {
-						enrl = new ArrayList<XEnrollment>();
-						iSection2Enrl.put(sectionId, enrl);
-					}
-					enrl.add(enrollment);
+			}
+		iEntries = new Segments<Entry>(ENTRY, entries);
+		iConfig2Enrl = toSegments(config2enrl);
+		iCourse2Enrl = toSegments(course2enrl);
+		iSection2Enrl = toSegments(section2enrl);
+		iReservation2Enrl = toSegments(reservation2enrl);
+		iRequests = null;
+		iEnrollments = null;
+	}
+	
+	private static void collect(Map<Long, List<XEnrollment>> table, Long id, XEnrollment enrollment) {
+		List<XEnrollment> enrl = table.get(id);
+		if (enrl == null) {
+			enrl = new ArrayList<XEnrollment>();
+			table.put(id, enrl);
+		}
+		enrl.add(enrollment);
+	}
+	
+	private static Map<Long, Segments<XEnrollment>> toSegments(Map<Long, List<XEnrollment>> table) {
+		Map<Long, Segments<XEnrollment>> ret = new HashMap<Long, Segments<XEnrollment>>();
+		for (Map.Entry<Long, List<XEnrollment>> e: table.entrySet())
+			ret.put(e.getKey(), new Segments<XEnrollment>(ENROLLMENT, e.getValue()));
+		return ret;
+	}
+	
+	/**
+	 * Incremental update of the enrollment index. This instance is not modified (so that it can be safely used
+	 * as a snapshot by the readers that already have it), a new index is returned instead. The requests and the
+	 * enrollments of each config, course, section and reservation are kept in segments (by the student id); only
+	 * the segments that are affected by the change are copied, all the other segments are shared between the two
+	 * instances. The cost of an update is therefore not proportional to the size of the offering.
+	 * @param removed request to be removed from the index (using the enrollment the request had when it was indexed), can be null
+	 * @param added request to be added to the index (using its current enrollment), can be null
+	 * @return updated enrollment index
+	 */
+	public XEnrollments update(XCourseRequest removed, XCourseRequest added) {
+		XEnrollments ret = new XEnrollments();
+		ret.iOfferingId = iOfferingId;
+		ret.iEntries = iEntries;
+		ret.iNrEnrollments = iNrEnrollments;
+		ret.iConfig2Enrl = iConfig2Enrl;
+		ret.iCourse2Enrl = iCourse2Enrl;
+		ret.iSection2Enrl = iSection2Enrl;
+		ret.iReservation2Enrl = iReservation2Enrl;
+		if (removed != null) {
+			Entry entry = ret.iEntries.find(new Entry(removed, null));
+			if (entry != null) {
+				ret.iEntries = ret.iEntries.remove(entry);
+				XEnrollment enrollment = entry.getEnrollment();
+				if (enrollment != null) {
+					ret.iNrEnrollments --;
+					ret.iConfig2Enrl = unindex(ret.iConfig2Enrl, enrollment.getConfigId(), enrollment);
+					ret.iCourse2Enrl = unindex(ret.iCourse2Enrl, enrollment.getCourseId(), enrollment);
+					if (enrollment.getReservation() != null)
+						ret.iReservation2Enrl = unindex(ret.iReservation2Enrl, enrollment.getReservation().getReservationId(), enrollment);
+					Map<Long, Segments<XEnrollment>> section2enrl = null;
+					for (Long sectionId: enrollment.getSectionIds())
+						section2enrl = unindex(section2enrl == null ? ret.iSection2Enrl : section2enrl, sectionId, enrollment, section2enrl != null);
+					if (section2enrl != null)
+						ret.iSection2Enrl = section2enrl;
 				}
 			}
 		}
+		if (added != null) {
+			XEnrollment enrollment = added.getEnrollment();
+			if (enrollment != null && enrollment.getOfferingId().equals(iOfferingId)) {
+				ret.iEntries = ret.iEntries.add(new Entry(added, enrollment));
+				ret.iNrEnrollments ++;
+				ret.iConfig2Enrl = index(ret.iConfig2Enrl, enrollment.getConfigId(), enrollment);
+				ret.iCourse2Enrl = index(ret.iCourse2Enrl, enrollment.getCourseId(), enrollment);
+				if (enrollment.getReservation() != null)
+					ret.iReservation2Enrl = index(ret.iReservation2Enrl, enrollment.getReservation().getReservationId(), enrollment);
+				Map<Long, Segments<XEnrollment>> section2enrl = null;
+				for (Long sectionId: enrollment.getSectionIds())
+					section2enrl = index(section2enrl == null ? ret.iSection2Enrl : section2enrl, sectionId, enrollment, section2enrl != null);
+				if (section2enrl != null)
+					ret.iSection2Enrl = section2enrl;
+			} else {
+				ret.iEntries = ret.iEntries.add(new Entry(added, null));
+			}
+		}
+		return ret;
+	}
+	
+	private static Map<Long, Segments<XEnrollment>> index(Map<Long, Segments<XEnrollment>> table, Long id, XEnrollment enrollment) {
+		return index(table, id, enrollment, false);
+	}
+	
+	/**
+	 * Add enrollment to the index table. The table (that only contains one entry per config, course, section or reservation)
+	 * is copied unless it is already a private copy, the segments of the given id are updated copy-on-write.
+	 */
+	private static Map<Long, Segments<XEnrollment>> index(Map<Long, Segments<XEnrollment>> table, Long id, XEnrollment enrollment, boolean privateCopy) {
+		Segments<XEnrollment> enrl = table.get(id);
+		Map<Long, Segments<XEnrollment>> ret = (privateCopy ? table : new HashMap<Long, Segments<XEnrollment>>(table));
+		ret.put(id, (enrl == null ? new Segments<XEnrollment>(ENROLLMENT, null) : enrl).add(enrollment));
+		return ret;
+	}
+	
+	private static Map<Long, Segments<XEnrollment>> unindex(Map<Long, Segments<XEnrollment>> table, Long id, XEnrollment enrollment) {
+		return unindex(table, id, enrollment, false);
+	}
+	
+	/**
+	 * Remove enrollment from the index table. The table is copied unless it is already a private copy (or the enrollment is not there).
+	 */
+	private static Map<Long, Segments<XEnrollment>> unindex(Map<Long, Segments<XEnrollment>> table, Long id, XEnrollment enrollment, boolean privateCopy) {
+		Segments<XEnrollment> enrl = table.get(id);
+		if (enrl == null) return table;
+		Segments<XEnrollment> updated = enrl.remove(enrollment);
+		if (updated == enrl) return table;
+		Map<Long, Segments<XEnrollment>> ret = (privateCopy ? table : new HashMap<Long, Segments<XEnrollment>>(table));
+		if (updated.size() == 0)
+			ret.remove(id);
+		else
+			ret.put(id, updated);
+		return ret;
 	}
 	
 	public List<XCourseRequest> getRequests() {
-		return iRequests;
+		List<XCourseRequest> requests = iRequests;
+		if (requests == null) {
+			requests = new ArrayList<XCourseRequest>(iEntries.size());
+			for (Entry entry: iEntries.toList())
+				requests.add(entry.getRequest());
+			requests = Collections.unmodifiableList(requests);
+			iRequests = requests;
+		}
+		return requests;
 	}
 	
 	public List<XEnrollment> getEnrollments() {
-		return iEnrollments;
+		List<XEnrollment> enrollments = iEnrollments;
+		if (enrollments == null) {
+			enrollments = new ArrayList<XEnrollment>(iNrEnrollments);
+			for (Entry entry: iEntries.toList())
+				if (entry.getEnrollment() != null)
+					enrollments.add(entry.getEnrollment());
+			enrollments = Collections.unmodifiableList(enrollments);
+			iEnrollments = enrollments;
+		}
+		return enrollments;
 	}
 	
 	public int countEnrollments() {
-		return iEnrollments == null ? 0 : iEnrollments.size();
+		return iNrEnrollments;
+	}
+	
+	private static List<XEnrollment> list(Segments<XEnrollment> enrollments) {
+		return enrollments == null ? new ArrayList<XEnrollment>() : enrollments.toList();
+	}
+	
+	private static int count(Segments<XEnrollment> enrollments) {
+		return enrollments == null ? 0 : enrollments.size();
 	}
 
 	public List<XEnrollment> getEnrollmentsForSection(Long sectionId) {
-		List<XEnrollment> ret = iSection2Enrl.get(sectionId);
-		return ret == null ? new ArrayList<XEnrollment>() : ret;
+		return list(iSection2Enrl.get(sectionId));
 	}
 
 	public List<XEnrollment> getEnrollmentsForCourse(Long courseId) {
-		List<XEnrollment> ret = iCourse2Enrl.get(courseId);
-		return ret == null ? new ArrayList<XEnrollment>() : ret;
+		return list(iCourse2Enrl.get(courseId));
 	}
 
 	public List<XEnrollment> getEnrollmentsForConfig(Long configId) {
-		List<XEnrollment> ret = iConfig2Enrl.get(configId);
-		return ret == null ? new ArrayList<XEnrollment>() : ret;
+		return list(iConfig2Enrl.get(configId));
 	}
 
 	public List<XEnrollment> getEnrollmentsForReservation(Long reservationId) {
-		List<XEnrollment> ret = iReservation2Enrl.get(reservationId);
-		return ret == null ? new ArrayList<XEnrollment>() : ret;
+		return list(iReservation2Enrl.get(reservationId));
 	}
 
 	public int countEnrollmentsForSection(Long sectionId) {
-		List<XEnrollment> ret = iSection2Enrl.get(sectionId);
-		return ret == null ? 0 : ret.size();
+		return count(iSection2Enrl.get(sectionId));
 	}
 	
 	public int countEnrollmentsForCourse(Long courseId) {
-		List<XEnrollment> ret = iCourse2Enrl.get(courseId);
-		return ret == null ? 0 : ret.size();
+		return count(iCourse2Enrl.get(courseId));
 	}
 
 	public int countEnrollmentsForConfig(Long configId) {
-		List<XEnrollment> ret = iConfig2Enrl.get(configId);
-		return ret == null ? 0 : ret.size();
+		return count(iConfig2Enrl.get(configId));
 	}
 	
 	public int countEnrollmentsForReservation(Long reservationId) {
-		List<XEnrollment> ret = iReservation2Enrl.get(reservationId);
-		return ret == null ? 0 : ret.size();
-	}
-	
-	private boolean contain(List<XEnrollment> enrollments, Long studentId) {
-		if (studentId == null || enrollments == null) return false;
-		for (XEnrollment e: enrollments)
-			if (e.getStudentId().equals(studentId)) return true;
-		return false;
+		return count(iReservation2Enrl.get(reservationId));
 	}
 	
 	public int countEnrollmentsForSection(Long sectionId, Long excludeStudentId) {
-		List<XEnrollment> ret = iSection2Enrl.get(sectionId);
-		return ret == null ? 0 : contain(ret, excludeStudentId) ? ret.size() - 1 : ret.size();
+		Segments<XEnrollment> enrollments = iSection2Enrl.get(sectionId);
+		if (enrollments == null) return 0;
+		return excludeStudentId != null && enrollments.containsStudent(excludeStudentId) ? enrollments.size() - 1 : enrollments.size();
 	}
 
 	@Override
@@ -176,21 +284,170 @@ public class XEnrollments implements Serializable, Externalizable {
 		iOfferingId = in.readLong();
 		
 		int nrRequests = in.readInt();
-		iRequests.clear();
+		List<XCourseRequest> requests = new ArrayList<XCourseRequest>(nrRequests);
 		for (int i = 0; i < nrRequests; i++)
-			iRequests.add(new XCourseRequest(in));
+			requests.add(new XCourseRequest(in));
 
-		init();
+		init(requests);
 	}
 
 	@Override
 	public void writeExternal(ObjectOutput out) throws IOException {
 		out.writeLong(iOfferingId);
-		out.writeInt(iRequests.size());
-		for (XCourseRequest request: iRequests)
+		List<XCourseRequest> requests = getRequests();
+		out.writeInt(requests.size());
+		for (XCourseRequest request: requests)
 			request.writeExternal(out);
 	}
 
+	/**
+	 * A course request and the enrollment it had when it was indexed
+	 */
+	private static class Entry {
+		private XCourseRequest iRequest;
+		private XEnrollment iEnrollment;
+		
+		private Entry(XCourseRequest request, XEnrollment enrollment) {
+			iRequest = request; iEnrollment = enrollment;
+		}
+		
+		public XCourseRequest getRequest() { return iRequest; }
+		public XEnrollment getEnrollment() { return iEnrollment; }
+	}
+	
+	/**
+	 * Identification of the items kept in {@link Segments}
+	 */
+	private static interface SegmentKey<T> {
+		public Long getStudentId(T item);
+		public boolean isSame(T stored, T item);
+	}
+	
+	private static final SegmentKey<Entry> ENTRY = new SegmentKey<Entry>() {
+		@Override
+		public Long getStudentId(Entry item) {
+			return item.getRequest().getStudentId();
+		}
+		@Override
+		public boolean isSame(Entry stored, Entry item) {
+			return stored.getRequest().equals(item.getRequest());
+		}
+	};
+	
+	private static final SegmentKey<XEnrollment> ENROLLMENT = new SegmentKey<XEnrollment>() {
+		@Override
+		public Long getStudentId(XEnrollment item) {
+			return item.getStudentId();
+		}
+		@Override
+		public boolean isSame(XEnrollment stored, XEnrollment item) {
+			// XEnrollment.equals does not consider the student, look for the very same instance instead
+			return stored == item;
+		}
+	};
+	
+	/**
+	 * Immutable collection that is split into segments by the student id. A change returns a new collection that
+	 * shares all the segments but the affected one with this collection. The number of segments is kept around
+	 * the square root of the size, so a change costs O(sqrt(n)) instead of O(n) needed to copy a list.
+	 */
+	private static class Segments<T> {
+		private final SegmentKey<T> iKey;
+		private final Object[] iSegments;
+		private final int iSize;
+		private volatile List<T> iList = null;
+		
+		private Segments(SegmentKey<T> key, Collection<T> items) {
+			iKey = key;
+			iSize = (items == null ? 0 : items.size());
+			int nrSegments = 1;
+			while (nrSegments * nrSegments < iSize) nrSegments <<= 1;
+			iSegments = new Object[nrSegments];
+			if (items != null)
+				for (T item: items) {
+					int index = index(iKey.getStudentId(item), nrSegments);
+					List<T> segment = segment(index);
+					if (segment.isEmpty()) {
+						segment = new ArrayList<T>();
+						iSegments[index] = segment;
+					}
+					segment.add(item);
+				}
+		}
+		
+		private Segments(SegmentKey<T> key, Object[] segments, int size) {
+			iKey = key; iSegments = segments; iSize = size;
+		}
+		
+		private static int index(Long studentId, int nrSegments) {
+			int h = studentId.hashCode();
+			return (h ^ (h >>> 16)) & (nrSegments - 1);
+		}
+		
+		@SuppressWarnings("unchecked")
+		private List<T> segment(int index) {
+			List<T> segment = (List<T>)iSegments[index];
+			return segment == null ? Collections.<T>emptyList() : segment;
+		}
+		
+		public int size() { return iSize; }
+		
+		public Segments<T> add(T item) {
+			if (iSize >= iSegments.length * iSegments.length) {
+				// too many items per segment -> split the segments (only happens when the size is quadrupled)
+				List<T> items = new ArrayList<T>(iSize + 1);
+				items.addAll(toList());
+				items.add(item);
+				return new Segments<T>(iKey, items);
+			}
+			int index = index(iKey.getStudentId(item), iSegments.length);
+			List<T> segment = new ArrayList<T>(segment(index));
+			segment.add(item);
+			Object[] segments = iSegments.clone();
+			segments[index] = segment;
+			return new Segments<T>(iKey, segments, iSize + 1);
+		}
+		
+		public T find(T item) {
+			for (T other: segment(index(iKey.getStudentId(item), iSegments.length)))
+				if (iKey.isSame(other, item)) return other;
+			return null;
+		}
+		
+		public Segments<T> remove(T item) {
+			int index = index(iKey.getStudentId(item), iSegments.length);
+			List<T> segment = segment(index);
+			for (int i = 0; i < segment.size(); i++) {
+				if (iKey.isSame(segment.get(i), item)) {
+					List<T> copy = new ArrayList<T>(segment);
+					copy.remove(i);
+					Object[] segments = iSegments.clone();
+					segments[index] = (copy.isEmpty() ? null : copy);
+					return new Segments<T>(iKey, segments, iSize - 1);
+				}
+			}
+			return this;
+		}
+		
+		public boolean containsStudent(Long studentId) {
+			for (T item: segment(index(studentId, iSegments.length)))
+				if (studentId.equals(iKey.getStudentId(item))) return true;
+			return false;
+		}
+		
+		public List<T> toList() {
+			List<T> list = iList;
+			if (list == null) {
+				list = new ArrayList<T>(iSize);
+				for (int i = 0; i < iSegments.length; i++)
+					list.addAll(segment(i));
+				list = Collections.unmodifiableList(list);
+				iList = list;
+			}
+			return list;
+		}
+	}
+
 	public static class XEnrollmentsSerializer implements Externalizer<XEnrollments> {
 		private static final long serialVersionUID = 1L;
 
@@ -92,6 +92,7 @@ public class XOffering implements Serializable, Externalizable {
     private List<XReservation> iReservations = new ArrayList<XReservation>();
     private List<XDistribution> iDistrubutions = new ArrayList<XDistribution>();
     private List<XRestriction> iRestrictions = new ArrayList<XRestriction>();
+    private transient Long iCacheVersion = null;
 
     public XOffering() {
     }
@@ -100,6 +101,21 @@ public class XOffering implements Serializable, Externalizable {
     	readExternal(in);
     }
     
+    /**
+     * Shallow copy of the given offering (the configurations, courses, reservations, etc. are shared) with the given cache version,
+     * so that the version is never set on an instance that is shared with other threads (see {@link #getCacheVersion()})
+     */
+    public XOffering(XOffering offering, Long cacheVersion) {
+    	iUniqueId = offering.iUniqueId;
+    	iName = offering.iName;
+    	iConfigs = offering.iConfigs;
+    	iCourses = offering.iCourses;
+    	iReservations = offering.iReservations;
+    	iDistrubutions = offering.iDistrubutions;
+    	iRestrictions = offering.iRestrictions;
+    	iCacheVersion = cacheVersion;
+    }
+    
     public XOffering(InstructionalOffering offering, Collection<XDistribution> distributions, OnlineSectioningHelper helper) {
     	iUniqueId = offering.getUniqueId();
     	iName = offering.getCourseName();
@@ -188,6 +204,12 @@ public class XOffering implements Serializable, Externalizable {
 					}
     }
     
+    /**
+     * Node-local version of the offering at the time it was read from a replicated cache (see {@link org.unitime.timetable.onlinesectioning.solver.CompiledOfferingCache}),
+     * null when not known. It is not serialized.
+     */
+    public Long getCacheVersion() { return iCacheVersion; }
+    
     /** Offering id */
     public Long getOfferingId() {
         return iUniqueId;
@@ -116,4 +116,19 @@ public abstract class XRequest implements Serializable, Comparable<XRequest>, Ex
 		out.writeBoolean(iAlternative);
 		out.writeLong(iStudentId);
 	}
-}
\ No newline at end of file
+
+	/** Compact format, see {@link XCompact} */
+	public void writeCompact(XCompact.Output out) throws IOException {
+		out.writeId(iRequestId);
+		out.writeVarInt(iPriority);
+		out.writeBoolean(iAlternative);
+		out.writeId(iStudentId);
+	}
+
+	public void readCompact(XCompact.Input in) throws IOException, ClassNotFoundException {
+		iRequestId = in.readId();
+		iPriority = in.readVarInt();
+		iAlternative = in.readBoolean();
+		iStudentId = in.readId();
+	}
+}
@@ -27,11 +27,14 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.cpsolver.ifs.util.ToolBox;
 import org.unitime.timetable.gwt.shared.CourseRequestInterface;
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.onlinesectioning.MultiLock;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
+import org.unitime.timetable.onlinesectioning.StripedMultiLock;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
 import org.unitime.timetable.onlinesectioning.model.XRequest;
@@ -51,15 +54,32 @@ public abstract class AbstractLockingServer extends AbstractServer {
 	
 	protected AbstractLockingServer(AcademicSessionInfo session, boolean allowAsyncCalls) {
 		super(session, allowAsyncCalls);
-		iMultiLock = new MultiLock(getAcademicSession());
+		iMultiLock = createMultiLock();
 	}
 	
 	@Override
 	protected void load(OnlineSectioningServerContext context) {
-		iMultiLock = new MultiLock(getAcademicSession());
+		iMultiLock = createMultiLock();
 		super.load(context);
 	}
 	
+	protected MultiLock createMultiLock() {
+		if (ApplicationProperty.OnlineSchedulingServerStripedLocking.isTrue())
+			return new StripedMultiLock(getAcademicSession(), ApplicationProperty.OnlineSchedulingServerLockStripes.intValue());
+		return new MultiLock(getAcademicSession());
+	}
+	
+	public MultiLock getMultiLock() {
+		return iMultiLock;
+	}
+	
+	@Override
+	public void unload() {
+		super.unload();
+		if (iMultiLock instanceof StripedMultiLock)
+			iLog.info("Locking statistics: " + ToolBox.dict2string(((StripedMultiLock)iMultiLock).getStatistics(), 2));
+	}
+	
 	@Override
 	public Lock readLock() {
 		if (iLock == null)
@@ -112,6 +132,18 @@ public abstract class AbstractLockingServer extends AbstractServer {
 		};
 	}
 	
+	/**
+	 * Lock the given ids, the time spent waiting for the lock is recorded in the action statistics
+	 */
+	protected Lock lock(Collection<Long> ids, String actionName) {
+		ActionStatistics stats = getActionStatistics();
+		if (stats == null) return iMultiLock.lock(ids);
+		long t0 = System.nanoTime();
+		Lock lock = iMultiLock.lock(ids);
+		stats.recordLockWait(actionName, System.nanoTime() - t0);
+		return lock;
+	}
+	
 	@Override
 	public Lock lockStudent(Long studentId, Collection<Long> offeringIds, String actionName) {
 		Set<Long> ids = new HashSet<Long>();
@@ -143,7 +175,7 @@ public abstract class AbstractLockingServer extends AbstractServer {
 		} finally {
 			iLock.readLock().unlock();
 		}
-		return iMultiLock.lock(ids);
+		return lock(ids, actionName);
 	}
 	
 	@Override
@@ -173,7 +205,7 @@ public abstract class AbstractLockingServer extends AbstractServer {
 		} finally {
 			iLock.readLock().unlock();
 		}
-		return iMultiLock.lock(ids);
+		return lock(ids, actionName);
 	}
 	
 	private Long getOfferingIdFromCourseName(String courseName) {
@@ -227,7 +259,7 @@ public abstract class AbstractLockingServer extends AbstractServer {
 		} finally {
 			iLock.readLock().unlock();
 		}
-		return iMultiLock.lock(ids);
+		return lock(ids, actionName);
 	}
 
 	@Override
@@ -24,6 +24,7 @@ import java.lang.reflect.Modifier;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
 import java.util.HashMap;
@@ -32,7 +33,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
@@ -79,6 +81,7 @@ import org.unitime.timetable.onlinesectioning.model.XCourse;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XEnrollments;
 import org.unitime.timetable.onlinesectioning.model.XTime;
+import org.unitime.timetable.onlinesectioning.solver.CompiledOfferingCache;
 import org.unitime.timetable.onlinesectioning.updates.CheckAllOfferingsAction;
 import org.unitime.timetable.onlinesectioning.updates.PersistExpectedSpacesAction;
 import org.unitime.timetable.onlinesectioning.updates.ReloadAllData;
@@ -96,8 +99,13 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	private OnlineSectioningActionFactory iActionFactory = null;
 	
 	protected List<AsyncExecutor> iExecutors = new ArrayList<AsyncExecutor>();
-	private Queue<Runnable> iExecutorQueue = new LinkedList<Runnable>();
+	private AsyncExecutionQueue iExecutorQueue = null;
 	private HashSet<CacheElement<Long>> iOfferingsToPersistExpectedSpaces = new HashSet<CacheElement<Long>>();
+	private CompiledOfferingCache iCompiledOfferings = (ApplicationProperty.OnlineSchedulingServerCompiledOfferingCache.isTrue() ? new CompiledOfferingCache() : null);
+	private Set<Long> iReadyOfferings = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+	private Object iReadyMonitor = new Object();
+	private EnrollmentAggregates iEnrollmentAggregates = (ApplicationProperty.OnlineSchedulingServerEnrollmentAggregates.isTrue() ? new EnrollmentAggregates() : null);
+	private ActionStatistics iActionStatistics = (ApplicationProperty.OnlineSchedulingServerActionStatistics.isTrue() ? new ActionStatistics() : null);
 	private static ThreadLocal<LinkedList<OnlineSectioningHelper>> sHelper = new ThreadLocal<LinkedList<OnlineSectioningHelper>>();
 	protected Map<String, Object> iProperties = new HashMap<String, Object>();
 	
@@ -121,6 +129,7 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			AcademicSessionInfo academicSession = new AcademicSessionInfo(session);
 			iLog = LogFactory.getLog(OnlineSectioningServer.class.getName() + ".server[" + academicSession.toCompactString() + "]");
 			iProperties.put("AcademicSession", academicSession);
+			iExecutorQueue = createExecutionQueue();
 			int asncPoolSize = ApplicationProperty.OnlineSchedulingServerAsyncPoolSize.intValue();
 			for (int i = 0; i < asncPoolSize; i++)
 				new AsyncExecutor(academicSession, 1 + i).start();
@@ -145,6 +154,7 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		iLog = LogFactory.getLog(OnlineSectioningServer.class.getName() + ".server[" + session.toCompactString() + "]");
 		iProperties.put("AcademicSession", session);
 		if (allowAsyncCalls) {
+			iExecutorQueue = createExecutionQueue();
 			int asncPoolSize = ApplicationProperty.OnlineSchedulingServerAsyncPoolSize.intValue();
 			for (int i = 0; i < asncPoolSize; i++)
 				new AsyncExecutor(session, 1 + i).start();
@@ -293,6 +303,37 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	
 	protected void setReady(boolean ready) {
 		setProperty("ReadyToServe", Boolean.TRUE);
+		iReadyOfferings.clear();
+		synchronized (iReadyMonitor) {
+			iReadyMonitor.notifyAll();
+		}
+	}
+	
+	/**
+	 * Actions that change the server data (see {@link CheckMaster}) must not run against a partially loaded server: while the server
+	 * is being loaded, wait until it is ready. Actions that are allowed during the load (see {@link AllowWhileLoading}) and actions
+	 * executed from within another action are not delayed. An asynchronous executor is not blocked (a part of the load may be waiting
+	 * in the queue), the action fails instead. The action also fails when the load has failed.
+	 */
+	protected void waitUntilReady(OnlineSectioningAction<?> action) throws SectioningException {
+		if (isReady() || action.getClass().getAnnotation(AllowWhileLoading.class) != null) return;
+		CheckMaster ch = action.getClass().getAnnotation(CheckMaster.class);
+		if (ch == null || ch.value() != CheckMaster.Master.REQUIRED) return;
+		LinkedList<OnlineSectioningHelper> h = sHelper.get();
+		if (h != null && !h.isEmpty()) return;
+		if (Thread.currentThread() instanceof AsyncExecutor)
+			throw new SectioningException(MSG.exceptionServerNotReady());
+		synchronized (iReadyMonitor) {
+			while (!isReady()) {
+				if (!Boolean.TRUE.equals(getProperty("ReloadingAllData", Boolean.FALSE)))
+					throw new SectioningException(MSG.exceptionServerNotReady());
+				try {
+					iReadyMonitor.wait(1000);
+				} catch (InterruptedException e) {
+					throw new SectioningException(MSG.exceptionServerNotReady(), e);
+				}
+			}
+		}
 	}
 	
 	@Override
@@ -300,6 +341,18 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		return Boolean.TRUE.equals(getProperty("ReadyToServe", Boolean.FALSE));
 	}
 	
+	/**
+	 * Mark the given offerings as ready (their data are loaded), while the rest of the server is still loading (e.g., all offerings are checked)
+	 */
+	public void setReady(Collection<Long> offeringIds) {
+		if (!isReady()) iReadyOfferings.addAll(offeringIds);
+	}
+	
+	@Override
+	public boolean isReady(Long offeringId) {
+		return isReady() || iReadyOfferings.contains(offeringId);
+	}
+	
 	@Override
 	public void releaseMasterLockIfHeld() {
 		if (iMasterThread != null) {
@@ -380,10 +433,14 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 
 	@Override
 	public <E> E execute(OnlineSectioningAction<E> action, OnlineSectioningLog.Entity user) throws SectioningException {
+		waitUntilReady(action);
+		
 		Long oldSessionId = ApplicationProperties.getSessionId();
 		ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
 		
 		long c0 = OnlineSectioningHelper.getCpuTime();
+		long t0 = System.nanoTime();
+		boolean failed = false;
 		String cacheMode = getConfig().getProperty(action.name() + ".CacheMode", getConfig().getProperty("CacheMode"));
 		OnlineSectioningHelper h = new OnlineSectioningHelper(user, cacheMode != null ? CacheMode.valueOf(cacheMode) : action instanceof HasCacheMode ? ((HasCacheMode)action).getCacheMode() : CacheMode.IGNORE);
 		
@@ -402,6 +459,7 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			}
 			return ret;
 		} catch (Exception e) {
+			failed = true;
 			if (e instanceof SectioningException || e instanceof PageAccessException) {
 				if (e.getCause() == null) {
 					h.info("Execution failed: " + e.getMessage());
@@ -428,8 +486,11 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 				throw (PageAccessException)e;
 			throw new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
 		} finally {
+			long cpuTime = OnlineSectioningHelper.getCpuTime() - c0;
+			if (iActionStatistics != null)
+				iActionStatistics.record(action.name(), System.nanoTime() - t0, cpuTime, failed);
 			if (h.getAction() != null) {
-				h.getAction().setEndTime(System.currentTimeMillis()).setCpuTime(OnlineSectioningHelper.getCpuTime() - c0);
+				h.getAction().setEndTime(System.currentTimeMillis()).setCpuTime(cpuTime);
 				if ((!h.getAction().hasStudent() || !h.getAction().getStudent().hasExternalId()) &&
 					user != null && user.hasExternalId() &&
 					user.hasType() && user.getType() == OnlineSectioningLog.Entity.EntityType.STUDENT) {
@@ -448,9 +509,69 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 	}
 	
+	protected AsyncExecutionQueue createExecutionQueue() {
+		AsyncExecutionQueue.RejectionPolicy policy = AsyncExecutionQueue.RejectionPolicy.CallerRuns;
+		try {
+			policy = AsyncExecutionQueue.RejectionPolicy.valueOf(ApplicationProperty.OnlineSchedulingServerAsyncRejectionPolicy.value());
+		} catch (Exception e) {
+			iLog.warn("Failed to parse asynchronous execution rejection policy " + ApplicationProperty.OnlineSchedulingServerAsyncRejectionPolicy.value() + ", using " + policy + " instead.");
+		}
+		return new AsyncExecutionQueue(ApplicationProperty.OnlineSchedulingServerAsyncQueueSize.intValue(), policy);
+	}
+	
+	/**
+	 * Priority of an asynchronous call, can be set by the unitime.enrollment.server.asyncPriority.[action name] property.
+	 * Batch updates (reload all, check all offerings, persist expected spaces) are of a low priority by default.
+	 */
+	protected AsyncExecutionQueue.Priority getPriority(OnlineSectioningAction<?> action) {
+		String priority = ApplicationProperty.OnlineSchedulingServerAsyncPriority.value(action.name());
+		if (priority != null && !priority.isEmpty()) {
+			try {
+				return AsyncExecutionQueue.Priority.valueOf(priority);
+			} catch (IllegalArgumentException e) {
+				iLog.warn("Failed to parse asynchronous execution priority " + priority + " of " + action.name() + ".");
+			}
+		}
+		if (action instanceof ReloadAllData || action instanceof CheckAllOfferingsAction || action instanceof PersistExpectedSpacesAction)
+			return AsyncExecutionQueue.Priority.Low;
+		return AsyncExecutionQueue.Priority.Normal;
+	}
+	
+	/**
+	 * Cache of the structural part of the offerings as they are cloned into the online sectioning model (null when disabled)
+	 */
+	public CompiledOfferingCache getCompiledOfferingCache() {
+		return iCompiledOfferings;
+	}
+	
+	/**
+	 * Enrollment counts of the offerings as they are displayed on the dashboard (null when disabled)
+	 */
+	public EnrollmentAggregates getEnrollmentAggregates() {
+		return iEnrollmentAggregates;
+	}
+	
+	/**
+	 * Live execution statistics of the actions executed by this server (null when disabled)
+	 */
+	public ActionStatistics getActionStatistics() {
+		return iActionStatistics;
+	}
+	
+	public AsyncExecutionQueue getExecutionQueue() {
+		return iExecutorQueue;
+	}
+	
+	public Map<String, String> getExecutionStatistics() {
+		if (iExecutorQueue == null) return null;
+		Map<String, String> ret = iExecutorQueue.getStatistics();
+		ret.put("Executors", String.valueOf(iExecutors.size()));
+		return ret;
+	}
+	
 	@Override
 	public <E> void execute(final OnlineSectioningAction<E> action, final OnlineSectioningLog.Entity user, final ServerCallback<E> callback) throws SectioningException {
-		if (iExecutors == null || iExecutors.isEmpty()) {
+		if (iExecutorQueue == null || iExecutors == null || iExecutors.isEmpty()) {
 			try {
 				callback.onSuccess(execute(action, user));
 			} catch (Throwable t) {
@@ -459,29 +580,26 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			return;
 		}
 		final String locale = Localization.getLocale();
-		synchronized (iExecutorQueue) {
-			iExecutorQueue.offer(new Runnable() {
-				@Override
-				public void run() {
-					Localization.setLocale(locale);
-					try {
-						callback.onSuccess(execute(action, user));
-					} catch (Throwable t) {
-						callback.onFailure(t);
-					}
-				}
-				
-				@Override
-				public String toString() {
-					return action.name();
+		iExecutorQueue.submit(new AsyncExecutionQueue.Job(action.name(), getPriority(action)) {
+			@Override
+			public void run() {
+				Localization.setLocale(locale);
+				try {
+					callback.onSuccess(execute(action, user));
+				} catch (Throwable t) {
+					callback.onFailure(t);
 				}
-			});
-			iExecutorQueue.notify();
-		}
+			}
+			
+			@Override
+			public void reject(Throwable reason) {
+				iLog.warn("Asynchronous execution of " + action.name() + " rejected: " + reason.getMessage());
+				callback.onFailure(new SectioningException(reason.getMessage(), reason));
+			}
+		}, false, !(Thread.currentThread() instanceof AsyncExecutor));
 	}
 	
 	public class AsyncExecutor extends Thread {
-		private boolean iStop = false;
 		private int iId;
 		
 		public AsyncExecutor(AcademicSessionInfo session, int id) {
@@ -495,17 +613,7 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			try {
 				ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
 				Runnable job;
-				while (!iStop) {
-					synchronized (iExecutorQueue) {
-						job = iExecutorQueue.poll();
-						if (job == null) {
-							try {
-								iLog.debug("Executor " + iId + " is waiting for a new job...");
-								iExecutorQueue.wait();
-							} catch (InterruptedException e) {}
-							continue;
-						}		
-					}
+				while ((job = iExecutorQueue.take()) != null) {
 					job.run();
 					if (_RootDAO.closeCurrentThreadSessions())
 						iLog.debug("Job " + job + " did not close current-thread hibernate session.");
@@ -523,13 +631,12 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	
 	@Override
 	public void unload() {
-		if (iExecutors != null) {
-			for (AsyncExecutor ex: iExecutors)
-				ex.iStop = true;
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.notifyAll();
-			}
+		if (iExecutorQueue != null) {
+			iLog.info("Asynchronous execution statistics: " + ToolBox.dict2string(getExecutionStatistics(), 2));
+			iExecutorQueue.stop();
 		}
+		if (iActionStatistics != null)
+			iLog.info("Action statistics: " + ToolBox.dict2string(iActionStatistics.getStatistics(), 2));
 		if (iMasterThread != null)
 			iMasterThread.dispose();
 	}
@@ -746,20 +853,17 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 		
 		private void executeLoadOnMaster() {
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.offer(new Runnable() {
-					@Override
-					public void run() {
-						loadOnMaster(iContext);
-					}
-					
-					@Override
-					public String toString() {
-						return "load-on-master";
-					}
-				});
-				iExecutorQueue.notify();
-			};
+			iExecutorQueue.submit(new AsyncExecutionQueue.Job("load-on-master", AsyncExecutionQueue.Priority.High) {
+				@Override
+				public void run() {
+					loadOnMaster(iContext);
+				}
+				
+				@Override
+				public void reject(Throwable reason) {
+					iLog.warn("Failed to load the server: " + reason.getMessage());
+				}
+			}, true, false);
 		}
 		
 		@Override
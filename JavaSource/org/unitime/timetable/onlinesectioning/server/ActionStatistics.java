@@ -0,0 +1,284 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Live execution statistics of an online sectioning server, kept in memory for each action name
+ * (see {@link AbstractServer#execute(org.unitime.timetable.onlinesectioning.OnlineSectioningAction, org.unitime.timetable.onlinesectioning.OnlineSectioningLog.Entity)}):
+ * number of calls and failures, and histograms of the wall time, the CPU time, and the time spent waiting for the student and offering locks.
+ * The histograms use logarithmic buckets with 32 linear sub-buckets (about 3% precision), so the percentiles can be computed
+ * at any time without keeping the individual values. Recording is lock-free.
+ *
+ * @author Tomas Muller
+ */
+public class ActionStatistics {
+	/** Name of the summary that combines all the actions */
+	public static final String ALL_ACTIONS = "all";
+	private ConcurrentMap<String, ActionCounter> iActions = new ConcurrentHashMap<String, ActionCounter>();
+	private long iCreated = System.currentTimeMillis();
+
+	protected ActionCounter getCounter(String action) {
+		ActionCounter counter = iActions.get(action);
+		if (counter == null) {
+			counter = new ActionCounter();
+			ActionCounter old = iActions.putIfAbsent(action, counter);
+			if (old != null) counter = old;
+		}
+		return counter;
+	}
+
+	/**
+	 * Record an execution of an action
+	 * @param action action name
+	 * @param wallTime execution time in nanoseconds
+	 * @param cpuTime CPU time in nanoseconds
+	 * @param failed true if the execution failed with an exception
+	 */
+	public void record(String action, long wallTime, long cpuTime, boolean failed) {
+		ActionCounter counter = getCounter(action);
+		counter.iWallTime.record(wallTime);
+		counter.iCpuTime.record(cpuTime);
+		if (failed) counter.iErrors.incrementAndGet();
+	}
+
+	/**
+	 * Record time spent waiting for a lock
+	 * @param action action name
+	 * @param waitTime wait time in nanoseconds
+	 */
+	public void recordLockWait(String action, long waitTime) {
+		getCounter(action == null ? "unknown" : action).iLockWait.record(waitTime);
+	}
+
+	public void clear() {
+		iActions.clear();
+		iCreated = System.currentTimeMillis();
+	}
+
+	/** Summaries of all actions (sorted by name) and a summary of all the actions combined, which comes first */
+	public List<ActionSummary> getSummaries() {
+		List<ActionSummary> ret = new ArrayList<ActionSummary>();
+		ActionCounter total = new ActionCounter();
+		for (Map.Entry<String, ActionCounter> e: iActions.entrySet()) {
+			ret.add(new ActionSummary(e.getKey(), e.getValue()));
+			total.add(e.getValue());
+		}
+		Collections.sort(ret);
+		ret.add(0, new ActionSummary(ALL_ACTIONS, total));
+		return ret;
+	}
+
+	public ActionSummary getSummary(String action) {
+		ActionCounter counter = iActions.get(action);
+		return (counter == null ? null : new ActionSummary(action, counter));
+	}
+
+	/** Time since the statistics are collected in milliseconds */
+	public long getUptime() {
+		return System.currentTimeMillis() - iCreated;
+	}
+
+	public Map<String, String> getStatistics() {
+		Map<String, String> ret = new HashMap<String, String>();
+		for (ActionSummary summary: getSummaries())
+			ret.put(summary.getName(), summary.toString());
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "ActionStatistics{actions=" + iActions.size() + "}";
+	}
+
+	protected static class ActionCounter {
+		private Histogram iWallTime = new Histogram(), iCpuTime = new Histogram(), iLockWait = new Histogram();
+		private AtomicLong iErrors = new AtomicLong(0);
+
+		private void add(ActionCounter counter) {
+			iWallTime.add(counter.iWallTime);
+			iCpuTime.add(counter.iCpuTime);
+			iLockWait.add(counter.iLockWait);
+			iErrors.addAndGet(counter.iErrors.get());
+		}
+	}
+
+	/**
+	 * Histogram of durations with microsecond resolution. Values under 64 microseconds have their own bucket,
+	 * larger values are bucketed by the position of the highest bit and the next 5 bits (32 sub-buckets for each power of two).
+	 */
+	public static class Histogram {
+		private static final int SUB_BITS = 5;
+		private static final int SUB_BUCKETS = 1 << SUB_BITS;
+		private static final int LINEAR = 2 * SUB_BUCKETS;
+		private static final int MAX_EXPONENT = 40;
+		private static final int NR_BUCKETS = LINEAR + (MAX_EXPONENT - SUB_BITS) * SUB_BUCKETS;
+		private AtomicLongArray iCounts = new AtomicLongArray(NR_BUCKETS);
+		private AtomicLong iCount = new AtomicLong(0), iTotal = new AtomicLong(0), iMax = new AtomicLong(0);
+
+		private static int bucket(long micros) {
+			if (micros < LINEAR) return (int)Math.max(0, micros);
+			int exp = 63 - Long.numberOfLeadingZeros(micros);
+			if (exp > MAX_EXPONENT) return NR_BUCKETS - 1;
+			int sub = (int)((micros >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1));
+			return LINEAR + (exp - SUB_BITS - 1) * SUB_BUCKETS + sub;
+		}
+
+		/** Highest value (in microseconds) that falls into the given bucket */
+		private static long highest(int bucket) {
+			if (bucket < LINEAR) return bucket;
+			int exp = (bucket - LINEAR) / SUB_BUCKETS + SUB_BITS + 1;
+			int sub = (bucket - LINEAR) % SUB_BUCKETS;
+			long lowest = (1l << exp) | ((long)sub << (exp - SUB_BITS));
+			return lowest + (1l << (exp - SUB_BITS)) - 1;
+		}
+
+		/** Record a value in nanoseconds */
+		public void record(long nanos) {
+			long micros = nanos / 1000;
+			iCounts.incrementAndGet(bucket(micros));
+			iCount.incrementAndGet();
+			iTotal.addAndGet(micros);
+			long max = iMax.get();
+			while (micros > max && !iMax.compareAndSet(max, micros))
+				max = iMax.get();
+		}
+
+		protected void add(Histogram h) {
+			for (int i = 0; i < NR_BUCKETS; i++) {
+				long c = h.iCounts.get(i);
+				if (c > 0) iCounts.addAndGet(i, c);
+			}
+			iCount.addAndGet(h.iCount.get());
+			iTotal.addAndGet(h.iTotal.get());
+			long max = h.iMax.get();
+			if (max > iMax.get()) iMax.set(max);
+		}
+
+		public long getCount() { return iCount.get(); }
+
+		/** Average value in milliseconds */
+		public double getMean() {
+			long count = iCount.get();
+			return (count == 0 ? 0.0 : iTotal.get() / 1000.0 / count);
+		}
+
+		/** Total in milliseconds */
+		public double getTotal() { return iTotal.get() / 1000.0; }
+
+		/** Maximal value in milliseconds */
+		public double getMax() { return iMax.get() / 1000.0; }
+
+		/** Percentile (0.0 - 100.0) in milliseconds, the highest value of the bucket that contains the percentile is returned */
+		public double getPercentile(double percentile) {
+			long count = iCount.get();
+			if (count == 0) return 0.0;
+			long limit = Math.max(1, (long)Math.ceil(percentile * count / 100.0));
+			long sum = 0;
+			for (int i = 0; i < NR_BUCKETS; i++) {
+				sum += iCounts.get(i);
+				if (sum >= limit)
+					return Math.min(highest(i), iMax.get()) / 1000.0;
+			}
+			return getMax();
+		}
+	}
+
+	/**
+	 * Snapshot of the statistics of one action, it is serializable so that it can be returned from a remote server
+	 */
+	public static class ActionSummary implements Serializable, Comparable<ActionSummary> {
+		private static final long serialVersionUID = 1L;
+		private String iName;
+		private long iCount, iErrors;
+		private double iMean, iP50, iP90, iP99, iMax;
+		private double iCpuMean, iCpuP99, iCpuTotal;
+		private long iLockCount;
+		private double iLockMean, iLockP99, iLockMax;
+
+		public ActionSummary() {}
+
+		protected ActionSummary(String name, ActionCounter counter) {
+			iName = name;
+			iCount = counter.iWallTime.getCount();
+			iErrors = counter.iErrors.get();
+			iMean = counter.iWallTime.getMean();
+			iP50 = counter.iWallTime.getPercentile(50.0);
+			iP90 = counter.iWallTime.getPercentile(90.0);
+			iP99 = counter.iWallTime.getPercentile(99.0);
+			iMax = counter.iWallTime.getMax();
+			iCpuMean = counter.iCpuTime.getMean();
+			iCpuP99 = counter.iCpuTime.getPercentile(99.0);
+			iCpuTotal = counter.iCpuTime.getTotal();
+			iLockCount = counter.iLockWait.getCount();
+			iLockMean = counter.iLockWait.getMean();
+			iLockP99 = counter.iLockWait.getPercentile(99.0);
+			iLockMax = counter.iLockWait.getMax();
+		}
+
+		public String getName() { return iName; }
+		/** Number of executions */
+		public long getCount() { return iCount; }
+		/** Number of failed executions */
+		public long getErrors() { return iErrors; }
+		public double getErrorRate() { return (iCount == 0 ? 0.0 : ((double)iErrors) / iCount); }
+		/** Execution time in milliseconds */
+		public double getMean() { return iMean; }
+		public double getP50() { return iP50; }
+		public double getP90() { return iP90; }
+		public double getP99() { return iP99; }
+		public double getMax() { return iMax; }
+		/** CPU time in milliseconds */
+		public double getCpuMean() { return iCpuMean; }
+		public double getCpuP99() { return iCpuP99; }
+		public double getCpuTotal() { return iCpuTotal; }
+		/** Lock wait time in milliseconds */
+		public long getLockCount() { return iLockCount; }
+		public double getLockMean() { return iLockMean; }
+		public double getLockP99() { return iLockP99; }
+		public double getLockMax() { return iLockMax; }
+
+		@Override
+		public int compareTo(ActionSummary s) {
+			return getName().compareTo(s.getName());
+		}
+
+		@Override
+		public String toString() {
+			return iCount + " calls (" + iErrors + " failed), time: mean " + round(iMean) + "ms, p50 " + round(iP50) + "ms, p90 " + round(iP90) + "ms, p99 " + round(iP99) +
+					"ms, max " + round(iMax) + "ms, cpu: mean " + round(iCpuMean) + "ms, p99 " + round(iCpuP99) + "ms" +
+					(iLockCount == 0 ? "" : ", lock wait: mean " + round(iLockMean) + "ms, p99 " + round(iLockP99) + "ms, max " + round(iLockMax) + "ms");
+		}
+
+		private static double round(double value) {
+			return Math.round(100.0 * value) / 100.0;
+		}
+	}
+}
@@ -0,0 +1,330 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded priority queue of the asynchronous server calls (see {@link AbstractServer#execute(org.unitime.timetable.onlinesectioning.OnlineSectioningAction, org.unitime.timetable.onlinesectioning.OnlineSectioningLog.Entity, org.unitime.timetable.onlinesectioning.OnlineSectioningServer.ServerCallback)}).
+ * Jobs of a higher priority are taken first, jobs of the same priority in the order in which they were submitted.
+ * When the queue is full, the {@link RejectionPolicy} decides what happens with a new job.
+ * The queue also keeps track of the queue depth and of the time the jobs spent waiting in the queue.
+ *
+ * @author Tomas Muller
+ */
+public class AsyncExecutionQueue {
+	private ReentrantLock iLock = new ReentrantLock();
+	private Condition iNotEmpty = iLock.newCondition();
+	private Condition iNotFull = iLock.newCondition();
+	private PriorityQueue<Job> iQueue = new PriorityQueue<Job>();
+	private int iCapacity;
+	private RejectionPolicy iPolicy;
+	private boolean iStopped = false;
+	private long iSequence = 0;
+	private int[] iDepth = new int[Priority.values().length];
+	private int iMaxDepth = 0;
+
+	private AtomicLong iSubmitted = new AtomicLong(0), iExecuted = new AtomicLong(0), iRejected = new AtomicLong(0), iCallerRuns = new AtomicLong(0);
+	private AtomicLong iWaitTime = new AtomicLong(0), iMaxWaitTime = new AtomicLong(0), iBlockedTime = new AtomicLong(0);
+
+	public static enum Priority {
+		High, Normal, Low,
+	}
+
+	public static enum RejectionPolicy {
+		/** Submitting thread waits until there is a space in the queue */
+		Block,
+		/** Job is executed by the submitting thread */
+		CallerRuns,
+		/** Job is rejected (its callback fails) */
+		Abort,
+		/** The last job of the lowest priority is rejected to make space for the new one, if it has a lower priority than the new job (otherwise, the new job is rejected) */
+		DiscardLowest,
+	}
+
+	/**
+	 * A queued job
+	 */
+	public static abstract class Job implements Runnable, Comparable<Job> {
+		private String iName;
+		private Priority iPriority;
+		private long iSequence;
+		private long iQueued;
+
+		public Job(String name, Priority priority) {
+			iName = name; iPriority = (priority == null ? Priority.Normal : priority);
+		}
+
+		public String getName() { return iName; }
+		public Priority getPriority() { return iPriority; }
+
+		/** Called when the job is rejected (queue is full or stopped) */
+		public abstract void reject(Throwable reason);
+
+		@Override
+		public int compareTo(Job job) {
+			int cmp = getPriority().compareTo(job.getPriority());
+			if (cmp != 0) return cmp;
+			return Long.compare(iSequence, job.iSequence);
+		}
+
+		@Override
+		public String toString() {
+			return getName();
+		}
+	}
+
+	/**
+	 * Thrown (passed to {@link Job#reject(Throwable)}) when a job is rejected
+	 */
+	public static class RejectedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public RejectedException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * @param capacity maximal number of queued jobs (zero or less for an unbounded queue)
+	 * @param policy what to do with a new job when the queue is full
+	 */
+	public AsyncExecutionQueue(int capacity, RejectionPolicy policy) {
+		iCapacity = capacity;
+		iPolicy = (policy == null ? RejectionPolicy.CallerRuns : policy);
+	}
+
+	public int getCapacity() { return iCapacity; }
+	public RejectionPolicy getRejectionPolicy() { return iPolicy; }
+
+	private boolean isFull() {
+		return iCapacity > 0 && iQueue.size() >= iCapacity;
+	}
+
+	private void enqueue(Job job) {
+		job.iSequence = iSequence++;
+		job.iQueued = System.nanoTime();
+		iQueue.add(job);
+		iDepth[job.getPriority().ordinal()]++;
+		if (iQueue.size() > iMaxDepth) iMaxDepth = iQueue.size();
+		iSubmitted.incrementAndGet();
+		iNotEmpty.signal();
+	}
+
+	/**
+	 * Submit a job.
+	 * @param job job to be queued
+	 * @param force when true, the job is queued even when the queue is full
+	 * @param canBlock when false, the {@link RejectionPolicy#Block} policy behaves like {@link RejectionPolicy#CallerRuns} (e.g., the job is submitted by one of the threads that are consuming the queue)
+	 */
+	public void submit(Job job, boolean force, boolean canBlock) {
+		Job rejected = null;
+		boolean callerRuns = false;
+		iLock.lock();
+		try {
+			if (iStopped) {
+				rejected = job;
+			} else if (force || !isFull()) {
+				enqueue(job);
+			} else {
+				switch (iPolicy) {
+				case Block:
+					if (!canBlock) { callerRuns = true; break; }
+					long t0 = System.nanoTime();
+					while (isFull() && !iStopped)
+						iNotFull.awaitUninterruptibly();
+					iBlockedTime.addAndGet(System.nanoTime() - t0);
+					if (iStopped)
+						rejected = job;
+					else
+						enqueue(job);
+					break;
+				case CallerRuns:
+					callerRuns = true;
+					break;
+				case Abort:
+					rejected = job;
+					break;
+				case DiscardLowest:
+					Job lowest = null;
+					for (Job j: iQueue)
+						if (lowest == null || lowest.compareTo(j) < 0) lowest = j;
+					if (lowest != null && lowest.getPriority().compareTo(job.getPriority()) > 0) {
+						iQueue.remove(lowest);
+						iDepth[lowest.getPriority().ordinal()]--;
+						rejected = lowest;
+						enqueue(job);
+					} else {
+						rejected = job;
+					}
+					break;
+				}
+			}
+		} finally {
+			iLock.unlock();
+		}
+		if (callerRuns) {
+			iCallerRuns.incrementAndGet();
+			job.run();
+		}
+		if (rejected != null) {
+			iRejected.incrementAndGet();
+			rejected.reject(new RejectedException(iStopped ? "Server is shutting down." : "Server is busy, too many pending requests (" + iCapacity + ")."));
+		}
+	}
+
+	/**
+	 * Take the next job, wait for one if the queue is empty.
+	 * @return null when the queue has been stopped
+	 */
+	public Job take() {
+		iLock.lock();
+		try {
+			while (iQueue.isEmpty() && !iStopped)
+				iNotEmpty.awaitUninterruptibly();
+			if (iStopped) return null;
+			Job job = iQueue.poll();
+			iDepth[job.getPriority().ordinal()]--;
+			iNotFull.signal();
+			long wait = System.nanoTime() - job.iQueued;
+			iWaitTime.addAndGet(wait);
+			long max = iMaxWaitTime.get();
+			while (wait > max && !iMaxWaitTime.compareAndSet(max, wait))
+				max = iMaxWaitTime.get();
+			iExecuted.incrementAndGet();
+			return job;
+		} finally {
+			iLock.unlock();
+		}
+	}
+
+	/**
+	 * Stop the queue: all waiting threads are released and the jobs that are still in the queue are rejected.
+	 */
+	public void stop() {
+		List<Job> rejected = new ArrayList<Job>();
+		iLock.lock();
+		try {
+			iStopped = true;
+			for (Iterator<Job> i = iQueue.iterator(); i.hasNext(); ) {
+				rejected.add(i.next());
+				i.remove();
+			}
+			for (int i = 0; i < iDepth.length; i++) iDepth[i] = 0;
+			iNotEmpty.signalAll();
+			iNotFull.signalAll();
+		} finally {
+			iLock.unlock();
+		}
+		for (Job job: rejected) {
+			iRejected.incrementAndGet();
+			job.reject(new RejectedException("Server is shutting down."));
+		}
+	}
+
+	public boolean isStopped() {
+		iLock.lock();
+		try {
+			return iStopped;
+		} finally {
+			iLock.unlock();
+		}
+	}
+
+	/** Number of jobs in the queue */
+	public int size() {
+		iLock.lock();
+		try {
+			return iQueue.size();
+		} finally {
+			iLock.unlock();
+		}
+	}
+
+	/** Number of jobs of the given priority in the queue */
+	public int size(Priority priority) {
+		iLock.lock();
+		try {
+			return iDepth[priority.ordinal()];
+		} finally {
+			iLock.unlock();
+		}
+	}
+
+	/** Largest number of jobs that were in the queue at the same time */
+	public int getMaxSize() {
+		iLock.lock();
+		try {
+			return iMaxDepth;
+		} finally {
+			iLock.unlock();
+		}
+	}
+
+	/** Number of jobs that were queued */
+	public long getSubmittedCount() { return iSubmitted.get(); }
+	/** Number of jobs that were taken from the queue */
+	public long getExecutedCount() { return iExecuted.get(); }
+	/** Number of jobs that were rejected */
+	public long getRejectedCount() { return iRejected.get(); }
+	/** Number of jobs that were executed by the submitting thread, because the queue was full */
+	public long getCallerRunsCount() { return iCallerRuns.get(); }
+	/** Total time the jobs spent waiting in the queue in milliseconds */
+	public double getWaitTime() { return iWaitTime.get() / 1000000.0; }
+	/** Average time a job spent waiting in the queue in milliseconds */
+	public double getAverageWaitTime() { long executed = iExecuted.get(); return (executed == 0 ? 0.0 : iWaitTime.get() / 1000000.0 / executed); }
+	/** Longest time a job spent waiting in the queue in milliseconds */
+	public double getMaxWaitTime() { return iMaxWaitTime.get() / 1000000.0; }
+	/** Total time the submitting threads were blocked by a full queue in milliseconds */
+	public double getBlockedTime() { return iBlockedTime.get() / 1000000.0; }
+
+	public Map<String, String> getStatistics() {
+		Map<String, String> ret = new HashMap<String, String>();
+		ret.put("Queue Size", String.valueOf(size()));
+		for (Priority p: Priority.values())
+			ret.put("Queue Size [" + p.name() + "]", String.valueOf(size(p)));
+		ret.put("Queue Capacity", iCapacity <= 0 ? "unbounded" : String.valueOf(iCapacity));
+		ret.put("Max Queue Size", String.valueOf(getMaxSize()));
+		ret.put("Rejection Policy", iPolicy.name());
+		ret.put("Submitted", String.valueOf(getSubmittedCount()));
+		ret.put("Executed", String.valueOf(getExecutedCount()));
+		ret.put("Rejected", String.valueOf(getRejectedCount()));
+		ret.put("Caller Runs", String.valueOf(getCallerRunsCount()));
+		ret.put("Average Wait Time [ms]", String.valueOf(getAverageWaitTime()));
+		ret.put("Max Wait Time [ms]", String.valueOf(getMaxWaitTime()));
+		ret.put("Blocked Time [ms]", String.valueOf(getBlockedTime()));
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		return "AsyncExecutionQueue{size=" + size() + ", capacity=" + iCapacity + ", maxSize=" + getMaxSize() + ", policy=" + iPolicy +
+				", submitted=" + getSubmittedCount() + ", rejected=" + getRejectedCount() + ", callerRuns=" + getCallerRunsCount() +
+				", avgWait=" + getAverageWaitTime() + "ms, maxWait=" + getMaxWaitTime() + "ms}";
+	}
+}
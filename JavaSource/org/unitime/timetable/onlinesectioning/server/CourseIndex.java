@@ -0,0 +1,219 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+
+/**
+ * Course search index used by the course finder / suggest box. Courses are indexed by the lower case
+ * course name (also followed by the title, see {@link XCourseId#matchCourseName(String)}) and by every
+ * word-starting suffix of the lower case title (see {@link XCourseId#matchTitle(String)}), so that
+ * the courses matching a query can be looked up by a prefix search instead of checking all the courses.
+ * <br>
+ * When created with titleContains set to true, every suffix of the title is indexed instead, so that the title
+ * matches when it contains the query anywhere (as the like queries of the {@link DatabaseServer} used to do).
+ *
+ * @author Tomas Muller
+ */
+public class CourseIndex {
+	private ReentrantReadWriteLock iLock = new ReentrantReadWriteLock();
+	private Map<Long, XCourseId> iCourses = new HashMap<Long, XCourseId>();
+	private TreeMap<String, Set<XCourseId>> iNames = new TreeMap<String, Set<XCourseId>>();
+	private TreeMap<String, Set<XCourseId>> iTitles = new TreeMap<String, Set<XCourseId>>();
+	private boolean iTitleContains = false;
+
+	public CourseIndex() {}
+
+	public CourseIndex(boolean titleContains) {
+		iTitleContains = titleContains;
+	}
+
+	public CourseIndex(Collection<? extends XCourseId> courses) {
+		for (XCourseId course: courses)
+			add(course);
+	}
+
+	protected static List<String> getNameKeys(XCourseId course) {
+		List<String> keys = new ArrayList<String>(3);
+		keys.add(course.getCourseNameInLowerCase());
+		if (course.getTitle() != null) {
+			keys.add((course.getCourseName() + " " + course.getTitle()).toLowerCase());
+			keys.add((course.getCourseName() + " - " + course.getTitle()).toLowerCase());
+		}
+		return keys;
+	}
+
+	protected List<String> getTitleKeys(XCourseId course) {
+		List<String> keys = new ArrayList<String>();
+		if (course.getTitle() == null) return keys;
+		String title = course.getTitle().toLowerCase();
+		for (int i = 0; i < title.length(); i++)
+			if (iTitleContains || i == 0 || title.charAt(i - 1) == ' ')
+				keys.add(title.substring(i));
+		return keys;
+	}
+
+	private static void put(Map<String, Set<XCourseId>> table, String key, XCourseId course) {
+		Set<XCourseId> courses = table.get(key);
+		if (courses == null) {
+			courses = new HashSet<XCourseId>();
+			table.put(key, courses);
+		}
+		courses.add(course);
+	}
+
+	private static void remove(Map<String, Set<XCourseId>> table, String key, XCourseId course) {
+		Set<XCourseId> courses = table.get(key);
+		if (courses != null && courses.remove(course) && courses.isEmpty())
+			table.remove(key);
+	}
+
+	/**
+	 * Add a course to the index (a course of the same course id is replaced)
+	 */
+	public void add(XCourseId course) {
+		iLock.writeLock().lock();
+		try {
+			XCourseId old = iCourses.put(course.getCourseId(), course);
+			if (old != null) unindex(old);
+			for (String key: getNameKeys(course))
+				put(iNames, key, course);
+			for (String key: getTitleKeys(course))
+				put(iTitles, key, course);
+		} finally {
+			iLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Remove a course from the index
+	 */
+	public void remove(Long courseId) {
+		iLock.writeLock().lock();
+		try {
+			XCourseId old = iCourses.remove(courseId);
+			if (old != null) unindex(old);
+		} finally {
+			iLock.writeLock().unlock();
+		}
+	}
+
+	public void remove(XCourseId course) {
+		remove(course.getCourseId());
+	}
+
+	private void unindex(XCourseId course) {
+		for (String key: getNameKeys(course))
+			remove(iNames, key, course);
+		for (String key: getTitleKeys(course))
+			remove(iTitles, key, course);
+	}
+
+	public void clear() {
+		iLock.writeLock().lock();
+		try {
+			iCourses.clear();
+			iNames.clear();
+			iTitles.clear();
+		} finally {
+			iLock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		iLock.readLock().lock();
+		try {
+			return iCourses.size();
+		} finally {
+			iLock.readLock().unlock();
+		}
+	}
+
+	private TreeSet<XCourseId> lookup(NavigableMap<String, Set<XCourseId>> table, String prefix) {
+		TreeSet<XCourseId> ret = new TreeSet<XCourseId>();
+		iLock.readLock().lock();
+		try {
+			for (Map.Entry<String, Set<XCourseId>> e: table.tailMap(prefix, true).entrySet()) {
+				if (!e.getKey().startsWith(prefix)) break;
+				ret.addAll(e.getValue());
+			}
+		} finally {
+			iLock.readLock().unlock();
+		}
+		return ret;
+	}
+
+	/**
+	 * Courses with matching course name, ordered by {@link XCourseId#compareTo(XCourseId)}
+	 */
+	public TreeSet<XCourseId> matchCourseName(String queryInLowerCase) {
+		return lookup(iNames, queryInLowerCase);
+	}
+
+	/**
+	 * Courses with matching title (but not matching course name), ordered by {@link XCourseId#compareTo(XCourseId)}
+	 */
+	public TreeSet<XCourseId> matchTitle(String queryInLowerCase) {
+		TreeSet<XCourseId> ret = lookup(iTitles, queryInLowerCase);
+		ret.removeAll(matchCourseName(queryInLowerCase));
+		return ret;
+	}
+
+	/**
+	 * Same results as checking {@link XCourseId#matchCourseName(String)} and then {@link XCourseId#matchTitle(String)} of all the courses.
+	 * The matching courses are checked against the course matcher in the order given by the {@link CourseComparator}, and the search
+	 * stops as soon as the limit is reached.
+	 */
+	public SubSet<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
+		SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, new CourseComparator(query));
+		String queryInLowerCase = query.toLowerCase();
+		TreeSet<XCourseId> names = matchCourseName(queryInLowerCase);
+		for (XCourseId c: names) {
+			if (matcher == null || matcher.match(c)) {
+				ret.add(c);
+				if (ret.isLimitReached()) return ret;
+			}
+		}
+		if (queryInLowerCase.length() > 2) {
+			TreeSet<XCourseId> titles = lookup(iTitles, queryInLowerCase);
+			titles.removeAll(names);
+			for (XCourseId c: titles) {
+				if (matcher == null || matcher.match(c)) {
+					ret.add(c);
+					if (ret.isLimitReached()) return ret;
+				}
+			}
+		}
+		return ret;
+	}
+}
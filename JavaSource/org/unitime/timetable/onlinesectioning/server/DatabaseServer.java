@@ -55,12 +55,15 @@ import org.unitime.timetable.onlinesectioning.model.XEnrollment;
 import org.unitime.timetable.onlinesectioning.model.XExpectations;
 import org.unitime.timetable.onlinesectioning.model.XOffering;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.solver.CompiledOfferingCache;
 import org.unitime.timetable.onlinesectioning.updates.ReloadAllData;
 
 /**
  * @author Tomas Muller
  */
 public class DatabaseServer extends AbstractLockingServer {
+	private CourseIndex iCourseIndex;
+	private long iCourseIndexTimeStamp;
 
 	public DatabaseServer(OnlineSectioningServerContext context) throws SectioningException {
 		super(context);
@@ -73,24 +76,58 @@ public class DatabaseServer extends AbstractLockingServer {
 	@Override
 	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
 		if (matcher != null) matcher.setServer(this);
-		Collection<XCourseId> ret = new ArrayList<XCourseId>();
-		for (CourseOffering c: (List<CourseOffering>)getCurrentHelper().getHibSession().createQuery(
-				"select c from CourseOffering c where " +
-				"c.subjectArea.session.uniqueId = :sessionId and c.instructionalOffering.notOffered = false and (" +
-				"(lower(c.subjectArea.subjectAreaAbbreviation || ' ' || c.courseNbr) like :q || '%' or lower(c.subjectArea.subjectAreaAbbreviation || ' ' || c.courseNbr || ' - ' || c.title) like :q || '%') " +
-				(query.length() > 2 ? "or lower(c.title) like '%' || :q || '%'" : "") + ") " +
-				"order by case " +
-				"when lower(c.subjectArea.subjectAreaAbbreviation || ' ' || c.courseNbr) like :q || '%' then 0 else 1 end," + // matches on course name first
-				"c.subjectArea.subjectAreaAbbreviation, c.courseNbr")
-				.setString("q", query.toLowerCase())
-				.setLong("sessionId", getAcademicSession().getUniqueId())
-				.setCacheable(true).list()) {
-			XCourse course = new XCourse(c);
-			if (matcher == null || matcher.match(course))
-				ret.add(course);
-			if (limit != null && limit > 0 && ret.size() >= limit) break;
+		return getCourseIndex().findCourses(query, limit, matcher);
+	}
+	
+	/**
+	 * Everything is read from the database on each call, there is nothing to wait for
+	 */
+	@Override
+	public boolean isReady() {
+		return true;
+	}
+	
+	@Override
+	public boolean isReady(Long offeringId) {
+		return true;
+	}
+	
+	/**
+	 * Offerings are loaded from the database on each call, there is nothing to cache
+	 */
+	@Override
+	public CompiledOfferingCache getCompiledOfferingCache() {
+		return null;
+	}
+	
+	/**
+	 * Enrollments are loaded from the database on each call, there is nothing to cache
+	 */
+	@Override
+	public EnrollmentAggregates getEnrollmentAggregates() {
+		return null;
+	}
+	
+	/**
+	 * Course search index of all offered courses, it is re-created when it is older than
+	 * DatabaseServer.CourseIndexTimeToLive seconds (defaults to one minute). Titles are matched
+	 * when they contain the query anywhere, the same way the original like queries did.
+	 */
+	protected synchronized CourseIndex getCourseIndex() {
+		long ttl = 1000l * getConfig().getPropertyInt("DatabaseServer.CourseIndexTimeToLive", 60);
+		if (iCourseIndex == null || System.currentTimeMillis() - iCourseIndexTimeStamp > ttl) {
+			CourseIndex index = new CourseIndex(true);
+			for (CourseOffering c: (List<CourseOffering>)getCurrentHelper().getHibSession().createQuery(
+					"select c from CourseOffering c where " +
+					"c.subjectArea.session.uniqueId = :sessionId and c.instructionalOffering.notOffered = false")
+					.setLong("sessionId", getAcademicSession().getUniqueId())
+					.setCacheable(true).list()) {
+				index.add(new XCourse(c));
+			}
+			iCourseIndex = index;
+			iCourseIndexTimeStamp = System.currentTimeMillis();
 		}
-		return ret;
+		return iCourseIndex;
 	}
 
 	@Override
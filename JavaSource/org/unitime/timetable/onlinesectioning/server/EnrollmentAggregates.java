@@ -0,0 +1,230 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.model.XCourse;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XOverride;
+import org.unitime.timetable.onlinesectioning.model.XRequest;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+
+/**
+ * Enrollment counts of the offerings (per course and per section: enrolled, reserved, wait-listed, requested, unassigned,
+ * consent and override needed) as they are displayed on the Online Student Scheduling Dashboard
+ * (see {@link org.unitime.timetable.onlinesectioning.status.FindEnrollmentInfoAction}).
+ * The counts of an offering are computed on the first call and kept until the offering or any of its requests is changed:
+ * the server drops the counts of the changed offering and of all the offerings the changed student has requests for
+ * (whether an unassigned request can be assigned depends on the other requests of the student).
+ * So a dashboard hit costs O(number of courses) instead of O(number of requests) when nothing has changed.
+ *
+ * @author Tomas Muller
+ */
+public class EnrollmentAggregates {
+	private Map<Long, OfferingAggregates> iOfferings = new ConcurrentHashMap<Long, OfferingAggregates>();
+	private long iVersion = 0;
+	private AtomicLong iHits = new AtomicLong(0), iMisses = new AtomicLong(0);
+
+	/**
+	 * Counts of the given offering (the cached ones if the offering has not been changed since they were computed)
+	 */
+	public OfferingAggregates get(OnlineSectioningServer server, Long offeringId) {
+		OfferingAggregates aggregates = iOfferings.get(offeringId);
+		if (aggregates != null) {
+			iHits.incrementAndGet();
+			return aggregates;
+		}
+		iMisses.incrementAndGet();
+		XOffering offering = server.getOffering(offeringId);
+		if (offering == null) return null;
+		long version;
+		synchronized (this) {
+			version = iVersion;
+		}
+		aggregates = new OfferingAggregates(server, offering, server.getEnrollments(offeringId));
+		synchronized (this) {
+			// do not cache the counts when the offering has been changed in the meantime
+			if (version == iVersion)
+				iOfferings.put(offeringId, aggregates);
+		}
+		return aggregates;
+	}
+
+	/**
+	 * Drop the counts of the given offering
+	 */
+	public synchronized void invalidate(Long offeringId) {
+		iVersion ++;
+		iOfferings.remove(offeringId);
+	}
+
+	/**
+	 * Drop the counts of all the offerings the given student has requests for
+	 */
+	public synchronized void invalidate(XStudent student) {
+		if (student == null) return;
+		iVersion ++;
+		for (XRequest request: student.getRequests())
+			if (request instanceof XCourseRequest)
+				for (XCourseId course: ((XCourseRequest)request).getCourseIds())
+					iOfferings.remove(course.getOfferingId());
+	}
+
+	public synchronized void clear() {
+		iVersion ++;
+		iOfferings.clear();
+	}
+
+	public int size() {
+		return iOfferings.size();
+	}
+
+	public long getHitCount() { return iHits.get(); }
+	public long getMissCount() { return iMisses.get(); }
+
+	@Override
+	public String toString() {
+		return "EnrollmentAggregates{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "}";
+	}
+
+	/**
+	 * Counts of an offering using the aggregates of the given server (if the server has them), computed counts otherwise
+	 */
+	public static OfferingAggregates getOfferingAggregates(OnlineSectioningServer server, Long offeringId) {
+		EnrollmentAggregates aggregates = (server instanceof AbstractServer ? ((AbstractServer)server).getEnrollmentAggregates() : null);
+		if (aggregates != null) return aggregates.get(server, offeringId);
+		XOffering offering = server.getOffering(offeringId);
+		return (offering == null ? null : new OfferingAggregates(server, offering, server.getEnrollments(offeringId)));
+	}
+
+	public static class OfferingAggregates {
+		private Map<Long, CourseAggregates> iCourses = new HashMap<Long, CourseAggregates>();
+
+		public OfferingAggregates(OnlineSectioningServer server, XOffering offering, XEnrollments enrollments) {
+			for (XCourse course: offering.getCourses())
+				iCourses.put(course.getCourseId(), new CourseAggregates());
+			Map<Long, XStudent> students = new HashMap<Long, XStudent>();
+			for (XCourseRequest request: enrollments.getRequests()) {
+				XEnrollment enrollment = request.getEnrollment();
+				for (XCourse course: offering.getCourses()) {
+					if (!request.hasCourse(course.getCourseId())) continue;
+					CourseAggregates ca = iCourses.get(course.getCourseId());
+					ca.iRequestedStudentIds.add(request.getStudentId());
+					if (enrollment != null && !enrollment.getCourseId().equals(course.getCourseId())) continue;
+					if (enrollment == null) {
+						XOverride override = request.getOverride(course);
+						if (override != null && !override.isApproved()) continue;
+					}
+					XStudent student = students.get(request.getStudentId());
+					if (student == null) {
+						student = server.getStudent(request.getStudentId());
+						if (student == null) continue;
+						students.put(request.getStudentId(), student);
+					}
+					ca.iMatchingStudentIds.add(request.getStudentId());
+					if (enrollment != null) {
+						ca.iEnrollment ++;
+						if (enrollment.getReservation() != null) ca.iReservation ++;
+						if (course.getConsentLabel() != null && enrollment.getApproval() == null) ca.iConsentNeeded ++;
+					} else if (student.canAssign(request)) {
+						ca.iUnassigned ++;
+						if (!request.isAlternative() && request.isPrimary(course)) {
+							ca.iUnassignedPrimary ++;
+							if (request.isWaitlist()) ca.iWaitlist ++;
+						}
+					}
+					if (request.isOverridePending(course)) ca.iOverrideNeeded ++;
+				}
+				if (enrollment != null && enrollment.getOfferingId().equals(offering.getOfferingId())) {
+					XCourse course = offering.getCourse(enrollment.getCourseId());
+					boolean hasStudent = students.containsKey(request.getStudentId());
+					for (XCourse other: offering.getCourses()) {
+						CourseAggregates ca = iCourses.get(other.getCourseId());
+						for (Long sectionId: enrollment.getSectionIds()) {
+							SectionAggregates sa = ca.iSections.get(sectionId);
+							if (sa == null) {
+								sa = new SectionAggregates();
+								ca.iSections.put(sectionId, sa);
+							}
+							if (!other.getCourseId().equals(enrollment.getCourseId())) {
+								sa.iOther ++;
+							} else if (hasStudent) {
+								sa.iEnrollment ++;
+								if (enrollment.getReservation() != null) sa.iReservation ++;
+								if (course != null && course.getConsentLabel() != null && enrollment.getApproval() == null) sa.iConsentNeeded ++;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		/** Counts of the given course, null if the course is not in the offering */
+		public CourseAggregates getCourse(Long courseId) {
+			return iCourses.get(courseId);
+		}
+	}
+
+	public static class CourseAggregates {
+		private List<Long> iRequestedStudentIds = new ArrayList<Long>(), iMatchingStudentIds = new ArrayList<Long>();
+		private int iEnrollment = 0, iReservation = 0, iWaitlist = 0, iUnassigned = 0, iUnassignedPrimary = 0, iConsentNeeded = 0, iOverrideNeeded = 0;
+		private Map<Long, SectionAggregates> iSections = new HashMap<Long, SectionAggregates>();
+
+		/** Students that have requested the course */
+		public List<Long> getRequestedStudentIds() { return Collections.unmodifiableList(iRequestedStudentIds); }
+		/** Students that are counted in the course (enrolled in the course or not enrolled in the offering, with no pending or rejected override) */
+		public List<Long> getMatchingStudentIds() { return Collections.unmodifiableList(iMatchingStudentIds); }
+		public int getRequested() { return iRequestedStudentIds.size(); }
+		public int getMatching() { return iMatchingStudentIds.size(); }
+		public int getEnrollment() { return iEnrollment; }
+		public int getReservation() { return iReservation; }
+		public int getWaitlist() { return iWaitlist; }
+		/** Unassigned requests that can be assigned (see {@link XStudent#canAssign(XCourseRequest)}) */
+		public int getUnassigned() { return iUnassigned; }
+		public int getUnassignedPrimary() { return iUnassignedPrimary; }
+		public int getConsentNeeded() { return iConsentNeeded; }
+		public int getOverrideNeeded() { return iOverrideNeeded; }
+		/** Counts of the given section, null when there are no enrollments in the section */
+		public SectionAggregates getSection(Long sectionId) { return iSections.get(sectionId); }
+	}
+
+	public static class SectionAggregates {
+		private int iEnrollment = 0, iReservation = 0, iConsentNeeded = 0, iOther = 0;
+
+		/** Enrollments in the section using the course */
+		public int getEnrollment() { return iEnrollment; }
+		public int getReservation() { return iReservation; }
+		public int getConsentNeeded() { return iConsentNeeded; }
+		/** Enrollments in the section using some other course of the offering */
+		public int getOther() { return iOther; }
+	}
+}
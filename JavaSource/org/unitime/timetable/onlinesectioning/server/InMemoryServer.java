@@ -21,12 +21,15 @@ package org.unitime.timetable.onlinesectioning.server;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
 import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
@@ -35,44 +38,73 @@ import org.unitime.timetable.onlinesectioning.model.XCourse;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
 import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
 import org.unitime.timetable.onlinesectioning.model.XExpectations;
 import org.unitime.timetable.onlinesectioning.model.XOffering;
 import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 
 /**
+ * In-memory online sectioning server.
+ * <br>
+ * When unitime.enrollment.server.snapshotReads is enabled, the student, offering, request, enrollment, expectation and
+ * instructor getters do not take the server read lock. Writers are still serialized by the write lock, but they never
+ * change a value that has been published in one of these tables: the offering requests and the offerings of an instructor
+ * are copied, changed, and the new version is put in the table instead (copy-on-write). When a request is assigned or
+ * wait-listed, a changed copy of the course request and a copy of the student holding it are published (the request
+ * held by the published student is never changed in place). The enrollment index is a persistent structure, see
+ * {@link XEnrollments#update(XCourseRequest, XCourseRequest)}. A reader therefore always sees a consistent version
+ * of each value without waiting for the writers.
+ * <br>
+ * The course lookups (course search, course by name or id) always take the read lock: the courses are updated in place
+ * when the courses of the same name change (see {@link XCourseId#setHasUniqueName(boolean)}), and the course index and
+ * the courses for name table are only consistent with each other under the lock.
+ * 
  * @author Tomas Muller
  */
 public class InMemoryServer extends AbstractLockingServer {
-	private Hashtable<Long, XCourseId> iCourseForId = new Hashtable<Long, XCourseId>();
-	private Hashtable<String, TreeSet<XCourseId>> iCourseForName = new Hashtable<String, TreeSet<XCourseId>>();
+	private static final Lock NO_LOCK = new Lock() {
+		public void release() {}
+	};
+	
+	private Map<Long, XCourseId> iCourseForId = new ConcurrentHashMap<Long, XCourseId>();
+	private Map<String, TreeSet<XCourseId>> iCourseForName = new ConcurrentHashMap<String, TreeSet<XCourseId>>();
+	private CourseIndex iCourseIndex = new CourseIndex();
 	
-	private Hashtable<Long, XStudent> iStudentTable = new Hashtable<Long, XStudent>();
-	private Hashtable<Long, XOffering> iOfferingTable = new Hashtable<Long, XOffering>();
-	private Hashtable<Long, List<XCourseRequest>> iOfferingRequests = new Hashtable<Long, List<XCourseRequest>>();
-	private Hashtable<Long, XExpectations> iExpectations = new Hashtable<Long, XExpectations>();
-	private Hashtable<String, Set<Long>> iInstructedOfferings = new Hashtable<String, Set<Long>>();
+	private Map<Long, XStudent> iStudentTable = new ConcurrentHashMap<Long, XStudent>();
+	private Map<Long, XOffering> iOfferingTable = new ConcurrentHashMap<Long, XOffering>();
+	private Map<Long, List<XCourseRequest>> iOfferingRequests = new ConcurrentHashMap<Long, List<XCourseRequest>>();
+	private Map<Long, XEnrollments> iOfferingEnrollments = new ConcurrentHashMap<Long, XEnrollments>();
+	private Map<Long, XExpectations> iExpectations = new ConcurrentHashMap<Long, XExpectations>();
+	private Map<String, Set<Long>> iInstructedOfferings = new ConcurrentHashMap<String, Set<Long>>();
+	private Boolean iSnapshotReads;
 	
 	public InMemoryServer(OnlineSectioningServerContext context) throws SectioningException {
 		super(context);
 	}
+	
+	/**
+	 * Read without the server read lock, the published values are never changed by the writers
+	 */
+	public boolean isSnapshotReads() {
+		if (iSnapshotReads == null)
+			iSnapshotReads = ApplicationProperty.OnlineSchedulingServerSnapshotReads.isTrue();
+		return iSnapshotReads;
+	}
+	
+	/**
+	 * Server read lock, or no lock when reading from snapshots
+	 */
+	protected Lock snapshotReadLock() {
+		return (isSnapshotReads() ? NO_LOCK : readLock());
+	}
 
 	@Override
 	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
 		if (matcher != null) matcher.setServer(this);
 		Lock lock = readLock();
 		try {
-			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, new CourseComparator(query));
-			String queryInLowerCase = query.toLowerCase();
-			for (XCourseId c : iCourseForId.values()) {
-				if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-			}
-			if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
-				for (XCourseId c : iCourseForId.values()) {
-					if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
-				}
-			}
-			return ret;
+			return iCourseIndex.findCourses(query, limit, matcher);
 		} finally {
 			lock.release();
 		}
@@ -96,7 +128,7 @@ public class InMemoryServer extends AbstractLockingServer {
 	@Override
 	public Collection<XStudent> findStudents(StudentMatcher matcher) {
 		if (matcher != null) matcher.setServer(this);
-		Lock lock = readLock();
+		Lock lock = snapshotReadLock();
 		try {
 			List<XStudent> ret = new ArrayList<XStudent>();
 			for (XStudent s: iStudentTable.values())
@@ -147,7 +179,7 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public XStudent getStudent(Long studentId) {
-		Lock lock = readLock();
+		Lock lock = snapshotReadLock();
 		try {
 			return iStudentTable.get(studentId);
 		} finally {
@@ -157,7 +189,7 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public XOffering getOffering(Long offeringId) {
-		Lock lock = readLock();
+		Lock lock = snapshotReadLock();
 		try {
 			return iOfferingTable.get(offeringId);
 		} finally {
@@ -167,6 +199,10 @@ public class InMemoryServer extends AbstractLockingServer {
 
 	@Override
 	public Collection<XCourseRequest> getRequests(Long offeringId) {
+		if (isSnapshotReads()) {
+			List<XCourseRequest> requests = iOfferingRequests.get(offeringId);
+			return requests == null ? null : Collections.unmodifiableList(requests);
+		}
 		Lock lock = readLock();
 		try {
 			Collection<XCourseRequest> requests = iOfferingRequests.get(offeringId);
@@ -175,10 +211,99 @@ public class InMemoryServer extends AbstractLockingServer {
 			lock.release();
 		}		
 	}
+	
+	@Override
+	public XEnrollments getEnrollments(Long offeringId) {
+		if (isSnapshotReads()) {
+			XEnrollments enrollments = iOfferingEnrollments.get(offeringId);
+			if (enrollments != null) return enrollments;
+			List<XCourseRequest> requests = iOfferingRequests.get(offeringId);
+			enrollments = new XEnrollments(offeringId, requests);
+			if (requests != null && iOfferingEnrollments.putIfAbsent(offeringId, enrollments) == null && iOfferingRequests.get(offeringId) != requests) {
+				// offering requests have been changed in the mean time, the writer may have missed the new enrollments
+				iOfferingEnrollments.remove(offeringId, enrollments);
+				return getEnrollments(offeringId);
+			}
+			return enrollments;
+		}
+		Lock lock = readLock();
+		try {
+			XEnrollments enrollments = iOfferingEnrollments.get(offeringId);
+			if (enrollments == null) {
+				enrollments = new XEnrollments(offeringId, iOfferingRequests.get(offeringId));
+				iOfferingEnrollments.put(offeringId, enrollments);
+			}
+			return enrollments;
+		} finally {
+			lock.release();
+		}
+	}
+	
+	private void updateEnrollments(Long offeringId, XCourseRequest removed, XCourseRequest added) {
+		XEnrollments enrollments = iOfferingEnrollments.get(offeringId);
+		if (enrollments != null)
+			iOfferingEnrollments.put(offeringId, enrollments.update(removed, added));
+	}
+	
+	/**
+	 * Remove course request from the offering requests (write lock must be held)
+	 */
+	private boolean removeRequest(Long offeringId, XCourseRequest request) {
+		List<XCourseRequest> requests = iOfferingRequests.get(offeringId);
+		if (requests == null) return false;
+		if (isSnapshotReads()) {
+			int index = requests.indexOf(request);
+			if (index < 0) return false;
+			List<XCourseRequest> copy = new ArrayList<XCourseRequest>(requests);
+			copy.remove(index);
+			iOfferingRequests.put(offeringId, copy);
+			return true;
+		}
+		return requests.remove(request);
+	}
+	
+	/**
+	 * Add course request to the offering requests (write lock must be held)
+	 */
+	private void addRequest(Long offeringId, XCourseRequest request) {
+		List<XCourseRequest> requests = iOfferingRequests.get(offeringId);
+		if (isSnapshotReads()) {
+			List<XCourseRequest> copy = (requests == null ? new ArrayList<XCourseRequest>() : new ArrayList<XCourseRequest>(requests));
+			copy.add(request);
+			iOfferingRequests.put(offeringId, copy);
+		} else {
+			if (requests == null) {
+				requests = new ArrayList<XCourseRequest>();
+				iOfferingRequests.put(offeringId, requests);
+			}
+			requests.add(request);
+		}
+	}
+	
+	/**
+	 * Replace course request that has been changed in the offering requests (write lock must be held).
+	 * When reading from snapshots, a new version of the offering requests is published even when the request is the same
+	 * instance, so that {@link InMemoryServer#getEnrollments(Long)} can detect the change.
+	 */
+	private void replaceRequest(Long offeringId, XCourseRequest request) {
+		if (isSnapshotReads()) {
+			List<XCourseRequest> requests = iOfferingRequests.get(offeringId);
+			List<XCourseRequest> copy = (requests == null ? new ArrayList<XCourseRequest>() : new ArrayList<XCourseRequest>(requests));
+			int index = copy.indexOf(request);
+			if (index >= 0)
+				copy.set(index, request);
+			else
+				copy.add(request);
+			iOfferingRequests.put(offeringId, copy);
+		} else {
+			removeRequest(offeringId, request);
+			addRequest(offeringId, request);
+		}
+	}
 
 	@Override
 	public XExpectations getExpectations(Long offeringId) {
-		Lock lock = readLock();
+		Lock lock = snapshotReadLock();
 		try {
 			XExpectations expectations = iExpectations.get(offeringId);
 			return expectations == null ? new XExpectations(offeringId) : expectations;
@@ -203,11 +328,13 @@ public class InMemoryServer extends AbstractLockingServer {
 		try {
 			XStudent oldStudent = iStudentTable.remove(student.getStudentId());
 			if (oldStudent != null) {
+				if (getEnrollmentAggregates() != null)
+					getEnrollmentAggregates().invalidate(oldStudent);
 				for (XRequest request: oldStudent.getRequests())
 					if (request instanceof XCourseRequest)
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
-							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-							if (requests != null) requests.remove(request);
+							if (removeRequest(course.getOfferingId(), (XCourseRequest)request))
+								updateEnrollments(course.getOfferingId(), (XCourseRequest)request, null);
 						}
 			}
 		} finally {
@@ -220,13 +347,17 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			XStudent oldStudent = iStudentTable.put(student.getStudentId(), student);
+			if (getEnrollmentAggregates() != null) {
+				getEnrollmentAggregates().invalidate(oldStudent);
+				getEnrollmentAggregates().invalidate(student);
+			}
 			if (updateRequests) {
 				if (oldStudent != null) {
 					for (XRequest request: oldStudent.getRequests())
 						if (request instanceof XCourseRequest)
 							for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
-								List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-								if (requests != null) requests.remove(request);
+								if (removeRequest(course.getOfferingId(), (XCourseRequest)request))
+									updateEnrollments(course.getOfferingId(), (XCourseRequest)request, null);
 							}
 				}
 				for (XRequest request: student.getRequests())
@@ -234,12 +365,8 @@ public class InMemoryServer extends AbstractLockingServer {
 						XCourseRequest cr = (XCourseRequest)request;
 						for (XCourseId course: cr.getCourseIds()) {
 							if (cr.isDuplicateOffering(course)) continue;
-							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-							if (requests == null) {
-								requests = new ArrayList<XCourseRequest>();
-								iOfferingRequests.put(course.getOfferingId(), requests);
-							}
-							requests.add((XCourseRequest)request);
+							addRequest(course.getOfferingId(), cr);
+							updateEnrollments(course.getOfferingId(), null, cr);
 						}
 					}
 			}
@@ -256,45 +383,82 @@ public class InMemoryServer extends AbstractLockingServer {
 	protected void remove(XOffering offering, boolean removeExpectations) {
 		Lock lock = writeLock();
 		try {
-			for (XCourse course: offering.getCourses()) {
-				iCourseForId.remove(course.getCourseId());
-				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
-				if (courses != null) {
-					courses.remove(course);
-					if (courses.size() == 1) 
-						for (XCourseId x: courses) x.setHasUniqueName(true);
-					if (courses.isEmpty())
-						iCourseForName.remove(course.getCourseNameInLowerCase());
-				}
-			}
 			iOfferingTable.remove(offering.getOfferingId());
+			unindex(offering, null);
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().invalidate(offering.getOfferingId());
+			if (getEnrollmentAggregates() != null)
+				getEnrollmentAggregates().invalidate(offering.getOfferingId());
 			if (removeExpectations)
 				iExpectations.remove(offering.getOfferingId());
-			for (String externalId: offering.getInstructorExternalIds()) {
-				Set<Long> offeringIds = iInstructedOfferings.get(externalId);
-				if (offeringIds != null) offeringIds.remove(offering.getOfferingId());
-			}
 		} finally {
 			lock.release();
 		}
 	}
+	
+	/**
+	 * Remove courses and instructors of an offering from the course and instructor tables (write lock must be held)
+	 * @param offering offering to be removed
+	 * @param replacement new version of the offering, courses (of the same name) and instructors that are also in the new version are kept
+	 */
+	private void unindex(XOffering offering, XOffering replacement) {
+		for (XCourse course: offering.getCourses()) {
+			XCourse other = (replacement == null ? null : replacement.getCourse(course.getCourseId()));
+			if (other != null && other.getCourseNameInLowerCase().equals(course.getCourseNameInLowerCase())) continue;
+			if (other == null) {
+				iCourseForId.remove(course.getCourseId());
+				iCourseIndex.remove(course);
+			}
+			TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
+			if (courses != null) {
+				courses.remove(course);
+				if (courses.size() == 1) 
+					for (XCourseId x: courses) x.setHasUniqueName(true);
+				if (courses.isEmpty())
+					iCourseForName.remove(course.getCourseNameInLowerCase());
+			}
+		}
+		Set<String> instructors = (replacement == null ? null : replacement.getInstructorExternalIds());
+		for (String externalId: offering.getInstructorExternalIds()) {
+			if (instructors != null && instructors.contains(externalId)) continue;
+			Set<Long> offeringIds = iInstructedOfferings.get(externalId);
+			if (offeringIds != null) {
+				if (isSnapshotReads()) {
+					if (offeringIds.contains(offering.getOfferingId())) {
+						offeringIds = new HashSet<Long>(offeringIds);
+						offeringIds.remove(offering.getOfferingId());
+						iInstructedOfferings.put(externalId, offeringIds);
+					}
+				} else {
+					offeringIds.remove(offering.getOfferingId());
+				}
+			}
+		}
+	}
 
 	@Override
 	public void update(XOffering offering) {
 		Lock lock = writeLock();
 		try {
-			XOffering oldOffering = iOfferingTable.get(offering.getOfferingId());
-			if (oldOffering != null)
-				remove(oldOffering, false);
+			// the new version is published first, so that the offering is never missing when read from snapshots
+			XOffering oldOffering = iOfferingTable.put(offering.getOfferingId(), offering);
+			if (oldOffering != null) {
+				unindex(oldOffering, offering);
+				if (getCompiledOfferingCache() != null)
+					getCompiledOfferingCache().invalidate(offering.getOfferingId());
+				if (getEnrollmentAggregates() != null)
+					getEnrollmentAggregates().invalidate(offering.getOfferingId());
+			}
 			
-			iOfferingTable.put(offering.getOfferingId(), offering);
 			for (XCourse course: offering.getCourses()) {
 				iCourseForId.put(course.getCourseId(), course);
+				iCourseIndex.add(course);
 				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
 				if (courses == null) {
 					courses = new TreeSet<XCourseId>();
 					iCourseForName.put(course.getCourseNameInLowerCase(), courses);
 				}
+				courses.remove(course);
 				courses.add(course);
 				if (courses.size() == 1) 
 					for (XCourseId x: courses) x.setHasUniqueName(true);
@@ -305,9 +469,12 @@ public class InMemoryServer extends AbstractLockingServer {
 				Set<Long> offeringIds = iInstructedOfferings.get(externalId);
 				if (offeringIds == null) {
 					offeringIds = new HashSet<Long>();
-					iInstructedOfferings.put(externalId, offeringIds);
+				} else if (isSnapshotReads()) {
+					if (offeringIds.contains(offering.getOfferingId())) continue;
+					offeringIds = new HashSet<Long>(offeringIds);
 				}
 				offeringIds.add(offering.getOfferingId());
+				iInstructedOfferings.put(externalId, offeringIds);
 			}
 		} finally {
 			lock.release();
@@ -319,33 +486,45 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			if (iStudentTable == null)
-				iStudentTable = new Hashtable<Long, XStudent>();
+				iStudentTable = new ConcurrentHashMap<Long, XStudent>();
 			else
 				iStudentTable.clear();
 			if (iOfferingTable == null)
-				iOfferingTable = new Hashtable<Long, XOffering>();
+				iOfferingTable = new ConcurrentHashMap<Long, XOffering>();
 			else
 				iOfferingTable.clear();
 			if (iOfferingRequests == null)
-				iOfferingRequests = new Hashtable<Long, List<XCourseRequest>>();
+				iOfferingRequests = new ConcurrentHashMap<Long, List<XCourseRequest>>();
 			else
 				iOfferingRequests.clear();
+			if (iOfferingEnrollments == null)
+				iOfferingEnrollments = new ConcurrentHashMap<Long, XEnrollments>();
+			else
+				iOfferingEnrollments.clear();
 			if (iExpectations == null)
-				iExpectations = new Hashtable<Long, XExpectations>();
+				iExpectations = new ConcurrentHashMap<Long, XExpectations>();
 			else
 				iExpectations.clear();
 			if (iCourseForId == null)
-				iCourseForId = new Hashtable<Long, XCourseId>();
+				iCourseForId = new ConcurrentHashMap<Long, XCourseId>();
 			else
 				iCourseForId.clear();
 			if (iCourseForName == null)
-				iCourseForName = new Hashtable<String, TreeSet<XCourseId>>();
+				iCourseForName = new ConcurrentHashMap<String, TreeSet<XCourseId>>();
 			else
 				iCourseForName.clear();
+			if (iCourseIndex == null)
+				iCourseIndex = new CourseIndex();
+			else
+				iCourseIndex.clear();
 			if (iInstructedOfferings == null)
-				iInstructedOfferings = new Hashtable<String, Set<Long>>();
+				iInstructedOfferings = new ConcurrentHashMap<String, Set<Long>>();
 			else
 				iInstructedOfferings.clear();
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().clear();
+			if (getEnrollmentAggregates() != null)
+				getEnrollmentAggregates().clear();
 		} finally {
 			lock.release();
 		}
@@ -357,6 +536,9 @@ public class InMemoryServer extends AbstractLockingServer {
 		try {
 			iStudentTable.clear();
 			iOfferingRequests.clear();
+			iOfferingEnrollments.clear();
+			if (getEnrollmentAggregates() != null)
+				getEnrollmentAggregates().clear();
 		} finally {
 			lock.release();
 		}
@@ -367,29 +549,26 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			XStudent student = iStudentTable.get(request.getStudentId());
-			for (XRequest r: student.getRequests()) {
+			for (int i = 0; i < student.getRequests().size(); i++) {
+				XRequest r = student.getRequests().get(i);
 				if (r.equals(request)) {
 					XCourseRequest cr = (XCourseRequest)r;
-
-					// remove old requests
-					for (XCourseId course: cr.getCourseIds()) {
-						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-						if (requests != null) requests.remove(cr);
-					}
+					
+					// the published request is never changed, publish a changed copy instead
+					if (isSnapshotReads())
+						return publish(student, i, new XCourseRequest(cr, enrollment));
 
 					// assign
 					cr.setEnrollment(enrollment);
 					
-					// put new requests
+					// replace the request in the offering requests
 					for (XCourseId course: cr.getCourseIds()) {
 						if (cr.isDuplicateOffering(course)) continue;
-						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-						if (requests == null) {
-							requests = new ArrayList<XCourseRequest>();
-							iOfferingRequests.put(course.getOfferingId(), requests);
-						}
-						requests.add(cr);
+						replaceRequest(course.getOfferingId(), cr);
+						updateEnrollments(course.getOfferingId(), cr, cr);
 					}
+					if (getEnrollmentAggregates() != null)
+						getEnrollmentAggregates().invalidate(student);
 					
 					return cr;
 				}
@@ -405,29 +584,29 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			XStudent student = iStudentTable.get(request.getStudentId());
-			for (XRequest r: student.getRequests()) {
+			for (int i = 0; i < student.getRequests().size(); i++) {
+				XRequest r = student.getRequests().get(i);
 				if (r.equals(request)) {
 					XCourseRequest cr = (XCourseRequest)r;
-
-					// remove old requests
-					for (XCourseId course: cr.getCourseIds()) {
-						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-						if (requests != null) requests.remove(cr);
+					
+					// the published request is never changed, publish a changed copy instead
+					if (isSnapshotReads()) {
+						XCourseRequest copy = new XCourseRequest(cr, cr.getEnrollment());
+						copy.setWaitlist(waitlist);
+						return publish(student, i, copy);
 					}
 
 					// assign
 					cr.setWaitlist(waitlist);
 					
-					// put new requests
+					// replace the request in the offering requests
 					for (XCourseId course: cr.getCourseIds()) {
 						if (cr.isDuplicateOffering(course)) continue;
-						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-						if (requests == null) {
-							requests = new ArrayList<XCourseRequest>();
-							iOfferingRequests.put(course.getOfferingId(), requests);
-						}
-						requests.add(cr);
+						replaceRequest(course.getOfferingId(), cr);
+						updateEnrollments(course.getOfferingId(), cr, cr);
 					}
+					if (getEnrollmentAggregates() != null)
+						getEnrollmentAggregates().invalidate(student);
 					
 					return cr;
 				}
@@ -438,9 +617,32 @@ public class InMemoryServer extends AbstractLockingServer {
 		}
 	}
 
+	/**
+	 * Publish a changed copy of a course request of a student (write lock must be held): a copy of the student with the
+	 * request replaced is put in the student table, the offering requests and enrollments are updated copy-on-write.
+	 * @param student published student
+	 * @param index index of the course request in the student requests
+	 * @param request changed copy of the course request
+	 * @return the published course request
+	 */
+	private XCourseRequest publish(XStudent student, int index, XCourseRequest request) {
+		XCourseRequest original = (XCourseRequest)student.getRequests().get(index);
+		XStudent copy = new XStudent(student);
+		copy.getRequests().set(index, request);
+		iStudentTable.put(copy.getStudentId(), copy);
+		for (XCourseId course: request.getCourseIds()) {
+			if (request.isDuplicateOffering(course)) continue;
+			replaceRequest(course.getOfferingId(), request);
+			updateEnrollments(course.getOfferingId(), original, request);
+		}
+		if (getEnrollmentAggregates() != null)
+			getEnrollmentAggregates().invalidate(copy);
+		return request;
+	}
+
 	@Override
 	public Collection<Long> getInstructedOfferings(String instructorExternalId) {
-		Lock lock = readLock();
+		Lock lock = snapshotReadLock();
 		try {
 			return iInstructedOfferings.get(instructorExternalId);
 		} finally {
@@ -450,7 +652,7 @@ public class InMemoryServer extends AbstractLockingServer {
 	
 	@Override
 	public Set<Long> getRequestedCourseIds(Long studentId) {
-		Lock lock = readLock();
+		Lock lock = snapshotReadLock();
 		try {
 			XStudent student = iStudentTable.get(studentId);
 			return (student == null ? null : student.getRequestedCourseIds());
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,7 +45,15 @@ import org.infinispan.distexec.DistributedCallable;
 import org.infinispan.distexec.DistributedExecutorService;
 import org.infinispan.jmx.CacheJmxRegistration;
 import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryCreated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryCreatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 import org.infinispan.transaction.LockingMode;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.shared.CourseRequestInterface;
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
@@ -54,7 +63,9 @@ import org.unitime.timetable.onlinesectioning.match.StudentMatcher;
 import org.unitime.timetable.onlinesectioning.model.XCourse;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
 import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequestSet;
 import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
 import org.unitime.timetable.onlinesectioning.model.XExpectations;
 import org.unitime.timetable.onlinesectioning.model.XOffering;
 import org.unitime.timetable.onlinesectioning.model.XRequest;
@@ -77,6 +88,10 @@ public class ReplicatedServer extends AbstractServer {
 	private Cache<Long, XExpectations> iExpectations;
 	private Cache<Long, Boolean> iOfferingLocks;
 	private Cache<String, Set<Long>> iInstructedOfferings; 
+	private Map<Long, XEnrollments> iOfferingEnrollments;
+	private long iOfferingEnrollmentsVersion;
+	private CourseIndex iCourseIndex;
+	private boolean iCompactRequests = ApplicationProperty.OnlineSchedulingServerCompactRequests.isTrue();
 
 	public ReplicatedServer(OnlineSectioningServerContext context) throws SectioningException {
 		super(context);
@@ -106,6 +121,12 @@ public class ReplicatedServer extends AbstractServer {
 		iExpectations = getCache("Expectations");
 		iOfferingLocks = getCache("OfferingLocks");
 		iInstructedOfferings = getCache("InstructedOfferings");
+		iOfferingEnrollments = new Hashtable<Long, XEnrollments>();
+		iOfferingRequests.addListener(new OfferingRequestsListener());
+		iStudentTable.addListener(new StudentTableListener());
+		iOfferingTable.addListener(new OfferingTableListener());
+		iCourseIndex = new CourseIndex();
+		iCourseForId.addListener(new CourseForIdListener(iCourseForId.values()));
 
 		Map<String, Object> original = new HashMap<String, Object>(iProperties);
 		iProperties = getCache("Config");
@@ -285,7 +306,12 @@ public class ReplicatedServer extends AbstractServer {
 	public XOffering getOffering(Long offeringId) {
 		Lock lock = readLock();
 		try {
-			return iOfferingTable.get(offeringId);
+			// the version must be read before the offering, see CompiledOfferingCache
+			Long version = (getCompiledOfferingCache() == null ? null : getCompiledOfferingCache().getVersion(offeringId));
+			XOffering offering = iOfferingTable.get(offeringId);
+			// the returned instance may be shared with other readers, and an offering read within a transaction may not be committed yet
+			if (offering == null || version == null || inTransaction()) return offering;
+			return new XOffering(offering, version);
 		} finally {
 			lock.release();
 		}
@@ -302,6 +328,148 @@ public class ReplicatedServer extends AbstractServer {
 		}		
 	}
 
+	@Override
+	public XEnrollments getEnrollments(Long offeringId) {
+		// within a transaction, the offering requests may contain uncommitted changes: do not use or cache the node-wide index
+		if (inTransaction())
+			return new XEnrollments(offeringId, getRequests(offeringId));
+		XEnrollments enrollments = iOfferingEnrollments.get(offeringId);
+		if (enrollments != null) return enrollments;
+		long version;
+		synchronized (iOfferingEnrollments) {
+			version = iOfferingEnrollmentsVersion;
+		}
+		enrollments = new XEnrollments(offeringId, getRequests(offeringId));
+		synchronized (iOfferingEnrollments) {
+			// do not cache the index when the offering requests have been changed in the meantime
+			if (version == iOfferingEnrollmentsVersion)
+				iOfferingEnrollments.put(offeringId, enrollments);
+		}
+		return enrollments;
+	}
+	
+	protected void invalidateEnrollments(Long offeringId) {
+		synchronized (iOfferingEnrollments) {
+			iOfferingEnrollmentsVersion ++;
+			if (offeringId == null)
+				iOfferingEnrollments.clear();
+			else
+				iOfferingEnrollments.remove(offeringId);
+		}
+		if (getEnrollmentAggregates() != null) {
+			if (offeringId == null)
+				getEnrollmentAggregates().clear();
+			else
+				getEnrollmentAggregates().invalidate(offeringId);
+		}
+	}
+	
+	/**
+	 * Node-local course search index, kept up to date by a listener on the course for id cache
+	 */
+	public CourseIndex getCourseIndex() {
+		return iCourseIndex;
+	}
+	
+	@Listener(sync=true)
+	public class CourseForIdListener {
+		public CourseForIdListener(Collection<XCourseId> courses) {
+			for (XCourseId course: courses)
+				iCourseIndex.add(course);
+		}
+		
+		@CacheEntryCreated
+		public void created(CacheEntryCreatedEvent<Long, XCourseId> event) {
+			if (!event.isPre() && event.getValue() != null)
+				iCourseIndex.add(event.getValue());
+		}
+		
+		@CacheEntryModified
+		public void modified(CacheEntryModifiedEvent<Long, XCourseId> event) {
+			if (!event.isPre() && event.getValue() != null)
+				iCourseIndex.add(event.getValue());
+		}
+		
+		@CacheEntryRemoved
+		public void removed(CacheEntryRemovedEvent<Long, XCourseId> event) {
+			if (event.isPre())
+				iCourseIndex.remove(event.getKey());
+		}
+	}
+	
+	/**
+	 * Offering requests can be changed on any node of the cluster (and within a transaction), so instead of updating
+	 * the local enrollment index it is dropped whenever the offering requests are changed and re-created on the next
+	 * {@link ReplicatedServer#getEnrollments(Long)} call.
+	 */
+	@Listener(sync=true)
+	public class OfferingRequestsListener {
+		@CacheEntryCreated
+		public void created(CacheEntryCreatedEvent<Long, Set<XCourseRequest>> event) {
+			invalidateEnrollments(event.getKey());
+		}
+		
+		@CacheEntryModified
+		public void modified(CacheEntryModifiedEvent<Long, Set<XCourseRequest>> event) {
+			invalidateEnrollments(event.getKey());
+		}
+		
+		@CacheEntryRemoved
+		public void removed(CacheEntryRemovedEvent<Long, Set<XCourseRequest>> event) {
+			invalidateEnrollments(event.getKey());
+		}
+	}
+
+	/**
+	 * Whether an unassigned request can be assigned depends on the other requests of the student, so the enrollment counts
+	 * of all the offerings of a changed student are dropped (offerings with changed requests are handled by the {@link OfferingRequestsListener}).
+	 */
+	@Listener(sync=true)
+	public class StudentTableListener {
+		@CacheEntryCreated
+		public void created(CacheEntryCreatedEvent<Long, XStudent> event) {
+			if (!event.isPre() && getEnrollmentAggregates() != null)
+				getEnrollmentAggregates().invalidate(event.getValue());
+		}
+		
+		@CacheEntryModified
+		public void modified(CacheEntryModifiedEvent<Long, XStudent> event) {
+			if (!event.isPre() && getEnrollmentAggregates() != null)
+				getEnrollmentAggregates().invalidate(event.getValue());
+		}
+	}
+	
+	/**
+	 * Enrollment counts depend on the courses of the offering (e.g., consent), drop them when the offering is changed
+	 */
+	@Listener(sync=true)
+	public class OfferingTableListener {
+		@CacheEntryCreated
+		public void created(CacheEntryCreatedEvent<Long, XOffering> event) {
+			if (getEnrollmentAggregates() != null)
+				getEnrollmentAggregates().invalidate(event.getKey());
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().invalidate(event.getKey());
+		}
+		
+		@CacheEntryModified
+		public void modified(CacheEntryModifiedEvent<Long, XOffering> event) {
+			if (getEnrollmentAggregates() != null)
+				getEnrollmentAggregates().invalidate(event.getKey());
+			// both before and after the change, so that no offering read in between is cached as the new version
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().invalidate(event.getKey());
+		}
+		
+		@CacheEntryRemoved
+		public void removed(CacheEntryRemovedEvent<Long, XOffering> event) {
+			if (getEnrollmentAggregates() != null)
+				getEnrollmentAggregates().invalidate(event.getKey());
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().invalidate(event.getKey());
+		}
+	}
+
 	@Override
 	public XExpectations getExpectations(Long offeringId) {
 		Lock lock = readLock();
@@ -329,18 +497,19 @@ public class ReplicatedServer extends AbstractServer {
 		try {
 			XStudent oldStudent = iStudentTable.remove(student.getStudentId());
 			if (oldStudent != null) {
+				Map<Long, Set<XCourseRequest>> changed = new HashMap<Long, Set<XCourseRequest>>();
 				for (XRequest request: oldStudent.getRequests())
 					if (request instanceof XCourseRequest)
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
-							Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
+							Set<XCourseRequest> requests = getOfferingRequests(course.getOfferingId(), changed, false);
 							if (requests != null) {
 								if (!requests.remove(request))
 									iLog.warn("REMOVE[1]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
-								iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
 							} else {
 								iLog.warn("REMOVE[2]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
 							}
 						}
+				putOfferingRequests(changed);
 			}
 		} finally {
 			lock.release();
@@ -354,15 +523,15 @@ public class ReplicatedServer extends AbstractServer {
 			if (updateRequests) {
 				XStudent oldStudent = iStudentTable.get(student.getStudentId());
 				iStudentTable.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(student.getStudentId(), student);
+				Map<Long, Set<XCourseRequest>> changed = new HashMap<Long, Set<XCourseRequest>>();
 				if (oldStudent != null) {
 					for (XRequest request: oldStudent.getRequests())
 						if (request instanceof XCourseRequest)
 							for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
-								Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
+								Set<XCourseRequest> requests = getOfferingRequests(course.getOfferingId(), changed, false);
 								if (requests != null) {
 									if (!requests.remove(request))
 										iLog.warn("UPDATE[1]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
-									iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
 								} else {
 									iLog.warn("UPDATE[2]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
 								}
@@ -370,13 +539,9 @@ public class ReplicatedServer extends AbstractServer {
 				}
 				for (XRequest request: student.getRequests())
 					if (request instanceof XCourseRequest)
-						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
-							Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-							if (requests == null)
-								requests = new HashSet<XCourseRequest>();
-							requests.add((XCourseRequest)request);
-							iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
-						}
+						for (XCourseId course: ((XCourseRequest)request).getCourseIds())
+							getOfferingRequests(course.getOfferingId(), changed, true).add((XCourseRequest)request);
+				putOfferingRequests(changed);
 			} else {
 				iStudentTable.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(student.getStudentId(), student);
 			}
@@ -384,6 +549,33 @@ public class ReplicatedServer extends AbstractServer {
 			lock.release();
 		}
 	}
+	
+	/**
+	 * Offering requests that are being changed: each offering requests entry is only read once and put (replicated) once,
+	 * even when it is changed multiple times by the same call (e.g., a request is removed and then put back).
+	 * The requests are kept in a {@link HashSet}, unless the compact format is enabled (see {@link ApplicationProperty#OnlineSchedulingServerCompactRequests}),
+	 * in which case an {@link XCourseRequestSet} is used.
+	 * There are no delta updates: a change of any request still replicates all the requests of the offering, the compact
+	 * format only makes the replicated entry smaller.
+	 */
+	private Set<XCourseRequest> getOfferingRequests(Long offeringId, Map<Long, Set<XCourseRequest>> changed, boolean create) {
+		Set<XCourseRequest> requests = changed.get(offeringId);
+		if (requests != null) return requests;
+		requests = iOfferingRequests.get(offeringId);
+		if (requests == null) {
+			if (!create) return null;
+			requests = (iCompactRequests ? new XCourseRequestSet() : new HashSet<XCourseRequest>());
+		} else if (iCompactRequests && !(requests instanceof XCourseRequestSet)) {
+			requests = new XCourseRequestSet(requests);
+		}
+		changed.put(offeringId, requests);
+		return requests;
+	}
+	
+	private void putOfferingRequests(Map<Long, Set<XCourseRequest>> changed) {
+		for (Map.Entry<Long, Set<XCourseRequest>> entry: changed.entrySet())
+			iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(entry.getKey(), entry.getValue());
+	}
 
 	@Override
 	public void remove(XOffering offering) {
@@ -407,6 +599,8 @@ public class ReplicatedServer extends AbstractServer {
 				}
 			}
 			iOfferingTable.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).remove(offering.getOfferingId());
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().invalidate(offering.getOfferingId());
 			if (removeExpectations)
 				iExpectations.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).remove(offering.getOfferingId());
 			for (String externalId: offering.getInstructorExternalIds()) {
@@ -466,8 +660,12 @@ public class ReplicatedServer extends AbstractServer {
 			iOfferingTable.clear();
 			iCourseForId.clear();
 			iCourseForName.clear();
+			iCourseIndex.clear();
 			iOfferingRequests.clear();
 			iInstructedOfferings.clear();
+			invalidateEnrollments(null);
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().clear();
 		} finally {
 			lock.release();
 		}
@@ -479,6 +677,7 @@ public class ReplicatedServer extends AbstractServer {
 		try {
 			iStudentTable.clear();
 			iOfferingRequests.clear();
+			invalidateEnrollments(null);
 		} finally {
 			lock.release();
 		}
@@ -493,42 +692,33 @@ public class ReplicatedServer extends AbstractServer {
 				if (r.equals(request)) {
 					XCourseRequest cr = (XCourseRequest)r;
 
-					// remove old requests
+					cr.setEnrollment(enrollment);
+
+					// replace the request in the offering requests, one put per offering
+					Map<Long, Set<XCourseRequest>> changed = new HashMap<Long, Set<XCourseRequest>>();
 					for (XCourseId course: cr.getCourseIds()) {
-						Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-						if (requests != null) {
-							if (!requests.remove(cr))
-								iLog.warn("ASSIGN[1]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
-							iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
-						} else {
+						Set<XCourseRequest> requests = getOfferingRequests(course.getOfferingId(), changed, false);
+						if (requests == null) {
 							iLog.warn("ASSIGN[2]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
+							requests = getOfferingRequests(course.getOfferingId(), changed, true);
+						} else if (!requests.remove(cr)) {
+							iLog.warn("ASSIGN[1]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
 						}
-					}
-
-					// assign
-					cr.setEnrollment(enrollment);
-					
-					// put new requests
-					for (XCourseId course: cr.getCourseIds()) {
-						Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-						if (requests == null)
-							requests = new HashSet<XCourseRequest>();
 						requests.add(cr);
-						iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
 					}
+					putOfferingRequests(changed);
 					
 					iStudentTable.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(student.getStudentId(), student);
 					return cr;
 				}
 			}
 			iLog.warn("ASSIGN[3]: Request " + student + " " + request + " was not found among student requests");
+			Map<Long, Set<XCourseRequest>> changed = new HashMap<Long, Set<XCourseRequest>>();
 			for (XCourseId course: request.getCourseIds()) {
-				Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-				if (requests != null) {
-					requests.remove(request);
-					iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
-				}
+				Set<XCourseRequest> requests = getOfferingRequests(course.getOfferingId(), changed, false);
+				if (requests != null) requests.remove(request);
 			}
+			putOfferingRequests(changed);
 			return null;
 		} finally {
 			lock.release();
@@ -544,41 +734,33 @@ public class ReplicatedServer extends AbstractServer {
 				if (r.equals(request)) {
 					XCourseRequest cr = (XCourseRequest)r;
 
-					// remove old requests
+					cr.setWaitlist(waitlist);
+
+					// replace the request in the offering requests, one put per offering
+					Map<Long, Set<XCourseRequest>> changed = new HashMap<Long, Set<XCourseRequest>>();
 					for (XCourseId course: cr.getCourseIds()) {
-						Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-						if (requests != null) {
-							if (!requests.remove(cr))
-								iLog.warn("WAITLIST[1]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
-							iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
-						} else {
+						Set<XCourseRequest> requests = getOfferingRequests(course.getOfferingId(), changed, false);
+						if (requests == null) {
 							iLog.warn("WAITLIST[2]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
+							requests = getOfferingRequests(course.getOfferingId(), changed, true);
+						} else if (!requests.remove(cr)) {
+							iLog.warn("WAITLIST[1]: Request " + student + " " + request + " was not present in the offering requests table for " + course);
 						}
+						requests.add(cr);
 					}
-
-					// assign
-					cr.setWaitlist(waitlist);
-					
-					// put new requests
-					for (XCourseId course: cr.getCourseIds()) {
-						Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-						if (requests == null)
-							requests = new HashSet<XCourseRequest>();
-						iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
-					}
+					putOfferingRequests(changed);
 					
 					iStudentTable.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(student.getStudentId(), student);
 					return cr;
 				}
 			}
 			iLog.warn("WAITLIST[3]: Request " + student + " " + request + " was not found among student requests");
+			Map<Long, Set<XCourseRequest>> changed = new HashMap<Long, Set<XCourseRequest>>();
 			for (XCourseId course: request.getCourseIds()) {
-				Set<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
-				if (requests != null) {
-					requests.remove(request);
-					iOfferingRequests.getAdvancedCache().withFlags(Flag.IGNORE_RETURN_VALUES).put(course.getOfferingId(), requests);
-				}
+				Set<XCourseRequest> requests = getOfferingRequests(course.getOfferingId(), changed, false);
+				if (requests != null) requests.remove(request);
 			}
+			putOfferingRequests(changed);
 			return null;
 		} finally {
 			lock.release();
@@ -612,7 +794,10 @@ public class ReplicatedServer extends AbstractServer {
 
 		@Override
 		public Collection<XCourseId> call() throws Exception {
-			if (iMatcher != null) iMatcher.setServer(getLocalServer(iSessionId));
+			OnlineSectioningServer server = getLocalServer(iSessionId);
+			if (iMatcher != null) iMatcher.setServer(server);
+			if (iQuery != null && server instanceof ReplicatedServer && ((ReplicatedServer)server).getCourseIndex() != null)
+				return ((ReplicatedServer)server).getCourseIndex().findCourses(iQuery, iLimit, iMatcher);
 			SubSet<XCourseId> ret = new SubSet<XCourseId>(iLimit, new CourseComparator(iQuery));
 			for (XCourseId c : iCache.values()) {
 				if (iQuery != null && !c.matchCourseName(iQuery)) continue;
@@ -29,6 +29,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
+import javax.transaction.Status;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 
 import org.infinispan.Cache;
@@ -241,7 +244,12 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 	public XOffering getOffering(Long offeringId) {
 		Lock lock = readLock();
 		try {
-			return iOfferingTable.get(offeringId);
+			// the version must be read before the offering, see CompiledOfferingCache
+			Long version = (getCompiledOfferingCache() == null ? null : getCompiledOfferingCache().getVersion(offeringId));
+			XOffering offering = iOfferingTable.get(offeringId);
+			// the returned instance may be shared with other readers, and an offering read within a transaction may not be committed yet
+			if (offering == null || version == null || inTransaction()) return offering;
+			return new XOffering(offering, version);
 		} finally {
 			lock.release();
 		}
@@ -341,6 +349,8 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 			iOfferingTable.clear();
 			iExpectations.clear();
 			iOfferingLocks.clear();
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().clear();
 		} finally {
 			lock.release();
 		}
@@ -568,12 +578,17 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		
 		@CacheEntryCreated
 		public void created(CacheEntryCreatedEvent<Long, XOffering> event) {
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().invalidate(event.getKey());
 			if (!event.isPre())
 				addCourses(event.getValue());
 		}
 		
 		@CacheEntryModified
 		public void modified(CacheEntryModifiedEvent<Long, XOffering> event) {
+			// both before and after the change, so that no offering read in between is cached as the new version
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().invalidate(event.getKey());
 			if (event.isPre()) {
 				if (event.getValue() != null)
 					removeCourses(event.getValue());
@@ -585,6 +600,8 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		
 		@CacheEntryRemoved
 		public void removed(CacheEntryRemovedEvent<Long, XOffering> event) {
+			if (getCompiledOfferingCache() != null)
+				getCompiledOfferingCache().invalidate(event.getKey());
 			if (event.isPre())
 				removeCourses(event.getValue());
 		}
@@ -714,6 +731,15 @@ public class ReplicatedServerWithMaster extends AbstractLockingServer {
 		return iOfferingTable.getAdvancedCache().getTransactionManager();
 	}
 	
+	private boolean inTransaction() {
+		try {
+			Transaction tx = getTransactionManager().getTransaction();
+			return tx != null && tx.getStatus() == Status.STATUS_ACTIVE;
+		} catch (SystemException e) {
+			return false;
+		}
+	}
+	
 	class BatchLock implements Lock {
 		private Lock iLock = null;
 		private boolean iTransaction = false;
@@ -0,0 +1,201 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.cpsolver.coursett.model.Lecture;
+import org.cpsolver.coursett.model.Placement;
+import org.cpsolver.coursett.model.RoomLocation;
+import org.cpsolver.coursett.model.TimeLocation;
+import org.cpsolver.studentsct.model.Instructor;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.model.XConfig;
+import org.unitime.timetable.onlinesectioning.model.XDistribution;
+import org.unitime.timetable.onlinesectioning.model.XDistributionType;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XRoom;
+import org.unitime.timetable.onlinesectioning.model.XSection;
+import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
+
+/**
+ * Cache of the structural (student and enrollment independent) part of an offering as it is cloned into the
+ * online sectioning model by {@link FindAssignmentAction#clone(XOffering, org.unitime.timetable.onlinesectioning.model.XEnrollments, Long, long, org.unitime.timetable.onlinesectioning.model.XStudent, Map, OnlineSectioningServer, org.cpsolver.studentsct.StudentSectioningModel, boolean, boolean, Integer)}:
+ * the section placements (time and rooms), instructors, and the ignore conflicts distributions.
+ * These are only read by the model, so they can be shared by all the models that are created for the scheduling assistant.
+ * <br>
+ * Compiled offerings are keyed by the offering id and a node-local version of the offering, which is changed by
+ * {@link CompiledOfferingCache#invalidate(Long)} every time the offering is updated or removed (the in-memory server does
+ * so on update, the replicated servers from a listener on the offering table, so that changes made on other nodes are
+ * reflected as well). A replicated server returns a copy of the offering that carries the version that was current just before
+ * the offering was read (see {@link XOffering#getCacheVersion()}), the shared instance of the replicated cache is never tagged.
+ * A compiled offering is only used (and only stored) when this version is still the current one, so an offering that was read before
+ * a change can never be used with (or cached as) the new version. An offering without a version (in-memory server, or an offering
+ * read within a transaction) matches only the compiled offering that was created from the very same instance.
+ *
+ * @author Tomas Muller
+ */
+public class CompiledOfferingCache {
+	private Map<Long, CompiledOffering> iOfferings = new ConcurrentHashMap<Long, CompiledOffering>();
+	private Map<Long, Long> iVersions = new ConcurrentHashMap<Long, Long>();
+	private AtomicLong iVersionCounter = new AtomicLong(0);
+	private volatile long iDefaultVersion = 0;
+	private AtomicLong iHits = new AtomicLong(0), iMisses = new AtomicLong(0);
+
+	/**
+	 * Current version of the given offering (versions are never reused, also not after {@link CompiledOfferingCache#clear()})
+	 */
+	public long getVersion(Long offeringId) {
+		Long version = iVersions.get(offeringId);
+		return (version == null ? iDefaultVersion : version.longValue());
+	}
+
+	/**
+	 * Compiled offering for the given offering (the cached one if it is of the same version, or created from the same offering instance)
+	 */
+	public CompiledOffering get(XOffering offering) {
+		Long version = offering.getCacheVersion();
+		CompiledOffering compiled = iOfferings.get(offering.getOfferingId());
+		if (compiled != null && (compiled.getOffering() == offering ||
+				(version != null && version.longValue() == compiled.getVersion() && version.longValue() == getVersion(offering.getOfferingId())))) {
+			iHits.incrementAndGet();
+			return compiled;
+		}
+		iMisses.incrementAndGet();
+		// an offering without a version is only matched by the instance (its version is set to -1 that is never current)
+		compiled = new CompiledOffering(offering, version == null ? -1l : version.longValue());
+		// do not cache an offering that has been changed since it was read
+		if (version == null || version.longValue() == getVersion(offering.getOfferingId()))
+			iOfferings.put(offering.getOfferingId(), compiled);
+		return compiled;
+	}
+
+	/**
+	 * Offering has been changed or removed: the version of the offering is changed and the compiled offering is dropped
+	 */
+	public void invalidate(Long offeringId) {
+		iVersions.put(offeringId, iVersionCounter.incrementAndGet());
+		iOfferings.remove(offeringId);
+	}
+
+	/**
+	 * All offerings have been changed or removed
+	 */
+	public void clear() {
+		iDefaultVersion = iVersionCounter.incrementAndGet();
+		iVersions.clear();
+		iOfferings.clear();
+	}
+
+	public int size() {
+		return iOfferings.size();
+	}
+
+	public long getHitCount() { return iHits.get(); }
+	public long getMissCount() { return iMisses.get(); }
+
+	@Override
+	public String toString() {
+		return "CompiledOfferingCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "}";
+	}
+
+	/**
+	 * Compiled offering using the cache of the given server (if the server has one), a new compiled offering otherwise
+	 */
+	public static CompiledOffering getCompiledOffering(OnlineSectioningServer server, XOffering offering) {
+		CompiledOfferingCache cache = (server instanceof AbstractServer ? ((AbstractServer)server).getCompiledOfferingCache() : null);
+		return (cache == null ? new CompiledOffering(offering) : cache.get(offering));
+	}
+
+	public static class CompiledOffering {
+		private XOffering iOffering;
+		private long iVersion;
+		private Map<Long, CompiledSection> iSections = new HashMap<Long, CompiledSection>();
+
+		public CompiledOffering(XOffering offering) {
+			this(offering, -1l);
+		}
+
+		public CompiledOffering(XOffering offering, long version) {
+			iOffering = offering;
+			iVersion = version;
+			Map<Long, Set<Long>> ignoreConflicts = new HashMap<Long, Set<Long>>();
+			for (XDistribution distribution: offering.getDistributions()) {
+				if (distribution.getDistributionType() != XDistributionType.IngoreConflicts) continue;
+				for (Long sectionId: distribution.getSectionIds()) {
+					Set<Long> ids = ignoreConflicts.get(sectionId);
+					if (ids == null) {
+						ids = new HashSet<Long>();
+						ignoreConflicts.put(sectionId, ids);
+					}
+					for (Long id: distribution.getSectionIds())
+						if (!id.equals(sectionId)) ids.add(id);
+				}
+			}
+			for (XConfig config: offering.getConfigs())
+				for (XSubpart subpart: config.getSubparts())
+					for (XSection section: subpart.getSections())
+						iSections.put(section.getSectionId(), new CompiledSection(section, ignoreConflicts.get(section.getSectionId())));
+		}
+
+		public XOffering getOffering() { return iOffering; }
+
+		public long getVersion() { return iVersion; }
+
+		public CompiledSection getSection(Long sectionId) { return iSections.get(sectionId); }
+	}
+
+	public static class CompiledSection {
+		private Placement iPlacement;
+		private List<Instructor> iInstructors;
+		private Set<Long> iIgnoreConflictWith;
+
+		public CompiledSection(XSection section, Set<Long> ignoreConflictWith) {
+			List<RoomLocation> rooms = new ArrayList<RoomLocation>();
+			for (XRoom r: section.getRooms())
+				rooms.add(new RoomLocation(r.getUniqueId(), r.getName(), null, 0, 0, r.getX(), r.getY(), r.getIgnoreTooFar(), null));
+			iPlacement = section.getTime() == null || section.getTime().getDays() == 0 ? null : new Placement(
+					new Lecture(section.getSectionId(), null, section.getSubpartId(), section.getName(), new ArrayList<TimeLocation>(), new ArrayList<RoomLocation>(), section.getNrRooms(), null, section.getLimit(), section.getLimit(), 1.0),
+					new TimeLocation(section.getTime().getDays(), section.getTime().getSlot(), section.getTime().getLength(), 0, 0.0,
+							section.getTime().getDatePatternId(), section.getTime().getDatePatternName(), section.getTime().getWeeks(),
+							section.getTime().getBreakTime()),
+					rooms);
+			List<Instructor> instructors = section.toInstructors();
+			iInstructors = (instructors == null ? null : Collections.unmodifiableList(instructors));
+			iIgnoreConflictWith = (ignoreConflictWith == null ? Collections.<Long>emptySet() : ignoreConflictWith);
+		}
+
+		/** Section placement (time and rooms), null when the section has no time */
+		public Placement getPlacement() { return iPlacement; }
+		/** Section instructors, null when there are none */
+		public List<Instructor> getInstructors() { return iInstructors; }
+		/** Sections with which this section can overlap (ignore conflicts distributions) */
+		public Set<Long> getIgnoreConflictWith() { return iIgnoreConflictWith; }
+	}
+}
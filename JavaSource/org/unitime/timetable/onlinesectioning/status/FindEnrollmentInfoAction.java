@@ -68,6 +68,11 @@ import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XStudentId;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
+import org.unitime.timetable.onlinesectioning.server.EnrollmentAggregates;
+import org.unitime.timetable.onlinesectioning.server.EnrollmentAggregates.CourseAggregates;
+import org.unitime.timetable.onlinesectioning.server.EnrollmentAggregates.OfferingAggregates;
+import org.unitime.timetable.onlinesectioning.server.EnrollmentAggregates.SectionAggregates;
 import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.CourseInfoMatcher;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.CourseLookup;
@@ -188,6 +193,7 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 			int gtEnrl = 0, gtWait = 0, gtRes = 0, gtUnasg = 0, gtUnasgPrim = 0;
 			int gConNeed = 0, gtConNeed = 0, gOvrNeed = 0, gtOvrNeed = 0;
 			
+			EnrollmentAggregates enrollmentAggregates = (solver || studentIds != null || !(server instanceof AbstractServer) ? null : ((AbstractServer)server).getEnrollmentAggregates());
 			Collection<? extends XCourseId> courses = server.findCourses(new FindEnrollmentInfoCourseMatcher(iCoursesIcoordinate, iCoursesIcanApprove, iSubjectAreas, iQuery, lookup)); 
 			Map<Long, Integer> snapshots = getOfferingSnapshots(courses, helper);
 			for (XCourseId info: courses) {
@@ -211,87 +217,104 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 				int tEnrl = 0, tWait = 0, tRes = 0, tUnasg = 0, tUnasgPrim = 0;
 				int conNeed = 0, tConNeed = 0, ovrNeed = 0, tOvrNeed = 0;
 				
+				OfferingAggregates offeringAggregates = (enrollmentAggregates == null || !isCourseOnlyQuery(course, isConsentToDoCourse, lookup) ? null : enrollmentAggregates.get(server, offering.getOfferingId()));
+				CourseAggregates aggregates = (offeringAggregates == null ? null : offeringAggregates.getCourse(info.getCourseId()));
 				Set<Long> addedStudents = new HashSet<Long>();
-				boolean checkOverrides = !query().hasAttribute("override");
-				for (XCourseRequest request: enrollments.getRequests()) {
-					if (!request.hasCourse(info.getCourseId())) continue;
-					if (students.add(request.getStudentId()))
-						addedStudents.add(request.getStudentId());
-					if (request.getEnrollment() != null && !request.getEnrollment().getCourseId().equals(info.getCourseId())) continue;
-					if (checkOverrides && request.getEnrollment() == null) {
-						XOverride override = request.getOverride(info);
-						if (override != null && !override.isApproved()) continue;
-					}
+				if (aggregates != null) {
+					// all requests of the course match the query, and there is no student filter: use the enrollment aggregates
+					for (Long studentId: aggregates.getRequestedStudentIds())
+						if (students.add(studentId)) addedStudents.add(studentId);
+					matchingStudents.addAll(aggregates.getMatchingStudentIds());
+					match = aggregates.getMatching();
+					enrl = tEnrl = aggregates.getEnrollment();
+					res = tRes = aggregates.getReservation();
+					wait = tWait = aggregates.getWaitlist();
+					unasg = tUnasg = aggregates.getUnassigned();
+					unasgPrim = tUnasgPrim = aggregates.getUnassignedPrimary();
+					conNeed = tConNeed = aggregates.getConsentNeeded();
+					ovrNeed = tOvrNeed = aggregates.getOverrideNeeded();
+				} else {
+					boolean checkOverrides = !query().hasAttribute("override");
+					for (XCourseRequest request: enrollments.getRequests()) {
+						if (!request.hasCourse(info.getCourseId())) continue;
+						if (students.add(request.getStudentId()))
+							addedStudents.add(request.getStudentId());
+						if (request.getEnrollment() != null && !request.getEnrollment().getCourseId().equals(info.getCourseId())) continue;
+						if (checkOverrides && request.getEnrollment() == null) {
+							XOverride override = request.getOverride(info);
+							if (override != null && !override.isApproved()) continue;
+						}
 					
-					if (studentIds != null && !studentIds.contains(request.getStudentId())) {
-						if (request.getEnrollment() != null) {
-							tEnrl ++;
-							if (request.getEnrollment().getReservation() != null) tRes ++;
-							if (course.getConsentLabel() != null && request.getEnrollment().getApproval() == null) tConNeed ++;
-						} else {
-							XStudent student = server.getStudent(request.getStudentId());
-							if (student != null && student.canAssign(request)) {
-								tUnasg ++;
-								if (!request.isAlternative() && request.isPrimary(info)) {
-									tUnasgPrim ++;
-									if (request.isWaitlist())
-										tWait ++;
+						if (studentIds != null && !studentIds.contains(request.getStudentId())) {
+							if (request.getEnrollment() != null) {
+								tEnrl ++;
+								if (request.getEnrollment().getReservation() != null) tRes ++;
+								if (course.getConsentLabel() != null && request.getEnrollment().getApproval() == null) tConNeed ++;
+							} else {
+								XStudent student = server.getStudent(request.getStudentId());
+								if (student != null && student.canAssign(request)) {
+									tUnasg ++;
+									if (!request.isAlternative() && request.isPrimary(info)) {
+										tUnasgPrim ++;
+										if (request.isWaitlist())
+											tWait ++;
+									}
 								}
 							}
+							continue;
 						}
-						continue;
-					}
 					
-					XStudent student = server.getStudent(request.getStudentId());
-					if (student == null) continue;
-					CourseRequestMatcher m = new CourseRequestMatcher(session, course, student, offering, request, isConsentToDoCourse, isMyStudent(student), lookup, server);
-					if (query().match(m)) {
-						matchingStudents.add(request.getStudentId());
-						match++;
-						if (m.enrollment() != null) {
-							enrl ++;
-							if (m.enrollment().getReservation() != null) res ++;
-							if (course.getConsentLabel() != null && m.enrollment().getApproval() == null) conNeed ++;
-						} else if (m.student().canAssign(m.request())) {
-							unasg ++;
-							if (!m.request().isAlternative() && m.request().isPrimary(info)) {
-								unasgPrim ++;
-								if (m.request().isWaitlist())
-									wait ++;
+						XStudent student = server.getStudent(request.getStudentId());
+						if (student == null) continue;
+						CourseRequestMatcher m = new CourseRequestMatcher(session, course, student, offering, request, isConsentToDoCourse, isMyStudent(student), lookup, server);
+						if (query().match(m)) {
+							matchingStudents.add(request.getStudentId());
+							match++;
+							if (m.enrollment() != null) {
+								enrl ++;
+								if (m.enrollment().getReservation() != null) res ++;
+								if (course.getConsentLabel() != null && m.enrollment().getApproval() == null) conNeed ++;
+							} else if (m.student().canAssign(m.request())) {
+								unasg ++;
+								if (!m.request().isAlternative() && m.request().isPrimary(info)) {
+									unasgPrim ++;
+									if (m.request().isWaitlist())
+										wait ++;
+								}
 							}
-						}
-						if (m.request().isOverridePending(course)) ovrNeed ++;
-					} else if (solver) {
-						if (request.getEnrollment() != null) {
-							tEnrl ++;
-							if (request.getEnrollment().getReservation() != null) tRes ++;
-							if (course.getConsentLabel() != null && request.getEnrollment().getApproval() == null) tConNeed ++;
-						} else {
-							if (student != null && student.canAssign(request)) {
-								tUnasg ++;
-								if (!request.isAlternative() && request.isPrimary(info)) {
-									tUnasgPrim ++;
-									if (request.isWaitlist())
-										tWait ++;
+							if (m.request().isOverridePending(course)) ovrNeed ++;
+						} else if (solver) {
+							if (request.getEnrollment() != null) {
+								tEnrl ++;
+								if (request.getEnrollment().getReservation() != null) tRes ++;
+								if (course.getConsentLabel() != null && request.getEnrollment().getApproval() == null) tConNeed ++;
+							} else {
+								if (student != null && student.canAssign(request)) {
+									tUnasg ++;
+									if (!request.isAlternative() && request.isPrimary(info)) {
+										tUnasgPrim ++;
+										if (request.isWaitlist())
+											tWait ++;
+									}
 								}
 							}
+							continue;
 						}
-						continue;
-					}
 					
-					if (m.enrollment() != null) {
-						tEnrl ++;
-						if (m.enrollment().getReservation() != null) tRes ++;
-						if (course.getConsentLabel() != null && m.enrollment().getApproval() == null) tConNeed ++;
-					} else if (m.student().canAssign(m.request())) {
-						tUnasg ++;
-						if (!m.request().isAlternative() && m.request().isPrimary(info)) {
-							tUnasgPrim ++;
-							if (m.request().isWaitlist())
-								tWait ++;
+						if (m.enrollment() != null) {
+							tEnrl ++;
+							if (m.enrollment().getReservation() != null) tRes ++;
+							if (course.getConsentLabel() != null && m.enrollment().getApproval() == null) tConNeed ++;
+						} else if (m.student().canAssign(m.request())) {
+							tUnasg ++;
+							if (!m.request().isAlternative() && m.request().isPrimary(info)) {
+								tUnasgPrim ++;
+								if (m.request().isWaitlist())
+									tWait ++;
+							}
 						}
+						if (m.request().isOverridePending(course)) tOvrNeed ++;
 					}
-					if (m.request().isOverridePending(course)) tOvrNeed ++;
 				}
 				
 				if (match == 0) {
@@ -493,6 +516,9 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 				}
 			});
 			boolean checkOverrides = !query().hasAttribute("override");
+			EnrollmentAggregates enrollmentAggregates = (solver || studentIds != null || !(server instanceof AbstractServer) ? null : ((AbstractServer)server).getEnrollmentAggregates());
+			OfferingAggregates offeringAggregates = (enrollmentAggregates == null || !isCourseOnlyQuery(info, isConsentToDoCourse, lookup) ? null : enrollmentAggregates.get(server, offering.getOfferingId()));
+			CourseAggregates aggregates = (offeringAggregates == null ? null : offeringAggregates.getCourse(info.getCourseId()));
 			
 			Map<Long, Set<Long>> section2students = new HashMap<Long, Set<Long>>();
 			for (XCourseRequest request: enrollments.getRequests()) {
@@ -716,23 +742,34 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 				int conNeed = 0, tConNeed = 0;
 				int other = 0;
 
-				for (XCourseRequest request: enrollments.getRequests()) {
-					XEnrollment enrollment = request.getEnrollment();
-					if (enrollment == null || !enrollment.getSectionIds().contains(section.getSectionId())) continue;
-					if (!request.getEnrollment().getCourseId().equals(courseId())) {other++; continue; }
-					XStudent student = server.getStudent(request.getStudentId());
-					if (student == null) continue;
-					CourseRequestMatcher m = new CourseRequestMatcher(session, info, student, offering, request, isConsentToDoCourse, isMyStudent(student), lookup, server);
-					if (query().match(m)) {
-						match++;
-						enrl ++;
-						if (m.enrollment().getReservation() != null) res ++;
-						if (info.getConsentLabel() != null && m.enrollment().getApproval() == null) conNeed ++;
+				if (aggregates != null) {
+					// all requests of the course match the query, and there is no student filter: use the enrollment aggregates
+					SectionAggregates sa = aggregates.getSection(section.getSectionId());
+					if (sa != null) {
+						match = enrl = tEnrl = sa.getEnrollment();
+						res = tRes = sa.getReservation();
+						conNeed = tConNeed = sa.getConsentNeeded();
+						other = sa.getOther();
 					}
+				} else {
+					for (XCourseRequest request: enrollments.getRequests()) {
+						XEnrollment enrollment = request.getEnrollment();
+						if (enrollment == null || !enrollment.getSectionIds().contains(section.getSectionId())) continue;
+						if (!request.getEnrollment().getCourseId().equals(courseId())) {other++; continue; }
+						XStudent student = server.getStudent(request.getStudentId());
+						if (student == null) continue;
+						CourseRequestMatcher m = new CourseRequestMatcher(session, info, student, offering, request, isConsentToDoCourse, isMyStudent(student), lookup, server);
+						if (query().match(m)) {
+							match++;
+							enrl ++;
+							if (m.enrollment().getReservation() != null) res ++;
+							if (info.getConsentLabel() != null && m.enrollment().getApproval() == null) conNeed ++;
+						}
 					
-					tEnrl ++;
-					if (m.enrollment().getReservation() != null) tRes ++;
-					if (info.getConsentLabel() != null && m.enrollment().getApproval() == null) tConNeed ++;
+						tEnrl ++;
+						if (m.enrollment().getReservation() != null) tRes ++;
+						if (info.getConsentLabel() != null && m.enrollment().getApproval() == null) tConNeed ++;
+					}
 				}
 
 				Set<Long> students = (Set<Long>)section2students.get(section.getSectionId());
@@ -839,11 +876,40 @@ public class FindEnrollmentInfoAction implements OnlineSectioningAction<List<Enr
 		return ret;
 	}
 	
+	/**
+	 * True if the query only depends on the course (and not on the students or their requests), so that it matches
+	 * either all or none of the requests of the course. When it matches all and there is no student filter, the counts
+	 * are taken from the {@link EnrollmentAggregates} of the server.
+	 */
+	protected boolean isCourseOnlyQuery(XCourse course, boolean isConsentToDoCourse, CourseLookup lookup) {
+		Boolean match = query().getQuery().match(new CourseOnlyMatcher(course, isConsentToDoCourse, lookup));
+		return match != null && match.booleanValue();
+	}
+	
 	@Override
 	public String name() {
 		return "find-enrollment-info";
 	}
 
+	/**
+	 * Matches the course attributes the same way as the {@link CourseRequestMatcher} does, returns null for all the other attributes
+	 */
+	protected static class CourseOnlyMatcher extends CourseInfoMatcher {
+		private static final long serialVersionUID = 1L;
+		
+		public CourseOnlyMatcher(XCourse course, boolean isConsentToDoCourse, CourseLookup lookup) {
+			super(course, isConsentToDoCourse, lookup);
+		}
+		
+		@Override
+		public Boolean match(String attr, String term) {
+			if (attr == null || "name".equals(attr) || "title".equals(attr) || "subject".equals(attr) || "number".equals(attr) || "course".equals(attr) || "lookup".equals(attr) || "department".equals(attr) || "registered".equals(attr))
+				return super.match(attr, term);
+			if ("limit".equals(attr)) return true;
+			return null;
+		}
+	}
+	
 	public static class FindEnrollmentInfoCourseMatcher extends AbstractCourseMatcher {
 		protected static final long serialVersionUID = 1L;
 		protected Set<Long> iCoursesIcoordinate;
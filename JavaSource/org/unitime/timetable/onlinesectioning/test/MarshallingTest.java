@@ -0,0 +1,190 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.unitime.timetable.model.Student;
+import org.unitime.timetable.onlinesectioning.model.XCompact;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequestSet;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+
+/**
+ * Benchmark of the marshalling of the offering requests, as they are replicated by the
+ * {@link org.unitime.timetable.onlinesectioning.server.ReplicatedServer} (OfferingRequests cache).
+ * A number of offerings with randomly enrolled students is generated, then a number of enrollment changes is simulated.
+ * For each change, the legacy marshalling (each request written in full, the offering requests put twice per change)
+ * is compared with the compact format of the {@link XCourseRequestSet} (see {@link XCompact}, one put per change).
+ * The test prints the number of bytes per update and the marshalling + unmarshalling time per update,
+ * which is the part of the replication latency that does not depend on the network.
+ * In both cases, all the requests of the changed offering are written on each update (there are no delta updates).
+ * The compact format is also checked to read back the same requests.
+ * <br>
+ * Usage: MarshallingTest [offerings] [students per offering] [updates]
+ *
+ * @author Tomas Muller
+ */
+public class MarshallingTest {
+	private Random iRandom = new Random(42);
+	private Map<Long, XCourseRequestSet> iOfferingRequests = new HashMap<Long, XCourseRequestSet>();
+	private List<XCourseRequest> iRequests = new ArrayList<XCourseRequest>();
+
+	public MarshallingTest(int nrOfferings, int nrStudents) {
+		for (int o = 0; o < nrOfferings; o++) {
+			Long offeringId = 100000l + o;
+			List<XCourseId> courses = new ArrayList<XCourseId>();
+			int nrCourses = 1 + iRandom.nextInt(3);
+			for (int c = 0; c < nrCourses; c++)
+				courses.add(new XCourseId(offeringId, 200000l + 10 * o + c, "SUBJ" + c + " " + (10000 + o)));
+			XCourseRequestSet requests = new XCourseRequestSet();
+			for (int s = 0; s < nrStudents; s++) {
+				Student student = new Student();
+				student.setUniqueId(1000000l + o * nrStudents + s);
+				XCourseId course = courses.get(iRandom.nextInt(courses.size()));
+				XCourseRequest request = new XCourseRequest(student, course, iRandom.nextInt(10), enrollment(student, course));
+				requests.add(request);
+				iRequests.add(request);
+			}
+			iOfferingRequests.put(offeringId, requests);
+		}
+	}
+
+	private XEnrollment enrollment(Student student, XCourseId course) {
+		if (iRandom.nextInt(10) == 0) return null;
+		List<Long> sectionIds = new ArrayList<Long>();
+		int nrSections = 1 + iRandom.nextInt(3);
+		for (int i = 0; i < nrSections; i++)
+			sectionIds.add(300000l + 100 * (course.getOfferingId() - 100000l) + 10 * i + iRandom.nextInt(10));
+		return new XEnrollment(student, course, 400000l + course.getOfferingId(), sectionIds);
+	}
+
+	/** Format of the offering requests that was used before the compact format */
+	private static void writeLegacy(ObjectOutput out, XCourseRequestSet requests) throws IOException {
+		out.writeInt(requests.size());
+		for (XCourseRequest request: requests)
+			request.writeExternal(out);
+	}
+
+	private static byte[] marshall(XCourseRequestSet requests, boolean compact) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		if (compact)
+			requests.writeExternal(out);
+		else
+			writeLegacy(out, requests);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static XCourseRequestSet unmarshall(byte[] data) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			return new XCourseRequestSet(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void check(XCourseRequestSet expected, XCourseRequestSet actual) {
+		if (expected.size() != actual.size())
+			throw new IllegalStateException("Wrong number of requests: " + actual.size() + " != " + expected.size());
+		Map<XCourseRequest, XCourseRequest> requests = new HashMap<XCourseRequest, XCourseRequest>();
+		for (XCourseRequest request: actual) requests.put(request, request);
+		for (XCourseRequest e: expected) {
+			XCourseRequest a = requests.get(e);
+			if (a == null)
+				throw new IllegalStateException("Request " + e.getRequestId() + " of student " + e.getStudentId() + " is missing.");
+			if (e.getPriority() != a.getPriority() || !e.getCourseIds().equals(a.getCourseIds()) ||
+					!e.getCourseIds().get(0).getCourseName().equals(a.getCourseIds().get(0).getCourseName()) ||
+					(e.getTimeStamp() == null ? a.getTimeStamp() != null : !e.getTimeStamp().equals(a.getTimeStamp())))
+				throw new IllegalStateException("Request " + e.getRequestId() + " of student " + e.getStudentId() + " does not match.");
+			if (e.getEnrollment() == null ? a.getEnrollment() != null :
+				a.getEnrollment() == null || !e.getEnrollment().getSectionIds().equals(a.getEnrollment().getSectionIds()) ||
+				!e.getEnrollment().getConfigId().equals(a.getEnrollment().getConfigId()) ||
+				!e.getEnrollment().getCourseName().equals(a.getEnrollment().getCourseName()))
+				throw new IllegalStateException("Enrollment of student " + e.getStudentId() + " does not match.");
+		}
+	}
+
+	public void test(int nrUpdates) throws IOException, ClassNotFoundException {
+		for (XCourseRequestSet requests: iOfferingRequests.values())
+			check(requests, unmarshall(marshall(requests, true)));
+		System.out.println("Compact format reads back the same requests.");
+
+		// warm-up
+		for (XCourseRequestSet requests: iOfferingRequests.values()) {
+			unmarshall(marshall(requests, true));
+			marshall(requests, false);
+		}
+
+		long legacyBytes = 0, compactBytes = 0, legacyTime = 0, compactTime = 0;
+		for (int i = 0; i < nrUpdates; i++) {
+			XCourseRequest request = iRequests.get(iRandom.nextInt(iRequests.size()));
+			XCourseId course = request.getCourseIds().get(0);
+			XCourseRequestSet requests = iOfferingRequests.get(course.getOfferingId());
+			Student student = new Student(); student.setUniqueId(request.getStudentId());
+			requests.remove(request);
+			request.setEnrollment(enrollment(student, course));
+			requests.add(request);
+
+			// legacy: the entry was put once after the old request was removed and once after the new one was added
+			long t0 = System.nanoTime();
+			for (int j = 0; j < 2; j++) {
+				byte[] data = marshall(requests, false);
+				legacyBytes += data.length;
+				ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+				int count = in.readInt();
+				for (int k = 0; k < count; k++) new XCourseRequest(in);
+			}
+			long t1 = System.nanoTime();
+			byte[] data = marshall(requests, true);
+			compactBytes += data.length;
+			unmarshall(data);
+			long t2 = System.nanoTime();
+			legacyTime += t1 - t0; compactTime += t2 - t1;
+		}
+		System.out.println("Legacy:  " + (legacyBytes / nrUpdates) + " bytes/update, " + Math.round(legacyTime / 1000.0 / nrUpdates) + " us/update");
+		System.out.println("Compact: " + (compactBytes / nrUpdates) + " bytes/update, " + Math.round(compactTime / 1000.0 / nrUpdates) + " us/update");
+		System.out.println("Reduction: " + Math.round(100.0 * (legacyBytes - compactBytes) / legacyBytes) + "% bytes, " + Math.round(100.0 * (legacyTime - compactTime) / legacyTime) + "% time");
+	}
+
+	public static void main(String[] args) {
+		try {
+			int nrOfferings = (args.length > 0 ? Integer.parseInt(args[0]) : 200);
+			int nrStudents = (args.length > 1 ? Integer.parseInt(args[1]) : 200);
+			int nrUpdates = (args.length > 2 ? Integer.parseInt(args[2]) : 10000);
+			new MarshallingTest(nrOfferings, nrStudents).test(nrUpdates);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+*/
+package org.unitime.timetable.onlinesectioning.test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.unitime.timetable.onlinesectioning.MultiLock;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.StripedMultiLock;
+
+/**
+ * Concurrent stress test of the {@link MultiLock} and the {@link StripedMultiLock}.
+ * Each worker thread repeatedly locks a random set of (negative) student and (positive) offering ids,
+ * while a few threads occasionally lock all. The test checks that no id is ever held by two threads
+ * at the same time (and that nothing is held during lock all) and prints the throughput of both implementations.
+ * <br>
+ * Usage: MultiLockTest [threads] [ids] [seconds]
+ *
+ * @author Tomas Muller
+ */
+public class MultiLockTest {
+	private int iNrThreads, iNrIds, iSeconds;
+
+	public MultiLockTest(int nrThreads, int nrIds, int seconds) {
+		iNrThreads = nrThreads; iNrIds = nrIds; iSeconds = seconds;
+	}
+
+	public long test(final MultiLock lock) throws InterruptedException {
+		final AtomicIntegerArray holders = new AtomicIntegerArray(2 * iNrIds + 1);
+		final AtomicInteger active = new AtomicInteger(0);
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final AtomicLong operations = new AtomicLong(0);
+		final AtomicLong violations = new AtomicLong(0);
+		Thread[] threads = new Thread[iNrThreads + 2];
+		for (int t = 0; t < iNrThreads; t++) {
+			threads[t] = new Thread("Worker-" + t) {
+				@Override
+				public void run() {
+					ThreadLocalRandom rnd = ThreadLocalRandom.current();
+					while (!stop.get()) {
+						Set<Long> ids = new HashSet<Long>();
+						ids.add(- 1l - rnd.nextInt(iNrIds));
+						int nrOfferings = 1 + rnd.nextInt(8);
+						for (int i = 0; i < nrOfferings; i++)
+							ids.add(1l + rnd.nextInt(iNrIds));
+						OnlineSectioningServer.Lock l = lock.lock(ids);
+						active.incrementAndGet();
+						try {
+							for (Long id: ids)
+								if (holders.incrementAndGet(iNrIds + id.intValue()) != 1) violations.incrementAndGet();
+							if (rnd.nextInt(10) == 0) Thread.yield();
+							for (Long id: ids)
+								holders.decrementAndGet(iNrIds + id.intValue());
+						} finally {
+							active.decrementAndGet();
+							l.release();
+						}
+						operations.incrementAndGet();
+					}
+				}
+			};
+		}
+		for (int t = iNrThreads; t < threads.length; t++) {
+			threads[t] = new Thread("LockAll-" + t) {
+				@Override
+				public void run() {
+					ThreadLocalRandom rnd = ThreadLocalRandom.current();
+					while (!stop.get()) {
+						try {
+							Thread.sleep(50 + rnd.nextInt(100));
+						} catch (InterruptedException e) {}
+						OnlineSectioningServer.Lock l = lock.lockAll();
+						try {
+							if (active.get() != 0) violations.incrementAndGet();
+						} finally {
+							l.release();
+						}
+					}
+				}
+			};
+		}
+		long t0 = System.currentTimeMillis();
+		for (Thread t: threads) t.start();
+		Thread.sleep(1000l * iSeconds);
+		stop.set(true);
+		for (Thread t: threads) t.join();
+		long time = System.currentTimeMillis() - t0;
+		System.out.println(lock.getClass().getSimpleName() + ": " + operations.get() + " locks in " + time + " ms (" +
+				Math.round(1000.0 * operations.get() / time) + " locks/s), " + violations.get() + " violations");
+		if (lock instanceof StripedMultiLock)
+			System.out.println("  " + lock);
+		if (violations.get() > 0)
+			throw new IllegalStateException(lock.getClass().getSimpleName() + " failed: " + violations.get() + " violations detected.");
+		if (!lock.locked().isEmpty())
+			throw new IllegalStateException(lock.getClass().getSimpleName() + " failed: " + lock.locked() + " remained locked.");
+		return operations.get();
+	}
+
+	public static void main(String[] args) {
+		try {
+			int nrThreads = (args.length > 0 ? Integer.parseInt(args[0]) : 4 * Runtime.getRuntime().availableProcessors());
+			int nrIds = (args.length > 1 ? Integer.parseInt(args[1]) : 10000);
+			int seconds = (args.length > 2 ? Integer.parseInt(args[2]) : 10);
+			MultiLockTest test = new MultiLockTest(nrThreads, nrIds, seconds);
+			long multi = test.test(new MultiLock());
+			long striped = test.test(new StripedMultiLock());
+			System.out.println("Speed-up: " + Math.round(100.0 * striped / multi) / 100.0 + "x");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
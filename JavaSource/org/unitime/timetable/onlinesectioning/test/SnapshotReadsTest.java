@@ -0,0 +1,214 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningTestFwk;
+import org.unitime.timetable.onlinesectioning.match.AnyCourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XConfig;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XRequest;
+import org.unitime.timetable.onlinesectioning.model.XSection;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.model.XSubpart;
+
+/**
+ * Stress test of the in-memory server with unitime.enrollment.server.snapshotReads enabled.
+ * Writers re-assign enrollments, toggle the wait-list flags, and re-publish offerings, while readers
+ * check that the published students, enrollments, and course lookups are consistent.
+ * Inconsistencies are counted in the Violations counter, exceptions in the Exceptions counter.
+ *
+ * @author Tomas Muller
+ */
+public class SnapshotReadsTest extends OnlineSectioningTestFwk {
+
+	@Override
+	public List<Operation> operations() {
+		org.hibernate.Session hibSession = new _RootDAO().getSession();
+
+		List<Operation> operations = new ArrayList<Operation>();
+
+		for (final Long studentId: (List<Long>)hibSession.createQuery(
+				"select s.uniqueId from Student s where s.session.uniqueId = :sessionId")
+				.setLong("sessionId", getServer().getAcademicSession().getUniqueId()).list()) {
+			operations.add(new Operation() {
+				@Override
+				public double execute(OnlineSectioningServer s) {
+					try {
+						XStudent student = s.getStudent(studentId);
+						if (student == null) return 1.0;
+						for (XRequest r: student.getRequests()) {
+							if (!(r instanceof XCourseRequest)) continue;
+							XCourseRequest cr = (XCourseRequest)r;
+							boolean waitlist = cr.isWaitlist();
+							if (cr.getEnrollment() != null)
+								s.assign(cr, cr.getEnrollment());
+							XCourseRequest changed = s.waitlist(cr, !waitlist);
+							if (changed != null)
+								s.waitlist(changed, waitlist);
+							if (changed != null && changed != cr && cr.isWaitlist() != waitlist) {
+								// a request that was published before the change must not change
+								sLog.warn("Request " + cr + " of a published student " + studentId + " has changed.");
+								inc("Violations", 1.0);
+							}
+						}
+						return 1.0;
+					} catch (Exception e) {
+						sLog.error("Student " + studentId + " update failed: " + e.getMessage(), e);
+						inc("Exceptions", 1.0);
+						return 0.0;
+					}
+				}
+			});
+			operations.add(new Operation() {
+				@Override
+				public double execute(OnlineSectioningServer s) {
+					try {
+						XStudent student = s.getStudent(studentId);
+						if (student == null) return 1.0;
+						List<Boolean> waitlist = new ArrayList<Boolean>();
+						List<XEnrollment> enrollments = new ArrayList<XEnrollment>();
+						for (XRequest r: student.getRequests()) {
+							if (!(r instanceof XCourseRequest)) continue;
+							waitlist.add(((XCourseRequest)r).isWaitlist());
+							enrollments.add(((XCourseRequest)r).getEnrollment());
+						}
+						Thread.yield();
+						int idx = 0;
+						for (XRequest r: student.getRequests()) {
+							if (!(r instanceof XCourseRequest)) continue;
+							if (waitlist.get(idx) != ((XCourseRequest)r).isWaitlist() || enrollments.get(idx) != ((XCourseRequest)r).getEnrollment()) {
+								sLog.warn("Request " + r + " of a published student " + studentId + " has changed.");
+								inc("Violations", 1.0);
+							}
+							idx++;
+						}
+						return 1.0;
+					} catch (Exception e) {
+						sLog.error("Student " + studentId + " check failed: " + e.getMessage(), e);
+						inc("Exceptions", 1.0);
+						return 0.0;
+					}
+				}
+			});
+		}
+
+		for (final Long offeringId: (List<Long>)hibSession.createQuery(
+				"select io.uniqueId from InstructionalOffering io where io.session.uniqueId = :sessionId and io.notOffered = false")
+				.setLong("sessionId", getServer().getAcademicSession().getUniqueId()).list()) {
+			operations.add(new Operation() {
+				@Override
+				public double execute(OnlineSectioningServer s) {
+					try {
+						XOffering offering = s.getOffering(offeringId);
+						if (offering != null) s.update(offering);
+						return 1.0;
+					} catch (Exception e) {
+						sLog.error("Offering " + offeringId + " update failed: " + e.getMessage(), e);
+						inc("Exceptions", 1.0);
+						return 0.0;
+					}
+				}
+			});
+			operations.add(new Operation() {
+				@Override
+				public double execute(OnlineSectioningServer s) {
+					try {
+						XOffering offering = s.getOffering(offeringId);
+						XEnrollments enrollments = s.getEnrollments(offeringId);
+						if (offering == null || enrollments == null) return 1.0;
+						List<XEnrollment> all = enrollments.getEnrollments();
+						if (enrollments.countEnrollments() != all.size()) {
+							sLog.warn("Offering " + offering + " has " + enrollments.countEnrollments() + " enrollments, but " + all.size() + " are listed.");
+							inc("Violations", 1.0);
+						}
+						for (XConfig config: offering.getConfigs())
+							for (XSubpart subpart: config.getSubparts())
+								for (XSection section: subpart.getSections()) {
+									int count = 0;
+									for (XEnrollment e: all)
+										if (e.getSectionIds().contains(section.getSectionId())) count++;
+									if (count != enrollments.countEnrollmentsForSection(section.getSectionId())) {
+										sLog.warn("Section " + section + " of " + offering + " has " + enrollments.countEnrollmentsForSection(section.getSectionId()) + " enrollments, but " + count + " are listed.");
+										inc("Violations", 1.0);
+									}
+								}
+						return 1.0;
+					} catch (Exception e) {
+						sLog.error("Offering " + offeringId + " check failed: " + e.getMessage(), e);
+						inc("Exceptions", 1.0);
+						return 0.0;
+					}
+				}
+			});
+		}
+
+		for (final String name: (List<String>)hibSession.createQuery(
+				"select co.subjectAreaAbbv || ' ' || co.courseNbr from CourseOffering co where co.instructionalOffering.session.uniqueId = :sessionId and co.instructionalOffering.notOffered = false")
+				.setLong("sessionId", getServer().getAcademicSession().getUniqueId()).list()) {
+			operations.add(new Operation() {
+				@Override
+				public double execute(OnlineSectioningServer s) {
+					try {
+						Collection<? extends XCourseId> courses = s.findCourses(name, null, new AnyCourseMatcher());
+						boolean found = false;
+						for (XCourseId course: courses)
+							if (course.getCourseName().equalsIgnoreCase(name)) { found = true; break; }
+						if (!found) {
+							sLog.warn("Course " + name + " not found.");
+							inc("Violations", 1.0);
+						}
+						if (s.getCourse(name) == null) {
+							sLog.warn("Course " + name + " not found by name.");
+							inc("Violations", 1.0);
+						}
+						return 1.0;
+					} catch (Exception e) {
+						sLog.error("Course " + name + " lookup failed: " + e.getMessage(), e);
+						inc("Exceptions", 1.0);
+						return 0.0;
+					}
+				}
+			});
+		}
+		hibSession.close();
+
+		Collections.shuffle(operations);
+
+		return operations;
+	}
+
+	public static void main(String args[]) {
+		if (System.getProperty("unitime.enrollment.server.snapshotReads") == null)
+			System.setProperty("unitime.enrollment.server.snapshotReads", "true");
+		new SnapshotReadsTest().test(-1, 20);
+	}
+
+}
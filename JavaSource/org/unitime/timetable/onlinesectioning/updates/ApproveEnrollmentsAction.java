@@ -41,6 +41,7 @@ import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
+import org.unitime.timetable.util.CalendarFeedCache;
 
 /**
  * @author Tomas Muller
@@ -136,6 +137,7 @@ public class ApproveEnrollmentsAction implements OnlineSectioningAction<Boolean>
 					}
 
 				helper.commitTransaction();
+				CalendarFeedCache.invalidate(CalendarFeedCache.Dependency.STUDENT, getStudentIds());
 				return true;			
 			} catch (Exception e) {
 				helper.rollbackTransaction();
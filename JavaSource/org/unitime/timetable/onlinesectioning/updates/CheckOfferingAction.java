@@ -60,6 +60,7 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
+import org.unitime.timetable.util.CalendarFeedCache;
 
 /**
  * @author Tomas Muller
@@ -290,6 +291,7 @@ public class CheckOfferingAction extends WaitlistedOnlineSectioningAction<Boolea
 					server.persistExpectedSpaces(offering.getOfferingId());
 
 					server.execute(server.createAction(NotifyStudentAction.class).forStudent(r.getRequest().getStudentId()).oldEnrollment(offering, r.getCourseId(), r.getLastEnrollment()), helper.getUser());
+					CalendarFeedCache.invalidateAfterCommit(helper.getHibSession(), CalendarFeedCache.Dependency.STUDENT, r.getRequest().getStudentId());
 					
 					if (tx) helper.commitTransaction();
 					r.getAction().setResult(enrollment == null ? OnlineSectioningLog.Action.ResultType.NULL : OnlineSectioningLog.Action.ResultType.SUCCESS);
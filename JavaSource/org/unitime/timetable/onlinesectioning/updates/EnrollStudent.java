@@ -86,16 +86,19 @@ import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.AllowWhileLoading;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 import org.unitime.timetable.onlinesectioning.solver.CheckAssignmentAction;
 import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
 import org.unitime.timetable.onlinesectioning.solver.FindAssignmentAction.IdPair;
+import org.unitime.timetable.util.CalendarFeedCache;
 
 /**
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
+@AllowWhileLoading
 public class EnrollStudent implements OnlineSectioningAction<ClassAssignmentInterface>, HasCacheMode {
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
@@ -136,6 +139,8 @@ public class EnrollStudent implements OnlineSectioningAction<ClassAssignmentInte
 				XCourse course = server.getCourse(ca.getCourseId());
 				if (course == null)
 					throw new SectioningException(MSG.exceptionEnrollNotAvailable(MSG.clazz(ca.getSubject(), ca.getCourseNbr(), ca.getSubpart(), ca.getSection())));
+				if (!server.isReady(course.getOfferingId()))
+					throw new SectioningException(MSG.exceptionCourseNotReady(course.getCourseName()));
 				if (server.isOfferingLocked(course.getOfferingId())) {
 					lockedCourses.add(course.getCourseId());
 					for (CourseRequestInterface.Request r: getRequest().getCourses())
@@ -151,6 +156,8 @@ public class EnrollStudent implements OnlineSectioningAction<ClassAssignmentInte
 					offeringIds.add(course.getOfferingId());
 				}
 			}
+		if (!server.isReady() && server.getStudent(getStudentId()) == null)
+			throw new SectioningException(MSG.exceptionStudentNotReady());
 		
 		OnlineSectioningServer.ServerCallback<Boolean> offeringChecked = new OnlineSectioningServer.ServerCallback<Boolean>() {
 			@Override
@@ -771,6 +778,7 @@ public class EnrollStudent implements OnlineSectioningAction<ClassAssignmentInte
 				
 				server.execute(server.createAction(NotifyStudentAction.class).forStudent(getStudentId()).oldStudent(oldStudent), helper.getUser());
 				helper.commitTransaction();
+				CalendarFeedCache.invalidate(CalendarFeedCache.Dependency.STUDENT, getStudentId());
 			} catch (Exception e) {
 				helper.rollbackTransaction();
 				if (e instanceof SectioningException) {
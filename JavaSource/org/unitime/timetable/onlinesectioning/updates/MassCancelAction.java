@@ -50,6 +50,7 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
+import org.unitime.timetable.util.CalendarFeedCache;
 
 /**
  * @author Tomas Muller
@@ -212,6 +213,7 @@ public class MassCancelAction implements OnlineSectioningAction<Boolean>{
 						}
 					}
 					helper.commitTransaction();
+					CalendarFeedCache.invalidate(CalendarFeedCache.Dependency.STUDENT, studentId);
 				} catch (Exception e) {
 					helper.rollbackTransaction();
 					caughtException = e;
@@ -40,6 +40,7 @@ import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
+import org.unitime.timetable.util.CalendarFeedCache;
 
 /**
  * @author Tomas Muller
@@ -131,6 +132,7 @@ public class RejectEnrollmentsAction implements OnlineSectioningAction<Boolean>
 				}
 
 				helper.commitTransaction();
+				CalendarFeedCache.invalidate(CalendarFeedCache.Dependency.STUDENT, getStudentIds());
 				
 				return true;			
 			} catch (Exception e) {
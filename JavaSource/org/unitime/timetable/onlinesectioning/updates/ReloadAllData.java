@@ -31,10 +31,20 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.cpsolver.coursett.constraint.GroupConstraint;
 import org.cpsolver.coursett.constraint.IgnoreStudentConflictsConstraint;
+import org.hibernate.FlushMode;
 import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
 import org.unitime.timetable.gwt.shared.SectioningException;
@@ -47,6 +57,7 @@ import org.unitime.timetable.model.InstructionalOffering;
 import org.unitime.timetable.model.PreferenceLevel;
 import org.unitime.timetable.model.SchedulingSubpart;
 import org.unitime.timetable.model.comparators.ClassComparator;
+import org.unitime.timetable.model.dao.InstructionalOfferingDAO;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
@@ -63,6 +74,8 @@ import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
+import org.unitime.timetable.onlinesectioning.server.AllowWhileLoading;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 import org.unitime.timetable.solver.TimetableDatabaseLoader;
@@ -71,6 +84,7 @@ import org.unitime.timetable.solver.TimetableDatabaseLoader;
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
+@AllowWhileLoading
 public class ReloadAllData implements OnlineSectioningAction<Boolean> {
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
@@ -85,7 +99,9 @@ public class ReloadAllData implements OnlineSectioningAction<Boolean> {
 			}
 		}
 
-		Lock lock = server.lockAll();
+		// during the initial load, the server is not locked: the offerings become available one by one as they get ready,
+		// the other actions that change the server data wait until the server is ready (see AllowWhileLoading)
+		Lock lock = (server.isReady() ? server.lockAll() : null);
 		try {
 			helper.beginTransaction();
 			try {
@@ -123,65 +139,24 @@ public class ReloadAllData implements OnlineSectioningAction<Boolean> {
 		        	}
 		        }
 		        
-				Map<Long, XOffering> offeringMap = new HashMap<Long, XOffering>();
-				Map<Long, XSection> sectionMap = new HashMap<Long, XSection>();
-				Map<Long, Map<Long, Double>> spaceMap = new HashMap<Long, Map<Long,Double>>();
-				List<InstructionalOffering> offerings = helper.getHibSession().createQuery(
-						"select distinct io from InstructionalOffering io " +
-						"left join io.courseOfferings co " +
-						"left join fetch io.instrOfferingConfigs cf " +
-						"left join fetch cf.schedulingSubparts ss " +
-						"left join fetch ss.classes as c "+
-						"left join fetch io.reservations x " +
-						"where io.session.uniqueId = :sessionId and io.notOffered = false and co.subjectArea.department.allowStudentScheduling = true")
-						.setLong("sessionId", server.getAcademicSession().getUniqueId()).list();
-				for (InstructionalOffering io: offerings) {
-					XOffering offering = loadOffering(io, distributions.get(io.getUniqueId()), server, helper);
-					if (offering != null) {
-						offeringMap.put(offering.getOfferingId(), offering);
-						for (XConfig config: offering.getConfigs())
-							for (XSubpart subpart: config.getSubparts())
-								for (XSection section: subpart.getSections())
-									sectionMap.put(section.getSectionId(), section);
-						spaceMap.put(offering.getOfferingId(), new HashMap<Long, Double>());
+				final OfferingReadiness readiness = new OfferingReadiness(server, helper);
+				final Map<Long, List<XDistribution>> offeringDistributions = distributions;
+				load("offerings", getOfferingIds(server, helper), new BatchLoader<XOffering>() {
+					@Override
+					public List<XOffering> load(List<Long> offeringIds, OnlineSectioningHelper h) {
+						return loadOfferings(offeringIds, offeringDistributions, server, h);
+					}
+					@Override
+					public void loaded(XOffering offering) {
 						server.update(offering);
+						readiness.offeringLoaded(offering.getOfferingId());
 					}
-				}
+				}, server, helper);
 				
-		        Map<Long, List<XCourseRequest>> requestMap = new HashMap<Long, List<XCourseRequest>>();
-				List<org.unitime.timetable.model.Student> students = helper.getHibSession().createQuery(
-	                    "select distinct s from Student s " +
-	                    "left join fetch s.courseDemands as cd " +
-	                    "left join fetch cd.courseRequests as cr " +
-	                    "left join fetch cr.classWaitLists as cwl " + 
-	                    "left join fetch s.classEnrollments as e " +
-	                    "left join fetch s.areaClasfMajors as acm " +
-	                    "left join fetch s.waitlists as w " +
-	                    "left join fetch s.groups as g " +
-	                    "left join fetch s.notes as n " +
-	                    "where s.session.uniqueId=:sessionId").
-	                    setLong("sessionId",server.getAcademicSession().getUniqueId()).list();
-	            for (org.unitime.timetable.model.Student student: students) {
-	            	XStudent s = loadStudent(student, requestMap, server, helper);
-	            	if (s != null)
-	            		server.update(s, true);
-	            }
+				loadStudents(server, helper, readiness);
 				
-		    	List<Object[]> infos = helper.getHibSession().createQuery(
-		    			"select i.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.uniqueId, i.clazz.uniqueId, i.nbrExpectedStudents from SectioningInfo i where i.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessionId")
-		    			.setLong("sessionId", server.getAcademicSession().getUniqueId())
-		    			.list();
-		    	for (Object[] info : infos) {
-		    		Long offeringId = (Long)info[0];
-		    		Long sectionId = (Long)info[1];
-		    		Double expected = (Double)info[2];
-		    		Map<Long, Double> space = spaceMap.get(offeringId);
-		    		if (space != null)
-		    			space.put(sectionId, expected);
-		    	}
-		    	for (Map.Entry<Long, Map<Long, Double>> entry: spaceMap.entrySet())
-		    		server.update(new XExpectations(entry.getKey(), entry.getValue()));
-		        
+				readiness.done();
+		    	
 				long t1 = System.currentTimeMillis();
 				helper.info("  Update of session " + server.getAcademicSession() + " done " + new DecimalFormat("0.0").format((t1 - t0) / 1000.0) + " seconds.");
 				
@@ -194,18 +169,315 @@ public class ReloadAllData implements OnlineSectioningAction<Boolean> {
 				throw new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
 			}
 		} finally {
-			lock.release();
+			if (lock != null) lock.release();
 		}		
 	}
 	
+	/**
+	 * Ids of the offerings that are to be loaded into the server
+	 */
+	protected List<Long> getOfferingIds(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		return (List<Long>)helper.getHibSession().createQuery(
+				"select distinct io.uniqueId from InstructionalOffering io inner join io.courseOfferings co " +
+				"where io.session.uniqueId = :sessionId and io.notOffered = false and co.subjectArea.department.allowStudentScheduling = true")
+				.setLong("sessionId", server.getAcademicSession().getUniqueId()).list();
+	}
+	
+	/**
+	 * Load a batch of offerings (only the given helper and its hibernate session are used, so that batches can be loaded in parallel)
+	 */
+	protected List<XOffering> loadOfferings(List<Long> offeringIds, Map<Long, List<XDistribution>> distributions, OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		List<InstructionalOffering> offerings = helper.getHibSession().createQuery(
+				"select distinct io from InstructionalOffering io " +
+				"left join fetch io.instrOfferingConfigs cf " +
+				"left join fetch cf.schedulingSubparts ss " +
+				"left join fetch ss.classes as c "+
+				"left join fetch io.reservations x " +
+				"where io.uniqueId in (:offeringIds)")
+				.setParameterList("offeringIds", offeringIds).list();
+		List<XOffering> ret = new ArrayList<XOffering>(offerings.size());
+		for (InstructionalOffering io: offerings) {
+			XOffering offering = loadOffering(io, distributions.get(io.getUniqueId()), server, helper);
+			if (offering != null) ret.add(offering);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Ids of the students that are to be loaded into the server
+	 */
+	protected List<Long> getStudentIds(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		return (List<Long>)helper.getHibSession().createQuery(
+				"select s.uniqueId from Student s where s.session.uniqueId = :sessionId")
+				.setLong("sessionId", server.getAcademicSession().getUniqueId()).list();
+	}
+	
+	/**
+	 * Load all students of the session. The students are created in batches (in parallel when there are multiple load threads),
+	 * their enrollments are checked and the students are put into the server by the calling thread.
+	 */
+	protected void loadStudents(final OnlineSectioningServer server, OnlineSectioningHelper helper) throws Exception {
+		loadStudents(server, helper, null);
+	}
+	
+	/**
+	 * Load all students of the session, the given offering readiness (if any) is notified as soon as a student is put into the server.
+	 */
+	protected void loadStudents(final OnlineSectioningServer server, OnlineSectioningHelper helper, final OfferingReadiness readiness) throws Exception {
+		final Map<Long, List<XCourseRequest>> requestMap = new HashMap<Long, List<XCourseRequest>>();
+		final OnlineSectioningHelper checkHelper = new LoaderHelper(helper.getHibSession(), helper);
+		load("students", getStudentIds(server, helper), new BatchLoader<XStudent>() {
+			@Override
+			public List<XStudent> load(List<Long> studentIds, OnlineSectioningHelper h) {
+				List<org.unitime.timetable.model.Student> students = h.getHibSession().createQuery(
+	                    "select distinct s from Student s " +
+	                    "left join fetch s.courseDemands as cd " +
+	                    "left join fetch cd.courseRequests as cr " +
+	                    "left join fetch cr.classWaitLists as cwl " + 
+	                    "left join fetch s.classEnrollments as e " +
+	                    "left join fetch s.areaClasfMajors as acm " +
+	                    "left join fetch s.waitlists as w " +
+	                    "left join fetch s.groups as g " +
+	                    "left join fetch s.notes as n " +
+	                    "where s.uniqueId in (:studentIds)").
+	                    setParameterList("studentIds", studentIds).list();
+				List<XStudent> ret = new ArrayList<XStudent>(students.size());
+				for (org.unitime.timetable.model.Student student: students)
+					ret.add(new XStudent(student, h, server.getAcademicSession().getFreeTimePattern()));
+				return ret;
+			}
+			@Override
+			public void loaded(XStudent student) {
+				XStudent s = checkStudent(student, requestMap, server, checkHelper);
+				if (s != null)
+					server.update(s, true);
+				if (readiness != null)
+					readiness.studentLoaded(student.getStudentId());
+			}
+		}, server, helper);
+	}
+	
+	/**
+	 * Load the given objects in batches of unitime.enrollment.server.load.batchSize ids, using unitime.enrollment.server.load.threads threads.
+	 * Each batch is read in its own hibernate session (which is closed when the batch is done, so that the whole entity graph is never in memory),
+	 * the loaded objects are passed to {@link BatchLoader#loaded(Object)} by the calling thread as soon as their batch is done.
+	 * At most two batches per thread are waiting to be processed at any time.
+	 */
+	protected <T> void load(String name, List<Long> ids, final BatchLoader<T> loader, final OnlineSectioningServer server, final OnlineSectioningHelper helper) throws Exception {
+		int nrThreads = Math.max(1, ApplicationProperty.OnlineSchedulingServerLoadThreads.intValue());
+		int batchSize = Math.max(1, ApplicationProperty.OnlineSchedulingServerLoadBatchSize.intValue());
+		List<List<Long>> batches = new ArrayList<List<Long>>();
+		for (int i = 0; i < ids.size(); i += batchSize)
+			batches.add(ids.subList(i, Math.min(ids.size(), i + batchSize)));
+		long t0 = System.currentTimeMillis();
+		if (nrThreads == 1 || batches.size() <= 1) {
+			for (List<Long> batch: batches)
+				for (T item: loadBatch(batch, loader, helper))
+					loader.loaded(item);
+		} else {
+			final String locale = Localization.getLocale();
+			final Long sessionId = server.getAcademicSession().getUniqueId();
+			ExecutorService executor = Executors.newFixedThreadPool(nrThreads, new LoaderThreadFactory(server.getAcademicSession().toCompactString() + "-" + name));
+			try {
+				CompletionService<List<T>> completion = new ExecutorCompletionService<List<T>>(executor);
+				int pending = 0;
+				for (final List<Long> batch: batches) {
+					if (pending >= 2 * nrThreads) {
+						for (T item: completion.take().get())
+							loader.loaded(item);
+						pending --;
+					}
+					completion.submit(new Callable<List<T>>() {
+						@Override
+						public List<T> call() throws Exception {
+							Localization.setLocale(locale);
+							ApplicationProperties.setSessionId(sessionId);
+							try {
+								return loadBatch(batch, loader, helper);
+							} finally {
+								ApplicationProperties.setSessionId(null);
+							}
+						}
+					});
+					pending ++;
+				}
+				for (; pending > 0; pending--)
+					for (T item: completion.take().get())
+						loader.loaded(item);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+				throw e;
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		helper.info("  Loaded " + ids.size() + " " + name + " in " + new DecimalFormat("0.0").format((System.currentTimeMillis() - t0) / 1000.0) + " seconds (" +
+				batches.size() + " batches, " + Math.min(nrThreads, batches.size()) + " threads).");
+	}
+	
+	protected <T> List<T> loadBatch(List<Long> ids, BatchLoader<T> loader, OnlineSectioningHelper helper) {
+		org.hibernate.Session hibSession = InstructionalOfferingDAO.getInstance().createNewSession();
+		try {
+			hibSession.setFlushMode(FlushMode.MANUAL);
+			return loader.load(ids, new LoaderHelper(hibSession, helper));
+		} finally {
+			hibSession.close();
+		}
+	}
+	
+	/**
+	 * Loader of a batch of objects, see {@link ReloadAllData#load(String, List, BatchLoader, OnlineSectioningServer, OnlineSectioningHelper)}
+	 */
+	protected static interface BatchLoader<T> {
+		/** Load objects of the given ids, called from a loader thread with a helper that has its own hibernate session */
+		public List<T> load(List<Long> ids, OnlineSectioningHelper helper);
+		/** Process a loaded object, called from the thread that is executing the action */
+		public void loaded(T object);
+	}
+	
+	/**
+	 * Readiness of the loaded offerings. An offering is ready (see {@link OnlineSectioningServer#isReady(Long)}) as soon as the offering
+	 * and all the students that have a course request or an enrollment for it are in the server, its expected space is put into the server
+	 * at the same time. The students of an offering are only looked up when the server is not ready yet (initial load).
+	 * Only used from the thread that is executing the action.
+	 */
+	protected static class OfferingReadiness {
+		private OnlineSectioningServer iServer;
+		private Map<Long, Map<Long, Double>> iExpectations = new HashMap<Long, Map<Long, Double>>();
+		private Map<Long, Set<Long>> iStudentOfferings = new HashMap<Long, Set<Long>>();
+		private Map<Long, Integer> iRemainingStudents = new HashMap<Long, Integer>();
+		private Set<Long> iLoadedOfferings = new HashSet<Long>();
+		
+		public OfferingReadiness(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+			iServer = server;
+			for (Object[] info : (List<Object[]>)helper.getHibSession().createQuery(
+					"select i.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.uniqueId, i.clazz.uniqueId, i.nbrExpectedStudents from SectioningInfo i where i.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessionId")
+					.setLong("sessionId", server.getAcademicSession().getUniqueId())
+					.list()) {
+				Long offeringId = (Long)info[0];
+				Long sectionId = (Long)info[1];
+				Double expected = (Double)info[2];
+				Map<Long, Double> space = iExpectations.get(offeringId);
+				if (space == null) {
+					space = new HashMap<Long, Double>();
+					iExpectations.put(offeringId, space);
+				}
+				space.put(sectionId, expected);
+			}
+			if (server.isReady()) return;
+			for (String query: new String[] {
+					"select distinct cr.courseDemand.student.uniqueId, cr.courseOffering.instructionalOffering.uniqueId from CourseRequest cr where cr.courseDemand.student.session.uniqueId = :sessionId",
+					"select distinct e.student.uniqueId, e.courseOffering.instructionalOffering.uniqueId from StudentClassEnrollment e where e.student.session.uniqueId = :sessionId"
+				}) {
+				for (Object[] o: (List<Object[]>)helper.getHibSession().createQuery(query).setLong("sessionId", server.getAcademicSession().getUniqueId()).list()) {
+					Long studentId = (Long)o[0];
+					Long offeringId = (Long)o[1];
+					Set<Long> offeringIds = iStudentOfferings.get(studentId);
+					if (offeringIds == null) {
+						offeringIds = new HashSet<Long>();
+						iStudentOfferings.put(studentId, offeringIds);
+					}
+					if (offeringIds.add(offeringId)) {
+						Integer remaining = iRemainingStudents.get(offeringId);
+						iRemainingStudents.put(offeringId, remaining == null ? 1 : remaining + 1);
+					}
+				}
+			}
+		}
+		
+		/** Offering has been put into the server */
+		public void offeringLoaded(Long offeringId) {
+			iLoadedOfferings.add(offeringId);
+			if (!iRemainingStudents.containsKey(offeringId))
+				ready(offeringId);
+		}
+		
+		/** Student has been put into the server */
+		public void studentLoaded(Long studentId) {
+			Set<Long> offeringIds = iStudentOfferings.remove(studentId);
+			if (offeringIds == null) return;
+			for (Long offeringId: offeringIds) {
+				Integer remaining = iRemainingStudents.get(offeringId);
+				if (remaining == null) continue;
+				if (remaining <= 1) {
+					iRemainingStudents.remove(offeringId);
+					ready(offeringId);
+				} else {
+					iRemainingStudents.put(offeringId, remaining - 1);
+				}
+			}
+		}
+		
+		/** All the students have been loaded, the remaining loaded offerings are ready */
+		public void done() {
+			for (Long offeringId: new ArrayList<Long>(iLoadedOfferings))
+				ready(offeringId);
+		}
+		
+		protected void ready(Long offeringId) {
+			if (!iLoadedOfferings.remove(offeringId)) return;
+			Map<Long, Double> space = iExpectations.remove(offeringId);
+			iServer.update(new XExpectations(offeringId, space == null ? new HashMap<Long, Double>() : space));
+			if (iServer instanceof AbstractServer)
+				((AbstractServer)iServer).setReady(Collections.singleton(offeringId));
+		}
+	}
+	
+	/**
+	 * Helper of a loader thread: it has its own hibernate session, messages are passed to the parent helper
+	 */
+	protected static class LoaderHelper extends OnlineSectioningHelper {
+		private OnlineSectioningHelper iParent;
+		
+		public LoaderHelper(org.hibernate.Session hibSession, OnlineSectioningHelper parent) {
+			super(hibSession, parent.getUser());
+			iParent = parent;
+			setGradableSubpartsProvider(parent.getGradableSubpartsProvider());
+		}
+		
+		@Override
+		public void log(Message m) {
+			synchronized (iParent) {
+				iParent.log(m);
+			}
+		}
+		
+		@Override
+		public boolean isDebugEnabled() {
+			return iParent.isDebugEnabled();
+		}
+	}
+	
+	private static class LoaderThreadFactory implements ThreadFactory {
+		private String iName;
+		private AtomicInteger iCounter = new AtomicInteger(0);
+		
+		private LoaderThreadFactory(String name) {
+			iName = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "ReloadAllData[" + iName + "-" + iCounter.incrementAndGet() + "]");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
     public static XOffering loadOffering(InstructionalOffering io, List<XDistribution> distributions, OnlineSectioningServer server, OnlineSectioningHelper helper) {
     	if (io.getInstrOfferingConfigs().isEmpty() || io.isNotOffered()) return null;
     	return new XOffering(io, distributions, helper);
     }
     
     public static XStudent loadStudent(org.unitime.timetable.model.Student s, Map<Long, List<XCourseRequest>> requestMap, OnlineSectioningServer server, OnlineSectioningHelper helper) {
-    	XStudent student = new XStudent(s, helper, server.getAcademicSession().getFreeTimePattern());
-    	
+    	return checkStudent(new XStudent(s, helper, server.getAcademicSession().getFreeTimePattern()), requestMap, server, helper);
+    }
+    
+    /**
+     * Remove requests for courses that are not loaded and check the student's enrollments (the reservations are guessed),
+     * only the given student and the server are used (no database access)
+     */
+    public static XStudent checkStudent(XStudent student, Map<Long, List<XCourseRequest>> requestMap, OnlineSectioningServer server, OnlineSectioningHelper helper) {
     	for (Iterator<XRequest> i = student.getRequests().iterator(); i.hasNext(); ) {
     		XRequest request = i.next();
     		if (request instanceof XCourseRequest) {
@@ -215,7 +487,7 @@ public class ReloadAllData implements OnlineSectioningAction<Boolean> {
     				XCourseId course = j.next();
     				XOffering offering = server.getOffering(course.getOfferingId());
                     if (offering == null) {
-                    	helper.warn("Student " + helper.getStudentNameFormat().format(s) + " (" + s.getExternalUniqueId() + ") requests course " + course.getCourseName() + " that is not loaded.");
+                    	helper.warn("Student " + student.getName() + " (" + student.getExternalId() + ") requests course " + course.getCourseName() + " that is not loaded.");
                     	j.remove();
                     }
     			}
@@ -249,13 +521,13 @@ public class ReloadAllData implements OnlineSectioningAction<Boolean> {
     							if (enrollment.getSectionIds().contains(section.getSectionId())) {
     		    					for (XSection other: checked.keySet()) {
     		    						if (section.isOverlapping(offering.getDistributions(), other)) {
-    		    							helper.warn("There is a problem assigning " + enrollment.getCourseName() + " to " + helper.getStudentNameFormat().format(s) + " (" + s.getExternalUniqueId() + "): "+
+    		    							helper.warn("There is a problem assigning " + enrollment.getCourseName() + " to " + student.getName() + " (" + student.getExternalId() + "): "+
     		    									section.getSubpartName() + " " + section.getName() + " " + section.getTime() +
     		            							" overlaps with " + checked.get(other).getCourseName() + " " + other.getSubpartName() + " " + other.getName() + " " + other.getTime());
     		    						}
     		    					}
     		    					if (!mixedConfig && !config.getConfigId().equals(enrollment.getConfigId())) {
-    		    						helper.warn("There is a problem assigning " + enrollment.getCourseName() + " to " + helper.getStudentNameFormat().format(s) + " (" + s.getExternalUniqueId() + "): classes from different configurations.");
+    		    						helper.warn("There is a problem assigning " + enrollment.getCourseName() + " to " + student.getName() + " (" + student.getExternalId() + "): classes from different configurations.");
     		    						mixedConfig = true;
     		    					}
     		    					checked.put(section, enrollment);
@@ -264,9 +536,9 @@ public class ReloadAllData implements OnlineSectioningAction<Boolean> {
     						}
 							if (config.getConfigId().equals(enrollment.getConfigId()) && nrMatches != 1) {
 								if (nrMatches > 1)
-									helper.warn("There is a problem assigning " + enrollment.getCourseName() + " to " + helper.getStudentNameFormat().format(s) + " (" + s.getExternalUniqueId() + "): two or more classes of the same subpart " + subpart.getName() + ".");
+									helper.warn("There is a problem assigning " + enrollment.getCourseName() + " to " + student.getName() + " (" + student.getExternalId() + "): two or more classes of the same subpart " + subpart.getName() + ".");
 								else
-									helper.warn("There is a problem assigning " + enrollment.getCourseName() + " to " + helper.getStudentNameFormat().format(s) + " (" + s.getExternalUniqueId() + "): no class of the subpart " + subpart.getName() + ".");
+									helper.warn("There is a problem assigning " + enrollment.getCourseName() + " to " + student.getName() + " (" + student.getExternalId() + "): no class of the subpart " + subpart.getName() + ".");
 							}
     					}
     				}
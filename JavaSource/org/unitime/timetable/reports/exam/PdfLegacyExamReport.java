@@ -69,11 +69,11 @@ import org.unitime.timetable.model.SubjectArea;
 import org.unitime.timetable.model.TimetableManager;
 import org.unitime.timetable.model.Event.MultiMeeting;
 import org.unitime.timetable.model.dao.ExamDAO;
-import org.unitime.timetable.model.dao.ExamTypeDAO;
 import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.reports.PdfLegacyReport;
 import org.unitime.timetable.solver.exam.ui.ExamAssignment;
 import org.unitime.timetable.solver.exam.ui.ExamAssignmentInfo;
+import org.unitime.timetable.solver.exam.ui.ExamAssignmentLoader;
 import org.unitime.timetable.solver.exam.ui.ExamInfo;
 import org.unitime.timetable.solver.exam.ui.ExamRoomInfo;
 import org.unitime.timetable.solver.exam.ui.ExamAssignmentInfo.Parameters;
@@ -750,30 +750,9 @@ public abstract class PdfLegacyExamReport extends PdfLegacyReport {
             exams.put(exam.getUniqueId(), exam);
         }
         
-		sLog.info("  Fetching related objects (class)...");
-        new ExamDAO().getSession().createQuery(
-                "select c from Class_ c, ExamOwner o where o.exam.session.uniqueId=:sessionId and o.exam.examType.uniqueId=:examTypeId and o.ownerType=:classType and c.uniqueId=o.ownerId")
-                .setLong("sessionId", sessionId)
-                .setLong("examTypeId", examTypeId)
-                .setInteger("classType", ExamOwner.sOwnerTypeClass).setCacheable(true).list();
-        sLog.info("  Fetching related objects (config)...");
-        new ExamDAO().getSession().createQuery(
-                "select c from InstrOfferingConfig c, ExamOwner o where o.exam.session.uniqueId=:sessionId and o.exam.examType.uniqueId=:examTypeId and o.ownerType=:configType and c.uniqueId=o.ownerId")
-                .setLong("sessionId", sessionId)
-                .setLong("examTypeId", examTypeId)
-                .setInteger("configType", ExamOwner.sOwnerTypeConfig).setCacheable(true).list();
-        sLog.info("  Fetching related objects (course)...");
-        new ExamDAO().getSession().createQuery(
-                "select c from CourseOffering c, ExamOwner o where o.exam.session.uniqueId=:sessionId and o.exam.examType.uniqueId=:examTypeId and o.ownerType=:courseType and c.uniqueId=o.ownerId")
-                .setLong("sessionId", sessionId)
-                .setLong("examTypeId", examTypeId)
-                .setInteger("courseType", ExamOwner.sOwnerTypeCourse).setCacheable(true).list();
-        sLog.info("  Fetching related objects (offering)...");
-        new ExamDAO().getSession().createQuery(
-                "select c from InstructionalOffering c, ExamOwner o where o.exam.session.uniqueId=:sessionId and o.exam.examType.uniqueId=:examTypeId and o.ownerType=:offeringType and c.uniqueId=o.ownerId")
-                .setLong("sessionId", sessionId)
-                .setLong("examTypeId", examTypeId)
-                .setInteger("offeringType", ExamOwner.sOwnerTypeOffering).setCacheable(true).list();
+        ExamAssignmentLoader loader = new ExamAssignmentLoader(sessionId, examTypeId);
+		sLog.info("  Fetching related objects...");
+		loader.fetchOwners();
         
 		sLog.info("  Fetching related class events...");
         Hashtable<Long, ClassEvent> classEvents = new Hashtable();
@@ -789,223 +768,27 @@ public abstract class PdfLegacyExamReport extends PdfLegacyReport {
         
         Hashtable<Long,Set<Long>> owner2students = new Hashtable();
         Hashtable<Long,Set<Exam>> student2exams = new Hashtable();
+        Hashtable<Long,Set<Exam>> instructor2exams = null;
         Hashtable<Long,Hashtable<Long,Set<Long>>> owner2course2students = new Hashtable();
         if (assgn) {
-            sLog.info("  Loading students (class)...");
-            for (Iterator i=
-                new ExamDAO().getSession().createQuery(
-                "select x.uniqueId, o.uniqueId, e.student.uniqueId, e.courseOffering.uniqueId from "+
-                "Exam x inner join x.owners o, "+
-                "StudentClassEnrollment e inner join e.clazz c "+
-                "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeClass+" and "+
-                "o.ownerId=c.uniqueId").setLong("sessionId", sessionId).setLong("examTypeId", examTypeId).setCacheable(true).list().iterator();i.hasNext();) {
-                    Object[] o = (Object[])i.next();
-                    Long examId = (Long)o[0];
-                    Long ownerId = (Long)o[1];
-                    Long studentId = (Long)o[2];
-                    Set<Long> studentsOfOwner = owner2students.get(ownerId);
-                    if (studentsOfOwner==null) {
-                        studentsOfOwner = new HashSet<Long>();
-                        owner2students.put(ownerId, studentsOfOwner);
-                    }
-                    studentsOfOwner.add(studentId);
-                    Set<Exam> examsOfStudent = student2exams.get(studentId);
-                    if (examsOfStudent==null) { 
-                        examsOfStudent = new HashSet<Exam>();
-                        student2exams.put(studentId, examsOfStudent);
-                    }
-                    examsOfStudent.add(exams.get(examId));
-                    Long courseId = (Long)o[3];
-                    Hashtable<Long, Set<Long>> course2students = owner2course2students.get(ownerId);
-                    if (course2students == null) {
-                    	course2students = new Hashtable<Long, Set<Long>>();
-                    	owner2course2students.put(ownerId, course2students);
-                    }
-                    Set<Long> studentsOfCourse = course2students.get(courseId);
-                    if (studentsOfCourse == null) {
-                    	studentsOfCourse = new HashSet<Long>();
-                    	course2students.put(courseId, studentsOfCourse);
-                    }
-                    studentsOfCourse.add(studentId);
-                }
-            sLog.info("  Loading students (config)...");
-            for (Iterator i=
-                new ExamDAO().getSession().createQuery(
-                        "select x.uniqueId, o.uniqueId, e.student.uniqueId, e.courseOffering.uniqueId from "+
-                        "Exam x inner join x.owners o, "+
-                        "StudentClassEnrollment e inner join e.clazz c " +
-                        "inner join c.schedulingSubpart.instrOfferingConfig ioc " +
-                        "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                        "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeConfig+" and "+
-                        "o.ownerId=ioc.uniqueId").setLong("sessionId", sessionId).setLong("examTypeId", examTypeId).setCacheable(true).list().iterator();i.hasNext();) {
-                Object[] o = (Object[])i.next();
-                Long examId = (Long)o[0];
-                Long ownerId = (Long)o[1];
-                Long studentId = (Long)o[2];
-                Set<Long> studentsOfOwner = owner2students.get(ownerId);
-                if (studentsOfOwner==null) {
-                    studentsOfOwner = new HashSet<Long>();
-                    owner2students.put(ownerId, studentsOfOwner);
-                }
-                studentsOfOwner.add(studentId);
-                Set<Exam> examsOfStudent = student2exams.get(studentId);
-                if (examsOfStudent==null) { 
-                    examsOfStudent = new HashSet<Exam>();
-                    student2exams.put(studentId, examsOfStudent);
-                }
-                examsOfStudent.add(exams.get(examId));
-                Long courseId = (Long)o[3];
-                Hashtable<Long, Set<Long>> course2students = owner2course2students.get(ownerId);
-                if (course2students == null) {
-                	course2students = new Hashtable<Long, Set<Long>>();
-                	owner2course2students.put(ownerId, course2students);
-                }
-                Set<Long> studentsOfCourse = course2students.get(courseId);
-                if (studentsOfCourse == null) {
-                	studentsOfCourse = new HashSet<Long>();
-                	course2students.put(courseId, studentsOfCourse);
-                }
-                studentsOfCourse.add(studentId);
-            }
-            sLog.info("  Loading students (course)...");
-            for (Iterator i=
-                new ExamDAO().getSession().createQuery(
-                        "select x.uniqueId, o.uniqueId, e.student.uniqueId, e.courseOffering.uniqueId from "+
-                        "Exam x inner join x.owners o, "+
-                        "StudentClassEnrollment e inner join e.courseOffering co " +
-                        "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                        "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeCourse+" and "+
-                        "o.ownerId=co.uniqueId").setLong("sessionId", sessionId).setLong("examTypeId", examTypeId).setCacheable(true).list().iterator();i.hasNext();) {
-                Object[] o = (Object[])i.next();
-                Long examId = (Long)o[0];
-                Long ownerId = (Long)o[1];
-                Long studentId = (Long)o[2];
-                Set<Long> studentsOfOwner = owner2students.get(ownerId);
-                if (studentsOfOwner==null) {
-                    studentsOfOwner = new HashSet<Long>();
-                    owner2students.put(ownerId, studentsOfOwner);
-                }
-                studentsOfOwner.add(studentId);
-                Set<Exam> examsOfStudent = student2exams.get(studentId);
-                if (examsOfStudent==null) { 
-                    examsOfStudent = new HashSet<Exam>();
-                    student2exams.put(studentId, examsOfStudent);
-                }
-                examsOfStudent.add(exams.get(examId));
-                Long courseId = (Long)o[3];
-                Hashtable<Long, Set<Long>> course2students = owner2course2students.get(ownerId);
-                if (course2students == null) {
-                	course2students = new Hashtable<Long, Set<Long>>();
-                	owner2course2students.put(ownerId, course2students);
-                }
-                Set<Long> studentsOfCourse = course2students.get(courseId);
-                if (studentsOfCourse == null) {
-                	studentsOfCourse = new HashSet<Long>();
-                	course2students.put(courseId, studentsOfCourse);
-                }
-                studentsOfCourse.add(studentId);
-            }
-            sLog.info("  Loading students (offering)...");
-            for (Iterator i=
-                new ExamDAO().getSession().createQuery(
-                        "select x.uniqueId, o.uniqueId, e.student.uniqueId, e.courseOffering.uniqueId from "+
-                        "Exam x inner join x.owners o, "+
-                        "StudentClassEnrollment e inner join e.courseOffering.instructionalOffering io " +
-                        "where x.session.uniqueId=:sessionId and x.examType.uniqueId=:examTypeId and "+
-                        "o.ownerType="+org.unitime.timetable.model.ExamOwner.sOwnerTypeOffering+" and "+
-                        "o.ownerId=io.uniqueId").setLong("sessionId", sessionId).setLong("examTypeId", examTypeId).setCacheable(true).list().iterator();i.hasNext();) {
-                Object[] o = (Object[])i.next();
-                Long examId = (Long)o[0];
-                Long ownerId = (Long)o[1];
-                Long studentId = (Long)o[2];
-                Set<Long> studentsOfOwner = owner2students.get(ownerId);
-                if (studentsOfOwner==null) {
-                    studentsOfOwner = new HashSet<Long>();
-                    owner2students.put(ownerId, studentsOfOwner);
-                }
-                studentsOfOwner.add(studentId);
-                Set<Exam> examsOfStudent = student2exams.get(studentId);
-                if (examsOfStudent==null) { 
-                    examsOfStudent = new HashSet<Exam>();
-                    student2exams.put(studentId, examsOfStudent);
-                }
-                examsOfStudent.add(exams.get(examId));
-                Long courseId = (Long)o[3];
-                Hashtable<Long, Set<Long>> course2students = owner2course2students.get(ownerId);
-                if (course2students == null) {
-                	course2students = new Hashtable<Long, Set<Long>>();
-                	owner2course2students.put(ownerId, course2students);
-                }
-                Set<Long> studentsOfCourse = course2students.get(courseId);
-                if (studentsOfCourse == null) {
-                	studentsOfCourse = new HashSet<Long>();
-                	course2students.put(courseId, studentsOfCourse);
-                }
-                studentsOfCourse.add(studentId);
-            }
+            sLog.info("  Loading students...");
+            ExamAssignmentLoader.Enrollments enrollments = loader.getEnrollments();
+            owner2students = enrollments.getOwnerStudents();
+            owner2course2students = enrollments.getOwnerCourseStudents();
+            student2exams = enrollments.getStudentExams(exams);
+            instructor2exams = enrollments.getInstructorExams(exams);
         }
         Hashtable<Long, Set<Meeting>> period2meetings = new Hashtable();
-        ExamType type = ExamTypeDAO.getInstance().get(examTypeId);
-        if (assgn && eventConf && ApplicationProperty.ExaminationConsiderEventConflicts.isTrue(type.getReference())) {
-            sLog.info("  Loading overlapping class meetings...");
-            for (Iterator i=new ExamDAO().getSession().createQuery(
-                    "select p.uniqueId, m from ClassEvent ce inner join ce.meetings m, ExamPeriod p " +
-                    "where p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
-                    HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId")
-                    .setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeClass.intValue())
-                    .setLong("sessionId", sessionId).setLong("examTypeId", examTypeId)
-                    .setCacheable(true).list().iterator(); i.hasNext();) {
-                Object[] o = (Object[])i.next();
-                Long periodId = (Long)o[0];
-                Meeting meeting = (Meeting)o[1];
-                Set<Meeting> meetings  = period2meetings.get(periodId);
-                if (meetings==null) {
-                    meetings = new HashSet(); period2meetings.put(periodId, meetings);
-                }
-                meetings.add(meeting);
-            }
-            sLog.info("  Loading overlapping course meetings...");
-            for (Iterator i=new ExamDAO().getSession().createQuery(
-                    "select p.uniqueId, m from CourseEvent ce inner join ce.meetings m, ExamPeriod p " +
-                    "where ce.reqAttendance=true and m.approvalStatus = 1 and p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
-                    HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId")
-                    .setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeCourse.intValue())
-                    .setLong("sessionId", sessionId).setLong("examTypeId", examTypeId)
-                    .setCacheable(true).list().iterator(); i.hasNext();) {
-                Object[] o = (Object[])i.next();
-                Long periodId = (Long)o[0];
-                Meeting meeting = (Meeting)o[1];
-                Set<Meeting> meetings  = period2meetings.get(periodId);
-                if (meetings==null) {
-                    meetings = new HashSet(); period2meetings.put(periodId, meetings);
-                }
-                meetings.add(meeting);
-            }
-            sLog.info("  Loading overlapping examinations of different problems...");
-            for (Iterator i=new ExamDAO().getSession().createQuery(
-                    "select p.uniqueId, m from ExamEvent ce inner join ce.meetings m, ExamPeriod p " +
-                    "where ce.exam.examType.uniqueId != :examTypeId and m.approvalStatus = 1 and p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
-                    HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId")
-                    .setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeCourse.intValue())
-                    .setLong("sessionId", sessionId).setLong("examTypeId", examTypeId)
-                    .setCacheable(true).list().iterator(); i.hasNext();) {
-                Object[] o = (Object[])i.next();
-                Long periodId = (Long)o[0];
-                Meeting meeting = (Meeting)o[1];
-                Set<Meeting> meetings  = period2meetings.get(periodId);
-                if (meetings==null) {
-                    meetings = new HashSet(); period2meetings.put(periodId, meetings);
-                }
-                meetings.add(meeting);
-            }
+        if (assgn && eventConf) {
+            sLog.info("  Loading overlapping meetings...");
+            period2meetings = loader.getPeriodMeetings();
         }
         Parameters p = new Parameters(sessionId, examTypeId);
         sLog.info("  Creating exam assignments...");
         TreeSet<ExamAssignmentInfo> ret = new TreeSet();
         for (Enumeration<Exam> e = exams.elements(); e.hasMoreElements();) {
             Exam exam = (Exam)e.nextElement();
-            ExamAssignmentInfo info = (assgn?new ExamAssignmentInfo(exam, owner2students, owner2course2students, student2exams, period2meetings, p):new ExamAssignmentInfo(exam, (ExamPeriod)null, null));
+            ExamAssignmentInfo info = (assgn?new ExamAssignmentInfo(exam, owner2students, owner2course2students, student2exams, instructor2exams, period2meetings, p):new ExamAssignmentInfo(exam, (ExamPeriod)null, null));
             for (ExamSectionInfo section: info.getSections()) {
             	if (section.getOwnerType() != ExamOwner.sOwnerTypeClass) continue;
             	ClassEvent evt = classEvents.get(section.getOwnerId());
@@ -0,0 +1,133 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.security.evaluation;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.security.UserAuthority;
+import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.security.rights.Right;
+
+/**
+ * Request scoped cache of permission decisions, used by {@link UniTimePermissionCheck}.
+ * The cache is only active between {@link #begin()} and {@link #end()} (called by the HibSessionFilter for each
+ * HTTP request and by the GWT RPC servlet for each asynchronous request), so a decision is never remembered for
+ * longer than the request (and its Hibernate session) lasts. Decisions are kept for a user, an authority (role and qualifier),
+ * a right and a domain object (type and id). The decisions are forgotten whenever a change is made or a transaction is completed
+ * (see {@link PermissionCacheInterceptor}).
+ * <br>
+ * The cache can be disabled by setting unitime.permissions.cache to false.
+ *
+ * @author Tomas Muller
+ */
+public class PermissionCache {
+	private static ThreadLocal<PermissionCache> sCache = new ThreadLocal<PermissionCache>();
+	private Map<Key, Boolean> iDecisions = new HashMap<Key, Boolean>();
+	private int iDepth = 0;
+	private long iHits = 0, iMisses = 0;
+	
+	private PermissionCache() {}
+	
+	/** Start caching permission decisions on the current thread, calls can be nested */
+	public static void begin() {
+		PermissionCache cache = sCache.get();
+		if (cache == null) {
+			if (!ApplicationProperty.PermissionCache.isTrue()) return;
+			cache = new PermissionCache();
+			sCache.set(cache);
+		}
+		cache.iDepth ++;
+	}
+	
+	/** Stop caching permission decisions on the current thread (when the outermost {@link #begin()} ends) */
+	public static void end() {
+		PermissionCache cache = sCache.get();
+		if (cache != null && --cache.iDepth <= 0)
+			sCache.remove();
+	}
+	
+	/** Forget all the decisions that have been made, e.g., after a change that could affect a permission check */
+	public static void clear() {
+		PermissionCache cache = sCache.get();
+		if (cache != null) cache.iDecisions.clear();
+	}
+	
+	/** Permission cache of the current thread, null if the permission decisions are not cached */
+	public static PermissionCache getInstance() {
+		return sCache.get();
+	}
+	
+	/** Cached decision, null if not known */
+	public Boolean get(UserContext user, Right right, String type, Serializable id) {
+		if (id == null || type == null) return null;
+		Boolean decision = iDecisions.get(new Key(user, right, type, id));
+		if (decision == null) iMisses ++; else iHits ++;
+		return decision;
+	}
+	
+	public void put(UserContext user, Right right, String type, Serializable id, boolean decision) {
+		if (id == null || type == null) return;
+		iDecisions.put(new Key(user, right, type, id), decision);
+	}
+	
+	public int size() { return iDecisions.size(); }
+	public long getHits() { return iHits; }
+	public long getMisses() { return iMisses; }
+	
+	@Override
+	public String toString() {
+		return "PermissionCache{size=" + iDecisions.size() + ", hits=" + iHits + ", misses=" + iMisses + "}";
+	}
+	
+	private static class Key {
+		private String iUser, iRole, iType;
+		private Serializable iQualifier, iAuthority, iId;
+		private Right iRight;
+		private int iHashCode;
+		
+		private Key(UserContext user, Right right, String type, Serializable id) {
+			iUser = user.getExternalUserId();
+			UserAuthority authority = user.getCurrentAuthority();
+			iRole = authority.getRole();
+			iAuthority = authority.getUniqueId();
+			iQualifier = (authority.getAcademicSession() == null ? null : authority.getAcademicSession().getQualifierId());
+			iRight = right; iType = type; iId = id;
+			iHashCode = ((iRight.hashCode() * 31 + iType.hashCode()) * 31 + iId.hashCode()) * 31 + (iUser == null ? 0 : iUser.hashCode());
+		}
+		
+		@Override
+		public int hashCode() { return iHashCode; }
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == null || !(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return iRight == k.iRight && iType.equals(k.iType) && iId.equals(k.iId) && eq(iUser, k.iUser) && eq(iRole, k.iRole) &&
+					eq(iAuthority, k.iAuthority) && eq(iQualifier, k.iQualifier);
+		}
+		
+		private static boolean eq(Object o1, Object o2) {
+			return (o1 == null ? o2 == null : o1.equals(o2));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.security.evaluation;
+
+import java.io.Serializable;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Transaction;
+import org.hibernate.type.Type;
+
+/**
+ * Hibernate interceptor that forgets the permission decisions of the current thread (see {@link PermissionCache#clear()})
+ * whenever an object is saved, updated, or deleted, or a collection is changed, and when a transaction is completed,
+ * so that a permission is never decided based on a state that has been changed since.
+ *
+ * @author Tomas Muller
+ */
+public class PermissionCacheInterceptor extends EmptyInterceptor {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState, String[] propertyNames, Type[] types) {
+		PermissionCache.clear();
+		return false;
+	}
+
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		PermissionCache.clear();
+		return false;
+	}
+
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		PermissionCache.clear();
+	}
+
+	@Override
+	public void onCollectionRecreate(Object collection, Serializable key) {
+		PermissionCache.clear();
+	}
+
+	@Override
+	public void onCollectionRemove(Object collection, Serializable key) {
+		PermissionCache.clear();
+	}
+
+	@Override
+	public void onCollectionUpdate(Object collection, Serializable key) {
+		PermissionCache.clear();
+	}
+
+	@Override
+	public void afterTransactionCompletion(Transaction tx) {
+		PermissionCache.clear();
+	}
+}
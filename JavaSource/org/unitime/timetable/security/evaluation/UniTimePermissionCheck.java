@@ -20,12 +20,17 @@
 package org.unitime.timetable.security.evaluation;
 
 import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.hibernate.proxy.HibernateProxy;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -51,6 +56,10 @@ import org.unitime.timetable.security.qualifiers.SimpleQualifier;
 import org.unitime.timetable.security.rights.Right;
 
 /**
+ * Permission evaluation. The permission beans (named permission + right name) are looked up once, when the bean is
+ * initialized, and called directly. Decisions on domain objects are kept in the request scoped {@link PermissionCache} (when active)
+ * and the domain objects of a collection of ids are loaded using one query.
+ *
  * @author Tomas Muller
  */
 @Service("unitimePermissionCheck")
@@ -67,6 +76,77 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 	@Autowired
 	PermissionSession permissionSession;
 	
+	private Map<Right, Permission<Object>> iPermissions = new EnumMap<Right, Permission<Object>>(Right.class);
+	private Map<Class<?>, Method> iIdGetters = new HashMap<Class<?>, Method>();
+	
+	protected Permission<Object> getPermission(Right right) {
+		return iPermissions.get(right);
+	}
+	
+	/** Unique id of a domain object (without initializing a Hibernate proxy), null if not known */
+	protected Serializable getDomainObjectId(Object domainObject) {
+		if (domainObject instanceof HibernateProxy)
+			return ((HibernateProxy)domainObject).getHibernateLazyInitializer().getIdentifier();
+		if (domainObject instanceof Qualifiable)
+			return ((Qualifiable)domainObject).getQualifierId();
+		Method getter = null;
+		synchronized (iIdGetters) {
+			if (iIdGetters.containsKey(domainObject.getClass())) {
+				getter = iIdGetters.get(domainObject.getClass());
+			} else {
+				try {
+					getter = domainObject.getClass().getMethod("getUniqueId");
+					if (!Serializable.class.isAssignableFrom(getter.getReturnType())) getter = null;
+				} catch (NoSuchMethodException e) {}
+				iIdGetters.put(domainObject.getClass(), getter);
+			}
+		}
+		try {
+			return (getter == null ? null : (Serializable)getter.invoke(domainObject));
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	protected static String getClassName(String targetType) {
+		return (targetType.indexOf('.') < 0 ? "org.unitime.timetable.model." + targetType : targetType);
+	}
+	
+	protected static Serializable getTargetId(Serializable targetId) {
+		if (targetId instanceof String) {
+			try {
+				return Long.valueOf((String)targetId);
+			} catch (NumberFormatException e) {}
+		}
+		return targetId;
+	}
+	
+	/**
+	 * Load domain objects of the given ids into the current Hibernate session using one query (for every 1000 ids), so that
+	 * the following checks do not need to load them one by one. Ids with a cached decision are skipped.
+	 */
+	protected void preload(UserContext user, Collection<? extends Serializable> targetIds, String targetType, Right right) {
+		if (targetIds.size() <= 1 || targetType == null || user == null || user.getCurrentAuthority() == null) return;
+		try {
+			String className = getClassName(targetType);
+			PermissionCache cache = PermissionCache.getInstance();
+			List<Long> ids = new ArrayList<Long>();
+			for (Serializable id: targetIds) {
+				Serializable targetId = getTargetId(id);
+				if (targetId instanceof Long && (cache == null || cache.get(user, right, className, targetId) == null))
+					ids.add((Long)targetId);
+			}
+			if (ids.size() <= 1) return;
+			Class.forName(className);
+			org.hibernate.Session hibSession = new _RootDAO().getSession();
+			for (int i = 0; i < ids.size(); i += 1000)
+				hibSession.createQuery("select x from " + className + " x where x.id in :ids")
+					.setParameterList("ids", ids.subList(i, Math.min(i + 1000, ids.size()))).list();
+		} catch (Exception e) {
+			sLog.debug("Failed to preload " + targetType + " objects: " + e.getMessage());
+		}
+	}
+	
 	@Override
     public void checkPermission(UserContext user, Serializable targetId, String targetType, Right right) throws AccessDeniedException {
 		if (user == null)
@@ -87,6 +167,7 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 		if (targetType == null) return;
 		
 		if (targetId != null && targetId instanceof Collection) {
+			preload(user, (Collection<Serializable>) targetId, targetType, right);
 			for (Serializable id: (Collection<Serializable>) targetId)
 				checkPermission(user, id, targetType, right);
 			return;
@@ -99,8 +180,7 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 		}
 		
 		try {
-			String className = targetType;
-			if (className.indexOf('.') < 0) className = "org.unitime.timetable.model." + className;
+			String className = getClassName(targetType);
 
 			// Special cases
 			
@@ -193,11 +273,7 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 				}
 			}
 			
-			if (targetId instanceof String) {
-				try {
-					targetId = Long.valueOf((String)targetId);
-				} catch (NumberFormatException e) {}
-			}
+			targetId = getTargetId(targetId);
 			if (!(targetId instanceof Long)) {
 				try {
 					targetId = (Serializable)targetId.getClass().getMethod("getUniqueId").invoke(targetId);
@@ -207,10 +283,14 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 				} catch (Exception e) {}
 			}
 			
+			PermissionCache cache = PermissionCache.getInstance();
+			if (cache != null && Boolean.TRUE.equals(cache.get(user, right, className, targetId))) return;
+			
 			Object domainObject = new _RootDAO().getSession().get(Class.forName(className), targetId);
 			if (domainObject == null)
 				throw new AccessDeniedException(MSG.domainObjectNotExists(right.toString(), targetType));
 			checkPermission(user, domainObject, right);
+			if (cache != null) cache.put(user, right, className, targetId, true);
 		} catch (AccessDeniedException e) {
 			throw e;
 		} catch (Exception e) {
@@ -259,16 +339,28 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 			throw new AccessDeniedException(MSG.wrongDomainObject(right.toString(), domainObject.getClass().getSimpleName(), right.type().getSimpleName()));
 		}
 		
+		PermissionCache cache = (right.hasType() ? PermissionCache.getInstance() : null);
+		Serializable id = (cache == null ? null : getDomainObjectId(domainObject));
+		if (id != null && Boolean.TRUE.equals(cache.get(user, right, right.type().getName(), id))) return;
+		try {
+			checkDomainObject(user, domainObject, right);
+		} catch (AccessDeniedException e) {
+			if (id != null) cache.put(user, right, right.type().getName(), id, false);
+			throw e;
+		}
+		if (id != null) cache.put(user, right, right.type().getName(), id, true);
+	}
+	
+	protected void checkDomainObject(UserContext user, Object domainObject, Right right) throws AccessDeniedException {
 		try {
-			Permission<?> perm = (Permission<?>)applicationContext.getBean("permission" + right.name(), Permission.class);
+			Permission<Object> perm = getPermission(right);
 			if (perm != null && perm.type().isInstance(domainObject)) {
-				if ((Boolean)perm.getClass().getMethod("check", UserContext.class, perm.type()).invoke(perm, user, domainObject)) {
+				if (perm.check(user, domainObject)) {
 					return;
 				} else {
 					throw new AccessDeniedException(MSG.permissionCheckFailed(right.toString(), domainObject.toString()));
 				}
 			}
-		} catch (BeansException e) {
 		} catch (AccessDeniedException e) {
 			throw e;
 		} catch (Exception e) {
@@ -295,6 +387,12 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 	@Override
 	public void afterPropertiesSet() throws Exception {
 		for (Right r: Right.values()) {
+			try {
+				if (applicationContext.containsBean("permission" + r.name()))
+					iPermissions.put(r, (Permission<Object>)applicationContext.getBean("permission" + r.name(), Permission.class));
+			} catch (BeansException e) {
+				sLog.warn("Failed to load permission " + r + ": " + e.getMessage());
+			}
 			try {
 				if (r.hasType()) {
 					try {
@@ -405,6 +503,7 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 		if (targetType == null) return true;
 		
 		if (targetId != null && targetId instanceof Collection) {
+			preload(user, (Collection<Serializable>) targetId, targetType, right);
 			for (Serializable id: (Collection<Serializable>) targetId)
 				if (!hasPermission(user, id, targetType, right)) return false;
 			return true;
@@ -417,8 +516,7 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 		}
 		
 		try {
-			String className = targetType;
-			if (className.indexOf('.') < 0) className = "org.unitime.timetable.model." + className;
+			String className = getClassName(targetType);
 
 			// Special cases
 			
@@ -473,11 +571,7 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 					return hasPermission(user, dept, right);
 			}
 			
-			if (targetId instanceof String) {
-				try {
-					targetId = Long.valueOf((String)targetId);
-				} catch (NumberFormatException e) {}
-			}
+			targetId = getTargetId(targetId);
 			if (!(targetId instanceof Long)) {
 				try {
 					targetId = (Serializable)targetId.getClass().getMethod("getUniqueId").invoke(targetId);
@@ -487,11 +581,16 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 				} catch (Exception e) {}
 			}
 			
+			PermissionCache cache = PermissionCache.getInstance();
+			if (cache != null) {
+				Boolean decision = cache.get(user, right, className, targetId);
+				if (decision != null) return decision;
+			}
+			
 			Object domainObject = new _RootDAO().getSession().get(Class.forName(className), targetId);
-			if (domainObject == null)
-				return false;
-
-			return hasPermission(user, domainObject, right);
+			boolean decision = (domainObject != null && hasPermission(user, domainObject, right));
+			if (cache != null) cache.put(user, right, className, targetId, decision);
+			return decision;
 		} catch (Exception e) {
 			return false;
 		}
@@ -526,10 +625,22 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 			return false;
 		}
 		
+		PermissionCache cache = (right.hasType() ? PermissionCache.getInstance() : null);
+		Serializable id = (cache == null ? null : getDomainObjectId(domainObject));
+		if (id != null) {
+			Boolean decision = cache.get(user, right, right.type().getName(), id);
+			if (decision != null) return decision;
+		}
+		boolean decision = hasDomainObjectPermission(user, domainObject, right);
+		if (id != null) cache.put(user, right, right.type().getName(), id, decision);
+		return decision;
+	}
+	
+	protected boolean hasDomainObjectPermission(UserContext user, Object domainObject, Right right) {
 		try {
-			Permission<?> perm = (Permission<?>)applicationContext.getBean("permission" + right.name(), Permission.class);
+			Permission<Object> perm = getPermission(right);
 			if (perm != null && perm.type().isInstance(domainObject))
-				return (Boolean)perm.getClass().getMethod("check", UserContext.class, perm.type()).invoke(perm, user, domainObject);
+				return perm.check(user, domainObject);
 		} catch (Exception e) {
 			return false;
 		}
@@ -0,0 +1,611 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.server.curricula;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.gwt.shared.CurriculumInterface.CourseInterface;
+
+/**
+ * Last-like students of an academic session, used to compute the curriculum projections (see {@link org.unitime.timetable.gwt.server.CurriculaServlet}).
+ * The students that have a last-like course demand, their academic area, major, and classification combinations, and the courses
+ * that their demands match are loaded by five queries and kept in primitive arrays. The numbers of last-like students of a curriculum
+ * (by classification, major, and course) are then computed in memory, without any further database access.
+ * <br>
+ * An instance does not change once loaded, so it can be used by multiple threads at once. Instances are cached for each academic session
+ * (see {@link #getInstance(org.hibernate.Session, Long)}), the cache is invalidated when students or last-like course demands are imported
+ * (see {@link #invalidate(Long)}) and after {@link ApplicationProperty#CurriculumProjectionCacheTimeToLive} seconds.
+ * Since the matching of last-like course demands depends on the course number, permanent id, and demand offering of a course offering,
+ * the cache is also invalidated when course offerings are edited, added, deleted, cross-listed, or imported. Other changes
+ * (e.g., a course number changed directly in the database) are only reflected once the cached instance expires.
+ * Curricula and projection rules are not cached, they are always taken from the caller.
+ *
+ * @author Tomas Muller
+ */
+public class CurriculumProjectionEngine {
+	private static Logger sLog = Logger.getLogger(CurriculumProjectionEngine.class);
+	private static ConcurrentMap<Long, CurriculumProjectionEngine> sEngines = new ConcurrentHashMap<Long, CurriculumProjectionEngine>();
+	private static ConcurrentMap<Long, Object> sLocks = new ConcurrentHashMap<Long, Object>();
+	private static AtomicLong sVersion = new AtomicLong(0);
+	
+	/**
+	 * A last-like course demand matches a course offering of the same subject area and course number (or permanent id),
+	 * or a course offering that has it as its demand offering. When a student and a course match in more than one way,
+	 * the count of the later check is used (this is how the counts were always computed).
+	 */
+	private static final String[] sCourseChecks = new String[] {
+		"co.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is not null and co.permId=x.coursePermId",
+		"co.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is null and co.courseNbr=x.courseNbr",
+		"co.demandOffering.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is not null and co.demandOffering.permId=x.coursePermId",
+		"co.demandOffering.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is null and co.demandOffering.courseNbr=x.courseNbr"
+	};
+	
+	private Long iSessionId;
+	private long iCreated;
+	private String[] iAreas, iMajors, iClassifications;
+	private Map<String, Integer> iAreaIndex = new HashMap<String, Integer>(), iMajorIndex = new HashMap<String, Integer>();
+	private long[] iStudentIds;
+	// academic area, major, classification combinations of a student s are at the positions iAcmStart[s] .. iAcmStart[s + 1] - 1
+	private int[] iAcmStart, iAcmArea, iAcmMajor, iAcmClassification;
+	// courses of a student s are at the positions iDemandStart[s] .. iDemandStart[s + 1] - 1, iDemandChecks has a bit for each matching course check
+	private int[] iDemandStart, iDemandCourse;
+	private byte[] iDemandChecks;
+	private long[] iCourseIds;
+	private String[] iCourseNames;
+	
+	protected CurriculumProjectionEngine(org.hibernate.Session hibSession, Long sessionId) {
+		long t0 = System.currentTimeMillis();
+		iSessionId = sessionId;
+		iCreated = t0;
+		
+		Map<String, Integer> clasfIndex = new HashMap<String, Integer>();
+		Map<Long, Integer> studentIndex = new HashMap<Long, Integer>();
+		IntArray acmStart = new IntArray(), acmArea = new IntArray(), acmMajor = new IntArray(), acmClasf = new IntArray();
+		List<Long> studentIds = new ArrayList<Long>();
+		for (Object[] o: (List<Object[]>)hibSession.createQuery(
+				"select distinct s.uniqueId, a.academicArea.academicAreaAbbreviation, m.code, f.code " +
+				"from LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f inner join a.major m " +
+				"where x.subjectArea.session.uniqueId = :sessionId order by s.uniqueId")
+				.setLong("sessionId", sessionId).setFetchSize(1000).list()) {
+			Long studentId = (Long)o[0];
+			String areaAbbv = (String)o[1];
+			String majorCode = (o[2] == null ? "" : (String)o[2]);
+			String clasfCode = (String)o[3];
+			if (areaAbbv == null || clasfCode == null) continue;
+			if (!studentIndex.containsKey(studentId)) {
+				studentIndex.put(studentId, studentIds.size());
+				studentIds.add(studentId);
+				acmStart.add(acmArea.size());
+			}
+			acmArea.add(index(iAreaIndex, areaAbbv));
+			acmMajor.add(index(iMajorIndex, majorCode));
+			acmClasf.add(index(clasfIndex, clasfCode));
+		}
+		acmStart.add(acmArea.size());
+		
+		// student index (29 bits), course index (32 bits), and check (2 bits) encoded in a long, sorted by student and course
+		LongArray demands = new LongArray();
+		Map<Long, Integer> courseIndex = new HashMap<Long, Integer>();
+		List<Long> courseIds = new ArrayList<Long>();
+		List<String> courseNames = new ArrayList<String>();
+		for (int check = 0; check < sCourseChecks.length; check++) {
+			for (Object[] o: (List<Object[]>)hibSession.createQuery(
+					"select distinct s.uniqueId, co.uniqueId, co.subjectArea.subjectAreaAbbreviation || ' ' || co.courseNbr " +
+					"from CourseOffering co, LastLikeCourseDemand x inner join x.student s " +
+					"where x.subjectArea.session.uniqueId = :sessionId and " + sCourseChecks[check])
+					.setLong("sessionId", sessionId).setFetchSize(1000).list()) {
+				Integer student = studentIndex.get((Long)o[0]);
+				if (student == null) continue;
+				Long courseId = (Long)o[1];
+				Integer course = courseIndex.get(courseId);
+				if (course == null) {
+					course = courseIds.size();
+					courseIndex.put(courseId, course);
+					courseIds.add(courseId);
+					courseNames.add((String)o[2]);
+				}
+				demands.add(((long)student << 34) | ((long)course << 2) | check);
+			}
+		}
+		long[] sorted = demands.toArray();
+		Arrays.sort(sorted);
+		IntArray demandStart = new IntArray(), demandCourse = new IntArray();
+		byte[] demandChecks = new byte[sorted.length];
+		int student = 0, nrDemands = 0;
+		demandStart.add(0);
+		for (long d: sorted) {
+			int s = (int)(d >>> 34), c = (int)((d >>> 2) & 0xFFFFFFFFl), check = (int)(d & 3);
+			while (student < s) { demandStart.add(nrDemands); student ++; }
+			if (nrDemands > demandStart.get(student) && demandCourse.get(nrDemands - 1) == c) {
+				demandChecks[nrDemands - 1] |= (1 << check);
+			} else {
+				demandCourse.add(c);
+				demandChecks[nrDemands ++] = (byte)(1 << check);
+			}
+		}
+		while (student < studentIds.size()) { demandStart.add(nrDemands); student ++; }
+		
+		iStudentIds = new long[studentIds.size()];
+		for (int i = 0; i < iStudentIds.length; i++) iStudentIds[i] = studentIds.get(i);
+		iAcmStart = acmStart.toArray(); iAcmArea = acmArea.toArray(); iAcmMajor = acmMajor.toArray(); iAcmClassification = acmClasf.toArray();
+		iDemandStart = demandStart.toArray(); iDemandCourse = demandCourse.toArray(); iDemandChecks = Arrays.copyOf(demandChecks, nrDemands);
+		iCourseIds = new long[courseIds.size()];
+		for (int i = 0; i < iCourseIds.length; i++) iCourseIds[i] = courseIds.get(i);
+		iCourseNames = courseNames.toArray(new String[courseNames.size()]);
+		iAreas = names(iAreaIndex); iMajors = names(iMajorIndex); iClassifications = names(clasfIndex);
+		
+		sLog.debug("Loaded " + iStudentIds.length + " last-like students with " + iDemandCourse.length + " courses (" + iCourseIds.length + " distinct) in " +
+				iAreas.length + " academic areas for session " + sessionId + " (took " + (System.currentTimeMillis() - t0) + " ms).");
+	}
+	
+	private static int index(Map<String, Integer> index, String name) {
+		Integer idx = index.get(name);
+		if (idx == null) {
+			idx = index.size();
+			index.put(name, idx);
+		}
+		return idx;
+	}
+	
+	private static String[] names(Map<String, Integer> index) {
+		String[] names = new String[index.size()];
+		for (Map.Entry<String, Integer> e: index.entrySet())
+			names[e.getValue()] = e.getKey();
+		return names;
+	}
+	
+	/**
+	 * Last-like students of the given academic session, loaded from the database if not cached
+	 */
+	public static CurriculumProjectionEngine getInstance(org.hibernate.Session hibSession, Long sessionId) {
+		CurriculumProjectionEngine engine = sEngines.get(sessionId);
+		if (engine != null && !engine.isExpired()) return engine;
+		Object lock = sLocks.get(sessionId);
+		if (lock == null) {
+			lock = new Object();
+			Object old = sLocks.putIfAbsent(sessionId, lock);
+			if (old != null) lock = old;
+		}
+		synchronized (lock) {
+			engine = sEngines.get(sessionId);
+			if (engine != null && !engine.isExpired()) return engine;
+			long version = sVersion.get();
+			engine = new CurriculumProjectionEngine(hibSession, sessionId);
+			// do not cache the data when the session has been invalidated in the mean time
+			if (version == sVersion.get() && !engine.isExpired())
+				sEngines.put(sessionId, engine);
+			return engine;
+		}
+	}
+	
+	/**
+	 * Drop the cached last-like students of an academic session (all sessions when null), e.g., when students or last-like course demands have been changed
+	 */
+	public static void invalidate(Long sessionId) {
+		sVersion.incrementAndGet();
+		if (sessionId == null)
+			sEngines.clear();
+		else
+			sEngines.remove(sessionId);
+	}
+	
+	protected boolean isExpired() {
+		Integer ttl = ApplicationProperty.CurriculumProjectionCacheTimeToLive.intValue();
+		return ttl == null || ttl <= 0 || System.currentTimeMillis() - iCreated > 1000l * ttl;
+	}
+	
+	public Long getSessionId() { return iSessionId; }
+	public int countStudents() { return iStudentIds.length; }
+	
+	/**
+	 * Students that match a curriculum, encoded as (classification, major) pairs: classification * (majors + 1) + major + 1,
+	 * major is -1 when the curriculum does not distinguish majors (all majors or multiple majors). Academic areas and majors
+	 * are identified by their abbreviations / codes, the order of the majors matters for curricula with multiple majors
+	 * (students are counted by the classification of the first major).
+	 */
+	protected class Matcher {
+		private int iArea = -1;
+		private int[] iMajorIds = null;
+		private boolean iMultiple = false, iNone = false;
+		private int[] iBuffer = new int[16];
+		private int iSize = 0;
+		
+		protected Matcher(String areaAbbv, List<String> majorCodes, boolean multipleMajors) {
+			Integer area = iAreaIndex.get(areaAbbv);
+			if (area == null) { iNone = true; return; }
+			iArea = area;
+			if (majorCodes.isEmpty()) {
+				// students with all majors
+				iNone = multipleMajors;
+			} else if (!multipleMajors || majorCodes.size() == 1) {
+				// students with one major
+				IntArray majors = new IntArray();
+				for (String code: majorCodes) {
+					Integer major = iMajorIndex.get(code);
+					if (major != null) majors.add(major);
+				}
+				iMajorIds = majors.toArray();
+				iNone = (iMajorIds.length == 0);
+			} else {
+				// students with multiple majors
+				iMultiple = true;
+				iMajorIds = new int[majorCodes.size()];
+				for (int i = 0; i < iMajorIds.length; i++) {
+					Integer major = iMajorIndex.get(majorCodes.get(i));
+					if (major == null) { iNone = true; return; }
+					iMajorIds[i] = major;
+				}
+			}
+		}
+		
+		/** Find (classification, major) pairs of the given student, returns the number of pairs (see {@link #pair(int)}) */
+		protected int match(int student) {
+			iSize = 0;
+			if (iNone) return 0;
+			int start = iAcmStart[student], end = iAcmStart[student + 1];
+			if (iMultiple) {
+				for (int i = 1; i < iMajorIds.length; i++) {
+					boolean found = false;
+					for (int a = start; a < end; a++)
+						if (iAcmArea[a] == iArea && iAcmMajor[a] == iMajorIds[i]) { found = true; break; }
+					if (!found) return 0;
+				}
+				for (int a = start; a < end; a++)
+					if (iAcmArea[a] == iArea && iAcmMajor[a] == iMajorIds[0])
+						add(iAcmClassification[a] * (iMajors.length + 1));
+			} else if (iMajorIds == null) {
+				for (int a = start; a < end; a++)
+					if (iAcmArea[a] == iArea)
+						add(iAcmClassification[a] * (iMajors.length + 1));
+			} else {
+				for (int a = start; a < end; a++) {
+					if (iAcmArea[a] != iArea) continue;
+					for (int m: iMajorIds)
+						if (iAcmMajor[a] == m) { add(iAcmClassification[a] * (iMajors.length + 1) + m + 1); break; }
+				}
+			}
+			return iSize;
+		}
+		
+		private void add(int pair) {
+			for (int i = 0; i < iSize; i++)
+				if (iBuffer[i] == pair) return;
+			if (iSize == iBuffer.length) iBuffer = Arrays.copyOf(iBuffer, 2 * iSize);
+			iBuffer[iSize++] = pair;
+		}
+		
+		protected int pair(int index) { return iBuffer[index]; }
+		protected String classification(int pair) { return iClassifications[pair / (iMajors.length + 1)]; }
+		protected String major(int pair) {
+			int major = pair % (iMajors.length + 1) - 1;
+			return (major < 0 ? "" : iMajors[major]);
+		}
+	}
+	
+	/** Number of last-like students of a curriculum: classification code -&gt; major code (empty when not distinguished) -&gt; students */
+	public Hashtable<String, Hashtable<String, Integer>> getClasfMajor2ll(String areaAbbv, List<String> majorCodes, boolean multipleMajors) {
+		Matcher matcher = new Matcher(areaAbbv, majorCodes, multipleMajors);
+		Map<Integer, int[]> counts = new HashMap<Integer, int[]>();
+		for (int s = 0; s < iStudentIds.length; s++) {
+			int n = matcher.match(s);
+			for (int i = 0; i < n; i++) {
+				int[] count = counts.get(matcher.pair(i));
+				if (count == null) {
+					count = new int[] {0};
+					counts.put(matcher.pair(i), count);
+				}
+				count[0] ++;
+			}
+		}
+		Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = new Hashtable<String, Hashtable<String,Integer>>();
+		for (Map.Entry<Integer, int[]> e: counts.entrySet()) {
+			String clasfCode = matcher.classification(e.getKey());
+			Hashtable<String, Integer> major2ll = clasfMajor2ll.get(clasfCode);
+			if (major2ll == null) {
+				major2ll = new Hashtable<String, Integer>();
+				clasfMajor2ll.put(clasfCode, major2ll);
+			}
+			major2ll.put(matcher.major(e.getKey()), e.getValue()[0]);
+		}
+		return clasfMajor2ll;
+	}
+	
+	/** Number of last-like students of a curriculum: classification code -&gt; students (regardless of the major) */
+	public Hashtable<String, Integer> getClasf2ll(String areaAbbv, List<String> majorCodes, boolean multipleMajors) {
+		Matcher matcher = new Matcher(areaAbbv, majorCodes, multipleMajors);
+		int[] counts = new int[iClassifications.length];
+		Set<String> classifications = new HashSet<String>();
+		for (int s = 0; s < iStudentIds.length; s++) {
+			int n = matcher.match(s);
+			if (n == 0) continue;
+			classifications.clear();
+			for (int i = 0; i < n; i++)
+				if (classifications.add(matcher.classification(matcher.pair(i))))
+					counts[matcher.pair(i) / (iMajors.length + 1)] ++;
+		}
+		Hashtable<String, Integer> clasf2ll = new Hashtable<String, Integer>();
+		for (int c = 0; c < counts.length; c++)
+			if (counts[c] > 0) clasf2ll.put(iClassifications[c], counts[c]);
+		return clasf2ll;
+	}
+	
+	/** Number of last-like students of a curriculum: classification code -&gt; major code (empty when not distinguished) -&gt; course offering id -&gt; students */
+	public Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> getClasfMajorCourse2ll(String areaAbbv, List<String> majorCodes, boolean multipleMajors) {
+		Matcher matcher = new Matcher(areaAbbv, majorCodes, multipleMajors);
+		// (pair, course) -> number of students for each course check
+		Map<Long, int[]> counts = new HashMap<Long, int[]>();
+		for (int s = 0; s < iStudentIds.length; s++) {
+			int n = matcher.match(s);
+			for (int i = 0; i < n; i++) {
+				for (int d = iDemandStart[s]; d < iDemandStart[s + 1]; d++) {
+					long key = ((long)matcher.pair(i) << 32) | iDemandCourse[d];
+					int[] count = counts.get(key);
+					if (count == null) {
+						count = new int[sCourseChecks.length];
+						counts.put(key, count);
+					}
+					for (int check = 0; check < sCourseChecks.length; check++)
+						if ((iDemandChecks[d] & (1 << check)) != 0) count[check] ++;
+				}
+			}
+		}
+		Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajor2course2ll = new Hashtable<String, Hashtable<String, Hashtable<Long,Integer>>>();
+		for (Map.Entry<Long, int[]> e: counts.entrySet()) {
+			int pair = (int)(e.getKey() >>> 32), course = (int)(e.getKey() & 0xFFFFFFFFl);
+			int enrl = 0;
+			for (int check = 0; check < sCourseChecks.length; check++)
+				if (e.getValue()[check] > 0) enrl = e.getValue()[check];
+			String clasfCode = matcher.classification(pair);
+			Hashtable<String, Hashtable<Long, Integer>> major2course2ll = clasfMajor2course2ll.get(clasfCode);
+			if (major2course2ll == null) {
+				major2course2ll = new Hashtable<String, Hashtable<Long,Integer>>();
+				clasfMajor2course2ll.put(clasfCode, major2course2ll);
+			}
+			String majorCode = matcher.major(pair);
+			Hashtable<Long, Integer> course2enrl = major2course2ll.get(majorCode);
+			if (course2enrl == null) {
+				course2enrl = new Hashtable<Long, Integer>();
+				major2course2ll.put(majorCode, course2enrl);
+			}
+			course2enrl.put(iCourseIds[course], enrl);
+		}
+		return clasfMajor2course2ll;
+	}
+	
+	/** Last-like students of a curriculum: classification code -&gt; major code (empty when not distinguished) -&gt; student ids */
+	public Hashtable<String, HashMap<String, Set<Long>>> getClasfMajor2students(String areaAbbv, List<String> majorCodes, boolean multipleMajors) {
+		Matcher matcher = new Matcher(areaAbbv, majorCodes, multipleMajors);
+		Hashtable<String, HashMap<String, Set<Long>>> clasf2ll = new Hashtable<String, HashMap<String, Set<Long>>>();
+		for (int s = 0; s < iStudentIds.length; s++) {
+			int n = matcher.match(s);
+			for (int i = 0; i < n; i++) {
+				String clasfCode = matcher.classification(matcher.pair(i));
+				HashMap<String, Set<Long>> major2students = clasf2ll.get(clasfCode);
+				if (major2students == null) {
+					major2students = new HashMap<String, Set<Long>>();
+					clasf2ll.put(clasfCode, major2students);
+				}
+				String majorCode = matcher.major(matcher.pair(i));
+				Set<Long> students = major2students.get(majorCode);
+				if (students == null) {
+					students = new HashSet<Long>();
+					major2students.put(majorCode, students);
+				}
+				students.add(iStudentIds[s]);
+			}
+		}
+		return clasf2ll;
+	}
+	
+	/**
+	 * Last-like students of a curriculum: classification code -&gt; course -&gt; major code -&gt; student ids.
+	 * For a curriculum with multiple majors, the students are listed under each of the majors.
+	 */
+	public Hashtable<String, Hashtable<CourseInterface, HashMap<String, Set<Long>>>> getClasfCourseMajor2students(String areaAbbv, List<String> majorCodes, boolean multipleMajors) {
+		Matcher matcher = new Matcher(areaAbbv, majorCodes, multipleMajors);
+		boolean allMajors = multipleMajors && majorCodes.size() > 1;
+		Map<Integer, CourseInterface> courses = new HashMap<Integer, CourseInterface>();
+		Hashtable<String, Hashtable<CourseInterface, HashMap<String, Set<Long>>>> clasf2course2ll = new Hashtable<String, Hashtable<CourseInterface,HashMap<String,Set<Long>>>>();
+		for (int s = 0; s < iStudentIds.length; s++) {
+			int n = matcher.match(s);
+			for (int i = 0; i < n; i++) {
+				String clasfCode = matcher.classification(matcher.pair(i));
+				for (int d = iDemandStart[s]; d < iDemandStart[s + 1]; d++) {
+					CourseInterface course = courses.get(iDemandCourse[d]);
+					if (course == null) {
+						course = new CourseInterface();
+						course.setId(iCourseIds[iDemandCourse[d]]);
+						course.setCourseName(iCourseNames[iDemandCourse[d]]);
+						courses.put(iDemandCourse[d], course);
+					}
+					Hashtable<CourseInterface, HashMap<String,Set<Long>>> course2ll = clasf2course2ll.get(clasfCode);
+					if (course2ll == null) {
+						course2ll = new Hashtable<CourseInterface, HashMap<String,Set<Long>>>();
+						clasf2course2ll.put(clasfCode, course2ll);
+					}
+					HashMap<String,Set<Long>> major2students = course2ll.get(course);
+					if (major2students == null) {
+						major2students = new HashMap<String, Set<Long>>();
+						course2ll.put(course, major2students);
+					}
+					for (String majorCode: (allMajors ? majorCodes : Arrays.asList(matcher.major(matcher.pair(i))))) {
+						Set<Long> students = major2students.get(majorCode);
+						if (students == null) {
+							students = new HashSet<Long>();
+							major2students.put(majorCode, students);
+						}
+						students.add(iStudentIds[s]);
+					}
+				}
+			}
+		}
+		return clasf2course2ll;
+	}
+	
+	/**
+	 * Compute the last-like students of the given curricula using {@link ApplicationProperty#CurriculumProjectionThreads} threads,
+	 * the curricula are split among the threads by their academic areas.
+	 * @param curricula curricula to compute
+	 * @param courses also compute the last-like students of each course (see {@link #getClasfMajorCourse2ll(String, List, boolean)})
+	 * @return curriculum id -&gt; projection
+	 */
+	public Map<Long, Projection> computeProjections(List<ProjectionRequest> curricula, final boolean courses) throws Exception {
+		final Map<Long, Projection> projections = new ConcurrentHashMap<Long, Projection>();
+		Map<String, List<ProjectionRequest>> area2curricula = new LinkedHashMap<String, List<ProjectionRequest>>();
+		for (ProjectionRequest curriculum: curricula) {
+			List<ProjectionRequest> list = area2curricula.get(curriculum.getAreaAbbv());
+			if (list == null) {
+				list = new ArrayList<ProjectionRequest>();
+				area2curricula.put(curriculum.getAreaAbbv(), list);
+			}
+			list.add(curriculum);
+		}
+		Integer threads = ApplicationProperty.CurriculumProjectionThreads.intValue();
+		int nrThreads = Math.min(threads == null ? 1 : threads <= 0 ? Runtime.getRuntime().availableProcessors() : threads, area2curricula.size());
+		if (nrThreads <= 1) {
+			for (ProjectionRequest curriculum: curricula)
+				projections.put(curriculum.getCurriculumId(), compute(curriculum, courses));
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(nrThreads, new ProjectionThreadFactory(iSessionId));
+			try {
+				List<Future<Object>> futures = new ArrayList<Future<Object>>();
+				for (final List<ProjectionRequest> list: area2curricula.values()) {
+					futures.add(executor.submit(new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							for (ProjectionRequest curriculum: list)
+								projections.put(curriculum.getCurriculumId(), compute(curriculum, courses));
+							return null;
+						}
+					}));
+				}
+				for (Future<Object> future: futures)
+					future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) throw (Exception)e.getCause();
+				throw e;
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		return projections;
+	}
+	
+	protected Projection compute(ProjectionRequest curriculum, boolean courses) {
+		return new Projection(
+				getClasfMajor2ll(curriculum.getAreaAbbv(), curriculum.getMajorCodes(), curriculum.isMultipleMajors()),
+				courses ? getClasfMajorCourse2ll(curriculum.getAreaAbbv(), curriculum.getMajorCodes(), curriculum.isMultipleMajors()) : null);
+	}
+	
+	/**
+	 * Curriculum for which the projection is to be computed, holding only the codes (Hibernate objects cannot be shared among threads)
+	 */
+	public static class ProjectionRequest {
+		private Long iCurriculumId;
+		private String iAreaAbbv;
+		private List<String> iMajorCodes;
+		private boolean iMultipleMajors;
+		
+		public ProjectionRequest(Long curriculumId, String areaAbbv, List<String> majorCodes, boolean multipleMajors) {
+			iCurriculumId = curriculumId; iAreaAbbv = areaAbbv; iMajorCodes = majorCodes; iMultipleMajors = multipleMajors;
+		}
+		
+		public Long getCurriculumId() { return iCurriculumId; }
+		public String getAreaAbbv() { return iAreaAbbv; }
+		public List<String> getMajorCodes() { return iMajorCodes; }
+		public boolean isMultipleMajors() { return iMultipleMajors; }
+	}
+	
+	/**
+	 * Last-like students of a curriculum, see {@link CurriculumProjectionEngine#getClasfMajor2ll(String, List, boolean)}
+	 * and {@link CurriculumProjectionEngine#getClasfMajorCourse2ll(String, List, boolean)}
+	 */
+	public static class Projection {
+		private Hashtable<String, Hashtable<String, Integer>> iClasfMajor2ll;
+		private Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> iClasfMajorCourse2ll;
+		
+		public Projection(Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll, Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajorCourse2ll) {
+			iClasfMajor2ll = clasfMajor2ll; iClasfMajorCourse2ll = clasfMajorCourse2ll;
+		}
+		
+		public Hashtable<String, Hashtable<String, Integer>> getClasfMajor2ll() { return iClasfMajor2ll; }
+		public Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> getClasfMajorCourse2ll() { return iClasfMajorCourse2ll; }
+	}
+	
+	private static class ProjectionThreadFactory implements ThreadFactory {
+		private Long iSessionId;
+		private AtomicInteger iCounter = new AtomicInteger(0);
+		
+		private ProjectionThreadFactory(Long sessionId) {
+			iSessionId = sessionId;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "CurriculumProjections[" + iSessionId + "-" + iCounter.incrementAndGet() + "]");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+	
+	private static class IntArray {
+		private int[] iData = new int[1024];
+		private int iSize = 0;
+		
+		void add(int value) {
+			if (iSize == iData.length) iData = Arrays.copyOf(iData, 2 * iSize);
+			iData[iSize++] = value;
+		}
+		int get(int index) { return iData[index]; }
+		int size() { return iSize; }
+		int[] toArray() { return Arrays.copyOf(iData, iSize); }
+	}
+	
+	private static class LongArray {
+		private long[] iData = new long[1024];
+		private int iSize = 0;
+		
+		void add(long value) {
+			if (iSize == iData.length) iData = Arrays.copyOf(iData, 2 * iSize);
+			iData[iSize++] = value;
+		}
+		long[] toArray() { return Arrays.copyOf(iData, iSize); }
+	}
+}
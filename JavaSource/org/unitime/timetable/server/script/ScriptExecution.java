@@ -81,6 +81,9 @@ public class ScriptExecution extends QueueItem {
 
 	@Override
 	public String type() { return "Script"; }
+	
+	@Override
+	public boolean isDistributable() { return iFile == null; }
 
 	@Override
 	public String name() { return iRequest.getScriptName(); }
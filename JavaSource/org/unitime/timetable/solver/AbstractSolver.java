@@ -19,11 +19,16 @@
 */
 package org.unitime.timetable.solver;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
@@ -61,6 +66,7 @@ import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.CPSolverMessages;
 import org.unitime.timetable.solver.remote.BackupFileFilter;
+import org.unitime.timetable.solver.ui.TimetableInfoFormat;
 import org.unitime.timetable.util.Constants;
 
 /**
@@ -412,24 +418,32 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
         Lock lock = currentSolution().getLock().readLock();
         lock.lock();
         try {
-            File outXmlFile = new File(folder, getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
+            boolean binary = ApplicationProperty.SolverBackupBinary.isTrue();
+            File outFile = new File(folder, getType().getPrefix() + puid + (binary ? BackupFileFilter.sBinaryExtension : BackupFileFilter.sXmlExtension));
             try {
-                FileOutputStream fos = null;
+                OutputStream os = null;
                 try {
-                    fos = new FileOutputStream(outXmlFile);
+                    os = new BufferedOutputStream(new FileOutputStream(outFile), 65536);
+                    // the whole backup document is still created in memory (it is produced by the solver's saver), only the file format differs
                     Document document = createCurrentSolutionBackup(false, false);
                     saveProperties(document);
-                    (new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(document);
-                    fos.flush(); fos.close(); fos=null;
+                    if (binary)
+                        TimetableInfoFormat.write(document, true, os);
+                    else
+                        (new XMLWriter(os,OutputFormat.createPrettyPrint())).write(document);
+                    os.flush(); os.close(); os=null;
                 } finally {
                     try {
-                        if (fos!=null) fos.close();
+                        if (os!=null) os.close();
                     } catch (IOException e) {}
                 }
+                // remove backup in the other format (if any), so that the solver is not restored twice
+                File otherFile = new File(folder, getType().getPrefix() + puid + (binary ? BackupFileFilter.sXmlExtension : BackupFileFilter.sBinaryExtension));
+                if (otherFile.exists()) otherFile.delete();
                 return true;
             } catch (Exception e) {
                 sLog.error(e.getMessage(),e);
-                if (outXmlFile.exists()) outXmlFile.delete();
+                if (outFile.exists()) outFile.delete();
             }
         } finally {
         	lock.unlock();
@@ -447,14 +461,26 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     @Override
     public boolean restore(File folder, String puid, boolean removeFiles) {
         sLog.debug("restore(folder="+folder+","+puid+")");
-        File inXmlFile = new File(folder,getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
+        File inFile = new File(folder,getType().getPrefix() + puid + BackupFileFilter.sBinaryExtension);
+        if (!inFile.exists())
+        	inFile = new File(folder,getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
         
         M model = null;
         try {
             if (isRunning()) stopSolver();
             disposeNoInherit(false);
 
-            Document document = (new SAXReader()).read(inXmlFile);
+            Document document = null;
+            if (inFile.getName().endsWith(BackupFileFilter.sBinaryExtension)) {
+            	InputStream is = new BufferedInputStream(new FileInputStream(inFile), 65536);
+            	try {
+            		document = TimetableInfoFormat.read(is);
+            	} finally {
+            		is.close();
+            	}
+            } else {
+            	document = (new SAXReader()).read(inFile);
+            }
             readProperties(document);
             
             model = createModel(getProperties());
@@ -466,7 +492,7 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
             Progress.getInstance(model).setStatus(MSG.statusReady());
             
             if (removeFiles) {
-                inXmlFile.delete();
+                inFile.delete();
             }
             
             return true;
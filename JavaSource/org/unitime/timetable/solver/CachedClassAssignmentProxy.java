@@ -19,9 +19,11 @@
 */
 package org.unitime.timetable.solver;
 
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 import java.util.Enumeration;
@@ -29,10 +31,16 @@ import java.util.Enumeration;
 import org.unitime.timetable.interfaces.RoomAvailabilityInterface.TimeBlock;
 import org.unitime.timetable.model.Assignment;
 import org.unitime.timetable.model.Class_;
+import org.unitime.timetable.model.dao.Class_DAO;
 import org.unitime.timetable.solver.ui.AssignmentPreferenceInfo;
 
 
 /**
+ * Class assignment proxy that remembers the assignments and assignment infos it has already returned (it is created for each request).
+ * When the underlying proxy is a course timetabling solver, the assignments of the classes that are owned by the solver are also
+ * looked up in and stored into the process-wide {@link ClassAssignmentCache}, so that the following requests do not need to
+ * ask the solver again unless the solver assignment has changed.
+ *
  * @author Tomas Muller
  */
 public class CachedClassAssignmentProxy implements ClassAssignmentProxy {
@@ -40,72 +48,143 @@ public class CachedClassAssignmentProxy implements ClassAssignmentProxy {
 	private ClassAssignmentProxy iProxy;
 	private Hashtable iAssignmentTable = new Hashtable();
 	private Hashtable iAssignmentInfoTable = new Hashtable();
+	private ClassAssignmentCache iSharedCache = null;
+	private String iSolverKey = null;
+	private long iVersion = -1;
+	private Set iDepartmentIds = null;
 	
 	public CachedClassAssignmentProxy(ClassAssignmentProxy proxy) {
 		iProxy = proxy;
+		if (proxy instanceof SolverProxy) {
+			SolverProxy solver = (SolverProxy)proxy;
+			ClassAssignmentCache cache = ClassAssignmentCache.getInstance();
+			if (cache != null) {
+				iVersion = solver.getAssignmentVersion();
+				if (iVersion >= 0) {
+					iSharedCache = cache;
+					iSolverKey = ClassAssignmentCache.getSolverKey(solver);
+				}
+			}
+		}
 	}
 	
-	public Assignment getAssignment(Long classId) {
+	private static Long getClassId(Object classOrClassId) {
+		return (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
+	}
+	
+	/**
+	 * Shared cache entry of the given class, null when the class is not owned by the solver (the solver returns committed assignments
+	 * for the other classes) or when the shared cache is not used. The ownership is looked up in the database only once per solver
+	 * assignment version and class, the following lookups use the cached entry.
+	 */
+	private ClassAssignmentCache.Entry getSharedEntry(Object classOrClassId) {
+		if (iSharedCache == null) return null;
+		Long classId = getClassId(classOrClassId);
+		ClassAssignmentCache.Entry entry = iSharedCache.get(iSolverKey, iVersion, classId);
+		if (entry == null) {
+			Class_ clazz = (classOrClassId instanceof Class_ ? (Class_)classOrClassId : Class_DAO.getInstance().get(classId));
+			if (clazz == null) return null;
+			if (iDepartmentIds == null)
+				iDepartmentIds = ((SolverProxy)iProxy).getDepartmentIds();
+			entry = iSharedCache.put(iSolverKey, iVersion, classId, clazz.getManagingDept() != null && iDepartmentIds.contains(clazz.getManagingDept().getUniqueId()));
+		}
+		return (entry == null || !entry.isShared() ? null : entry);
+	}
+	
+	private boolean isCached(ClassAssignmentCache.Entry entry, boolean info) {
+		if (info ? entry.hasAssignmentInfo() : entry.hasAssignment()) {
+			iSharedCache.hit();
+			return true;
+		}
+		iSharedCache.miss();
+		return false;
+	}
+	
+	private Assignment getAssignment(Object classOrClassId) {
+		Long classId = getClassId(classOrClassId);
 		Object cached = iAssignmentTable.get(classId);
 		if (cached!=null) {
 			return (sNULL.equals(cached)?null:(Assignment)cached);
 		}
-		Assignment assignment = iProxy.getAssignment(classId);
+		ClassAssignmentCache.Entry shared = getSharedEntry(classOrClassId);
+		if (shared != null && isCached(shared, false)) {
+			Assignment assignment = shared.getAssignment();
+			iAssignmentTable.put(classId, (assignment==null?sNULL:assignment));
+			return assignment;
+		}
+		Assignment assignment = (classOrClassId instanceof Class_ ? iProxy.getAssignment((Class_)classOrClassId) : iProxy.getAssignment(classId));
 		iAssignmentTable.put(classId, (assignment==null?sNULL:assignment));
+		if (shared != null) shared.setAssignment(assignment);
 		return assignment;
 	}
 	
+	public Assignment getAssignment(Long classId) {
+		return getAssignment((Object)classId);
+	}
+	
 	public Assignment getAssignment(Class_ clazz) {
-		Object cached = iAssignmentTable.get(clazz.getUniqueId());
-		if (cached!=null) {
-			return (sNULL.equals(cached)?null:(Assignment)cached);
-		}
-		Assignment assignment = iProxy.getAssignment(clazz);
-		iAssignmentTable.put(clazz.getUniqueId(), (assignment==null?sNULL:assignment));
-		return assignment;
+		return getAssignment((Object)clazz);
 	}
 	
-	public AssignmentPreferenceInfo getAssignmentInfo(Long classId) {
+	private AssignmentPreferenceInfo getAssignmentInfo(Object classOrClassId) {
+		Long classId = getClassId(classOrClassId);
 		Object cached = iAssignmentInfoTable.get(classId);
 		if (cached!=null) {
 			return (sNULL.equals(cached)?null:(AssignmentPreferenceInfo)cached);
 		}
-		AssignmentPreferenceInfo info = iProxy.getAssignmentInfo(classId);
+		ClassAssignmentCache.Entry shared = getSharedEntry(classOrClassId);
+		if (shared != null && isCached(shared, true)) {
+			AssignmentPreferenceInfo info = shared.getAssignmentInfo();
+			iAssignmentInfoTable.put(classId, (info==null?sNULL:info));
+			return info;
+		}
+		AssignmentPreferenceInfo info = (classOrClassId instanceof Class_ ? iProxy.getAssignmentInfo((Class_)classOrClassId) : iProxy.getAssignmentInfo(classId));
 		iAssignmentInfoTable.put(classId, (info==null?sNULL:info));
+		if (shared != null) shared.setAssignmentInfo(info);
 		return info;
 	}
 	
+	public AssignmentPreferenceInfo getAssignmentInfo(Long classId) {
+		return getAssignmentInfo((Object)classId);
+	}
+	
 	public AssignmentPreferenceInfo getAssignmentInfo(Class_ clazz) {
-		Object cached = iAssignmentInfoTable.get(clazz.getUniqueId());
-		if (cached!=null) {
-			return (sNULL.equals(cached)?null:(AssignmentPreferenceInfo)cached);
-		}
-		AssignmentPreferenceInfo info = iProxy.getAssignmentInfo(clazz);
-		iAssignmentInfoTable.put(clazz.getUniqueId(), (info==null?sNULL:info));
-		return info;
+		return getAssignmentInfo((Object)clazz);
 	}
 	
 	public Hashtable getAssignmentTable(Collection classesOrClassIds) {
 		Hashtable assignments = new Hashtable();
 		Vector unknown = new Vector();
+		Map<Long, ClassAssignmentCache.Entry> shared = new HashMap<Long, ClassAssignmentCache.Entry>();
 		for (Iterator i=classesOrClassIds.iterator();i.hasNext();) {
 			Object classOrClassId = i.next();
 			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
+			Long classId = getClassId(classOrClassId);
 			Object cached = iAssignmentTable.get(classId);
 			if (cached!=null) {
 				if (!sNULL.equals(cached)) assignments.put(classId, cached);
-			} else {
-				unknown.add(classOrClassId);
+				continue;
 			}
+			ClassAssignmentCache.Entry entry = getSharedEntry(classOrClassId);
+			if (entry != null) {
+				if (isCached(entry, false)) {
+					Assignment value = entry.getAssignment();
+					iAssignmentTable.put(classId, (value==null?sNULL:value));
+					if (value!=null) assignments.put(classId, value);
+					continue;
+				}
+				shared.put(classId, entry);
+			}
+			unknown.add(classOrClassId);
 		}
+		if (unknown.isEmpty()) return assignments;
 		Hashtable newAssignments = iProxy.getAssignmentTable(unknown);
 		for (Enumeration e=unknown.elements();e.hasMoreElements();) {
-			Object classOrClassId = e.nextElement();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
+			Long classId = getClassId(e.nextElement());
 			Assignment assignment = (Assignment) newAssignments.get(classId);
 			iAssignmentTable.put(classId, (assignment==null?sNULL:assignment));
+			ClassAssignmentCache.Entry entry = shared.get(classId);
+			if (entry != null) entry.setAssignment(assignment);
 			if (assignment!=null)
 				assignments.put(classId, assignment);
 		}
@@ -115,43 +194,48 @@ public class CachedClassAssignmentProxy implements ClassAssignmentProxy {
 	public Hashtable getAssignmentInfoTable(Collection classesOrClassIds) {
 		Hashtable infos = new Hashtable();
 		Vector unknown = new Vector();
+		Map<Long, ClassAssignmentCache.Entry> shared = new HashMap<Long, ClassAssignmentCache.Entry>();
 		for (Iterator i=classesOrClassIds.iterator();i.hasNext();) {
 			Object classOrClassId = i.next();
 			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
+			Long classId = getClassId(classOrClassId);
 			Object cached = iAssignmentInfoTable.get(classId);
 			if (cached!=null) {
 				if (!sNULL.equals(cached)) infos.put(classId, cached);
-			} else {
-				unknown.add(classOrClassId);
+				continue;
+			}
+			ClassAssignmentCache.Entry entry = getSharedEntry(classOrClassId);
+			if (entry != null) {
+				if (isCached(entry, true)) {
+					AssignmentPreferenceInfo value = entry.getAssignmentInfo();
+					iAssignmentInfoTable.put(classId, (value==null?sNULL:value));
+					if (value!=null) infos.put(classId, value);
+					continue;
+				}
+				shared.put(classId, entry);
 			}
+			unknown.add(classOrClassId);
 		}
+		if (unknown.isEmpty()) return infos;
 		Hashtable newInfos = iProxy.getAssignmentInfoTable(unknown);
 		for (Enumeration e=unknown.elements();e.hasMoreElements();) {
-			Object classOrClassId = e.nextElement();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
+			Long classId = getClassId(e.nextElement());
 			AssignmentPreferenceInfo info = (AssignmentPreferenceInfo) newInfos.get(classId);
 			iAssignmentInfoTable.put(classId, (info==null?sNULL:info));
+			ClassAssignmentCache.Entry entry = shared.get(classId);
+			if (entry != null) entry.setAssignmentInfo(info);
 			if (info!=null)
 				infos.put(classId, info);
 		}
 		return infos;
 	}
 	
+	/**
+	 * Fill in the assignments and assignment infos of the given classes, the classes that are not cached yet are retrieved in two batches
+	 */
 	public void setCache(Collection classesOrClassIds) {
-		Vector classesOrClassIdsVect = (classesOrClassIds instanceof Vector ? (Vector)classesOrClassIds : new Vector(classesOrClassIds));
-		Hashtable newAssignments = iProxy.getAssignmentTable(classesOrClassIdsVect);
-		Hashtable newInfos = iProxy.getAssignmentInfoTable(classesOrClassIdsVect);
-		for (Enumeration e=classesOrClassIdsVect.elements();e.hasMoreElements();) {
-			Object classOrClassId = e.nextElement();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
-			Assignment assignment = (Assignment) newAssignments.get(classId);
-			iAssignmentTable.put(classId, (assignment==null?sNULL:assignment));
-			AssignmentPreferenceInfo info = (AssignmentPreferenceInfo) newInfos.get(classId);
-			iAssignmentInfoTable.put(classId, (info==null?sNULL:info));
-		}
+		getAssignmentTable(classesOrClassIds);
+		getAssignmentInfoTable(classesOrClassIds);
 	}
 	
 	@Override
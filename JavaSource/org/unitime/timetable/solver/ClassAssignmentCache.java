@@ -0,0 +1,293 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.Assignment;
+import org.unitime.timetable.model.DepartmentalInstructor;
+import org.unitime.timetable.model.Location;
+import org.unitime.timetable.model.dao.Class_DAO;
+import org.unitime.timetable.model.dao.DatePatternDAO;
+import org.unitime.timetable.model.dao.DepartmentalInstructorDAO;
+import org.unitime.timetable.model.dao.LocationDAO;
+import org.unitime.timetable.model.dao.TimePatternDAO;
+import org.unitime.timetable.solver.ui.AssignmentPreferenceInfo;
+
+/**
+ * Process-wide cache of the class assignments and assignment infos of the course timetabling solvers, shared by all the requests
+ * (see {@link CachedClassAssignmentProxy}). The entries are keyed by the solver (host and owner), the solver assignment version
+ * (see {@link SolverProxy#getAssignmentVersion()}, it changes whenever a class is assigned or unassigned in the solver), and the class id.
+ * When a newer version of a solver is seen, all the older entries of the solver are dropped. The cache is bounded by
+ * the unitime.classAssignment.sharedCache.size property, the least recently used entries are evicted first.
+ * Only the classes that are owned by the solver are cached, the committed assignments of the other classes are never shared
+ * (the ownership is cached as well). No Hibernate entities are kept in the cache: assignments are stored as {@link CachedAssignment}
+ * and a new {@link Assignment} is created for each request, with the referenced objects loaded in the current session.
+ * The entries of a solver are dropped when the solver is loaded, reloaded, saved, or unloaded (see {@link #invalidateSolver(String)}).
+ *
+ * @author Tomas Muller
+ */
+public class ClassAssignmentCache {
+	private static ClassAssignmentCache sInstance = null;
+	private int iLimit;
+	private Map<Key, Entry> iEntries;
+	private Map<String, Long> iVersions = new HashMap<String, Long>();
+	private AtomicLong iHits = new AtomicLong(0), iMisses = new AtomicLong(0);
+	
+	public ClassAssignmentCache(int limit) {
+		iLimit = limit;
+		iEntries = new LinkedHashMap<Key, Entry>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				return size() > iLimit;
+			}
+		};
+	}
+	
+	/**
+	 * Shared cache instance, null when disabled (unitime.classAssignment.sharedCache.size is zero)
+	 */
+	public static synchronized ClassAssignmentCache getInstance() {
+		if (sInstance == null) {
+			int limit = ApplicationProperty.ClassAssignmentSharedCacheSize.intValue();
+			if (limit <= 0) return null;
+			sInstance = new ClassAssignmentCache(limit);
+		}
+		return sInstance;
+	}
+	
+	/**
+	 * Drop all the cached assignments (e.g., when a solution is committed or uncommitted)
+	 */
+	public static synchronized void clearInstance() {
+		if (sInstance != null) sInstance.clear();
+	}
+	
+	/**
+	 * Drop all the cached assignments of the given solver (e.g., when the solver is loaded, reloaded, saved, or unloaded)
+	 */
+	public static synchronized void invalidateSolver(String solver) {
+		if (sInstance != null) sInstance.invalidate(solver);
+	}
+	
+	/**
+	 * Cache key of the given solver
+	 */
+	public static String getSolverKey(SolverProxy solver) {
+		return solver.getHost() + "|" + solver.getUser();
+	}
+	
+	/**
+	 * Cached entry of a class, null when the class has not been seen yet (or the version is outdated)
+	 */
+	public Entry get(String solver, long version, Long classId) {
+		synchronized (iEntries) {
+			if (!checkVersion(solver, version)) return null;
+			return iEntries.get(new Key(solver, version, classId));
+		}
+	}
+	
+	/**
+	 * Create a new entry of a class, shared is true when the class is owned by the solver. Returns null when the version is outdated.
+	 */
+	public Entry put(String solver, long version, Long classId, boolean shared) {
+		synchronized (iEntries) {
+			if (!checkVersion(solver, version)) return null;
+			Key key = new Key(solver, version, classId);
+			Entry entry = iEntries.get(key);
+			if (entry == null) {
+				entry = new Entry(shared);
+				iEntries.put(key, entry);
+			}
+			return entry;
+		}
+	}
+	
+	/**
+	 * Returns false if there is a newer version of the solver already, drops the older entries when the given version is newer
+	 */
+	private boolean checkVersion(String solver, long version) {
+		Long current = iVersions.get(solver);
+		if (current != null && current > version) return false;
+		if (current == null || current < version) {
+			iVersions.put(solver, version);
+			if (current != null) removeEntries(solver);
+		}
+		return true;
+	}
+	
+	private void removeEntries(String solver) {
+		for (Iterator<Key> i = iEntries.keySet().iterator(); i.hasNext(); )
+			if (i.next().getSolver().equals(solver)) i.remove();
+	}
+	
+	/**
+	 * Drop all the entries of the given solver (e.g., when the solver is unloaded)
+	 */
+	public void invalidate(String solver) {
+		synchronized (iEntries) {
+			iVersions.remove(solver);
+			removeEntries(solver);
+		}
+	}
+	
+	public void clear() {
+		synchronized (iEntries) {
+			iEntries.clear();
+			iVersions.clear();
+		}
+	}
+	
+	public int size() {
+		synchronized (iEntries) {
+			return iEntries.size();
+		}
+	}
+	
+	void hit() { iHits.incrementAndGet(); }
+	void miss() { iMisses.incrementAndGet(); }
+	
+	public long getHitCount() { return iHits.get(); }
+	public long getMissCount() { return iMisses.get(); }
+	
+	@Override
+	public String toString() {
+		return "ClassAssignmentCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "}";
+	}
+	
+	/**
+	 * Cached assignment and assignment info of a class, null values (class not assigned) are cached as well.
+	 * Entries of classes that are not owned by the solver are not shared, only their ownership is remembered.
+	 */
+	public static class Entry {
+		private boolean iShared;
+		private volatile CachedAssignment iAssignment;
+		private volatile AssignmentPreferenceInfo iInfo;
+		private volatile boolean iHasAssignment = false, iHasInfo = false;
+		
+		private Entry(boolean shared) { iShared = shared; }
+		
+		public boolean isShared() { return iShared; }
+		
+		public boolean hasAssignment() { return iHasAssignment; }
+		public Assignment getAssignment() { return (iAssignment == null ? null : iAssignment.toAssignment()); }
+		void setAssignment(Assignment assignment) { iAssignment = (assignment == null ? null : new CachedAssignment(assignment)); iHasAssignment = true; }
+		
+		public boolean hasAssignmentInfo() { return iHasInfo; }
+		public AssignmentPreferenceInfo getAssignmentInfo() { return iInfo; }
+		void setAssignmentInfo(AssignmentPreferenceInfo info) { iInfo = info; iHasInfo = true; }
+	}
+	
+	/**
+	 * Solver assignment of a class without any Hibernate objects, only the ids of the referenced objects are kept
+	 */
+	public static class CachedAssignment implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private String iClassName;
+		private Integer iDays, iStartSlot;
+		private int iSlotsPerMtg, iBreakTime;
+		private Long iClassId, iDatePatternId, iTimePatternId;
+		private List<Long> iRoomIds = new ArrayList<Long>();
+		private List<Long> iInstructorIds = new ArrayList<Long>();
+		
+		public CachedAssignment(Assignment assignment) {
+			iClassName = assignment.getClassName();
+			iDays = assignment.getDays();
+			iStartSlot = assignment.getStartSlot();
+			iSlotsPerMtg = assignment.getSlotPerMtg();
+			iBreakTime = assignment.getBreakTime();
+			iClassId = (assignment.getClazz() == null ? null : assignment.getClazz().getUniqueId());
+			iDatePatternId = (assignment.getDatePattern() == null ? null : assignment.getDatePattern().getUniqueId());
+			iTimePatternId = (assignment.getTimePattern() == null ? null : assignment.getTimePattern().getUniqueId());
+			if (assignment.getRooms() != null)
+				for (Location room: assignment.getRooms())
+					iRoomIds.add(room.getUniqueId());
+			if (assignment.getInstructors() != null)
+				for (DepartmentalInstructor instructor: assignment.getInstructors())
+					iInstructorIds.add(instructor.getUniqueId());
+		}
+		
+		/**
+		 * A new assignment, the referenced objects are loaded in the current Hibernate session
+		 */
+		public Assignment toAssignment() {
+			Assignment assignment = new Assignment();
+			assignment.setClassName(iClassName);
+			assignment.setDays(iDays);
+			assignment.setStartSlot(iStartSlot);
+			assignment.setSlotsPerMtg(iSlotsPerMtg);
+			assignment.setBreakTime(iBreakTime);
+			if (iClassId != null)
+				assignment.setClazz(Class_DAO.getInstance().get(iClassId));
+			if (iDatePatternId != null)
+				assignment.setDatePattern(DatePatternDAO.getInstance().get(iDatePatternId));
+			if (iTimePatternId != null)
+				assignment.setTimePattern(TimePatternDAO.getInstance().get(iTimePatternId));
+			Set<Location> rooms = new HashSet<Location>();
+			for (Long roomId: iRoomIds) {
+				Location room = LocationDAO.getInstance().get(roomId);
+				if (room != null) rooms.add(room);
+			}
+			assignment.setRooms(rooms);
+			Set<DepartmentalInstructor> instructors = new HashSet<DepartmentalInstructor>();
+			for (Long instructorId: iInstructorIds) {
+				DepartmentalInstructor instructor = DepartmentalInstructorDAO.getInstance().get(instructorId);
+				if (instructor != null) instructors.add(instructor);
+			}
+			assignment.setInstructors(instructors);
+			return assignment;
+		}
+	}
+	
+	private static class Key {
+		private String iSolver;
+		private long iVersion;
+		private Long iClassId;
+		
+		private Key(String solver, long version, Long classId) {
+			iSolver = solver; iVersion = version; iClassId = classId;
+		}
+		
+		public String getSolver() { return iSolver; }
+		
+		@Override
+		public int hashCode() {
+			return iClassId.hashCode() ^ iSolver.hashCode() ^ (int)(iVersion ^ (iVersion >>> 32));
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (o == null || !(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return iVersion == k.iVersion && iClassId.equals(k.iClassId) && iSolver.equals(k.iSolver);
+		}
+	}
+}
@@ -92,6 +92,12 @@ public interface SolverProxy extends ClassAssignmentProxy, CommonSolverInterface
 	
 	public Set getDepartmentIds();
 
+    /**
+     * Version of the current solver assignment, it changes whenever a class is assigned or unassigned (or the problem is reloaded).
+     * Returns -1 when the solver is working (e.g., running or loading), used as a key of the {@link ClassAssignmentCache}.
+     */
+    public long getAssignmentVersion();
+    
     public Hashtable getAssignmentTable2(Collection classesOrClassIds);
     public Hashtable getAssignmentInfoTable2(Collection classesOrClassIds);
     
@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.solver;
 
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
@@ -31,11 +32,20 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -131,6 +141,7 @@ import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.model.dao.SolutionDAO;
 import org.unitime.timetable.model.dao.SolverGroupDAO;
 import org.unitime.timetable.model.dao.TimetableManagerDAO;
+import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.onlinesectioning.status.db.DbFindEnrollmentInfoAction.DbStudentMatcher;
 import org.unitime.timetable.solver.course.weights.ClassWeightProvider;
 import org.unitime.timetable.solver.course.weights.DefaultClassWeights;
@@ -234,6 +245,13 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     private String iOnlineOnlyInstructionalModeRegExp;
     private String iResidentialInstructionalModeRegExp;
     private String iOnlineOnlyStudentSuffix;
+    
+    private static DecimalFormat sDF = new DecimalFormat("0.00");
+    private int iNrThreads = 1;
+    private String iPhase = null;
+    private long iPhaseStart = 0;
+    private Map<String, Long> iPhaseTimes = new LinkedHashMap<String, Long>();
+    private Map<Long, Collection<TimeBlock>> iPrefetchedRoomAvailability = null, iPrefetchedInstructorAvailability = null;
 
     public static enum CommittedStudentConflictsMode {
     		Ignore,
@@ -350,6 +368,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         iOnlineOnlyInstructionalModeRegExp = model.getProperties().getProperty("Load.OnlineOnlyInstructionalModeRegExp");
         iResidentialInstructionalModeRegExp = model.getProperties().getProperty("Load.ResidentialInstructionalModeRegExp");
         iOnlineOnlyStudentSuffix = model.getProperties().getProperty("Load.OnlineOnlyStudentSuffix", "OL");
+        iNrThreads = Math.max(1, model.getProperties().getPropertyInt("Load.NrThreads", iNrThreads));
         if (onlineOnlyStudentFilter != null && !onlineOnlyStudentFilter.isEmpty()) {
         	iOnlineOnlyStudentQuery = new org.unitime.timetable.gwt.server.Query(onlineOnlyStudentFilter);
         	iProgress.info("Online-only student filter: " + iOnlineOnlyStudentQuery); 
@@ -2151,6 +2170,8 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     		load(hibSession);
     		
     		tx.commit();
+    		
+    		logPhaseTimes();
     	} catch (Exception e) {
     		iProgress.message(msglevel("loadFailed", Progress.MSGLEVEL_FATAL), MSG.fatalLoadFailed(e.getMessage()), e);
     		tx.rollback();
@@ -2296,6 +2317,115 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	}
     }
     
+    /**
+     * Create joint enrollment constraints between classes that share students. When Load.NrThreads is above one,
+     * the pairs of classes with their students are collected in a fork-join pool first; the constraints are then created
+     * and their joint enrollments counted on the loader thread (the model is not thread-safe).
+     */
+    protected void computeJenrls() {
+        setPhase(MSG.phaseComputingJenrl(),iStudents.size());
+        if (iNrThreads > 1 && iStudents.size() > JenrlPairsTask.THRESHOLD) {
+        	List<Student> students = new ArrayList<Student>(iStudents.values());
+        	ForkJoinPool pool = new ForkJoinPool(iNrThreads);
+        	Map<Lecture, Map<Lecture, List<Student>>> pairs = null;
+        	try {
+        		pairs = pool.invoke(new JenrlPairsTask(students, 0, students.size()));
+        	} finally {
+        		pool.shutdown();
+        	}
+        	for (Map.Entry<Lecture, Map<Lecture, List<Student>>> e1: pairs.entrySet()) {
+        		for (Map.Entry<Lecture, List<Student>> e2: e1.getValue().entrySet()) {
+        			JenrlConstraint jenrl = new JenrlConstraint();
+        			getModel().addConstraint(jenrl);
+        			jenrl.addVariable(e1.getKey());
+        			jenrl.addVariable(e2.getKey());
+        			for (Student st: e2.getValue())
+        				jenrl.incJenrl(getAssignment(), st);
+        		}
+        	}
+        	iProgress.setProgress(iStudents.size());
+        	return;
+        }
+        Hashtable jenrls = new Hashtable();
+        for (Iterator i1=iStudents.values().iterator();i1.hasNext();) {
+            Student st = (Student)i1.next();
+            for (Iterator i2=st.getLectures().iterator();i2.hasNext();) {
+                Lecture l1 = (Lecture)i2.next();
+                for (Iterator i3=st.getLectures().iterator();i3.hasNext();) {
+                    Lecture l2 = (Lecture)i3.next();
+                    if (l1.getId()>=l2.getId()) continue;
+                    Hashtable x = (Hashtable)jenrls.get(l1);
+                    if (x==null) { x = new Hashtable(); jenrls.put(l1, x); }
+                    JenrlConstraint jenrl = (JenrlConstraint)x.get(l2);
+                    if (jenrl==null) {
+                        jenrl = new JenrlConstraint();
+                        getModel().addConstraint(jenrl);
+                        jenrl.addVariable(l1);
+                        jenrl.addVariable(l2);
+                        x.put(l2, jenrl);
+                    }
+                    jenrl.incJenrl(getAssignment(), st);
+                }
+            }
+            incProgress();
+        }
+    }
+    
+    /**
+     * Pairs of classes (with the lower id first) and the students that are enrolled in both of them
+     */
+    protected static class JenrlPairsTask extends RecursiveTask<Map<Lecture, Map<Lecture, List<Student>>>> {
+		private static final long serialVersionUID = 1L;
+		protected static final int THRESHOLD = 500;
+		private List<Student> iStudents;
+		private int iFrom, iTo;
+		
+		protected JenrlPairsTask(List<Student> students, int from, int to) {
+			iStudents = students; iFrom = from; iTo = to;
+		}
+
+		@Override
+		protected Map<Lecture, Map<Lecture, List<Student>>> compute() {
+			if (iTo - iFrom > THRESHOLD) {
+				int mid = (iFrom + iTo) / 2;
+				JenrlPairsTask left = new JenrlPairsTask(iStudents, iFrom, mid);
+				left.fork();
+				Map<Lecture, Map<Lecture, List<Student>>> right = new JenrlPairsTask(iStudents, mid, iTo).compute();
+				return merge(left.join(), right);
+			}
+			Map<Lecture, Map<Lecture, List<Student>>> pairs = new HashMap<Lecture, Map<Lecture, List<Student>>>();
+			for (int i = iFrom; i < iTo; i++) {
+				Student st = iStudents.get(i);
+				for (Lecture l1: st.getLectures()) {
+					for (Lecture l2: st.getLectures()) {
+						if (l1.getId() >= l2.getId()) continue;
+						Map<Lecture, List<Student>> x = pairs.get(l1);
+						if (x == null) { x = new HashMap<Lecture, List<Student>>(); pairs.put(l1, x); }
+						List<Student> students = x.get(l2);
+						if (students == null) { students = new ArrayList<Student>(); x.put(l2, students); }
+						students.add(st);
+					}
+				}
+			}
+			return pairs;
+		}
+		
+		private static Map<Lecture, Map<Lecture, List<Student>>> merge(Map<Lecture, Map<Lecture, List<Student>>> m1, Map<Lecture, Map<Lecture, List<Student>>> m2) {
+			for (Map.Entry<Lecture, Map<Lecture, List<Student>>> e1: m2.entrySet()) {
+				Map<Lecture, List<Student>> x = m1.get(e1.getKey());
+				if (x == null) { m1.put(e1.getKey(), e1.getValue()); continue; }
+				for (Map.Entry<Lecture, List<Student>> e2: e1.getValue().entrySet()) {
+					List<Student> students = x.get(e2.getKey());
+					if (students == null)
+						x.put(e2.getKey(), e2.getValue());
+					else
+						students.addAll(e2.getValue());
+				}
+			}
+			return m1;
+		}
+    }
+    
     private void loadCommittedStudentConflicts(org.hibernate.Session hibSession, Set<Long> offeringsToAvoid) {
         //Load all committed assignment - student relations that may be relevant
 		List<Object[]> assignmentEnrollments = (List<Object[]>)hibSession.createQuery(
@@ -3480,8 +3610,10 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         if (availability != null) {
         	Date[] startEnd = initializeRoomAvailability(availability);
         	if (startEnd != null) {
+        		if (iNrThreads > 1) prefetchAvailability(availability, startEnd);
         		loadRoomAvailability(availability, startEnd);
         		loadInstructorAvailability(availability, startEnd);
+        		iPrefetchedRoomAvailability = null; iPrefetchedInstructorAvailability = null;
         	}
         }
 
@@ -3541,30 +3673,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         if (iLoadStudentInstructorConflicts)
         	loadInstructorStudentConflicts(hibSession);
 
-        setPhase(MSG.phaseComputingJenrl(),iStudents.size());
-        Hashtable jenrls = new Hashtable();
-        for (Iterator i1=iStudents.values().iterator();i1.hasNext();) {
-            Student st = (Student)i1.next();
-            for (Iterator i2=st.getLectures().iterator();i2.hasNext();) {
-                Lecture l1 = (Lecture)i2.next();
-                for (Iterator i3=st.getLectures().iterator();i3.hasNext();) {
-                    Lecture l2 = (Lecture)i3.next();
-                    if (l1.getId()>=l2.getId()) continue;
-                    Hashtable x = (Hashtable)jenrls.get(l1);
-                    if (x==null) { x = new Hashtable(); jenrls.put(l1, x); }
-                    JenrlConstraint jenrl = (JenrlConstraint)x.get(l2);
-                    if (jenrl==null) {
-                        jenrl = new JenrlConstraint();
-                        getModel().addConstraint(jenrl);
-                        jenrl.addVariable(l1);
-                        jenrl.addVariable(l2);
-                        x.put(l2, jenrl);
-                    }
-                    jenrl.incJenrl(getAssignment(), st);
-                }
-            }
-            incProgress();
-        }
+        computeJenrls();
         
     	if (!hibSession.isOpen())
     		iProgress.message(msglevel("hibernateFailure", Progress.MSGLEVEL_FATAL), MSG.fatalHibernateSessionClosed());
@@ -3819,6 +3928,84 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         return new Date[] {startDateCal.getTime(), endDateCal.getTime()};
     }
     
+    /**
+     * Retrieve the room and instructor availabilities on Load.NrThreads threads at once, each thread with its own hibernate session.
+     * The results are then used by {@link TimetableDatabaseLoader#loadRoomAvailability(RoomAvailabilityInterface, Date[])} and
+     * {@link TimetableDatabaseLoader#loadInstructorAvailability(RoomAvailabilityInterface, Date[])}. A resource whose
+     * availability failed to load is retrieved (and the failure reported) again by the loader.
+     */
+    protected void prefetchAvailability(final RoomAvailabilityInterface availability, final Date[] startEnd) {
+    	long t0 = System.currentTimeMillis();
+    	iPrefetchedRoomAvailability = new ConcurrentHashMap<Long, Collection<TimeBlock>>();
+    	iPrefetchedInstructorAvailability = new ConcurrentHashMap<Long, Collection<TimeBlock>>();
+    	List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+    	for (Enumeration e=iRooms.elements();e.hasMoreElements();) {
+    		final RoomConstraint room = (RoomConstraint)e.nextElement();
+    		if (!room.getConstraint()) continue;
+    		tasks.add(new AvailabilityTask() {
+				@Override
+				protected Collection<TimeBlock> fetch() throws Exception {
+					Collection<TimeBlock> times = availability.getRoomAvailability(room.getResourceId(), startEnd[0], startEnd[1], RoomAvailabilityInterface.sClassType);
+					iPrefetchedRoomAvailability.put(room.getResourceId(), times == null ? new ArrayList<TimeBlock>() : times);
+					return times;
+				}
+			});
+    	}
+    	for (final InstructorConstraint instructor: getModel().getInstructorConstraints()) {
+    		tasks.add(new AvailabilityTask() {
+				@Override
+				protected Collection<TimeBlock> fetch() throws Exception {
+					Collection<TimeBlock> times = availability.getInstructorAvailability(instructor.getResourceId(), startEnd[0], startEnd[1], RoomAvailabilityInterface.sClassType);
+					iPrefetchedInstructorAvailability.put(instructor.getResourceId(), times == null ? new ArrayList<TimeBlock>() : times);
+					return times;
+				}
+			});
+    	}
+    	ExecutorService executor = Executors.newFixedThreadPool(iNrThreads, new LoaderThreadFactory("Availability"));
+    	try {
+    		executor.invokeAll(tasks);
+    	} catch (InterruptedException e) {
+    		throw new RuntimeException(MSG.fatalLoadInterrupted());
+    	} finally {
+    		executor.shutdownNow();
+    	}
+    	sLog.debug("Availability of " + iPrefetchedRoomAvailability.size() + " rooms and " + iPrefetchedInstructorAvailability.size() + " instructors retrieved in " + (System.currentTimeMillis() - t0) + " ms.");
+    }
+    
+    protected abstract class AvailabilityTask implements Callable<Boolean> {
+    	protected abstract Collection<TimeBlock> fetch() throws Exception;
+    	
+    	@Override
+    	public Boolean call() {
+    		ApplicationProperties.setSessionId(iSessionId);
+    		try {
+    			fetch();
+    			return true;
+    		} catch (Exception e) {
+    			return false;
+    		} finally {
+    			_RootDAO.rollbackCurrentThreadSessions();
+    			ApplicationProperties.setSessionId(null);
+    		}
+    	}
+    }
+    
+    private static class LoaderThreadFactory implements ThreadFactory {
+		private String iName;
+		private AtomicInteger iCounter = new AtomicInteger(0);
+		
+		private LoaderThreadFactory(String name) {
+			iName = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "TimetableDatabaseLoader[" + iName + "-" + iCounter.incrementAndGet() + "]");
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+    
     public void loadRoomAvailability(RoomAvailabilityInterface availability, Date[] startEnd) {
         setPhase(MSG.phaseLoadingRoomAvailability(), iRooms.size());
         int firstDOY = iSession.getDayOfYear(1,iSession.getPatternStartMonth());
@@ -3883,7 +4070,8 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         Collection<TimeBlock> ret = null;
         String ts = null;
         try {
-            ret = availability.getRoomAvailability(room.getResourceId(), startTime, endTime, RoomAvailabilityInterface.sClassType);
+            ret = (iPrefetchedRoomAvailability != null && iPrefetchedRoomAvailability.containsKey(room.getResourceId()) ? iPrefetchedRoomAvailability.get(room.getResourceId()) :
+            	availability.getRoomAvailability(room.getResourceId(), startTime, endTime, RoomAvailabilityInterface.sClassType));
             if (!iRoomAvailabilityTimeStampIsSet) ts = availability.getTimeStamp(startTime, endTime, RoomAvailabilityInterface.sClassType);
         } catch (Exception e) {
             sLog.error(e.getMessage(),e);
@@ -3979,7 +4167,8 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         Collection<TimeBlock> ret = null;
         String ts = null;
         try {
-            ret = availability.getInstructorAvailability(instructor.getResourceId(), startTime, endTime, RoomAvailabilityInterface.sClassType);
+            ret = (iPrefetchedInstructorAvailability != null && iPrefetchedInstructorAvailability.containsKey(instructor.getResourceId()) ? iPrefetchedInstructorAvailability.get(instructor.getResourceId()) :
+            	availability.getInstructorAvailability(instructor.getResourceId(), startTime, endTime, RoomAvailabilityInterface.sClassType));
             if (!iRoomAvailabilityTimeStampIsSet) ts = availability.getTimeStamp(startTime, endTime, RoomAvailabilityInterface.sClassType);
         } catch (Exception e) {
             sLog.error(e.getMessage(),e);
@@ -4252,9 +4441,35 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     
     protected void setPhase(String phase, long progressMax) {
     	checkTermination();
+    	endPhase();
+    	iPhase = phase; iPhaseStart = System.currentTimeMillis();
     	iProgress.setPhase(phase, progressMax);
     }
     
+    private void endPhase() {
+    	if (iPhase == null) return;
+    	Long time = iPhaseTimes.get(iPhase);
+    	iPhaseTimes.put(iPhase, (time == null ? 0l : time.longValue()) + System.currentTimeMillis() - iPhaseStart);
+    	iPhase = null;
+    }
+    
+    /**
+     * Time spent in each loading phase (in milliseconds), in the order in which the phases were started
+     */
+    public Map<String, Long> getPhaseTimes() {
+    	return iPhaseTimes;
+    }
+    
+    protected void logPhaseTimes() {
+    	endPhase();
+    	long total = 0;
+    	for (Map.Entry<String, Long> e: iPhaseTimes.entrySet()) {
+    		iProgress.debug(e.getKey() + " took " + sDF.format(e.getValue() / 1000.0) + " s");
+    		total += e.getValue();
+    	}
+    	sLog.info("Problem loaded in " + sDF.format(total / 1000.0) + " s (" + iPhaseTimes.size() + " phases, " + iNrThreads + " threads)");
+    }
+    
     protected void incProgress() {
     	checkTermination();
     	iProgress.incProgress();
@@ -36,6 +36,8 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 
 import org.cpsolver.coursett.TimetableXMLLoader;
@@ -58,6 +60,7 @@ import org.cpsolver.coursett.model.TimetableModel;
 import org.cpsolver.ifs.extension.ConflictStatistics;
 import org.cpsolver.ifs.extension.Extension;
 import org.cpsolver.ifs.model.Constraint;
+import org.cpsolver.ifs.model.ModelListener;
 import org.cpsolver.ifs.solver.Solver;
 import org.cpsolver.ifs.util.CSVFile;
 import org.cpsolver.ifs.util.Callback;
@@ -134,6 +137,10 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
 	private Vector<AssignmentRecord> iBestAssignmentRecords = new Vector<AssignmentRecord>();
 	private ConflictStatisticsInfo iCbsInfo = null;
 	private CommitedClassAssignmentProxy iCommitedClassAssignmentProxy;
+	private static AtomicLong sAssignmentVersion = new AtomicLong(1000l * System.currentTimeMillis());
+	private long iAssignmentVersion = sAssignmentVersion.incrementAndGet();
+	private AtomicBoolean iAssignmentChanged = new AtomicBoolean(false);
+	private Object iAssignmentVersionLock = new Object();
 
 	public TimetableSolver(DataProperties properties, SolverDisposeListener solverDisposeListener) {
 		super(properties, solverDisposeListener);
@@ -152,7 +159,50 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
 
 	@Override
 	protected TimetableModel createModel(DataProperties properties) {
-		return new TimetableModel(properties);
+		TimetableModel model = new TimetableModel(properties);
+		model.addModelListener(new AssignmentChangeListener());
+		iAssignmentChanged.set(true);
+		return model;
+	}
+	
+	@Override
+	public long getAssignmentVersion() {
+		if (isWorking()) return -1;
+		synchronized (iAssignmentVersionLock) {
+			if (iAssignmentChanged.getAndSet(false))
+				iAssignmentVersion = sAssignmentVersion.incrementAndGet();
+			return iAssignmentVersion;
+		}
+	}
+	
+	/**
+	 * Marks the solver assignment as changed, so that a new assignment version is issued on the next {@link TimetableSolver#getAssignmentVersion()} call
+	 */
+	protected class AssignmentChangeListener implements ModelListener<Lecture, Placement> {
+		@Override
+		public void variableAdded(Lecture variable) {}
+		@Override
+		public void variableRemoved(Lecture variable) {}
+		@Override
+		public void constraintAdded(Constraint<Lecture, Placement> constraint) {}
+		@Override
+		public void constraintRemoved(Constraint<Lecture, Placement> constraint) {}
+		@Override
+		public void beforeAssigned(org.cpsolver.ifs.assignment.Assignment<Lecture, Placement> assignment, long iteration, Placement value) {}
+		@Override
+		public void beforeUnassigned(org.cpsolver.ifs.assignment.Assignment<Lecture, Placement> assignment, long iteration, Placement value) {}
+		@Override
+		public void afterAssigned(org.cpsolver.ifs.assignment.Assignment<Lecture, Placement> assignment, long iteration, Placement value) {
+			iAssignmentChanged.set(true);
+		}
+		@Override
+		public void afterUnassigned(org.cpsolver.ifs.assignment.Assignment<Lecture, Placement> assignment, long iteration, Placement value) {
+			iAssignmentChanged.set(true);
+		}
+		@Override
+		public boolean init(Solver<Lecture, Placement> solver) {
+			return true;
+		}
 	}
 
 	@Override
@@ -268,6 +318,7 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
     @Override
     protected void disposeNoInherit(boolean unregister) {
     	iAssignmentRecords.clear(); iBestAssignmentRecords.clear(); iCbsInfo = null;
+    	ClassAssignmentCache.invalidateSolver(ClassAssignmentCache.getSolverKey(this));
     	super.disposeNoInherit(unregister);
     }
     
@@ -285,15 +336,24 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
 		if (createNewSolution)
 			getProperties().remove("General.SolutionId");
 		getProperties().setProperty("General.CommitSolution", (commitSolution ? "true" : "false"));
+		iAssignmentChanged.set(true);
+		ClassAssignmentCache.invalidateSolver(ClassAssignmentCache.getSolverKey(this));
 		super.save();
     }
 
     @Override
     public void load(DataProperties properties) {
     	iAssignmentRecords.clear(); iBestAssignmentRecords.clear(); iCbsInfo = null;
+    	ClassAssignmentCache.invalidateSolver(ClassAssignmentCache.getSolverKey(this));
     	super.load(properties);
     }
     
+    @Override
+    public void reload(DataProperties properties) {
+    	ClassAssignmentCache.invalidateSolver(ClassAssignmentCache.getSolverKey(this));
+    	super.reload(properties);
+    }
+    
     @Override
     public Callback getReloadingDoneCallback() {
     	return new ReloadingDoneCallback();
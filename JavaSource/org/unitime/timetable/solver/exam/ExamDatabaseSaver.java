@@ -54,6 +54,7 @@ import org.unitime.timetable.model.dao.LocationDAO;
 import org.unitime.timetable.model.dao.StudentDAO;
 import org.unitime.timetable.solver.exam.ui.ExamAssignment;
 import org.unitime.timetable.solver.exam.ui.ExamAssignmentInfo;
+import org.unitime.timetable.solver.exam.ui.ExamAssignmentLoader;
 import org.unitime.timetable.solver.jgroups.SolverServerImplementation;
 
 
@@ -83,6 +84,7 @@ public class ExamDatabaseSaver extends ProblemSaver<Exam, ExamPlacement, ExamMod
             tx = hibSession.beginTransaction();
             saveSolution(hibSession);
             tx.commit();
+            ExamAssignmentLoader.invalidate(iSessionId);
             
             iProgress.setPhase("Refreshing solution ...", 1);
             try {
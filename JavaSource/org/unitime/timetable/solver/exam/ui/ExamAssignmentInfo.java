@@ -294,12 +294,23 @@ public class ExamAssignmentInfo extends ExamAssignment implements Serializable
     
     public ExamAssignmentInfo(org.unitime.timetable.model.Exam exam, Hashtable<Long,Set<Long>> owner2students, Hashtable<Long,Hashtable<Long,Set<Long>>> onwer2course2students, 
     		Hashtable<Long, Set<org.unitime.timetable.model.Exam>> studentExams, Hashtable<Long, Set<Meeting>> period2meetings, Parameters p) {
+        this(exam, owner2students, onwer2course2students, studentExams, null, period2meetings, p);
+    }
+    
+    /**
+     * Compute the conflicts of an assigned exam from data that have been loaded in bulk (see {@link ExamAssignmentLoader})
+     * @param instructorExams exams of each instructor (instructor id, exams of all the instructors with the same external id), null to query exams of each instructor
+     */
+    public ExamAssignmentInfo(org.unitime.timetable.model.Exam exam, Hashtable<Long,Set<Long>> owner2students, Hashtable<Long,Hashtable<Long,Set<Long>>> onwer2course2students, 
+    		Hashtable<Long, Set<org.unitime.timetable.model.Exam>> studentExams, Hashtable<Long, Set<org.unitime.timetable.model.Exam>> instructorExams, Hashtable<Long, Set<Meeting>> period2meetings, Parameters p) {
         super(exam, owner2students, onwer2course2students);
         Hashtable<Long,Set<org.unitime.timetable.model.Exam>> examStudents = new Hashtable();
         for (ExamSectionInfo section: getSections())
-            for (Long studentId : section.getStudentIds())
-                examStudents.put(studentId, studentExams.get(studentId));
-        generateConflicts(exam, examStudents, null, period2meetings, p, owner2students, onwer2course2students);
+            for (Long studentId : section.getStudentIds()) {
+            	Set<org.unitime.timetable.model.Exam> exams = studentExams.get(studentId);
+            	if (exams != null) examStudents.put(studentId, exams);
+            }
+        generateConflicts(exam, examStudents, null, period2meetings, p, owner2students, onwer2course2students, instructorExams);
     }
     
     public ExamAssignmentInfo(org.unitime.timetable.model.Exam exam, boolean useCache) {
@@ -664,6 +675,11 @@ public class ExamAssignmentInfo extends ExamAssignment implements Serializable
     
     public void generateConflicts(org.unitime.timetable.model.Exam exam, Hashtable<Long, Set<org.unitime.timetable.model.Exam>> examStudents, Hashtable<Long, ExamAssignment> table, Hashtable<Long, Set<Meeting>> period2meetings, Parameters p,
     		Hashtable<Long, Set<Long>> owner2students, Hashtable<Long,Hashtable<Long,Set<Long>>> onwer2course2students) {
+    	generateConflicts(exam, examStudents, table, period2meetings, p, owner2students, onwer2course2students, null);
+    }
+    
+    public void generateConflicts(org.unitime.timetable.model.Exam exam, Hashtable<Long, Set<org.unitime.timetable.model.Exam>> examStudents, Hashtable<Long, ExamAssignment> table, Hashtable<Long, Set<Meeting>> period2meetings, Parameters p,
+    		Hashtable<Long, Set<Long>> owner2students, Hashtable<Long,Hashtable<Long,Set<Long>>> onwer2course2students, Hashtable<Long, Set<org.unitime.timetable.model.Exam>> instructorExams) {
         if (getPeriod()==null) return;
         
         Hashtable<org.unitime.timetable.model.Exam,DirectConflict> directs = new Hashtable();
@@ -727,7 +743,13 @@ public class ExamAssignmentInfo extends ExamAssignment implements Serializable
         for (Iterator i=getExam().getInstructors().iterator();i.hasNext();) {
             DepartmentalInstructor instructor = (DepartmentalInstructor)i.next();
             TreeSet sameDateExams = new TreeSet();
-            for (Iterator j=instructor.getExams(getExam().getExamType()).iterator();j.hasNext();) {
+            Collection<org.unitime.timetable.model.Exam> examsOfInstructor = null;
+            if (instructorExams == null)
+            	examsOfInstructor = instructor.getExams(getExam().getExamType());
+            else
+            	examsOfInstructor = instructorExams.get(instructor.getUniqueId());
+            if (examsOfInstructor == null) examsOfInstructor = new HashSet<org.unitime.timetable.model.Exam>();
+            for (Iterator j=examsOfInstructor.iterator();j.hasNext();) {
                 org.unitime.timetable.model.Exam other = (org.unitime.timetable.model.Exam)j.next();
                 if (other.equals(getExam())) continue;
                 ExamPeriod otherPeriod = getAssignedPeriod(other, table);
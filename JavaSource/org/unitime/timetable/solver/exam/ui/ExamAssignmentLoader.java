@@ -0,0 +1,430 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.exam.ui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.Exam;
+import org.unitime.timetable.model.ExamOwner;
+import org.unitime.timetable.model.ExamType;
+import org.unitime.timetable.model.Meeting;
+import org.unitime.timetable.model.dao.ExamDAO;
+import org.unitime.timetable.model.dao.ExamTypeDAO;
+import org.unitime.timetable.solver.exam.ui.ExamAssignmentInfo.Parameters;
+
+/**
+ * Bulk computation of the assignments and conflicts of the committed examinations of an academic session and an examination type.
+ * Instead of walking owners, students, and other exams of each exam one by one (see {@link ExamAssignmentInfo#ExamAssignmentInfo(Exam)}),
+ * the students of all the exam owners, the exams of all the students and instructors, and the meetings overlapping with
+ * the examination periods are loaded using a few set-based queries, and the conflicts are computed in memory.
+ * <br>
+ * The student and instructor data ({@link Enrollments}, identifiers only) are cached for tmtbl.exams.conflicts.bulk.ttl seconds.
+ * The cache is cleared when an examination assignment is changed or a solution is saved (see {@link #invalidate(Long)}).
+ * The loaded exams (Hibernate objects) are kept for the Hibernate session they have been loaded in only, so that
+ * the grid pages which ask for the exams of each room, instructor, or subject area do not load the data again.
+ * They are dropped as soon as the session is closed (closed sessions are removed on the next load, and the
+ * contexts are weakly referenced by their sessions), or when the cache is cleared.
+ *
+ * @author Tomas Muller
+ */
+public class ExamAssignmentLoader {
+	private static Log sLog = LogFactory.getLog(ExamAssignmentLoader.class);
+	private static Map<String, Enrollments> sCache = new HashMap<String, Enrollments>();
+	private static Map<Long, Long> sVersions = new HashMap<Long, Long>();
+	private static Map<org.hibernate.Session, Context> sContexts = new WeakHashMap<org.hibernate.Session, Context>();
+	
+	private Long iSessionId, iExamTypeId;
+	private org.hibernate.Session iHibSession;
+	
+	public ExamAssignmentLoader(Long sessionId, Long examTypeId, org.hibernate.Session hibSession) {
+		iSessionId = sessionId;
+		iExamTypeId = examTypeId;
+		iHibSession = hibSession;
+	}
+	
+	public ExamAssignmentLoader(Long sessionId, Long examTypeId) {
+		this(sessionId, examTypeId, ExamDAO.getInstance().getSession());
+	}
+	
+	public static boolean isEnabled() {
+		return ApplicationProperty.ExaminationBulkConflicts.isTrue();
+	}
+	
+	/** Clear the cached data of the given academic session (all sessions when null) */
+	public static void invalidate(Long sessionId) {
+		synchronized (sCache) {
+			if (sessionId == null) {
+				sCache.clear();
+				for (Map.Entry<Long, Long> e: sVersions.entrySet())
+					e.setValue(e.getValue() + 1);
+			} else {
+				for (Iterator<String> i = sCache.keySet().iterator(); i.hasNext(); )
+					if (i.next().startsWith(sessionId + ":")) i.remove();
+				Long version = sVersions.get(sessionId);
+				sVersions.put(sessionId, version == null ? 1l : version + 1);
+			}
+		}
+		synchronized (sContexts) {
+			sContexts.clear();
+		}
+	}
+	
+	protected static long getVersion(Long sessionId) {
+		synchronized (sCache) {
+			Long version = sVersions.get(sessionId);
+			return (version == null ? 0l : version);
+		}
+	}
+	
+	protected String getKey() {
+		return iSessionId + ":" + iExamTypeId;
+	}
+	
+	/** Students and instructors of the exams, from the cache if possible */
+	public Enrollments getEnrollments() {
+		int ttl = ApplicationProperty.ExaminationBulkConflictsCacheTimeToLive.intValue();
+		long version = getVersion(iSessionId);
+		if (ttl > 0) {
+			synchronized (sCache) {
+				Enrollments enrollments = sCache.get(getKey());
+				if (enrollments != null && enrollments.getVersion() == version && System.currentTimeMillis() - enrollments.getCreated() < 1000l * ttl)
+					return enrollments;
+			}
+		}
+		Enrollments enrollments = loadEnrollments(version);
+		if (ttl > 0) {
+			synchronized (sCache) {
+				if (getVersion(iSessionId) == version)
+					sCache.put(getKey(), enrollments);
+			}
+		}
+		return enrollments;
+	}
+	
+	protected Enrollments loadEnrollments(long version) {
+		long t0 = System.currentTimeMillis();
+		Enrollments enrollments = new Enrollments(version);
+		enrollments.loadStudents(iHibSession, iSessionId, iExamTypeId, ExamOwner.sOwnerTypeClass,
+				"StudentClassEnrollment e inner join e.clazz c where o.ownerId = c.uniqueId");
+		enrollments.loadStudents(iHibSession, iSessionId, iExamTypeId, ExamOwner.sOwnerTypeConfig,
+				"StudentClassEnrollment e inner join e.clazz c inner join c.schedulingSubpart.instrOfferingConfig ioc where o.ownerId = ioc.uniqueId");
+		enrollments.loadStudents(iHibSession, iSessionId, iExamTypeId, ExamOwner.sOwnerTypeCourse,
+				"StudentClassEnrollment e inner join e.courseOffering co where o.ownerId = co.uniqueId");
+		enrollments.loadStudents(iHibSession, iSessionId, iExamTypeId, ExamOwner.sOwnerTypeOffering,
+				"StudentClassEnrollment e inner join e.courseOffering.instructionalOffering io where o.ownerId = io.uniqueId");
+		enrollments.loadInstructors(iHibSession, iSessionId, iExamTypeId);
+		sLog.debug("Examination enrollments loaded in " + (System.currentTimeMillis() - t0) + " ms.");
+		return enrollments;
+	}
+	
+	/**
+	 * Load all the assigned exams of the academic session and examination type, together with their owners, rooms, instructors, and distributions
+	 */
+	public Hashtable<Long, Exam> loadAssignedExams() {
+		Hashtable<Long, Exam> exams = new Hashtable<Long, Exam>();
+		for (Object o: iHibSession.createQuery(
+				"select distinct x from Exam x left join fetch x.owners where x.session.uniqueId = :sessionId and x.examType.uniqueId = :examTypeId and x.assignedPeriod is not null"
+				).setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId).list()) {
+			Exam exam = (Exam)o;
+			exams.put(exam.getUniqueId(), exam);
+		}
+		iHibSession.createQuery(
+				"select distinct x from Exam x left join fetch x.assignedRooms where x.session.uniqueId = :sessionId and x.examType.uniqueId = :examTypeId and x.assignedPeriod is not null"
+				).setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId).list();
+		iHibSession.createQuery(
+				"select distinct x from Exam x left join fetch x.instructors where x.session.uniqueId = :sessionId and x.examType.uniqueId = :examTypeId and x.assignedPeriod is not null"
+				).setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId).list();
+		iHibSession.createQuery(
+				"select distinct x from Exam x left join fetch x.distributionObjects where x.session.uniqueId = :sessionId and x.examType.uniqueId = :examTypeId and x.assignedPeriod is not null"
+				).setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId).list();
+		fetchOwners();
+		return exams;
+	}
+	
+	/**
+	 * Load the classes, configurations, courses, and offerings of all the exam owners, so that they are not loaded one by one
+	 */
+	public void fetchOwners() {
+		iHibSession.createQuery(
+				"select c from Class_ c, ExamOwner o where o.exam.session.uniqueId=:sessionId and o.exam.examType.uniqueId=:examTypeId and o.ownerType=:classType and c.uniqueId=o.ownerId")
+				.setLong("sessionId", iSessionId)
+				.setLong("examTypeId", iExamTypeId)
+				.setInteger("classType", ExamOwner.sOwnerTypeClass).setCacheable(true).list();
+		iHibSession.createQuery(
+				"select c from InstrOfferingConfig c, ExamOwner o where o.exam.session.uniqueId=:sessionId and o.exam.examType.uniqueId=:examTypeId and o.ownerType=:configType and c.uniqueId=o.ownerId")
+				.setLong("sessionId", iSessionId)
+				.setLong("examTypeId", iExamTypeId)
+				.setInteger("configType", ExamOwner.sOwnerTypeConfig).setCacheable(true).list();
+		iHibSession.createQuery(
+				"select c from CourseOffering c, ExamOwner o where o.exam.session.uniqueId=:sessionId and o.exam.examType.uniqueId=:examTypeId and o.ownerType=:courseType and c.uniqueId=o.ownerId")
+				.setLong("sessionId", iSessionId)
+				.setLong("examTypeId", iExamTypeId)
+				.setInteger("courseType", ExamOwner.sOwnerTypeCourse).setCacheable(true).list();
+		iHibSession.createQuery(
+				"select c from InstructionalOffering c, ExamOwner o where o.exam.session.uniqueId=:sessionId and o.exam.examType.uniqueId=:examTypeId and o.ownerType=:offeringType and c.uniqueId=o.ownerId")
+				.setLong("sessionId", iSessionId)
+				.setLong("examTypeId", iExamTypeId)
+				.setInteger("offeringType", ExamOwner.sOwnerTypeOffering).setCacheable(true).list();
+	}
+	
+	/**
+	 * Class meetings, course meetings with required attendance, and exams of other examination types that overlap with an examination period
+	 * (period id, meetings), empty when event conflicts are not considered for the examination type
+	 */
+	public Hashtable<Long, Set<Meeting>> getPeriodMeetings() {
+		Hashtable<Long, Set<Meeting>> period2meetings = new Hashtable<Long, Set<Meeting>>();
+		ExamType type = ExamTypeDAO.getInstance().get(iExamTypeId, iHibSession);
+		if (type == null || !ApplicationProperty.ExaminationConsiderEventConflicts.isTrue(type.getReference())) return period2meetings;
+		addPeriodMeetings(period2meetings, iHibSession.createQuery(
+				"select p.uniqueId, m from ClassEvent ce inner join ce.meetings m, ExamPeriod p " +
+				"where p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
+				HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId")
+				.setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeClass.intValue())
+				.setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId)
+				.setCacheable(true).list());
+		addPeriodMeetings(period2meetings, iHibSession.createQuery(
+				"select p.uniqueId, m from CourseEvent ce inner join ce.meetings m, ExamPeriod p " +
+				"where ce.reqAttendance=true and m.approvalStatus = 1 and p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
+				HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId")
+				.setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeCourse.intValue())
+				.setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId)
+				.setCacheable(true).list());
+		addPeriodMeetings(period2meetings, iHibSession.createQuery(
+				"select p.uniqueId, m from ExamEvent ce inner join ce.meetings m, ExamPeriod p " +
+				"where ce.exam.examType.uniqueId != :examTypeId and m.approvalStatus = 1 and p.startSlot - :travelTime < m.stopPeriod and m.startPeriod < p.startSlot + p.length + :travelTime and "+
+				HibernateUtil.addDate("p.session.examBeginDate","p.dateOffset")+" = m.meetingDate and p.session.uniqueId=:sessionId and p.examType.uniqueId=:examTypeId")
+				.setInteger("travelTime", ApplicationProperty.ExaminationTravelTimeCourse.intValue())
+				.setLong("sessionId", iSessionId).setLong("examTypeId", iExamTypeId)
+				.setCacheable(true).list());
+		return period2meetings;
+	}
+	
+	private static void addPeriodMeetings(Hashtable<Long, Set<Meeting>> period2meetings, List<?> list) {
+		for (Object line: list) {
+			Object[] o = (Object[])line;
+			Long periodId = (Long)o[0];
+			Meeting meeting = (Meeting)o[1];
+			Set<Meeting> meetings = period2meetings.get(periodId);
+			if (meetings == null) {
+				meetings = new HashSet<Meeting>(); period2meetings.put(periodId, meetings);
+			}
+			meetings.add(meeting);
+		}
+	}
+	
+	protected Context getContext() {
+		long version = getVersion(iSessionId);
+		Context context = null;
+		synchronized (sContexts) {
+			context = sContexts.get(iHibSession);
+		}
+		if (context != null && context.isValid(iHibSession, iSessionId, iExamTypeId, version))
+			return context;
+		long t0 = System.currentTimeMillis();
+		context = new Context(iSessionId, iExamTypeId, version);
+		context.iExams = loadAssignedExams();
+		context.iEnrollments = getEnrollments();
+		context.iStudentExams = context.iEnrollments.getStudentExams(context.iExams);
+		context.iInstructorExams = context.iEnrollments.getInstructorExams(context.iExams);
+		context.iPeriodMeetings = getPeriodMeetings();
+		context.iParameters = new Parameters(iSessionId, iExamTypeId);
+		synchronized (sContexts) {
+			for (Iterator<org.hibernate.Session> i = sContexts.keySet().iterator(); i.hasNext(); )
+				if (!i.next().isOpen()) i.remove();
+			sContexts.put(iHibSession, context);
+		}
+		sLog.debug("Assigned examinations loaded in " + (System.currentTimeMillis() - t0) + " ms.");
+		return context;
+	}
+	
+	/** Assignments and conflicts of all the assigned exams of the academic session and examination type */
+	public List<ExamAssignmentInfo> getAssignedExams() {
+		Context context = getContext();
+		return computeAssignments(context, context.iExams.values());
+	}
+	
+	/** Assignments and conflicts of the given exams, exams that are not assigned are skipped */
+	public List<ExamAssignmentInfo> getAssignedExams(Collection<Exam> exams) {
+		return computeAssignments(getContext(), exams);
+	}
+	
+	protected List<ExamAssignmentInfo> computeAssignments(Context context, Collection<Exam> exams) {
+		List<ExamAssignmentInfo> ret = new ArrayList<ExamAssignmentInfo>(exams.size());
+		for (Exam exam: exams) {
+			Exam x = context.iExams.get(exam.getUniqueId());
+			if (x == null) continue;
+			ret.add(new ExamAssignmentInfo(x, context.iEnrollments.getOwnerStudents(), context.iEnrollments.getOwnerCourseStudents(),
+					context.iStudentExams, context.iInstructorExams, context.iPeriodMeetings, context.iParameters));
+		}
+		return ret;
+	}
+	
+	/**
+	 * Exams loaded for a Hibernate session (the session is not referenced, so that the context does not keep it from being garbage collected)
+	 */
+	protected static class Context {
+		private Long iSessionId, iExamTypeId;
+		private long iVersion;
+		private Hashtable<Long, Exam> iExams;
+		private Enrollments iEnrollments;
+		private Hashtable<Long, Set<Exam>> iStudentExams, iInstructorExams;
+		private Hashtable<Long, Set<Meeting>> iPeriodMeetings;
+		private Parameters iParameters;
+		
+		private Context(Long sessionId, Long examTypeId, long version) {
+			iSessionId = sessionId; iExamTypeId = examTypeId; iVersion = version;
+		}
+		
+		private boolean isValid(org.hibernate.Session hibSession, Long sessionId, Long examTypeId, long version) {
+			return hibSession.isOpen() && iSessionId.equals(sessionId) && iExamTypeId.equals(examTypeId) && iVersion == version;
+		}
+	}
+	
+	/**
+	 * Students of the exam owners, exams of the students, and exams of the instructors (identifiers only, so that the data can be cached)
+	 */
+	public static class Enrollments {
+		private long iVersion, iCreated;
+		private Hashtable<Long, Set<Long>> iOwnerStudents = new Hashtable<Long, Set<Long>>();
+		private Hashtable<Long, Hashtable<Long, Set<Long>>> iOwnerCourseStudents = new Hashtable<Long, Hashtable<Long, Set<Long>>>();
+		private Hashtable<Long, Set<Long>> iStudentExamIds = new Hashtable<Long, Set<Long>>();
+		private Hashtable<Long, Set<Long>> iInstructorExamIds = new Hashtable<Long, Set<Long>>();
+		
+		protected Enrollments(long version) {
+			iVersion = version;
+			iCreated = System.currentTimeMillis();
+		}
+		
+		public long getVersion() { return iVersion; }
+		public long getCreated() { return iCreated; }
+		
+		/** Owner id, student ids */
+		public Hashtable<Long, Set<Long>> getOwnerStudents() { return iOwnerStudents; }
+		/** Owner id, course id, student ids */
+		public Hashtable<Long, Hashtable<Long, Set<Long>>> getOwnerCourseStudents() { return iOwnerCourseStudents; }
+		
+		protected void loadStudents(org.hibernate.Session hibSession, Long sessionId, Long examTypeId, int ownerType, String join) {
+			for (Object line: hibSession.createQuery(
+					"select x.uniqueId, o.uniqueId, e.student.uniqueId, e.courseOffering.uniqueId from Exam x inner join x.owners o, " + join +
+					" and x.session.uniqueId = :sessionId and x.examType.uniqueId = :examTypeId and o.ownerType = :ownerType"
+					).setLong("sessionId", sessionId).setLong("examTypeId", examTypeId).setInteger("ownerType", ownerType).list()) {
+				Object[] o = (Object[])line;
+				Long examId = (Long)o[0];
+				Long ownerId = (Long)o[1];
+				Long studentId = (Long)o[2];
+				Long courseId = (Long)o[3];
+				Set<Long> studentsOfOwner = iOwnerStudents.get(ownerId);
+				if (studentsOfOwner == null) {
+					studentsOfOwner = new HashSet<Long>();
+					iOwnerStudents.put(ownerId, studentsOfOwner);
+				}
+				studentsOfOwner.add(studentId);
+				Set<Long> examsOfStudent = iStudentExamIds.get(studentId);
+				if (examsOfStudent == null) {
+					examsOfStudent = new HashSet<Long>();
+					iStudentExamIds.put(studentId, examsOfStudent);
+				}
+				examsOfStudent.add(examId);
+				Hashtable<Long, Set<Long>> course2students = iOwnerCourseStudents.get(ownerId);
+				if (course2students == null) {
+					course2students = new Hashtable<Long, Set<Long>>();
+					iOwnerCourseStudents.put(ownerId, course2students);
+				}
+				Set<Long> studentsOfCourse = course2students.get(courseId);
+				if (studentsOfCourse == null) {
+					studentsOfCourse = new HashSet<Long>();
+					course2students.put(courseId, studentsOfCourse);
+				}
+				studentsOfCourse.add(studentId);
+			}
+		}
+		
+		/**
+		 * Exams of each instructor, instructors with the same external id (e.g., teaching for more than one department) share their exams
+		 * (see {@link org.unitime.timetable.model.DepartmentalInstructor#getExams(ExamType)})
+		 */
+		protected void loadInstructors(org.hibernate.Session hibSession, Long sessionId, Long examTypeId) {
+			Map<String, Set<Long>> external2exams = new HashMap<String, Set<Long>>();
+			Map<Long, String> instructor2external = new HashMap<Long, String>();
+			for (Object line: hibSession.createQuery(
+					"select i.uniqueId, i.externalUniqueId, x.uniqueId from Exam x inner join x.instructors i " +
+					"where x.session.uniqueId = :sessionId and x.examType.uniqueId = :examTypeId"
+					).setLong("sessionId", sessionId).setLong("examTypeId", examTypeId).list()) {
+				Object[] o = (Object[])line;
+				Long instructorId = (Long)o[0];
+				String externalId = (String)o[1];
+				Long examId = (Long)o[2];
+				Set<Long> examsOfInstructor = iInstructorExamIds.get(instructorId);
+				if (examsOfInstructor == null) {
+					examsOfInstructor = new HashSet<Long>();
+					iInstructorExamIds.put(instructorId, examsOfInstructor);
+				}
+				examsOfInstructor.add(examId);
+				if (externalId != null) {
+					instructor2external.put(instructorId, externalId);
+					Set<Long> examsOfExternal = external2exams.get(externalId);
+					if (examsOfExternal == null) {
+						examsOfExternal = new HashSet<Long>();
+						external2exams.put(externalId, examsOfExternal);
+					}
+					examsOfExternal.add(examId);
+				}
+			}
+			for (Map.Entry<Long, String> e: instructor2external.entrySet())
+				iInstructorExamIds.put(e.getKey(), external2exams.get(e.getValue()));
+		}
+		
+		protected static Hashtable<Long, Set<Exam>> resolve(Hashtable<Long, Set<Long>> ids, Map<Long, Exam> exams) {
+			Hashtable<Long, Set<Exam>> ret = new Hashtable<Long, Set<Exam>>();
+			for (Map.Entry<Long, Set<Long>> e: ids.entrySet()) {
+				Set<Exam> set = new HashSet<Exam>();
+				for (Long examId: e.getValue()) {
+					Exam exam = exams.get(examId);
+					if (exam != null) set.add(exam);
+				}
+				if (!set.isEmpty()) ret.put(e.getKey(), set);
+			}
+			return ret;
+		}
+		
+		/** Student id, exams of the student (only the given exams are included) */
+		public Hashtable<Long, Set<Exam>> getStudentExams(Map<Long, Exam> exams) {
+			return resolve(iStudentExamIds, exams);
+		}
+		
+		/** Instructor id, exams of the instructor (only the given exams are included) */
+		public Hashtable<Long, Set<Exam>> getInstructorExams(Map<Long, Exam> exams) {
+			return resolve(iInstructorExamIds, exams);
+		}
+	}
+}
@@ -44,6 +44,7 @@ import org.unitime.timetable.model.Class_;
 import org.unitime.timetable.model.Department;
 import org.unitime.timetable.model.dao.Class_DAO;
 import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.solver.ClassAssignmentCache;
 import org.unitime.timetable.solver.CommitedClassAssignmentProxy;
 import org.unitime.timetable.solver.SolverProxy;
 import org.unitime.timetable.solver.ui.AssignmentPreferenceInfo;
@@ -62,6 +63,7 @@ public class CourseSolverContainerRemote extends CourseSolverContainer implement
 		
 	public CourseSolverContainerRemote(JChannel channel, short scope, boolean saveFileInfos) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteSolverProtocol.register(iDispatcher);
 		iSaveFileInfos = saveFileInfos;
 	}
 	
@@ -92,10 +94,28 @@ public class CourseSolverContainerRemote extends CourseSolverContainer implement
 		}
 	}
 	
+	@Override
+	public byte[] invokeById(Long methodId, String user, byte[] args) throws Exception {
+		try {
+			return RemoteSolverProtocol.invoke(iCourseSolvers.get(user), user, methodId, args);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
+	@Override
+	public byte[] invokeBatch(String user, byte[] batch) throws Exception {
+		try {
+			return RemoteSolverProtocol.invokeBatch(iCourseSolvers.get(user), user, batch);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
 	@Override
 	public Object dispatch(Address address, String user, Method method, Object[] args) throws Exception {
 		try {
-			return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), user, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+			return RemoteSolverProtocol.dispatch(iDispatcher, address, user, method, args);
 		} catch (InvocationTargetException e) {
 			if (e.getTargetException() != null && e.getTargetException() instanceof Exception)
 				throw (Exception)e.getTargetException();
@@ -282,7 +302,12 @@ public class CourseSolverContainerRemote extends CourseSolverContainer implement
     		try {
     			return getClass().getMethod(method.getName(), method.getParameterTypes()).invoke(this, args);
     		} catch (NoSuchMethodException e) {}
-    		return dispatch(iAddress, iUser, method, args);
+    		try {
+    			return dispatch(iAddress, iUser, method, args);
+    		} finally {
+    			if ("load".equals(method.getName()) || "reload".equals(method.getName()) || "save".equals(method.getName()) || "dispose".equals(method.getName()))
+    				ClassAssignmentCache.invalidateSolver(getHost() + "|" + getUser());
+    		}
         }
     }
 }
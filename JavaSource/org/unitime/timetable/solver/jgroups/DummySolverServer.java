@@ -220,6 +220,7 @@ public class DummySolverServer extends AbstractSolverServer implements MessageLi
 		
 		public DummyContainer(JChannel channel, short scope, Class<T> clazz) {
 			iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+			RemoteSolverProtocol.register(iDispatcher);
 			iClazz = clazz;
 		}
 		
@@ -278,7 +279,7 @@ public class DummySolverServer extends AbstractSolverServer implements MessageLi
 		@Override
 		public Object dispatch(Address address, String user, Method method, Object[] args) throws Exception {
 			try {
-				return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), user, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+				return RemoteSolverProtocol.dispatch(iDispatcher, address, user, method, args);
 			} catch (Exception e) {
 				sLog.debug("Excution of " + method.getName() + " on solver " + user + " failed: " + e.getMessage(), e);
 				throw e;
@@ -289,6 +290,16 @@ public class DummySolverServer extends AbstractSolverServer implements MessageLi
 		public Object invoke(String method, String user, Class[] types, Object[] args) throws Exception {
 			throw new Exception("Method " + method + " not implemented.");
 		}
+		
+		@Override
+		public byte[] invokeById(Long methodId, String user, byte[] args) throws Exception {
+			throw new Exception("Method " + Long.toHexString(methodId) + " not implemented.");
+		}
+		
+		@Override
+		public byte[] invokeBatch(String user, byte[] batch) throws Exception {
+			throw new Exception("Method invokeBatch not implemented.");
+		}
 
 		@Override
 		public T createProxy(Address address, String user) {
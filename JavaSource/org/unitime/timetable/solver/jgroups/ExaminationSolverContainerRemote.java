@@ -46,6 +46,7 @@ public class ExaminationSolverContainerRemote extends ExaminationSolverContainer
 		
 	public ExaminationSolverContainerRemote(JChannel channel, short scope) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteSolverProtocol.register(iDispatcher);
 	}
 	
 	@Override
@@ -76,10 +77,28 @@ public class ExaminationSolverContainerRemote extends ExaminationSolverContainer
 		}
 	}
 	
+	@Override
+	public byte[] invokeById(Long methodId, String user, byte[] args) throws Exception {
+		try {
+			return RemoteSolverProtocol.invoke(iExamSolvers.get(user), user, methodId, args);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
+	@Override
+	public byte[] invokeBatch(String user, byte[] batch) throws Exception {
+		try {
+			return RemoteSolverProtocol.invokeBatch(iExamSolvers.get(user), user, batch);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
 	@Override
 	public Object dispatch(Address address, String user, Method method, Object[] args) throws Exception {
 		try {
-			return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), user, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+			return RemoteSolverProtocol.dispatch(iDispatcher, address, user, method, args);
 		} catch (InvocationTargetException e) {
 			if (e.getTargetException() != null && e.getTargetException() instanceof Exception)
 				throw (Exception)e.getTargetException();
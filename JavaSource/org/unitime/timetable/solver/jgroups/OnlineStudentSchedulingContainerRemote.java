@@ -68,6 +68,7 @@ public class OnlineStudentSchedulingContainerRemote extends OnlineStudentSchedul
 
 	public OnlineStudentSchedulingContainerRemote(JChannel channel, short scope) {
 		iDispatcher = new MuxRpcDispatcher(scope, channel, null, null, this);
+		RemoteSolverProtocol.register(iDispatcher);
 		iLockService = new LockService(channel);
 	}
 	
@@ -137,10 +138,28 @@ public class OnlineStudentSchedulingContainerRemote extends OnlineStudentSchedul
 		}
 	}
 	
+	@Override
+	public byte[] invokeById(Long methodId, String sessionId, byte[] args) throws Exception {
+		try {
+			return RemoteSolverProtocol.invoke(iInstances.get(Long.valueOf(sessionId)), sessionId, methodId, args);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
+	@Override
+	public byte[] invokeBatch(String sessionId, byte[] batch) throws Exception {
+		try {
+			return RemoteSolverProtocol.invokeBatch(iInstances.get(Long.valueOf(sessionId)), sessionId, batch);
+		} finally {
+			_RootDAO.closeCurrentThreadSessions();
+		}
+	}
+	
 	@Override
 	public Object dispatch(Address address, String sessionId, Method method, Object[] args) throws Exception {
 		try {
-			return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), sessionId, method.getParameterTypes(), args }, new Class[] { String.class, String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+			return RemoteSolverProtocol.dispatch(iDispatcher, address, sessionId, method, args);
 		} catch (InvocationTargetException e) {
 			if (e.getTargetException() != null && e.getTargetException() instanceof Exception)
 				throw (Exception)e.getTargetException();
@@ -82,6 +82,8 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 					OnlineSectioningServer server = iContainer.getInstance(getAcademicSession().getUniqueId());
 					if (server != null) {
 						if (server.isMaster()) {
+							// the server is still being loaded: the queued changes are applied once it is ready
+							if (!server.isReady()) continue;
 							checkForUpdates(server);
 							if (!iRun) break;
 							checkForExpiredReservations(server);
@@ -19,9 +19,23 @@
 */
 package org.unitime.timetable.solver.jgroups;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.Future;
+
 /**
  * @author Tomas Muller
  */
 public interface RemoteSolver {
 	public boolean exists();
+	
+	/**
+	 * Execute the given solver methods in a single round trip (see {@link RemoteSolverBatch}).
+	 * @return results in the same order as the methods, a call that has failed is represented by a {@link RemoteSolverProtocol.Failure}
+	 */
+	public Object[] invokeBatch(Method[] methods, Object[][] args) throws Exception;
+	
+	/**
+	 * Send the given solver methods in a single round trip, without waiting for the results
+	 */
+	public Future<Object[]> invokeBatchAsync(Method[] methods, Object[][] args) throws Exception;
 }
@@ -0,0 +1,196 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.jgroups;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Typed batch of solver calls. The calls are recorded on the proxy returned by {@link #record()}, sent to the remote solver in a single
+ * round trip by {@link #submit()} (which does not wait for the results, so that batches of a number of solvers can be pipelined), and the
+ * results are then available through the solver returned by {@link #getSolver()}. For example:
+ * <pre>
+ * RemoteSolverBatch&lt;CommonSolverInterface&gt; batch = new RemoteSolverBatch&lt;CommonSolverInterface&gt;(solver);
+ * batch.record().getProperties();
+ * batch.record().statusSolutionInfo();
+ * batch.submit();
+ * ...
+ * CommonSolverInterface s = batch.getSolver(); // s.getProperties() and s.statusSolutionInfo() make no remote call
+ * </pre>
+ * When the solver is not remote (see {@link RemoteSolver}), nothing is recorded and the solver itself is returned.
+ *
+ * @author Tomas Muller
+ */
+public class RemoteSolverBatch<T> {
+	private static Log sLog = LogFactory.getLog(RemoteSolverBatch.class);
+	private T iSolver;
+	private List<Method> iMethods = new ArrayList<Method>();
+	private List<Object[]> iArgs = new ArrayList<Object[]>();
+	private Future<Object[]> iFuture = null;
+	private Object[] iResults = null;
+	private T iRecorder = null;
+	
+	public RemoteSolverBatch(T solver) {
+		iSolver = solver;
+	}
+	
+	/** True if the solver is remote, i.e., the batch is needed */
+	public boolean isRemote() {
+		return iSolver instanceof RemoteSolver;
+	}
+	
+	private static void addInterfaces(Class<?> clazz, Set<Class<?>> interfaces) {
+		if (clazz == null) return;
+		for (Class<?> i: clazz.getInterfaces())
+			if (interfaces.add(i)) addInterfaces(i, interfaces);
+		addInterfaces(clazz.getSuperclass(), interfaces);
+	}
+	
+	private Class<?>[] getInterfaces() {
+		Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		addInterfaces(iSolver.getClass(), interfaces);
+		return interfaces.toArray(new Class<?>[interfaces.size()]);
+	}
+	
+	private static Object getDefaultValue(Class<?> type) {
+		if (!type.isPrimitive() || void.class.equals(type)) return null;
+		if (boolean.class.equals(type)) return Boolean.FALSE;
+		if (char.class.equals(type)) return Character.valueOf((char)0);
+		if (byte.class.equals(type)) return Byte.valueOf((byte)0);
+		if (short.class.equals(type)) return Short.valueOf((short)0);
+		if (int.class.equals(type)) return Integer.valueOf(0);
+		if (long.class.equals(type)) return Long.valueOf(0l);
+		if (float.class.equals(type)) return Float.valueOf(0f);
+		return Double.valueOf(0.0);
+	}
+	
+	/**
+	 * Proxy on which the calls of the batch are to be recorded, the recorded calls return null (or zero / false for primitive types).
+	 * When the solver is not remote, the solver itself is returned.
+	 */
+	@SuppressWarnings("unchecked")
+	public T record() {
+		if (!isRemote()) return iSolver;
+		if (iRecorder == null)
+			iRecorder = (T)Proxy.newProxyInstance(iSolver.getClass().getClassLoader(), getInterfaces(), new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					if (iFuture != null || iResults != null)
+						throw new IllegalStateException("Batch has been already submitted.");
+					iMethods.add(method);
+					iArgs.add(args == null ? new Object[0] : args);
+					return getDefaultValue(method.getReturnType());
+				}
+			});
+		return iRecorder;
+	}
+	
+	/** Number of recorded calls */
+	public int size() {
+		return iMethods.size();
+	}
+	
+	/** Send the recorded calls to the remote solver, does not wait for the results */
+	public void submit() {
+		if (!isRemote() || iMethods.isEmpty() || iFuture != null || iResults != null) return;
+		try {
+			iFuture = ((RemoteSolver)iSolver).invokeBatchAsync(iMethods.toArray(new Method[iMethods.size()]), iArgs.toArray(new Object[iArgs.size()][]));
+		} catch (Exception e) {
+			sLog.warn("Failed to submit a batch of " + iMethods.size() + " calls: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Results of the recorded calls, the batch is executed if it has not been submitted yet
+	 * @return results in the same order as the recorded calls, a call that has failed is represented by a {@link RemoteSolverProtocol.Failure}
+	 */
+	public Object[] execute() throws Exception {
+		if (iResults == null) {
+			if (!isRemote() || iMethods.isEmpty()) {
+				iResults = new Object[0];
+			} else if (iFuture != null) {
+				try {
+					iResults = iFuture.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() != null && e.getCause() instanceof Exception)
+						throw (Exception)e.getCause();
+					throw e;
+				}
+			} else {
+				iResults = ((RemoteSolver)iSolver).invokeBatch(iMethods.toArray(new Method[iMethods.size()]), iArgs.toArray(new Object[iArgs.size()][]));
+			}
+		}
+		return iResults;
+	}
+	
+	private int indexOf(Method method, Object[] args) {
+		for (int i = 0; i < iMethods.size(); i++) {
+			Method m = iMethods.get(i);
+			if (m.getName().equals(method.getName()) && Arrays.equals(m.getParameterTypes(), method.getParameterTypes()) &&
+				Arrays.equals(iArgs.get(i), args == null ? new Object[0] : args))
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Solver that answers the recorded calls from the results of the batch, all other calls are passed to the solver.
+	 * When the batch cannot be executed (e.g., the remote server is not available), the solver itself is returned.
+	 */
+	@SuppressWarnings("unchecked")
+	public T getSolver() {
+		if (!isRemote() || iMethods.isEmpty()) return iSolver;
+		final Object[] results;
+		try {
+			results = execute();
+		} catch (Exception e) {
+			sLog.warn("Failed to execute a batch of " + iMethods.size() + " calls: " + e.getMessage(), e);
+			return iSolver;
+		}
+		return (T)Proxy.newProxyInstance(iSolver.getClass().getClassLoader(), getInterfaces(), new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				int index = indexOf(method, args);
+				if (index >= 0 && index < results.length) {
+					if (results[index] instanceof RemoteSolverProtocol.Failure)
+						throw ((RemoteSolverProtocol.Failure)results[index]).getException();
+					return results[index];
+				}
+				try {
+					return method.invoke(iSolver, args);
+				} catch (InvocationTargetException e) {
+					throw e.getTargetException();
+				}
+			}
+		});
+	}
+}
@@ -38,5 +38,11 @@ public interface RemoteSolverContainer<T> extends SolverContainer<T> {
 	
 	public Object invoke(String method, String user, Class[] types, Object[] args) throws Exception;
 	
+	/** Execute a solver method, the method is identified by its id and the arguments and the result are marshalled (see {@link RemoteSolverProtocol}) */
+	public byte[] invokeById(Long methodId, String user, byte[] args) throws Exception;
+	
+	/** Execute a batch of solver methods (see {@link RemoteSolverProtocol}) */
+	public byte[] invokeBatch(String user, byte[] batch) throws Exception;
+	
 	public T createProxy(Address address, String user);
 }
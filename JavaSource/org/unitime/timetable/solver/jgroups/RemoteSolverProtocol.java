@@ -0,0 +1,457 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.jgroups;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jgroups.Address;
+import org.jgroups.blocks.MethodCall;
+import org.jgroups.blocks.MethodLookup;
+import org.jgroups.blocks.RpcDispatcher;
+import org.jgroups.util.FutureListener;
+import org.unitime.timetable.onlinesectioning.server.ActionStatistics.Histogram;
+
+/**
+ * Protocol of the calls made on remote solvers (see {@link RemoteSolverContainer#dispatch(Address, String, Method, Object[])}).
+ * Each solver method is identified by a precomputed 64-bit id (a hash of its name and parameter types), which the remote server
+ * resolves using a cached method table of the solver class, instead of the method name and the parameter types being sent with each
+ * call and the method being looked up by reflection. The arguments and the result are written in a compact format (nulls, booleans,
+ * numbers, and strings are written directly, other objects are serialized), and the call itself is made in the JGroups ID mode
+ * (see {@link MethodLookup}), so that no method name or types are sent either.
+ * <br>
+ * A number of calls can be made in a single round trip using {@link RemoteSolver#invokeBatch(Method[], Object[][])}, the batch can be
+ * also sent without waiting for the response using {@link RemoteSolver#invokeBatchAsync(Method[], Object[][])} (see {@link RemoteSolverBatch}).
+ * The latency and the number of bytes sent and received are kept for each remote server (see {@link #getStatistics(Address)}).
+ *
+ * @author Tomas Muller
+ */
+public class RemoteSolverProtocol {
+	private static final short INVOKE = 1, INVOKE_BATCH = 2;
+	private static final int TAG_NULL = 0, TAG_TRUE = 1, TAG_FALSE = 2, TAG_INTEGER = 3, TAG_LONG = 4, TAG_DOUBLE = 5, TAG_STRING = 6, TAG_OBJECT = 7;
+	private static final int MAX_STRING_LENGTH = 16384;
+	private static final Method sInvokeMethod, sInvokeBatchMethod;
+	private static final long sExistsId;
+	private static ConcurrentMap<Method, Long> sMethodIds = new ConcurrentHashMap<Method, Long>();
+	private static ConcurrentMap<Class<?>, Map<Long, Method>> sMethodTables = new ConcurrentHashMap<Class<?>, Map<Long, Method>>();
+	private static ConcurrentMap<Address, Statistics> sStatistics = new ConcurrentHashMap<Address, Statistics>();
+	
+	static {
+		try {
+			sInvokeMethod = RemoteSolverContainer.class.getMethod("invokeById", Long.class, String.class, byte[].class);
+			sInvokeBatchMethod = RemoteSolverContainer.class.getMethod("invokeBatch", String.class, byte[].class);
+			sExistsId = getMethodId(RemoteSolver.class.getMethod("exists"));
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private RemoteSolverProtocol() {}
+	
+	/** Register the method lookup of the remote solver calls with the dispatcher of a solver container */
+	public static void register(RpcDispatcher dispatcher) {
+		dispatcher.setMethodLookup(new MethodLookup() {
+			@Override
+			public Method findMethod(short id) {
+				switch (id) {
+				case INVOKE: return sInvokeMethod;
+				case INVOKE_BATCH: return sInvokeBatchMethod;
+				default: return null;
+				}
+			}
+		});
+	}
+	
+	/** Method id: 64-bit FNV-1a hash of the method name and the parameter types, the same for an interface method and its implementation */
+	public static long getMethodId(Method method) {
+		Long id = sMethodIds.get(method);
+		if (id == null) {
+			StringBuffer signature = new StringBuffer(method.getName()).append('(');
+			for (Class<?> type: method.getParameterTypes())
+				signature.append(type.getName()).append(';');
+			signature.append(')');
+			long hash = 0xcbf29ce484222325l;
+			for (int i = 0; i < signature.length(); i++) {
+				hash ^= signature.charAt(i);
+				hash *= 0x100000001b3l;
+			}
+			id = hash;
+			sMethodIds.put(method, id);
+		}
+		return id;
+	}
+	
+	protected static Method getMethod(Class<?> clazz, long methodId) {
+		Map<Long, Method> table = sMethodTables.get(clazz);
+		if (table == null) {
+			table = new HashMap<Long, Method>();
+			for (Method method: clazz.getMethods()) {
+				Long id = getMethodId(method);
+				Method other = table.get(id);
+				if (other == null || other.isBridge())
+					table.put(id, method);
+			}
+			sMethodTables.put(clazz, table);
+		}
+		return table.get(methodId);
+	}
+	
+	protected static void writeValue(ObjectOutput out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(TAG_NULL);
+		} else if (value instanceof Boolean) {
+			out.writeByte((Boolean)value ? TAG_TRUE : TAG_FALSE);
+		} else if (value instanceof Integer) {
+			out.writeByte(TAG_INTEGER); out.writeInt((Integer)value);
+		} else if (value instanceof Long) {
+			out.writeByte(TAG_LONG); out.writeLong((Long)value);
+		} else if (value instanceof Double) {
+			out.writeByte(TAG_DOUBLE); out.writeDouble((Double)value);
+		} else if (value instanceof String && ((String)value).length() <= MAX_STRING_LENGTH) {
+			out.writeByte(TAG_STRING); out.writeUTF((String)value);
+		} else {
+			out.writeByte(TAG_OBJECT); out.writeObject(value);
+		}
+	}
+	
+	protected static Object readValue(ObjectInput in) throws IOException, ClassNotFoundException {
+		int tag = in.readByte();
+		switch (tag) {
+		case TAG_NULL: return null;
+		case TAG_TRUE: return Boolean.TRUE;
+		case TAG_FALSE: return Boolean.FALSE;
+		case TAG_INTEGER: return in.readInt();
+		case TAG_LONG: return in.readLong();
+		case TAG_DOUBLE: return in.readDouble();
+		case TAG_STRING: return in.readUTF();
+		case TAG_OBJECT: return in.readObject();
+		default: throw new IOException("Unknown value tag " + tag + ".");
+		}
+	}
+	
+	protected static void writeValues(ObjectOutput out, Object[] values) throws IOException {
+		out.writeInt(values == null ? 0 : values.length);
+		if (values != null)
+			for (Object value: values)
+				writeValue(out, value);
+	}
+	
+	protected static Object[] readValues(ObjectInput in) throws IOException, ClassNotFoundException {
+		Object[] values = new Object[in.readInt()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = readValue(in);
+		return values;
+	}
+	
+	/** Arguments of a method call in the compact format */
+	public static byte[] marshallArguments(Object[] args) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		writeValues(out, args);
+		out.flush(); out.close();
+		return bytes.toByteArray();
+	}
+	
+	public static Object[] unmarshallArguments(byte[] data) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			return readValues(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/** Result of a method call in the compact format */
+	public static byte[] marshallValue(Object value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		writeValue(out, value);
+		out.flush(); out.close();
+		return bytes.toByteArray();
+	}
+	
+	public static Object unmarshallValue(byte[] data) throws IOException, ClassNotFoundException {
+		if (data == null) return null;
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			return readValue(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static Object execute(Object solver, String user, long methodId, Object[] args) throws Exception {
+		if (methodId == sExistsId)
+			return solver != null;
+		if (solver == null)
+			throw new Exception("Solver " + user + " does not exist.");
+		Method method = getMethod(solver.getClass(), methodId);
+		if (method == null)
+			throw new Exception("Method " + Long.toHexString(methodId) + " is not implemented by " + solver.getClass().getSimpleName() + ".");
+		try {
+			return method.invoke(solver, args);
+		} catch (InvocationTargetException e) {
+			if (e.getTargetException() != null && e.getTargetException() instanceof Exception)
+				throw (Exception)e.getTargetException();
+			else
+				throw e;
+		}
+	}
+	
+	/** Server side of a call: execute the method on the given solver, see {@link RemoteSolverContainer#invokeById(Long, String, byte[])} */
+	public static byte[] invoke(Object solver, String user, long methodId, byte[] args) throws Exception {
+		return marshallValue(execute(solver, user, methodId, unmarshallArguments(args)));
+	}
+	
+	/** Server side of a batch: execute all the methods on the given solver, see {@link RemoteSolverContainer#invokeBatch(String, byte[])} */
+	public static byte[] invokeBatch(Object solver, String user, byte[] batch) throws Exception {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(batch));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		try {
+			int count = in.readInt();
+			out.writeInt(count);
+			for (int i = 0; i < count; i++) {
+				long methodId = in.readLong();
+				Object[] args = readValues(in);
+				byte[] result;
+				try {
+					result = marshallValue(execute(solver, user, methodId, args));
+				} catch (Exception e) {
+					result = marshallValue(new Failure(e));
+				}
+				out.writeInt(result.length);
+				out.write(result);
+			}
+			out.flush();
+		} finally {
+			in.close();
+			out.close();
+		}
+		return bytes.toByteArray();
+	}
+	
+	private static byte[] writeBatch(Method[] methods, Object[][] args) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeInt(methods.length);
+		for (int i = 0; i < methods.length; i++) {
+			out.writeLong(getMethodId(methods[i]));
+			writeValues(out, args == null ? null : args[i]);
+		}
+		out.flush(); out.close();
+		return bytes.toByteArray();
+	}
+	
+	private static Object[] readBatch(byte[] data) throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+		try {
+			Object[] results = new Object[in.readInt()];
+			for (int i = 0; i < results.length; i++) {
+				byte[] result = new byte[in.readInt()];
+				in.readFully(result);
+				results[i] = unmarshallValue(result);
+			}
+			return results;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Client side of a call: call the method on the remote solver. The batch methods of the {@link RemoteSolver} interface are
+	 * handled here as well.
+	 */
+	public static Object dispatch(RpcDispatcher dispatcher, Address address, String user, Method method, Object[] args) throws Exception {
+		if (RemoteSolver.class.equals(method.getDeclaringClass())) {
+			if ("invokeBatch".equals(method.getName()))
+				return invokeBatch(dispatcher, address, user, (Method[])args[0], (Object[][])args[1]);
+			if ("invokeBatchAsync".equals(method.getName()))
+				return invokeBatchAsync(dispatcher, address, user, (Method[])args[0], (Object[][])args[1]);
+		}
+		byte[] data = marshallArguments(args);
+		Statistics stats = getStatistics(address, true);
+		long t0 = System.nanoTime();
+		byte[] ret = null;
+		boolean failed = true;
+		try {
+			ret = dispatcher.callRemoteMethod(address, new MethodCall(INVOKE, getMethodId(method), user, data), SolverServerImplementation.sFirstResponse);
+			failed = false;
+		} finally {
+			stats.record(System.nanoTime() - t0, 1, data.length, ret == null ? 0 : ret.length, failed);
+		}
+		return unmarshallValue(ret);
+	}
+	
+	protected static Object[] invokeBatch(RpcDispatcher dispatcher, Address address, String user, Method[] methods, Object[][] args) throws Exception {
+		byte[] data = writeBatch(methods, args);
+		Statistics stats = getStatistics(address, true);
+		long t0 = System.nanoTime();
+		byte[] ret = null;
+		boolean failed = true;
+		try {
+			ret = dispatcher.callRemoteMethod(address, new MethodCall(INVOKE_BATCH, user, data), SolverServerImplementation.sFirstResponse);
+			failed = false;
+		} finally {
+			stats.record(System.nanoTime() - t0, methods.length, data.length, ret == null ? 0 : ret.length, failed);
+		}
+		return readBatch(ret);
+	}
+	
+	protected static Future<Object[]> invokeBatchAsync(RpcDispatcher dispatcher, Address address, String user, final Method[] methods, Object[][] args) throws Exception {
+		final byte[] data = writeBatch(methods, args);
+		final Statistics stats = getStatistics(address, true);
+		final long t0 = System.nanoTime();
+		Future<byte[]> future = dispatcher.callRemoteMethodWithFuture(address, new MethodCall(INVOKE_BATCH, user, data), SolverServerImplementation.sFirstResponse,
+				new FutureListener<byte[]>() {
+					@Override
+					public void futureDone(Future<byte[]> future) {
+						byte[] ret = null;
+						try {
+							ret = future.get();
+						} catch (Exception e) {}
+						stats.record(System.nanoTime() - t0, methods.length, data.length, ret == null ? 0 : ret.length, ret == null);
+					}
+				});
+		return new BatchFuture(future);
+	}
+	
+	/** Statistics of the calls made on the given remote server, null if no call has been made yet */
+	public static Statistics getStatistics(Address address) {
+		return (address == null ? null : sStatistics.get(address));
+	}
+	
+	protected static Statistics getStatistics(Address address, boolean create) {
+		Statistics stats = sStatistics.get(address);
+		if (stats == null && create) {
+			stats = new Statistics();
+			Statistics old = sStatistics.putIfAbsent(address, stats);
+			if (old != null) stats = old;
+		}
+		return stats;
+	}
+	
+	/**
+	 * Result of a call of a batch that has failed
+	 */
+	public static class Failure implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private Exception iException;
+		
+		public Failure(Exception exception) { iException = exception; }
+		
+		public Exception getException() { return iException; }
+		
+		@Override
+		public String toString() { return "Failure{" + iException + "}"; }
+	}
+	
+	/**
+	 * Decodes the results of a batch that has been sent asynchronously
+	 */
+	private static class BatchFuture implements Future<Object[]> {
+		private Future<byte[]> iFuture;
+		
+		private BatchFuture(Future<byte[]> future) { iFuture = future; }
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) { return iFuture.cancel(mayInterruptIfRunning); }
+
+		@Override
+		public boolean isCancelled() { return iFuture.isCancelled(); }
+
+		@Override
+		public boolean isDone() { return iFuture.isDone(); }
+
+		@Override
+		public Object[] get() throws InterruptedException, ExecutionException {
+			return decode(iFuture.get());
+		}
+
+		@Override
+		public Object[] get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			return decode(iFuture.get(timeout, unit));
+		}
+		
+		private Object[] decode(byte[] data) throws ExecutionException {
+			try {
+				return readBatch(data);
+			} catch (Exception e) {
+				throw new ExecutionException(e);
+			}
+		}
+	}
+	
+	/**
+	 * Latency (time of the round trip, including the time spent executing the methods on the remote server) and bytes sent and received
+	 */
+	public static class Statistics {
+		private Histogram iLatency = new Histogram();
+		private AtomicLong iCalls = new AtomicLong(0), iErrors = new AtomicLong(0), iBytesSent = new AtomicLong(0), iBytesReceived = new AtomicLong(0);
+		
+		protected void record(long nanos, int calls, long bytesSent, long bytesReceived, boolean failed) {
+			iLatency.record(nanos);
+			iCalls.addAndGet(calls);
+			iBytesSent.addAndGet(bytesSent);
+			iBytesReceived.addAndGet(bytesReceived);
+			if (failed) iErrors.incrementAndGet();
+		}
+		
+		/** Number of round trips */
+		public long getRoundTrips() { return iLatency.getCount(); }
+		/** Number of calls (a batch counts as many calls as it contains) */
+		public long getCalls() { return iCalls.get(); }
+		/** Number of round trips that have failed */
+		public long getErrors() { return iErrors.get(); }
+		/** Average latency in milliseconds */
+		public double getMeanLatency() { return iLatency.getMean(); }
+		/** Latency percentile in milliseconds */
+		public double getLatency(double percentile) { return iLatency.getPercentile(percentile); }
+		/** Total number of bytes sent (marshalled arguments) */
+		public long getBytesSent() { return iBytesSent.get(); }
+		/** Total number of bytes received (marshalled results) */
+		public long getBytesReceived() { return iBytesReceived.get(); }
+		
+		@Override
+		public String toString() {
+			DecimalFormat df = new DecimalFormat("0.0");
+			return getRoundTrips() + " round trips (" + getCalls() + " calls, " + getErrors() + " failed), latency: mean " + df.format(getMeanLatency()) +
+					" ms, p99 " + df.format(getLatency(99.0)) + " ms, sent " + df.format(getBytesSent() / 1024.0) + " kB, received " + df.format(getBytesReceived() / 1024.0) + " kB";
+		}
+	}
+}
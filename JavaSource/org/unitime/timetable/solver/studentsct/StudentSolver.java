@@ -857,6 +857,11 @@ public class StudentSolver extends AbstractSolver<Request, Enrollment, StudentSe
 		return true;
 	}
 	
+	@Override
+	public boolean isReady(Long offeringId) {
+		return true;
+	}
+	
 	@Override
 	public long getMemUsage() {
 		return new MemoryCounter().estimate(this);
@@ -0,0 +1,338 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.ui;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.SAXReader;
+import org.dom4j.io.XMLWriter;
+import org.unitime.timetable.defaults.ApplicationProperty;
+
+/**
+ * Storage format of the solver infos (see {@link org.unitime.timetable.model.SolverInfo} and {@link TimetableInfoUtil}).
+ * The legacy format is a GZIP-compressed XML document. The binary format starts with a short header (magic, version, and
+ * the name of the root element, so that the info class can be determined without decoding the rest), followed by a deflated
+ * tree of elements where element names, attribute names and values, and texts are interned: each distinct string is written
+ * only once, later occurrences are written as an index into the table of the strings that have been written before.
+ * This avoids the SAX parsing, which is where most of the time is spent when a legacy info is read.
+ * <br>
+ * Both formats can be always read (the format is detected from the first bytes), the format that is written is given by the
+ * unitime.solverInfo.binary property (see {@link ApplicationProperty#SolverInfoBinaryFormat}).
+ * The binary format is also used for the solver backups and passivation (see {@link org.unitime.timetable.solver.AbstractSolver#backup(java.io.File, String)}
+ * and {@link ApplicationProperty#SolverBackupBinary}).
+ *
+ * @author Tomas Muller
+ */
+public class TimetableInfoFormat {
+	private static final byte[] MAGIC = new byte[] { 'U', 'T', 'I' };
+	/** Version of the binary format, written after the magic */
+	public static final int VERSION = 1;
+	
+	private static final int NODE_ELEMENT = 1;
+	private static final int NODE_TEXT = 2;
+	
+	private TimetableInfoFormat() {}
+	
+	/** True if new infos are to be written in the binary format */
+	public static boolean isBinaryEnabled() {
+		return ApplicationProperty.SolverInfoBinaryFormat.isTrue();
+	}
+	
+	/** True if the given data are in the binary format */
+	public static boolean isBinary(byte[] data) {
+		return data != null && data.length > MAGIC.length && hasMagic(data, MAGIC.length);
+	}
+	
+	private static boolean hasMagic(byte[] data, int length) {
+		if (length < MAGIC.length) return false;
+		for (int i = 0; i < MAGIC.length; i++)
+			if (data[i] != MAGIC[i]) return false;
+		return true;
+	}
+	
+	/** True if the given data are in the legacy format (GZIP-compressed XML) */
+	public static boolean isXml(byte[] data) {
+		return data != null && data.length >= 2 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b;
+	}
+	
+	/** Encode the document in the format given by the unitime.solverInfo.binary property */
+	public static byte[] write(Document document) throws IOException {
+		return write(document, isBinaryEnabled());
+	}
+	
+	public static byte[] write(Document document, boolean binary) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		write(document, binary, bytes);
+		return bytes.toByteArray();
+	}
+	
+	public static void write(Document document, boolean binary, OutputStream out) throws IOException {
+		if (binary) {
+			writeBinary(document.getRootElement(), out);
+		} else {
+			XMLWriter writer = new XMLWriter(new GZIPOutputStream(out), OutputFormat.createCompactFormat());
+			writer.write(document);
+			writer.flush(); writer.close();
+		}
+	}
+	
+	/** Decode the document, the format is detected from the data */
+	public static Document read(byte[] data) throws IOException, DocumentException {
+		return read(new ByteArrayInputStream(data));
+	}
+	
+	public static Document read(InputStream in) throws IOException, DocumentException {
+		if (!in.markSupported()) in = new BufferedInputStream(in);
+		in.mark(MAGIC.length);
+		byte[] head = new byte[MAGIC.length];
+		int len = 0;
+		while (len < head.length) {
+			int r = in.read(head, len, head.length - len);
+			if (r < 0) break;
+			len += r;
+		}
+		in.reset();
+		if (hasMagic(head, len)) {
+			return readBinary(in);
+		} else {
+			GZIPInputStream gzipInput = new GZIPInputStream(in);
+			try {
+				return (new SAXReader()).read(gzipInput);
+			} finally {
+				gzipInput.close();
+			}
+		}
+	}
+	
+	/**
+	 * Name of the root element (which is the name of the info class). Only the header is read when the data are in the binary format,
+	 * the legacy format needs to be fully parsed.
+	 */
+	public static String readRootName(byte[] data) throws IOException, DocumentException {
+		if (isBinary(data)) {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+			readHeader(in);
+			return in.readUTF();
+		}
+		return read(data).getRootElement().getName();
+	}
+	
+	/** Convert the data to the given format, returns the same data when they are already in the given format */
+	public static byte[] convert(byte[] data, boolean binary) throws IOException, DocumentException {
+		if (data == null || isBinary(data) == binary) return data;
+		return write(read(data), binary);
+	}
+	
+	private static void readHeader(DataInputStream in) throws IOException {
+		for (int i = 0; i < MAGIC.length; i++)
+			if (in.readByte() != MAGIC[i]) throw new IOException("Not a binary solver info.");
+		int version = in.readUnsignedByte();
+		if (version > VERSION)
+			throw new IOException("Unsupported version " + version + " of the binary solver info.");
+	}
+	
+	private static void writeBinary(Element root, OutputStream out) throws IOException {
+		DataOutputStream header = new DataOutputStream(out);
+		header.write(MAGIC);
+		header.writeByte(VERSION);
+		header.writeUTF(root.getQualifiedName());
+		header.flush();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 8192);
+			DataOutputStream data = new DataOutputStream(new BufferedOutputStream(deflated, 8192));
+			new Output(data).writeElement(root);
+			data.flush();
+			deflated.finish();
+		} finally {
+			deflater.end();
+		}
+	}
+	
+	private static Document readBinary(InputStream in) throws IOException {
+		DataInputStream header = new DataInputStream(in);
+		readHeader(header);
+		Document document = DocumentHelper.createDocument();
+		Element root = document.addElement(header.readUTF());
+		Inflater inflater = new Inflater();
+		try {
+			InflaterInputStream inflated = new InflaterInputStream(in, inflater, 8192);
+			try {
+				new Input(new DataInputStream(new BufferedInputStream(inflated, 8192))).readElement(root);
+			} finally {
+				inflated.close();
+			}
+		} finally {
+			inflater.end();
+		}
+		return document;
+	}
+	
+	private static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+	
+	private static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.readByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed variable length integer.");
+	}
+	
+	/**
+	 * Writing context: strings that have already been written
+	 */
+	private static class Output {
+		private DataOutput iOut;
+		private Map<String, Integer> iStrings = new HashMap<String, Integer>();
+		
+		private Output(DataOutput out) { iOut = out; }
+		
+		/** Interned string: 0 for null, 1 followed by the UTF-8 length and bytes for a new one, index + 2 for a string that has been written before */
+		private void writeString(String value) throws IOException {
+			if (value == null) {
+				writeVarInt(iOut, 0);
+				return;
+			}
+			Integer index = iStrings.get(value);
+			if (index != null) {
+				writeVarInt(iOut, index + 2);
+			} else {
+				iStrings.put(value, iStrings.size());
+				writeVarInt(iOut, 1);
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				writeVarInt(iOut, bytes.length);
+				iOut.write(bytes);
+			}
+		}
+		
+		/** Element content: attributes, followed by the child elements and texts (in the document order; comments and processing instructions are dropped) */
+		private void writeElement(Element element) throws IOException {
+			writeVarInt(iOut, element.attributeCount());
+			for (Iterator i = element.attributeIterator(); i.hasNext(); ) {
+				Attribute attribute = (Attribute)i.next();
+				writeString(attribute.getQualifiedName());
+				writeString(attribute.getValue());
+			}
+			List<Node> content = new ArrayList<Node>();
+			for (int i = 0; i < element.nodeCount(); i++) {
+				Node node = element.node(i);
+				switch (node.getNodeType()) {
+				case Node.ELEMENT_NODE:
+				case Node.TEXT_NODE:
+				case Node.CDATA_SECTION_NODE:
+					content.add(node);
+				}
+			}
+			writeVarInt(iOut, content.size());
+			for (Node node: content) {
+				if (node.getNodeType() == Node.ELEMENT_NODE) {
+					writeVarInt(iOut, NODE_ELEMENT);
+					writeString(((Element)node).getQualifiedName());
+					writeElement((Element)node);
+				} else {
+					writeVarInt(iOut, NODE_TEXT);
+					writeString(node.getText());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Reading context: strings that have already been read
+	 */
+	private static class Input {
+		private DataInput iIn;
+		private List<String> iStrings = new ArrayList<String>();
+		
+		private Input(DataInput in) { iIn = in; }
+		
+		private String readString() throws IOException {
+			int code = readVarInt(iIn);
+			if (code == 0) return null;
+			if (code == 1) {
+				byte[] bytes = new byte[readVarInt(iIn)];
+				iIn.readFully(bytes);
+				String value = new String(bytes, StandardCharsets.UTF_8);
+				iStrings.add(value);
+				return value;
+			}
+			if (code - 2 >= iStrings.size()) throw new IOException("Unknown string reference " + (code - 2) + ".");
+			return iStrings.get(code - 2);
+		}
+		
+		private void readElement(Element element) throws IOException {
+			int nrAttributes = readVarInt(iIn);
+			for (int i = 0; i < nrAttributes; i++) {
+				String name = readString();
+				String value = readString();
+				element.addAttribute(name, value);
+			}
+			int nrNodes = readVarInt(iIn);
+			for (int i = 0; i < nrNodes; i++) {
+				int type = readVarInt(iIn);
+				if (type == NODE_ELEMENT) {
+					readElement(element.addElement(readString()));
+				} else if (type == NODE_TEXT) {
+					String text = readString();
+					if (text != null) element.addText(text);
+				} else {
+					throw new IOException("Unknown node type " + type + ".");
+				}
+			}
+		}
+	}
+}
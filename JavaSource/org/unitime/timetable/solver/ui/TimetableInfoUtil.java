@@ -19,21 +19,18 @@
 */
 package org.unitime.timetable.solver.ui;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
-import org.dom4j.io.OutputFormat;
-import org.dom4j.io.SAXReader;
-import org.dom4j.io.XMLWriter;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.solver.jgroups.CourseSolverContainer;
 import org.unitime.timetable.solver.jgroups.SolverServer;
@@ -66,12 +63,10 @@ public class TimetableInfoUtil implements TimetableInfoFileProxy {
 			File file = new File(ApplicationProperties.getBlobFolder(),name);
 			file.getParentFile().mkdirs();
 			out = new FileOutputStream(file); 
-			XMLWriter writer = new XMLWriter(new GZIPOutputStream(out),OutputFormat.createCompactFormat());
 			Document document = DocumentHelper.createDocument();
 			Element root = document.addElement(info.getClass().getName());
 			info.save(root);
-			writer.write(document);
-			writer.flush(); writer.close();
+			TimetableInfoFormat.write(document, TimetableInfoFormat.isBinaryEnabled(), out);
 			out.flush();out.close();out=null;
 			sLog.info("Saved info " + name + " as " + file + " (" + file.length() + " bytes)");
 			return true;
@@ -91,12 +86,12 @@ public class TimetableInfoUtil implements TimetableInfoFileProxy {
 			if (!file.exists()) return null;
 			sLog.info("Loading info " + name + " from " + file + " (" + file.length() + " bytes)");
 			Document document = null;
-			GZIPInputStream gzipInput = null;
+			InputStream in = null;
 			try {
-				gzipInput = new GZIPInputStream(new FileInputStream(file));
-				document = (new SAXReader()).read(gzipInput);
+				in = new BufferedInputStream(new FileInputStream(file));
+				document = TimetableInfoFormat.read(in);
 			} finally {
-				if (gzipInput!=null) gzipInput.close();
+				if (in!=null) in.close();
 			}
 			Element root = document.getRootElement();
 			String infoClassName = root.getName();
@@ -0,0 +1,264 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.model.Curriculum;
+import org.unitime.timetable.model.PosMajor;
+import org.unitime.timetable.model.Session;
+import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.server.curricula.CurriculumProjectionEngine;
+
+/**
+ * Equivalence test and benchmark of the {@link CurriculumProjectionEngine}. For each curriculum of the academic session
+ * (given by the initiative, year, and term properties), the last-like student counts are computed using the HQL queries
+ * that the curricula pages used before the engine was introduced and compared with the counts returned by the engine.
+ * This includes the classification x major counts, the classification counts, and the counts per course.
+ * Differences are logged, the test prints the number of curricula that do not match and the time spent by both approaches.
+ *
+ * @author Tomas Muller
+ */
+public class CurriculumProjectionTest {
+	protected static Logger sLog = Logger.getLogger(CurriculumProjectionTest.class);
+	private static DecimalFormat sDF = new DecimalFormat("0.00");
+
+	private static final String[] sCourseChecks = new String[] {
+		"co.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is not null and co.permId=x.coursePermId",
+		"co.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is null and co.courseNbr=x.courseNbr",
+		"co.demandOffering.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is not null and co.demandOffering.permId=x.coursePermId",
+		"co.demandOffering.subjectArea.uniqueId = x.subjectArea.uniqueId and x.coursePermId is null and co.demandOffering.courseNbr=x.courseNbr"
+	};
+
+	private org.hibernate.Session iHibSession;
+
+	public CurriculumProjectionTest(org.hibernate.Session hibSession) {
+		iHibSession = hibSession;
+	}
+
+	/**
+	 * Run the query the same way as the curricula pages did: all students of the area when there are no majors,
+	 * students with any of the majors, or students with all the majors (multiple majors)
+	 */
+	protected List<Object[]> query(Curriculum c, String select, String selectNoMajor, String from, String check, String group, String groupNoMajor, String majorCode) {
+		String where = "x.subjectArea.session.uniqueId = :sessionId and a.academicArea.academicAreaAbbreviation = :acadAbbv" + (check == null ? "" : " and " + check);
+		if (c.getMajors().isEmpty()) {
+			// students with all majors
+			if (c.isMultipleMajors()) return null;
+			return iHibSession.createQuery("select " + selectNoMajor + " from " + from + " where " + where + " group by " + groupNoMajor)
+					.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation())
+					.list();
+		} else if (!c.isMultipleMajors() || c.getMajors().size() == 1) {
+			// students with one major
+			List<String> majorCodes = new ArrayList<String>();
+			for (PosMajor major: c.getMajors())
+				majorCodes.add(major.getCode());
+			return iHibSession.createQuery("select " + select + " from " + from + " where " + where + " and " + majorCode + " in :majorCodes group by " + group)
+					.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation())
+					.setParameterList("majorCodes", majorCodes)
+					.list();
+		} else {
+			// students with multiple majors
+			Map<String, String> params = new HashMap<String, String>();
+			int idx = 0;
+			for (PosMajor major: c.getMajors()) {
+				if (idx == 0) {
+					where += " and " + majorCode + " = :m" + idx;
+				} else {
+					from += " inner join s.areaClasfMajors a" + idx;
+					where += " and a" + idx + ".academicArea.academicAreaAbbreviation = :acadAbbv and a" + idx + ".major.code = :m" + idx;
+				}
+				params.put("m" + idx, major.getCode());
+				idx ++;
+			}
+			org.hibernate.Query q = iHibSession.createQuery("select " + selectNoMajor + " from " + from + " where " + where + " group by " + groupNoMajor)
+					.setLong("sessionId", c.getAcademicArea().getSessionId()).setString("acadAbbv", c.getAcademicArea().getAcademicAreaAbbreviation());
+			for (Map.Entry<String, String> e: params.entrySet())
+				q.setString(e.getKey(), e.getValue());
+			return q.list();
+		}
+	}
+
+	protected Hashtable<String, Hashtable<String, Integer>> queryClasfMajor2ll(Curriculum c) {
+		List<Object[]> lines = query(c, "f.code, m.code, count(distinct s)", "f.code, '', count(distinct s)",
+				"LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f inner join a.major m",
+				null, "f.code, m.code", "f.code", "m.code");
+		Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = new Hashtable<String, Hashtable<String,Integer>>();
+		if (lines != null)
+			for (Object[] o: lines) {
+				String clasfCode = (String)o[0];
+				if (clasfCode == null) continue;
+				String majorCode = (String)o[1];
+				if (majorCode == null) majorCode = "";
+				Hashtable<String, Integer> major2ll = clasfMajor2ll.get(clasfCode);
+				if (major2ll == null) {
+					major2ll = new Hashtable<String, Integer>();
+					clasfMajor2ll.put(clasfCode, major2ll);
+				}
+				major2ll.put(majorCode, ((Number)o[2]).intValue());
+			}
+		return clasfMajor2ll;
+	}
+
+	protected Hashtable<String, Integer> queryClasf2ll(Curriculum c) {
+		List<Object[]> lines = query(c, "f.code, count(distinct s)", "f.code, count(distinct s)",
+				"LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f",
+				null, "f.code", "f.code", "a.major.code");
+		Hashtable<String, Integer> clasf2ll = new Hashtable<String, Integer>();
+		if (lines != null)
+			for (Object[] o: lines) {
+				String clasfCode = (String)o[0];
+				if (clasfCode != null)
+					clasf2ll.put(clasfCode, ((Number)o[1]).intValue());
+			}
+		return clasf2ll;
+	}
+
+	protected Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> queryClasfMajorCourse2ll(Curriculum c) {
+		Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajor2course2ll = new Hashtable<String, Hashtable<String, Hashtable<Long,Integer>>>();
+		for (String check: sCourseChecks) {
+			List<Object[]> lines = query(c, "f.code, m.code, co.uniqueId, count(distinct s)", "f.code, '', co.uniqueId, count(distinct s)",
+					"CourseOffering co, LastLikeCourseDemand x inner join x.student s inner join s.areaClasfMajors a inner join a.academicClassification f inner join a.major m",
+					check, "f.code, m.code, co.uniqueId", "f.code, co.uniqueId", "m.code");
+			if (lines != null)
+				for (Object[] o: lines) {
+					String clasfCode = (String)o[0];
+					if (clasfCode == null) continue;
+					String majorCode = (String)o[1];
+					if (majorCode == null) majorCode = "";
+					Hashtable<String, Hashtable<Long, Integer>> major2course2ll = clasfMajor2course2ll.get(clasfCode);
+					if (major2course2ll == null) {
+						major2course2ll = new Hashtable<String, Hashtable<Long,Integer>>();
+						clasfMajor2course2ll.put(clasfCode, major2course2ll);
+					}
+					Hashtable<Long, Integer> course2enrl = major2course2ll.get(majorCode);
+					if (course2enrl == null) {
+						course2enrl = new Hashtable<Long, Integer>();
+						major2course2ll.put(majorCode, course2enrl);
+					}
+					// the later check wins
+					course2enrl.put((Long)o[2], ((Number)o[3]).intValue());
+				}
+		}
+		return clasfMajor2course2ll;
+	}
+
+	public void test(Long sessionId) {
+		List<Curriculum> curricula = (List<Curriculum>)iHibSession.createQuery(
+				"from Curriculum c where c.academicArea.session.uniqueId = :sessionId").setLong("sessionId", sessionId).list();
+		sLog.info("Testing " + curricula.size() + " curricula ...");
+
+		long queryTime = 0, engineTime = 0;
+
+		long t0 = System.currentTimeMillis();
+		CurriculumProjectionEngine.invalidate(sessionId);
+		CurriculumProjectionEngine engine = CurriculumProjectionEngine.getInstance(iHibSession, sessionId);
+		long loadTime = System.currentTimeMillis() - t0;
+		sLog.info("Engine loaded " + engine.countStudents() + " last-like students in " + sDF.format(loadTime / 1000.0) + " s.");
+
+		int mismatches = 0;
+		for (Curriculum c: curricula) {
+			List<String> majorCodes = new ArrayList<String>();
+			for (PosMajor major: c.getMajors())
+				majorCodes.add(major.getCode());
+			String area = c.getAcademicArea().getAcademicAreaAbbreviation();
+
+			long t1 = System.currentTimeMillis();
+			Hashtable<String, Hashtable<String, Integer>> clasfMajor2ll = queryClasfMajor2ll(c);
+			Hashtable<String, Integer> clasf2ll = queryClasf2ll(c);
+			Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> clasfMajorCourse2ll = queryClasfMajorCourse2ll(c);
+			long t2 = System.currentTimeMillis();
+			Hashtable<String, Hashtable<String, Integer>> engineClasfMajor2ll = engine.getClasfMajor2ll(area, majorCodes, c.isMultipleMajors());
+			Hashtable<String, Integer> engineClasf2ll = engine.getClasf2ll(area, majorCodes, c.isMultipleMajors());
+			Hashtable<String, Hashtable<String, Hashtable<Long, Integer>>> engineClasfMajorCourse2ll = engine.getClasfMajorCourse2ll(area, majorCodes, c.isMultipleMajors());
+			long t3 = System.currentTimeMillis();
+			queryTime += (t2 - t1); engineTime += (t3 - t2);
+
+			boolean match = true;
+			if (!clasfMajor2ll.equals(engineClasfMajor2ll)) {
+				sLog.warn(c.getAbbv() + ": classification x major counts differ, expected " + clasfMajor2ll + ", engine returned " + engineClasfMajor2ll);
+				match = false;
+			}
+			if (!clasf2ll.equals(engineClasf2ll)) {
+				sLog.warn(c.getAbbv() + ": classification counts differ, expected " + clasf2ll + ", engine returned " + engineClasf2ll);
+				match = false;
+			}
+			if (!clasfMajorCourse2ll.equals(engineClasfMajorCourse2ll)) {
+				sLog.warn(c.getAbbv() + ": course counts differ, expected " + clasfMajorCourse2ll + ", engine returned " + engineClasfMajorCourse2ll);
+				match = false;
+			}
+			if (!match) mismatches ++;
+		}
+
+		sLog.info("Curricula: " + curricula.size() + ", mismatches: " + mismatches);
+		sLog.info("Queries: " + sDF.format(queryTime / 1000.0) + " s, engine: " + sDF.format(engineTime / 1000.0) + " s (+ " + sDF.format(loadTime / 1000.0) + " s to load the last-like students)");
+	}
+
+	public static void main(String args[]) {
+		try {
+			Properties props = new Properties();
+			props.setProperty("log4j.rootLogger", "DEBUG, A1");
+			props.setProperty("log4j.appender.A1", "org.apache.log4j.ConsoleAppender");
+			props.setProperty("log4j.appender.A1.layout", "org.apache.log4j.PatternLayout");
+			props.setProperty("log4j.appender.A1.layout.ConversionPattern","%-5p %c{2}: %m%n");
+			props.setProperty("log4j.logger.org.hibernate","INFO");
+			props.setProperty("log4j.logger.org.hibernate.cfg","WARN");
+			props.setProperty("log4j.logger.org.hibernate.cache.EhCacheProvider","ERROR");
+			props.setProperty("log4j.logger.org.unitime.commons.hibernate","INFO");
+			props.setProperty("log4j.logger.net","INFO");
+			PropertyConfigurator.configure(props);
+
+			HibernateUtil.configureHibernate(ApplicationProperties.getProperties());
+
+			org.hibernate.Session hibSession = new _RootDAO().getSession();
+			try {
+				Session session = Session.getSessionUsingInitiativeYearTerm(
+						ApplicationProperties.getProperty("initiative", "PWL"),
+						ApplicationProperties.getProperty("year","2010"),
+						ApplicationProperties.getProperty("term","Spring")
+						);
+
+				if (session == null) {
+					sLog.error("Academic session not found, use properties initiative, year, and term to set academic session.");
+					System.exit(0);
+				} else {
+					sLog.info("Session: " + session);
+				}
+
+				new CurriculumProjectionTest(hibSession).test(session.getUniqueId());
+			} finally {
+				hibSession.close();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import org.unitime.timetable.export.BufferedPrinter;
+import org.unitime.timetable.export.CSVPrinter;
+import org.unitime.timetable.export.Exporter.Printer;
+import org.unitime.timetable.export.JSONPrinter;
+import org.unitime.timetable.export.XLSPrinter;
+
+/**
+ * Benchmark of the peak heap usage of the export printers (see {@link org.unitime.timetable.export.hql.SavedHqlExportToCSV}).
+ * A number of generated lines (as if read one by one from scrollable query results) is exported in the CSV, JSON, and XLS formats,
+ * first using the {@link BufferedPrinter} (all lines are kept in memory until the printer is closed, this is how all the HQL exports
+ * were done before) and then passing the lines directly to the printer. The output is discarded (only counted).
+ * The test prints the number of bytes written, the time, and the peak heap usage (sampled every millisecond) of each run.
+ * <br>
+ * Usage: ExportMemoryBenchmark [lines] [columns]
+ *
+ * @author Tomas Muller
+ */
+public class ExportMemoryBenchmark {
+	private int iLines, iColumns;
+	
+	public ExportMemoryBenchmark(int lines, int columns) {
+		iLines = lines; iColumns = columns;
+	}
+	
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+	
+	private static void gc() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {}
+		}
+	}
+	
+	protected void print(Printer printer) throws IOException {
+		Random random = new Random(42);
+		String[] header = new String[iColumns];
+		for (int c = 0; c < iColumns; c++)
+			header[c] = "Column " + (c + 1);
+		printer.printHeader(header);
+		for (int l = 0; l < iLines; l++) {
+			String[] line = new String[iColumns];
+			line[0] = String.valueOf(l + 1);
+			for (int c = 1; c < iColumns; c++)
+				line[c] = (c % 3 == 0 ? String.valueOf(random.nextInt(100000)) : "Value " + Long.toString(random.nextLong(), 36));
+			printer.printLine(line);
+			printer.flush();
+		}
+		printer.close();
+	}
+	
+	protected Printer createPrinter(String format, OutputStream output) {
+		if ("csv".equals(format))
+			return new CSVPrinter(new PrintWriter(new OutputStreamWriter(output)), false);
+		if ("json".equals(format))
+			return new JSONPrinter(new PrintWriter(new OutputStreamWriter(output)));
+		return new XLSPrinter(output, false);
+	}
+	
+	public void test(String format, boolean buffered) throws IOException {
+		gc();
+		final long base = usedMemory();
+		final long[] peak = new long[] { base };
+		final boolean[] done = new boolean[] { false };
+		Thread sampler = new Thread() {
+			@Override
+			public void run() {
+				while (!done[0]) {
+					peak[0] = Math.max(peak[0], usedMemory());
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) { break; }
+				}
+			}
+		};
+		sampler.setDaemon(true);
+		sampler.start();
+		CountingOutputStream output = new CountingOutputStream();
+		long t0 = System.currentTimeMillis();
+		Printer printer = createPrinter(format, output);
+		print(buffered ? new BufferedPrinter(printer) : printer);
+		long t1 = System.currentTimeMillis();
+		done[0] = true;
+		try {
+			sampler.join();
+		} catch (InterruptedException e) {}
+		System.out.println(format.toUpperCase() + (buffered ? " buffered: " : " streamed: ") + output.getCount() + " bytes, " + (t1 - t0) + " ms, peak heap " +
+				((peak[0] - base) >> 20) + " MB");
+	}
+	
+	public static void main(String[] args) {
+		try {
+			int lines = (args.length > 0 ? Integer.parseInt(args[0]) : 200000);
+			int columns = (args.length > 1 ? Integer.parseInt(args[1]) : 10);
+			ExportMemoryBenchmark test = new ExportMemoryBenchmark(lines, columns);
+			for (String format: new String[] {"csv", "json", "xls"}) {
+				test.test(format, true);
+				test.test(format, false);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private static class CountingOutputStream extends OutputStream {
+		private long iCount = 0;
+		
+		@Override
+		public void write(int b) { iCount ++; }
+		
+		@Override
+		public void write(byte[] b, int off, int len) { iCount += len; }
+		
+		public long getCount() { return iCount; }
+	}
+}
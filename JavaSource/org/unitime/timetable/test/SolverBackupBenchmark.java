@@ -0,0 +1,164 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.SAXReader;
+import org.dom4j.io.XMLWriter;
+import org.unitime.timetable.solver.ui.TimetableInfoFormat;
+
+/**
+ * Benchmark of the solver backup formats (see {@link org.unitime.timetable.solver.AbstractSolver#backup(File, String)}).
+ * An existing solver backup or solver XML export (of any solver type) is read, and then written and read back in the
+ * pretty-printed XML format (that was used before) and in the binary format (see {@link TimetableInfoFormat}) a number of times.
+ * The test prints the file sizes and the average write and read times of both formats and checks that the binary
+ * format reads back the same document.
+ * <br>
+ * Usage: SolverBackupBenchmark backup.xml [iterations]
+ *
+ * @author Tomas Muller
+ */
+public class SolverBackupBenchmark {
+	
+	private static void writeXml(Document document, File file) throws IOException {
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		try {
+			(new XMLWriter(os, OutputFormat.createPrettyPrint())).write(document);
+		} finally {
+			os.close();
+		}
+	}
+	
+	private static Document readXml(File file) throws DocumentException {
+		return (new SAXReader()).read(file);
+	}
+	
+	private static void writeBinary(Document document, File file) throws IOException {
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		try {
+			TimetableInfoFormat.write(document, true, os);
+		} finally {
+			os.close();
+		}
+	}
+	
+	private static Document readBinary(File file) throws IOException, DocumentException {
+		InputStream is = new BufferedInputStream(new FileInputStream(file), 65536);
+		try {
+			return TimetableInfoFormat.read(is);
+		} finally {
+			is.close();
+		}
+	}
+	
+	/** Comments and processing instructions are not kept by the binary format (the solvers do not write them) */
+	private static void removeComments(Element element) {
+		for (Iterator i = element.nodeIterator(); i.hasNext(); ) {
+			Node node = (Node)i.next();
+			if (node.getNodeType() == Node.COMMENT_NODE || node.getNodeType() == Node.PROCESSING_INSTRUCTION_NODE)
+				i.remove();
+			else if (node.getNodeType() == Node.ELEMENT_NODE)
+				removeComments((Element)node);
+		}
+	}
+	
+	/** Compare element names, attributes, texts, and child elements (CDATA sections are read back as texts) */
+	private static boolean same(Element e1, Element e2) {
+		if (!e1.getQualifiedName().equals(e2.getQualifiedName()) || !e1.getText().equals(e2.getText())) return false;
+		if (e1.attributeCount() != e2.attributeCount()) return false;
+		for (int i = 0; i < e1.attributeCount(); i++) {
+			Attribute a1 = e1.attribute(i), a2 = e2.attribute(i);
+			if (!a1.getQualifiedName().equals(a2.getQualifiedName()) || !a1.getValue().equals(a2.getValue())) return false;
+		}
+		List<Element> c1 = e1.elements(), c2 = e2.elements();
+		if (c1.size() != c2.size()) return false;
+		for (int i = 0; i < c1.size(); i++)
+			if (!same(c1.get(i), c2.get(i))) return false;
+		return true;
+	}
+	
+	private static String ms(long nanos, int iterations) {
+		return Math.round(nanos / 10000.0 / iterations) / 100.0 + " ms";
+	}
+
+	public static void main(String[] args) {
+		try {
+			if (args.length == 0) {
+				System.err.println("Usage: SolverBackupBenchmark backup.xml [iterations]");
+				return;
+			}
+			Document document = readXml(new File(args[0]));
+			removeComments(document.getRootElement());
+			int iterations = (args.length > 1 ? Integer.parseInt(args[1]) : 10);
+			
+			File xmlFile = File.createTempFile("backup", ".backup.xml");
+			File binFile = File.createTempFile("backup", ".backup.bin");
+			try {
+				// warm-up and check
+				writeXml(document, xmlFile);
+				writeBinary(document, binFile);
+				readXml(xmlFile);
+				if (!same(document.getRootElement(), readBinary(binFile).getRootElement()))
+					throw new IllegalStateException("Binary backup does not read back the same document.");
+				System.out.println("Binary format reads back the same document.");
+				
+				long xmlWrite = 0, xmlRead = 0, binWrite = 0, binRead = 0;
+				for (int i = 0; i < iterations; i++) {
+					long t0 = System.nanoTime();
+					writeXml(document, xmlFile);
+					long t1 = System.nanoTime();
+					readXml(xmlFile);
+					long t2 = System.nanoTime();
+					writeBinary(document, binFile);
+					long t3 = System.nanoTime();
+					readBinary(binFile);
+					long t4 = System.nanoTime();
+					xmlWrite += t1 - t0; xmlRead += t2 - t1; binWrite += t3 - t2; binRead += t4 - t3;
+				}
+				System.out.println("XML:    " + xmlFile.length() + " bytes, write " + ms(xmlWrite, iterations) + ", read " + ms(xmlRead, iterations));
+				System.out.println("Binary: " + binFile.length() + " bytes, write " + ms(binWrite, iterations) + ", read " + ms(binRead, iterations));
+				System.out.println("Reduction: " + Math.round(100.0 * (xmlFile.length() - binFile.length()) / xmlFile.length()) + "% size, " +
+						Math.round(100.0 * (xmlWrite - binWrite) / xmlWrite) + "% write time, " +
+						Math.round(100.0 * (xmlRead - binRead) / xmlRead) + "% read time");
+			} finally {
+				xmlFile.delete();
+				binFile.delete();
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.model.SolverInfo;
+import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.solver.ui.TimetableInfoFormat;
+
+/**
+ * Conversion of the existing solver infos (solution, assignment, and constraint infos, and the info files in the blob folder)
+ * between the legacy GZIP-compressed XML format and the binary format (see {@link TimetableInfoFormat}).
+ * Both formats can be read, so the conversion is not required and the application can run while it is being done.
+ * The infos are converted in batches, each batch is committed in its own transaction.
+ * <br>
+ * Usage: SolverInfoMigration [binary|xml] [batch size]
+ *
+ * @author Tomas Muller
+ */
+public class SolverInfoMigration {
+	private boolean iBinary;
+	private int iBatchSize;
+	
+	public SolverInfoMigration(boolean binary, int batchSize) {
+		iBinary = binary; iBatchSize = batchSize;
+	}
+	
+	public void convertDatabase() {
+		List<Long> ids = null;
+		Session hibSession = new _RootDAO().createNewSession();
+		try {
+			ids = (List<Long>)hibSession.createQuery("select i.uniqueId from SolverInfo i order by i.uniqueId").list();
+		} finally {
+			hibSession.close();
+		}
+		System.out.println("Converting " + ids.size() + " solver infos to the " + (iBinary ? "binary" : "XML") + " format...");
+		int converted = 0;
+		long before = 0, after = 0;
+		for (int i = 0; i < ids.size(); i += iBatchSize) {
+			List<Long> batch = new ArrayList<Long>(ids.subList(i, Math.min(i + iBatchSize, ids.size())));
+			hibSession = new _RootDAO().createNewSession();
+			Transaction tx = hibSession.beginTransaction();
+			try {
+				for (SolverInfo info: (List<SolverInfo>)hibSession.createQuery(
+						"from SolverInfo i where i.uniqueId in (:ids)").setParameterList("ids", batch).list()) {
+					if (info.getData() == null) continue;
+					before += info.getData().length;
+					if (info.convert(iBinary)) {
+						hibSession.update(info);
+						converted ++;
+					}
+					after += info.getData().length;
+				}
+				hibSession.flush();
+				tx.commit();
+			} catch (RuntimeException e) {
+				tx.rollback();
+				throw e;
+			} finally {
+				hibSession.close();
+			}
+			System.out.println("  " + Math.min(i + iBatchSize, ids.size()) + " of " + ids.size() + " processed (" + converted + " converted)");
+		}
+		System.out.println("Converted " + converted + " solver infos, " + before + " bytes before, " + after + " bytes after.");
+	}
+	
+	public void convertFiles(File folder) throws Exception {
+		File[] files = folder.listFiles();
+		if (files == null) return;
+		int converted = 0;
+		for (File file: files) {
+			if (file.isDirectory()) {
+				convertFiles(file);
+				continue;
+			}
+			if (!file.getName().endsWith(".zxml")) continue;
+			byte[] data = read(file);
+			byte[] newData = TimetableInfoFormat.convert(data, iBinary);
+			if (newData == data) continue;
+			File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(newData);
+			} finally {
+				out.close();
+			}
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			converted ++;
+		}
+		if (converted > 0)
+			System.out.println("Converted " + converted + " info files in " + folder);
+	}
+	
+	private static byte[] read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return IOUtils.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	public static void main(String[] args) {
+		try {
+			HibernateUtil.configureHibernate(new Properties());
+			boolean binary = (args.length <= 0 || !"xml".equalsIgnoreCase(args[0]));
+			int batchSize = (args.length > 1 ? Integer.parseInt(args[1]) : 1000);
+			SolverInfoMigration migration = new SolverInfoMigration(binary, batchSize);
+			migration.convertDatabase();
+			File blobs = ApplicationProperties.getBlobFolder();
+			if (blobs.exists()) migration.convertFiles(blobs);
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			HibernateUtil.closeHibernate();
+		}
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.unitime.timetable.dataexchange.StreamingXMLWriter;
+
+/**
+ * Benchmark of the streaming XML data exchange export (see {@link org.unitime.timetable.dataexchange.BaseExport#streamElements(Document)}).
+ * A large student enrollments export (as created by {@link org.unitime.timetable.dataexchange.StudentEnrollmentExport}) is generated
+ * for a number of students with a number of classes each. It is first written as a whole document (this is how all the exports
+ * were done before) and then using the {@link StreamingXMLWriter}, writing the students in batches of 100 as they are created.
+ * The output is discarded (only counted and hashed), the test checks that both outputs are identical and prints the number of bytes,
+ * the time, and the peak heap usage (sampled every millisecond) of each run.
+ * <br>
+ * Usage: XmlExportBenchmark [students] [classes per student] [gzip]
+ *
+ * @author Tomas Muller
+ */
+public class XmlExportBenchmark {
+	private int iStudents, iClasses;
+	private boolean iGzip;
+	
+	public XmlExportBenchmark(int students, int classes, boolean gzip) {
+		iStudents = students; iClasses = classes; iGzip = gzip;
+	}
+	
+	private static long usedMemory() {
+		Runtime rt = Runtime.getRuntime();
+		return rt.totalMemory() - rt.freeMemory();
+	}
+	
+	private static void gc() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {}
+		}
+	}
+	
+	protected void export(Document document, StreamingXMLWriter writer) throws IOException {
+		Random random = new Random(42);
+		Element root = document.addElement("studentEnrollments");
+		root.addAttribute("campus", "PWL");
+		root.addAttribute("year", "2026");
+		root.addAttribute("term", "Fall");
+		document.addDocType("studentEnrollments", "-//UniTime//UniTime Student Enrollments DTD/EN", "http://www.unitime.org/interface/StudentEnrollment.dtd");
+		for (int s = 0; s < iStudents; s++) {
+			if (writer != null && s > 0 && s % 100 == 0)
+				writer.streamElements(document);
+			Element studentEl = root.addElement("student");
+			studentEl.addAttribute("externalId", String.valueOf(1000000 + s));
+			for (int c = 0; c < iClasses; c++) {
+				Element classEl = studentEl.addElement("class");
+				int subject = random.nextInt(50), course = 100 + random.nextInt(400);
+				classEl.addAttribute("externalId", String.valueOf(10000000 + random.nextInt(1000000)));
+				classEl.addAttribute("id", String.valueOf(20000000 + random.nextInt(1000000)));
+				classEl.addAttribute("subject", "SUBJ" + subject);
+				classEl.addAttribute("courseNbr", String.valueOf(course));
+				classEl.addAttribute("type", random.nextBoolean() ? "Lec" : "Rec");
+				classEl.addAttribute("suffix", String.valueOf(1 + random.nextInt(20)));
+			}
+		}
+	}
+	
+	public byte[] test(boolean streaming) throws IOException {
+		gc();
+		final long base = usedMemory();
+		final long[] peak = new long[] { base };
+		final boolean[] done = new boolean[] { false };
+		Thread sampler = new Thread() {
+			@Override
+			public void run() {
+				while (!done[0]) {
+					peak[0] = Math.max(peak[0], usedMemory());
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) { break; }
+				}
+			}
+		};
+		sampler.setDaemon(true);
+		sampler.start();
+		DigestOutputStream output = new DigestOutputStream();
+		OutputStream out = (iGzip ? new GZIPOutputStream(output) : output);
+		long t0 = System.currentTimeMillis();
+		Document document = DocumentHelper.createDocument();
+		if (streaming) {
+			StreamingXMLWriter writer = new StreamingXMLWriter(out);
+			export(document, writer);
+			writer.finish(document);
+		} else {
+			export(document, null);
+			new XMLWriter(out, OutputFormat.createPrettyPrint()).write(document);
+		}
+		out.flush(); out.close();
+		long t1 = System.currentTimeMillis();
+		done[0] = true;
+		try {
+			sampler.join();
+		} catch (InterruptedException e) {}
+		System.out.println((streaming ? "Streamed: " : "Document: ") + output.getCount() + " bytes, " + (t1 - t0) + " ms, peak heap " +
+				((peak[0] - base) >> 20) + " MB");
+		return output.getDigest();
+	}
+	
+	public static void main(String[] args) {
+		try {
+			int students = (args.length > 0 ? Integer.parseInt(args[0]) : 100000);
+			int classes = (args.length > 1 ? Integer.parseInt(args[1]) : 10);
+			boolean gzip = (args.length > 2 ? "true".equals(args[2]) || "gzip".equals(args[2]) : false);
+			
+			// an export with no elements is written as a whole document
+			XmlExportBenchmark empty = new XmlExportBenchmark(0, classes, gzip);
+			if (!Arrays.equals(empty.test(false), empty.test(true)))
+				throw new IllegalStateException("Streamed output of an empty export differs.");
+			
+			XmlExportBenchmark test = new XmlExportBenchmark(students, classes, gzip);
+			byte[] document = test.test(false);
+			byte[] streamed = test.test(true);
+			if (!Arrays.equals(document, streamed))
+				throw new IllegalStateException("Streamed output differs.");
+			System.out.println("Streamed output is identical.");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	private static class DigestOutputStream extends OutputStream {
+		private long iCount = 0;
+		private MessageDigest iDigest;
+		
+		private DigestOutputStream() throws IOException {
+			try {
+				iDigest = MessageDigest.getInstance("MD5");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+		}
+		
+		@Override
+		public void write(int b) { iCount ++; iDigest.update((byte)b); }
+		
+		@Override
+		public void write(byte[] b, int off, int len) { iCount += len; iDigest.update(b, off, len); }
+		
+		public long getCount() { return iCount; }
+		
+		public byte[] getDigest() { return iDigest.digest(); }
+	}
+}
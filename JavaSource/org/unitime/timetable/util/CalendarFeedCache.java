@@ -0,0 +1,406 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.util;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.Class_;
+import org.unitime.timetable.model.CourseOffering;
+import org.unitime.timetable.model.DatePattern;
+import org.unitime.timetable.model.DepartmentStatusType;
+import org.unitime.timetable.model.DepartmentalInstructor;
+import org.unitime.timetable.model.Event;
+import org.unitime.timetable.model.Exam;
+import org.unitime.timetable.model.ExamPeriod;
+import org.unitime.timetable.model.ExamStatus;
+import org.unitime.timetable.model.InstrOfferingConfig;
+import org.unitime.timetable.model.InstructionalOffering;
+import org.unitime.timetable.model.Location;
+import org.unitime.timetable.model.SchedulingSubpart;
+import org.unitime.timetable.model.Session;
+import org.unitime.timetable.model.Solution;
+import org.unitime.timetable.model.Student;
+
+/**
+ * Cache of the rendered iCalendar feeds (see {@link org.unitime.timetable.gwt.server.CalendarServlet}), keyed by the calendar query.
+ * Calendar clients poll the subscription URLs very often, so a feed is rendered only when it is not cached or when the
+ * cached copy is no longer valid.
+ * <br>
+ * Each feed remembers the objects it has been rendered from (its classes, offerings, exams, events, and the student or instructor
+ * records of its user, see {@link Dependency}). A change of such an object only drops the feeds that depend on it
+ * (see {@link #invalidate(Dependency, Long)}), e.g., an enrollment change only drops the feeds of the student. Changes that may affect
+ * any feed of an academic session (e.g., a status change or a new solution commit) drop all the feeds of the session
+ * (see {@link #invalidate(Long)}). Changes made within a transaction only drop the feeds once the transaction is committed
+ * (see {@link #invalidateAfterCommit(org.hibernate.Session, Long, Object)}). Changes that are not tracked (e.g., a new student record of a user that had no
+ * classes before, or changes made on other servers) are picked up after unitime.calendar.cache.ttl seconds.
+ * At most unitime.calendar.cache.size feeds are kept (least recently used first out).
+ * <br>
+ * Each feed has an entity tag (MD5 of its content) and a last modified time, which only changes when the content changes,
+ * so that conditional requests can be answered with 304 Not Modified.
+ *
+ * @author Tomas Muller
+ */
+public class CalendarFeedCache {
+	private static final int sMaxInvalidations = 10000;
+	private static CalendarFeedCache sInstance = new CalendarFeedCache();
+	private Map<String, Feed> iFeeds = new LinkedHashMap<String, Feed>(1024, 0.75f, true);
+	private Map<String, Set<String>> iIndex = new HashMap<String, Set<String>>();
+	private Map<Long, Long> iVersions = new LinkedHashMap<Long, Long>();
+	private Map<String, Long> iInvalidations = new LinkedHashMap<String, Long>();
+	private long iSequence = 0, iForgotten = 0;
+	private long iHits = 0, iMisses = 0;
+	
+	/**
+	 * Objects a feed can depend on
+	 */
+	public static enum Dependency {
+		CLASS,
+		OFFERING,
+		EXAM,
+		EVENT,
+		STUDENT,
+		INSTRUCTOR,
+		;
+		
+		public String key(Long id) { return name() + ":" + id; }
+	}
+	
+	private CalendarFeedCache() {}
+	
+	public static CalendarFeedCache getInstance() { return sInstance; }
+	
+	/** Invalidate all the cached feeds of the given academic session */
+	public static void invalidate(Long sessionId) {
+		sInstance.bumpVersion(sessionId);
+	}
+	
+	/** Invalidate the cached feeds that depend on the given object */
+	public static void invalidate(Dependency dependency, Long id) {
+		if (id != null)
+			sInstance.drop(dependency.key(id));
+	}
+	
+	/** Invalidate the cached feeds that depend on any of the given objects */
+	public static void invalidate(Dependency dependency, Collection<Long> ids) {
+		if (ids != null)
+			for (Long id: ids)
+				invalidate(dependency, id);
+	}
+	
+	/**
+	 * Invalidate the cached feeds that can be affected by a change of the given object (e.g., when the change is logged in the change log):
+	 * feeds that depend on a class, an offering, an exam, an event, a student, or an instructor are dropped; all the feeds of the session
+	 * are dropped when the session, a solution, a date pattern, a room, an exam period, or a status changes.
+	 * Other changes do not affect the feeds.
+	 */
+	public static void invalidate(Long sessionId, Object object) {
+		Invalidation invalidation = invalidation(sessionId, object);
+		if (invalidation != null) invalidation.run();
+	}
+	
+	/**
+	 * Same as {@link #invalidate(Long)}, but when the given hibernate session has an active transaction, the feeds are only
+	 * invalidated after the transaction is committed (a feed rendered before the commit would contain the old data).
+	 */
+	public static void invalidateAfterCommit(org.hibernate.Session hibSession, Long sessionId) {
+		afterCommit(hibSession, new Invalidation(sessionId));
+	}
+	
+	/** Same as {@link #invalidate(Dependency, Long)}, but only after the active transaction (if any) is committed */
+	public static void invalidateAfterCommit(org.hibernate.Session hibSession, Dependency dependency, Long id) {
+		if (id != null)
+			afterCommit(hibSession, new Invalidation(null, dependency, id));
+	}
+	
+	/** Same as {@link #invalidate(Dependency, Collection)}, but only after the active transaction (if any) is committed */
+	public static void invalidateAfterCommit(org.hibernate.Session hibSession, Dependency dependency, Collection<Long> ids) {
+		if (ids != null && !ids.isEmpty())
+			afterCommit(hibSession, new Invalidation(null, dependency, new ArrayList<Long>(ids)));
+	}
+	
+	/** Same as {@link #invalidate(Long, Object)}, but only after the active transaction (if any) is committed */
+	public static void invalidateAfterCommit(org.hibernate.Session hibSession, Long sessionId, Object object) {
+		Invalidation invalidation = invalidation(sessionId, object);
+		if (invalidation != null) afterCommit(hibSession, invalidation);
+	}
+	
+	private static void afterCommit(org.hibernate.Session hibSession, Invalidation invalidation) {
+		if (hibSession != null && hibSession.getTransaction() != null && hibSession.getTransaction().isActive())
+			hibSession.getTransaction().registerSynchronization(invalidation);
+		else
+			invalidation.run();
+	}
+	
+	private static Invalidation invalidation(Long sessionId, Object object) {
+		if (object instanceof Class_) {
+			return new Invalidation(sessionId, Dependency.CLASS, ((Class_)object).getUniqueId());
+		} else if (object instanceof InstructionalOffering) {
+			return new Invalidation(sessionId, Dependency.OFFERING, ((InstructionalOffering)object).getUniqueId());
+		} else if (object instanceof CourseOffering) {
+			return new Invalidation(sessionId, Dependency.OFFERING, ((CourseOffering)object).getInstructionalOffering().getUniqueId());
+		} else if (object instanceof InstrOfferingConfig) {
+			return new Invalidation(sessionId, Dependency.OFFERING, ((InstrOfferingConfig)object).getInstructionalOffering().getUniqueId());
+		} else if (object instanceof SchedulingSubpart) {
+			return new Invalidation(sessionId, Dependency.OFFERING, ((SchedulingSubpart)object).getInstrOfferingConfig().getInstructionalOffering().getUniqueId());
+		} else if (object instanceof Exam) {
+			return new Invalidation(sessionId, Dependency.EXAM, ((Exam)object).getUniqueId());
+		} else if (object instanceof Event) {
+			return new Invalidation(sessionId, Dependency.EVENT, ((Event)object).getUniqueId());
+		} else if (object instanceof Student) {
+			return new Invalidation(sessionId, Dependency.STUDENT, ((Student)object).getUniqueId());
+		} else if (object instanceof DepartmentalInstructor) {
+			return new Invalidation(sessionId, Dependency.INSTRUCTOR, ((DepartmentalInstructor)object).getUniqueId());
+		} else if (object instanceof Session || object instanceof Solution || object instanceof DatePattern || object instanceof Location ||
+				object instanceof ExamPeriod || object instanceof ExamStatus || object instanceof DepartmentStatusType) {
+			return new Invalidation(sessionId);
+		}
+		return null;
+	}
+	
+	/**
+	 * A pending invalidation: feeds that depend on the given objects, or all the feeds of the session when there is no dependency.
+	 * The object ids are resolved when the invalidation is created (while the hibernate session is still open).
+	 */
+	private static class Invalidation implements Synchronization {
+		private Long iSessionId;
+		private Dependency iDependency;
+		private Collection<Long> iIds;
+		
+		Invalidation(Long sessionId, Dependency dependency, Collection<Long> ids) {
+			iSessionId = sessionId; iDependency = dependency; iIds = ids;
+		}
+		
+		Invalidation(Long sessionId) {
+			this(sessionId, null, (Collection<Long>)null);
+		}
+		
+		Invalidation(Long sessionId, Dependency dependency, Long id) {
+			this(sessionId, dependency, id == null ? null : Arrays.asList(id));
+		}
+		
+		void run() {
+			if (iDependency == null)
+				invalidate(iSessionId);
+			else
+				invalidate(iDependency, iIds);
+		}
+
+		@Override
+		public void beforeCompletion() {}
+
+		@Override
+		public void afterCompletion(int status) {
+			if (status == Status.STATUS_COMMITTED) run();
+		}
+	}
+	
+	/** Invalidate all the cached feeds */
+	public static void invalidateAll() {
+		sInstance.clear();
+	}
+	
+	protected synchronized void bumpVersion(Long sessionId) {
+		if (sessionId == null) {
+			clear();
+			return;
+		}
+		Long version = iVersions.get(sessionId);
+		iVersions.put(sessionId, version == null ? 1l : version + 1);
+	}
+	
+	protected synchronized void clear() {
+		iFeeds.clear();
+		iIndex.clear();
+		for (Map.Entry<Long, Long> e: iVersions.entrySet())
+			e.setValue(e.getValue() + 1);
+	}
+	
+	/** Drop the feeds that depend on the given object, remember the invalidation so that a feed that is being rendered is not cached */
+	protected synchronized void drop(String dependency) {
+		iSequence ++;
+		iInvalidations.remove(dependency);
+		iInvalidations.put(dependency, iSequence);
+		if (iInvalidations.size() > sMaxInvalidations) {
+			Iterator<Long> i = iInvalidations.values().iterator();
+			iForgotten = i.next(); i.remove();
+		}
+		Set<String> keys = iIndex.remove(dependency);
+		if (keys != null)
+			for (String key: new ArrayList<String>(keys))
+				remove(key, iFeeds.remove(key));
+	}
+	
+	private void remove(String key, Feed feed) {
+		if (feed == null) return;
+		for (String dependency: feed.getDependencies()) {
+			Set<String> keys = iIndex.get(dependency);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) iIndex.remove(dependency);
+			}
+		}
+	}
+	
+	/** Current version of the cached feeds of the academic session, to be passed to {@link #put(String, Long, long, long, byte[], Feed, Collection)} */
+	public synchronized long getVersion(Long sessionId) {
+		Long version = iVersions.get(sessionId);
+		return (version == null ? 0l : version);
+	}
+	
+	/** Current invalidation sequence, to be passed to {@link #put(String, Long, long, long, byte[], Feed, Collection)} */
+	public synchronized long getSequence() {
+		return iSequence;
+	}
+	
+	public static boolean isEnabled() {
+		return ApplicationProperty.CalendarFeedCacheSize.intValue() > 0;
+	}
+	
+	/** Cached feed, null if there is no valid feed for the given query */
+	public synchronized Feed get(String key, Long sessionId) {
+		Feed feed = iFeeds.get(key);
+		if (feed == null) { iMisses ++; return null; }
+		if (feed.getVersion() != getVersion(sessionId) || feed.getAge() > 1000l * ApplicationProperty.CalendarFeedCacheTimeToLive.intValue()) {
+			iMisses ++; return null;
+		}
+		iHits ++;
+		return feed;
+	}
+	
+	/** Last feed for the given query, even if no longer valid (e.g., to keep the last modified time when the content is the same) */
+	public synchronized Feed getLast(String key) {
+		return iFeeds.get(key);
+	}
+	
+	/**
+	 * Create a feed from the rendered content and put it in the cache
+	 * @param version version of the academic session when the rendering started (see {@link #getVersion(Long)})
+	 * @param sequence invalidation sequence when the rendering started (see {@link #getSequence()}), the feed is not cached when any of its dependencies has been invalidated since
+	 * @param previous previous feed of the same query (if any): when the content has not changed, the last modified time is kept
+	 * @param dependencies objects the feed has been rendered from (see {@link Dependency#key(Long)})
+	 */
+	public Feed put(String key, Long sessionId, long version, long sequence, byte[] data, Feed previous, Collection<String> dependencies) {
+		Feed feed = new Feed(data, version, previous, dependencies);
+		if (!isEnabled()) return feed;
+		synchronized (this) {
+			if (sequence < iSequence) {
+				if (sequence < iForgotten) return feed;
+				for (String dependency: feed.getDependencies()) {
+					Long invalidated = iInvalidations.get(dependency);
+					if (invalidated != null && invalidated > sequence) return feed;
+				}
+			}
+			remove(key, iFeeds.put(key, feed));
+			for (String dependency: feed.getDependencies()) {
+				Set<String> keys = iIndex.get(dependency);
+				if (keys == null) {
+					keys = new HashSet<String>();
+					iIndex.put(dependency, keys);
+				}
+				keys.add(key);
+			}
+			int limit = ApplicationProperty.CalendarFeedCacheSize.intValue();
+			for (Iterator<Map.Entry<String, Feed>> i = iFeeds.entrySet().iterator(); i.hasNext() && iFeeds.size() > limit; ) {
+				Map.Entry<String, Feed> e = i.next(); i.remove();
+				remove(e.getKey(), e.getValue());
+			}
+		}
+		return feed;
+	}
+	
+	public synchronized int size() { return iFeeds.size(); }
+	public synchronized long getHits() { return iHits; }
+	public synchronized long getMisses() { return iMisses; }
+	
+	@Override
+	public synchronized String toString() {
+		return "CalendarFeedCache{size=" + iFeeds.size() + ", hits=" + iHits + ", misses=" + iMisses + "}";
+	}
+	
+	/**
+	 * Rendered feed
+	 */
+	public static class Feed {
+		private byte[] iData;
+		private String iETag;
+		private long iLastModified, iCreated, iVersion;
+		private Set<String> iDependencies;
+		
+		protected Feed(byte[] data, long version, Feed previous, Collection<String> dependencies) {
+			iData = data;
+			iVersion = version;
+			iDependencies = (dependencies == null ? new HashSet<String>() : new HashSet<String>(dependencies));
+			iCreated = System.currentTimeMillis();
+			iETag = "\"" + md5(data) + "\"";
+			// HTTP dates have a precision of one second
+			iLastModified = (previous != null && previous.getETag().equals(iETag) ? previous.getLastModified() : 1000l * (iCreated / 1000l));
+		}
+		
+		public byte[] getData() { return iData; }
+		public String getETag() { return iETag; }
+		public long getLastModified() { return iLastModified; }
+		public long getVersion() { return iVersion; }
+		public Set<String> getDependencies() { return iDependencies; }
+		public long getAge() { return System.currentTimeMillis() - iCreated; }
+		
+		/**
+		 * Check the conditional request headers
+		 * @param ifNoneMatch value of the If-None-Match header (null if not present)
+		 * @param ifModifiedSince value of the If-Modified-Since header (-1 if not present)
+		 * @return true if the client already has this feed
+		 */
+		public boolean isNotModified(String ifNoneMatch, long ifModifiedSince) {
+			if (ifNoneMatch != null) {
+				for (String tag: ifNoneMatch.split(",")) {
+					tag = tag.trim();
+					if (tag.startsWith("W/")) tag = tag.substring(2);
+					if (tag.equals(iETag) || tag.equals("*")) return true;
+				}
+				return false;
+			}
+			return ifModifiedSince >= 0 && iLastModified <= ifModifiedSince;
+		}
+		
+		private static String md5(byte[] data) {
+			try {
+				byte[] digest = MessageDigest.getInstance("MD5").digest(data);
+				StringBuffer ret = new StringBuffer();
+				for (byte b: digest)
+					ret.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+				return ret.toString();
+			} catch (Exception e) {
+				return Integer.toHexString(Arrays.hashCode(data));
+			}
+		}
+	}
+}
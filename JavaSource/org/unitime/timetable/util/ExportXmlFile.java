@@ -20,11 +20,10 @@
 package org.unitime.timetable.util;
 
 import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.log4j.Logger;
-import org.dom4j.Document;
-import org.dom4j.io.OutputFormat;
-import org.dom4j.io.XMLWriter;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.dataexchange.DataExchangeHelper;
@@ -39,7 +38,7 @@ import org.unitime.timetable.model.dao.SessionDAO;
  * </code>
  * Where tmtbl.custom.properties points to UniTime custom properties (if there are any), session is the name of 
  * the academic session (term + year + initiative, e.g., Fall2013PWL), type is the root element of the export
- * (e.g., offerings), and output.xml is the output file.
+ * (e.g., offerings), and output.xml is the output file (use output.xml.gz to get a gzip-compressed file).
  *
  * @author Tomas Muller
  */
@@ -60,17 +59,14 @@ public class ExportXmlFile {
 	        if (session == null)
 	        	throw new Exception("Session " + args[0] + " not found.");
 	        
-	        // Export an XML file
-	        Document document = DataExchangeHelper.exportDocument(args[1], session, ApplicationProperties.getProperties(), null);
-	        if (document==null)
-	        	throw new Exception("No XML document has been created.");
-	        
-	        FileOutputStream fos = new FileOutputStream(args[2]);
+	        // Export an XML file (compressed when the output file name ends with .gz)
+	        OutputStream out = new FileOutputStream(args[2]);
+	        if (args[2].endsWith(".gz")) out = new GZIPOutputStream(out);
 	        try {
-	        	(new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(document);
-	        	fos.flush();
+	        	DataExchangeHelper.exportStream(args[1], session, ApplicationProperties.getProperties(), out, null);
+	        	out.flush();
 	        } finally {
-	        	fos.close();
+	        	out.close();
             }
 	        
 		} catch (Exception e) {
@@ -19,34 +19,53 @@
 */
 package org.unitime.timetable.util.queue;
 
+import java.io.Serializable;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.activation.DataSource;
 import javax.activation.FileDataSource;
 
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.onlinesectioning.server.ActionStatistics.Histogram;
 
 /**
+ * Queue processor that executes the queue items in a pool of worker threads (unitime.queue.workers).
+ * When a worker is available, the next item is selected from the waiting items as follows:
+ * <ul>
+ * <li>items whose resource class has reached its limit (unitime.queue.limit.[class], see {@link QueueItem#resourceClass()})
+ * or that share an exclusive key with a running item (see {@link QueueItem#exclusiveKey()}) are skipped,
+ * <li>items with a higher {@link QueueItem#priority()} go first,
+ * <li>then items of the owners with fewer items running (fair scheduling among users),
+ * <li>and finally the items are taken in the order in which they were added.
+ * </ul>
+ * Queue and run times of the executed items are recorded for each item type (see {@link #getStatistics()}).
  * 
  * @author Tomas Muller
  *
  */
-
 public class LocalQueueProcessor extends Thread implements QueueProcessor {
     protected static Logger sLog = Logger.getLogger(QueueProcessor.class);
     protected static long sTimeToKeep = 1000 * 60 * 60 * 10; // Keep done items for at least 10 hours.
     protected static long sTimeToSleep = 1000 * 60 * 60; // Sleep no more than an hour.
 
-	private Queue<QueueItem> iQueue = new LinkedList<QueueItem>();
+	private List<QueueItem> iQueue = new LinkedList<QueueItem>();
 	private List<QueueItem> iFinished = new ArrayList<QueueItem>();
-	private QueueItem iItem = null;
-	private RunningItem iRunningItem = null;
+	private List<RunningItem> iRunning = new ArrayList<RunningItem>();
+	private ConcurrentMap<String, ItemCounter> iCounters = new ConcurrentHashMap<String, ItemCounter>();
 	
 	protected static LocalQueueProcessor sInstance = null;
 
@@ -70,48 +89,113 @@ public class LocalQueueProcessor extends Thread implements QueueProcessor {
 					if (item.finished() == null || now - item.finished().getTime() > sTimeToKeep) i.remove();
 				}
 				
-				// Check for a new item from the queue
-				if (iQueue.isEmpty()) {
-					// Sleep for it, if there is nothing to do
-					sLog.info("Waiting for tasks to run...");
-					try {
-						iQueue.wait(sTimeToSleep);
-					} catch (InterruptedException e) {
-						sLog.info("Interrupted.");
-					}
+				// Start as many items as there are available workers
+				int workers = getWorkers();
+				while (iRunning.size() < workers) {
+					QueueItem item = nextItem();
+					if (item == null) break;
+					iQueue.remove(item);
+					sLog.info("Executing " + item.name());
+					RunningItem running = new RunningItem(this, item);
+					iRunning.add(running);
+					running.start();
 				}
 				
-				// Take new item from the top of the queue
-				iItem = iQueue.poll();
-				
-				// Null if queue is empty
-				if (iItem == null) continue;
-			}
-			
-			// Execute the item
-			sLog.info("Executing " + iItem.name());
-			iRunningItem = new RunningItem(iItem);
-			iRunningItem.start();
-			try {
-				iRunningItem.join();
-			} catch (InterruptedException e) {
-				sLog.info("Task " + iItem.name() + " was interrupted.");
+				// Sleep until an item is added or finished
+				if (iQueue.isEmpty())
+					sLog.info("Waiting for tasks to run...");
+				try {
+					iQueue.wait(sTimeToSleep);
+				} catch (InterruptedException e) {
+					sLog.info("Interrupted.");
+				}
 			}
-			
-			sLog.info("Task " + iItem.name() + (iItem.hasError() ? " failed (" + iItem.error().getMessage() + ")." : " is done."));
-
-			// Put the item into the list of finished items
-			synchronized (iQueue) {
-				iFinished.add(iItem);
-				
-				iItem = null;
-			}				
+		}
+		
+		synchronized (iQueue) {
+			for (RunningItem running: iRunning)
+				running.cancel();
 		}
 		
 		sLog.info("Queue processor is down.");
 		sInstance = null;
 	}
 	
+	/** Select the next item to execute, must be called while holding the queue lock */
+	protected QueueItem nextItem() {
+		Map<String, Integer> classes = new HashMap<String, Integer>();
+		Map<String, Integer> owners = new HashMap<String, Integer>();
+		List<String> keys = new ArrayList<String>();
+		for (RunningItem running: iRunning) {
+			QueueItem item = running.getItem();
+			inc(classes, item.resourceClass());
+			inc(owners, item.getOwnerId());
+			if (item.exclusiveKey() != null) keys.add(item.exclusiveKey());
+		}
+		QueueItem best = null;
+		int bestOwner = 0;
+		for (QueueItem item: iQueue) {
+			if (item.exclusiveKey() != null && keys.contains(item.exclusiveKey())) continue;
+			int limit = getLimit(item.resourceClass());
+			if (limit > 0 && get(classes, item.resourceClass()) >= limit) continue;
+			int owner = get(owners, item.getOwnerId());
+			if (best == null || item.priority() > best.priority() || (item.priority() == best.priority() && owner < bestOwner)) {
+				best = item; bestOwner = owner;
+			}
+		}
+		return best;
+	}
+	
+	private static void inc(Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+	
+	private static int get(Map<String, Integer> counts, String key) {
+		Integer count = counts.get(key);
+		return (count == null ? 0 : count);
+	}
+	
+	/** Maximal number of items of the given resource class that can be executed at the same time, 0 for no limit */
+	protected int getLimit(String resourceClass) {
+		if (resourceClass == null) return 0;
+		Integer limit = ApplicationProperty.QueueProcessorLimit.intValue(resourceClass.replace(' ', '_'));
+		return (limit == null ? 0 : limit.intValue());
+	}
+	
+	/** Number of items that can be executed at the same time */
+	protected static int getWorkers() {
+		Integer workers = ApplicationProperty.QueueProcessorWorkers.intValue();
+		return (workers == null ? 1 : Math.max(1, workers.intValue()));
+	}
+	
+	/** Called by the worker when the item has been executed */
+	protected void finished(RunningItem running) {
+		QueueItem item = running.getItem();
+		sLog.info("Task " + item.name() + (item.hasError() ? " failed (" + item.error().getMessage() + ")." : " is done."));
+		ItemCounter counter = getCounter(item.type());
+		counter.iQueueTime.record(1000000l * item.queueTime());
+		counter.iRunTime.record(1000000l * item.runTime());
+		if (item.hasError()) counter.iFailed.incrementAndGet();
+		
+		// Put the item into the list of finished items
+		synchronized (iQueue) {
+			iRunning.remove(running);
+			iFinished.add(item);
+			iQueue.notify();
+		}
+	}
+	
+	protected ItemCounter getCounter(String type) {
+		ItemCounter counter = iCounters.get(type);
+		if (counter == null) {
+			counter = new ItemCounter();
+			ItemCounter old = iCounters.putIfAbsent(type, counter);
+			if (old != null) counter = old;
+		}
+		return counter;
+	}
+	
 	public static synchronized QueueProcessor getInstance() {
 		if (sInstance == null) {
 			sInstance = new LocalQueueProcessor();
@@ -137,30 +221,27 @@ public class LocalQueueProcessor extends Thread implements QueueProcessor {
 		return item;
 	}
 	
+	private static boolean match(QueueItem item, String ownerId, Long sessionId, String type) {
+		if (ownerId != null && !ownerId.equals(item.getOwnerId())) return false;
+		if (sessionId != null && !sessionId.equals(item.getSessionId())) return false;
+		if (type!=null && !type.equals(item.type())) return false;
+		return true;
+	}
+	
 	public List<QueueItem> getItems(String ownerId, Long sessionId, String type) {
 		synchronized (iQueue) {
 			List<QueueItem> ret = new ArrayList<QueueItem>();
 			
 			for (QueueItem item: iFinished) {
-				if (ownerId != null && !ownerId.equals(item.getOwnerId())) continue;
-				if (sessionId != null && !sessionId.equals(item.getSessionId())) continue;
-				if (type!=null && !type.equals(item.type())) continue;
-				ret.add(item);
+				if (match(item, ownerId, sessionId, type)) ret.add(item);
 			}
 			
-			if (iItem != null) {
-				boolean add = true;
-				if (ownerId != null && !ownerId.equals(iItem.getOwnerId())) add = false;
-				if (sessionId != null && !sessionId.equals(iItem.getSessionId())) add = false;
-				if (type!=null && !type.equals(iItem.type())) add = false;
-				if (add) ret.add(iItem);
+			for (RunningItem running: iRunning) {
+				if (match(running.getItem(), ownerId, sessionId, type)) ret.add(running.getItem());
 			}
 			
 			for (QueueItem item: iQueue) {
-				if (ownerId != null && !ownerId.equals(item.getOwnerId())) continue;
-				if (sessionId != null && !sessionId.equals(item.getSessionId())) continue;
-				if (type!=null && !type.equals(item.type())) continue;
-				ret.add(item);
+				if (match(item, ownerId, sessionId, type)) ret.add(item);
 			}
 			
 			return ret;
@@ -169,31 +250,25 @@ public class LocalQueueProcessor extends Thread implements QueueProcessor {
 	
 	public QueueItem get(String id) {
 		synchronized (iQueue) {
-			for (Iterator<QueueItem> i = iQueue.iterator(); i.hasNext();) {
-				QueueItem item = i.next();
+			for (QueueItem item: iQueue)
 				if (id.equals(item.getId())) return item;
-			}
-			for (Iterator<QueueItem> i = iFinished.iterator(); i.hasNext();) {
-				QueueItem item = i.next();
+			for (RunningItem running: iRunning)
+				if (id.equals(running.getItem().getId())) return running.getItem();
+			for (QueueItem item: iFinished)
 				if (id.equals(item.getId())) return item;
-			}
 		}
-		if (iItem != null && id.equals(iItem.getId())) return iItem;
 		return null;
 	}
 	
 	public QueueItem getByExecutionId(Long id) {
 		synchronized (iQueue) {
-			for (Iterator<QueueItem> i = iQueue.iterator(); i.hasNext();) {
-				QueueItem item = i.next();
+			for (QueueItem item: iQueue)
 				if (id.equals(item.getTaskExecutionId())) return item;
-			}
-			for (Iterator<QueueItem> i = iFinished.iterator(); i.hasNext();) {
-				QueueItem item = i.next();
+			for (RunningItem running: iRunning)
+				if (id.equals(running.getItem().getTaskExecutionId())) return running.getItem();
+			for (QueueItem item: iFinished)
 				if (id.equals(item.getTaskExecutionId())) return item;
-			}
 		}
-		if (iItem != null && id.equals(iItem.getTaskExecutionId())) return iItem;
 		return null;
 	}
 	
@@ -213,12 +288,79 @@ public class LocalQueueProcessor extends Thread implements QueueProcessor {
 					return true;
 				}
 			}
-		}
-		if (iItem != null && id.equals(iItem.getId())) {
-			iRunningItem.cancel();
+			for (RunningItem running: iRunning) {
+				if (id.equals(running.getItem().getId())) {
+					running.cancel();
+					break;
+				}
+			}
 		}
 		return false;
 	}
+	
+	/** Number of waiting and running items per worker, used to pick the least loaded node of the cluster */
+	public Double getLoad() {
+		synchronized (iQueue) {
+			return ((double)(iQueue.size() + iRunning.size())) / getWorkers();
+		}
+	}
+	
+	/** Number of items that are waiting to be executed */
+	public int getQueueSize() {
+		synchronized (iQueue) {
+			return iQueue.size();
+		}
+	}
+	
+	/** Number of items that are being executed */
+	public int getRunning() {
+		synchronized (iQueue) {
+			return iRunning.size();
+		}
+	}
+	
+	@Override
+	public List<QueueStatistics> getStatistics() {
+		List<QueueStatistics> ret = new ArrayList<QueueStatistics>();
+		for (Map.Entry<String, ItemCounter> e: iCounters.entrySet())
+			ret.add(new QueueStatistics(e.getKey(), e.getValue()));
+		synchronized (iQueue) {
+			for (RunningItem running: iRunning)
+				ret.add(new QueueStatistics(running.getItem()));
+			for (QueueItem item: iQueue)
+				ret.add(new QueueStatistics(item));
+		}
+		Collections.sort(ret);
+		return ret;
+	}
+	
+	/** Statistics of the queue processor, as an HTML table */
+	public static String getStatisticsHtml() {
+		LocalQueueProcessor processor = sInstance;
+		StringBuffer ret = new StringBuffer();
+		if (processor == null) {
+			ret.append("<i>Queue processor is not running.</i>");
+			return ret.toString();
+		}
+		DecimalFormat df = new DecimalFormat("0.00");
+		ret.append("Running: " + processor.getRunning() + ", waiting: " + processor.getQueueSize() + ", workers: " + getWorkers() + "<br>");
+		ret.append("<table border='0' cellspacing='0' cellpadding='3'>");
+		ret.append("<tr><td><i>Type</i></td><td><i>Item</i></td><td><i>Executions</i></td><td><i>Failed</i></td><td><i>Progress</i></td>" +
+				"<td><i>Queue Mean [s]</i></td><td><i>Queue P99 [s]</i></td><td><i>Run Mean [s]</i></td><td><i>Run P99 [s]</i></td><td><i>Run Max [s]</i></td></tr>");
+		for (QueueStatistics s: processor.getStatistics()) {
+			if (s.getName() == null) {
+				ret.append("<tr><td>" + StringEscapeUtils.escapeHtml(s.getType()) + "</td><td></td><td>" + s.getExecutions() + "</td><td>" + s.getFailed() + "</td><td></td><td>" +
+						df.format(s.getQueueMean()) + "</td><td>" + df.format(s.getQueueP99()) + "</td><td>" + df.format(s.getRunMean()) + "</td><td>" +
+						df.format(s.getRunP99()) + "</td><td>" + df.format(s.getRunMax()) + "</td></tr>");
+			} else {
+				ret.append("<tr><td>" + StringEscapeUtils.escapeHtml(s.getType()) + "</td><td>" + StringEscapeUtils.escapeHtml(s.getName()) + " (" + StringEscapeUtils.escapeHtml(s.getOwner()) + ")</td><td></td><td></td><td>" +
+						(s.isRunning() ? Math.round(100.0 * s.getProgress()) + "%" : "waiting") + "</td><td>" + df.format(s.getQueueMean()) + "</td><td></td><td>" +
+						(s.isRunning() ? df.format(s.getRunMean()) : "") + "</td><td></td><td></td></tr>");
+			}
+		}
+		ret.append("</table>");
+		return ret.toString();
+	}
 
 	public static void stopProcessor() {
 		if (sInstance == null) return;
@@ -235,16 +377,24 @@ public class LocalQueueProcessor extends Thread implements QueueProcessor {
 	static class RunningItem extends Thread {
 		boolean iInterrupted = false;
 		QueueItem iRunningItem = null;
+		LocalQueueProcessor iProcessor = null;
 		
-		private RunningItem(QueueItem item) {
+		private RunningItem(LocalQueueProcessor processor, QueueItem item) {
 			super("QueueRunner(" + item.name() + ")");
+			iProcessor = processor;
 			iRunningItem = item;
 			setDaemon(true);
 		}
 		
+		public QueueItem getItem() { return iRunningItem; }
+		
 		@Override
 		public void run() {
-			iRunningItem.executeItem();
+			try {
+				iRunningItem.executeItem();
+			} finally {
+				iProcessor.finished(this);
+			}
 		}
 		
 		@SuppressWarnings("deprecation")
@@ -257,6 +407,71 @@ public class LocalQueueProcessor extends Thread implements QueueProcessor {
 			}
 		}
 	}
+	
+	protected static class ItemCounter {
+		private Histogram iQueueTime = new Histogram(), iRunTime = new Histogram();
+		private AtomicLong iFailed = new AtomicLong(0);
+	}
+	
+	/**
+	 * Snapshot of the statistics of one item type (executed items), or of one waiting or running item (when the name is set).
+	 * Times are in seconds.
+	 */
+	public static class QueueStatistics implements Serializable, Comparable<QueueStatistics> {
+		private static final long serialVersionUID = 1L;
+		private String iType, iName = null, iOwner = null, iHost = null;
+		private long iExecutions = 0, iFailed = 0;
+		private double iQueueMean = 0, iQueueP99 = 0, iRunMean = 0, iRunP99 = 0, iRunMax = 0, iProgress = 0;
+		private boolean iRunning = false;
+		
+		public QueueStatistics() {}
+		
+		protected QueueStatistics(String type, ItemCounter counter) {
+			iType = type;
+			iExecutions = counter.iRunTime.getCount();
+			iFailed = counter.iFailed.get();
+			iQueueMean = counter.iQueueTime.getMean() / 1000.0;
+			iQueueP99 = counter.iQueueTime.getPercentile(99.0) / 1000.0;
+			iRunMean = counter.iRunTime.getMean() / 1000.0;
+			iRunP99 = counter.iRunTime.getPercentile(99.0) / 1000.0;
+			iRunMax = counter.iRunTime.getMax() / 1000.0;
+		}
+		
+		protected QueueStatistics(QueueItem item) {
+			iType = item.type();
+			iName = item.name();
+			iOwner = item.getOwnerName();
+			iRunning = (item.started() != null);
+			iProgress = (iRunning ? item.progress() : 0.0);
+			iQueueMean = item.queueTime() / 1000.0;
+			iRunMean = item.runTime() / 1000.0;
+		}
+		
+		public String getType() { return iType; }
+		/** Name of the waiting or running item, null for the statistics of an item type */
+		public String getName() { return iName; }
+		public String getOwner() { return iOwner; }
+		public String getHost() { return iHost; }
+		public void setHost(String host) { iHost = host; }
+		public boolean isRunning() { return iRunning; }
+		public double getProgress() { return iProgress; }
+		public long getExecutions() { return iExecutions; }
+		public long getFailed() { return iFailed; }
+		public double getQueueMean() { return iQueueMean; }
+		public double getQueueP99() { return iQueueP99; }
+		public double getRunMean() { return iRunMean; }
+		public double getRunP99() { return iRunP99; }
+		public double getRunMax() { return iRunMax; }
+
+		@Override
+		public int compareTo(QueueStatistics s) {
+			if ((getName() == null) != (s.getName() == null)) return (getName() == null ? -1 : 1);
+			int cmp = getType().compareTo(s.getType());
+			if (cmp != 0) return cmp;
+			if (isRunning() != s.isRunning()) return (isRunning() ? -1 : 1);
+			return Double.compare(s.getQueueMean(), getQueueMean());
+		}
+	}
 
 	@Override
 	public DataSource getFile(String id) {
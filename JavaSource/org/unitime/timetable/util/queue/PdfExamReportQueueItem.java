@@ -582,6 +582,12 @@ public class PdfExamReportQueueItem extends QueueItem {
 		return TYPE;
 	}
 	
+	@Override
+	public boolean isDistributable() {
+		// reports based on the solver's solution need the local solver
+		return iExamSolver == null;
+	}
+	
 	public static class FileGenerator implements InstructorExamReport.FileGenerator {
         String iName;
         public FileGenerator(String name) {
@@ -96,6 +96,21 @@ public abstract class QueueItem implements Log, Serializable, Comparable<QueueIt
 	public abstract String name();
 	protected abstract void execute() throws Exception;
 	
+	/** Priority of the item, items with a higher priority are executed first (defaults to 0) */
+	public int priority() { return 0; }
+	
+	/** Resource class of the item, the number of items of the same class that are executed at the same time can be limited by unitime.queue.limit.[class] (defaults to the item type) */
+	public String resourceClass() { return type(); }
+	
+	/** Items with the same exclusive key are never executed at the same time (e.g., two roll-forwards into the same academic session), null if there is no such restriction */
+	public String exclusiveKey() { return null; }
+	
+	/** Exclusive key of the items that change the data of the given academic session (e.g., a data import or a roll-forward) */
+	public static String sessionUpdateKey(Long sessionId) { return "Session Update:" + sessionId; }
+	
+	/** True if the item can be executed on any node of the cluster (e.g., it does not depend on an uploaded file or a local solver), false by default */
+	public boolean isDistributable() { return false; }
+	
 	public void executeItem() {
 		iStarted = new Date();
 		ApplicationProperties.setSessionId(getSessionId());
@@ -136,8 +151,13 @@ public abstract class QueueItem implements Log, Serializable, Comparable<QueueIt
 		return iOutput;
 	}
 	public String getOutputName() { return iOutputName; }
+	/**
+	 * Link to the output file. A distributable item may be executed on a different node than the one serving the request,
+	 * so its output is always served through the queue processor (qpfile?q=, see {@link QueueProcessor#getFile(String)}), which finds the owning node.
+	 * Otherwise, the output is linked directly in the temp folder of this node.
+	 */
 	public String getOutputLink() {
-		if (iOutput != null) return "temp/" + iOutput.getName();
+		if (iOutput != null && !isDistributable()) return "temp/" + iOutput.getName();
 		return iOutputLink;
 	}
 	
@@ -191,6 +211,17 @@ public abstract class QueueItem implements Log, Serializable, Comparable<QueueIt
 	public Date created() { return iCreated; }
 	public Date started() { return iStarted; }
 	public Date finished() { return iFinished; }
+	
+	/** Time spent waiting in the queue in milliseconds (till now if the item has not been started yet) */
+	public long queueTime() {
+		return (iStarted == null ? System.currentTimeMillis() : iStarted.getTime()) - iCreated.getTime();
+	}
+	
+	/** Execution time in milliseconds (till now if the item is still running), 0 if the item has not been started yet */
+	public long runTime() {
+		if (iStarted == null) return 0;
+		return (iFinished == null ? System.currentTimeMillis() : iFinished.getTime()) - iStarted.getTime();
+	}
 
 	@Override
 	public boolean isDebugEnabled() {
@@ -17,4 +17,6 @@ public interface QueueProcessor {
 	public List<QueueItem> getItems(String ownerId, Long sessionId, String type);
 	
 	public DataSource getFile(String id);
+	
+	public List<LocalQueueProcessor.QueueStatistics> getStatistics();
 }
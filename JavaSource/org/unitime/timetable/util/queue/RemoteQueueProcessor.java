@@ -36,6 +36,7 @@ import org.jgroups.blocks.RpcDispatcher;
 import org.jgroups.blocks.mux.MuxRpcDispatcher;
 import org.jgroups.util.Rsp;
 import org.jgroups.util.RspList;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.dao._RootDAO;
 import org.unitime.timetable.solver.jgroups.SolverServerImplementation;
 
@@ -93,6 +94,31 @@ public class RemoteQueueProcessor extends LocalQueueProcessor {
 		}
 	}
 	
+	/**
+	 * Node of the cluster with the lowest load (see {@link LocalQueueProcessor#getLoad()}) that should execute the given item,
+	 * null if the item is to be executed locally (the item is not distributable, distribution is disabled, or there is only one node).
+	 */
+	protected Address getLeastLoaded(QueueItem item) {
+		if (item == null || !item.isDistributable() || !ApplicationProperty.QueueProcessorDistribute.isTrue()) return null;
+		if (iDispatcher.getChannel().getView().getMembers().size() <= 1) return null;
+		try {
+			Address local = iDispatcher.getChannel().getAddress();
+			Address best = local;
+			double bestLoad = getLoad();
+			RspList<Double> ret = iDispatcher.callRemoteMethods(null, "invoke",  new Object[] { "getLoad",  new Class[] {} , new Object[] {} }, new Class[] { String.class, Class[].class, Object[].class }, SolverServerImplementation.sAllResponses);
+			for (Rsp<Double> rsp : ret) {
+				if (rsp == null || rsp.getValue() == null || local.equals(rsp.getSender())) continue;
+				if (rsp.getValue() < bestLoad) {
+					best = rsp.getSender(); bestLoad = rsp.getValue();
+				}
+			}
+			return best;
+		} catch (Exception e) {
+			sLog.warn("Failed to find the least loaded queue processor: " + e.getMessage(), e);
+			return null;
+		}
+	}
+	
 	public Object invoke(String method, Class[] types, Object[] args) throws Exception {
 		try {
 			return getClass().getMethod(method, types).invoke(this, args);
@@ -104,8 +130,26 @@ public class RemoteQueueProcessor extends LocalQueueProcessor {
 	public Object dispatch(Address address, Method method, Object[] args) throws Exception {
 		try {
 			if ("add".equals(method.getName())) {
-				return method.invoke(this, args);
-				// return iDispatcher.callRemoteMethod(address, "invoke",  new Object[] { method.getName(), method.getParameterTypes(), args }, new Class[] { String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+				Address target = getLeastLoaded((QueueItem)args[0]);
+				if (target == null || target.equals(iDispatcher.getChannel().getAddress()))
+					return method.invoke(this, args);
+				sLog.info("Executing " + ((QueueItem)args[0]).name() + " on " + target);
+				return iDispatcher.callRemoteMethod(target, "invoke",  new Object[] { method.getName(), method.getParameterTypes(), args }, new Class[] { String.class, Class[].class, Object[].class }, SolverServerImplementation.sFirstResponse);
+			} else if ("getStatistics".equals(method.getName())) {
+				List<QueueStatistics> statistics = new ArrayList<QueueStatistics>();
+				RspList<List<QueueStatistics>> ret = iDispatcher.callRemoteMethods(null, "invoke",  new Object[] { method.getName(), method.getParameterTypes(), args }, new Class[] { String.class, Class[].class, Object[].class }, SolverServerImplementation.sAllResponses);
+				for (Rsp<List<QueueStatistics>> rsp : ret) {
+					if (rsp != null && rsp.getValue() != null) {
+						for (QueueStatistics s: rsp.getValue()) {
+							s.setHost(rsp.getSender().toString());
+							statistics.add(s);
+						}
+					}
+					if (rsp != null && rsp.hasException())
+						sLog.error("Excution of queue processor method " + method + " failed: " + rsp.getException().getMessage(), rsp.getException());
+				}
+				Collections.sort(statistics);
+				return statistics;
 			} else if ("getItems".equals(method.getName())) {
 				List<QueueItem> items = (List<QueueItem>)method.invoke(this, args);
 				if (iDispatcher.getChannel().getView().getMembers().size() > 1) {
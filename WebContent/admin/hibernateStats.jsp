@@ -22,6 +22,8 @@
 <%@ page import="org.hibernate.SessionFactory" %>
 <%@ page import="org.unitime.timetable.model.dao._RootDAO" %>
 <%@ page import="org.unitime.commons.hibernate.stats.StatsProvider" %>
+<%@ page import="org.unitime.timetable.gwt.command.server.GwtRpcExecutor" %>
+<%@ page import="org.unitime.timetable.util.queue.LocalQueueProcessor" %>
 <%@ taglib uri="http://www.unitime.org/tags-custom" prefix="tt" %>
 <%@ taglib uri="http://www.springframework.org/security/tags" prefix="sec" %>
 
@@ -51,6 +53,26 @@
 				<%=StatsProvider.getStatsHtml(!details)%>
 			</TD>
 		</TR>
+		<TR>
+			<TD>
+				<tt:section-title>Asynchronous Requests</tt:section-title>
+			</TD>
+		</TR>
+		<TR>
+			<TD>
+				<%=GwtRpcExecutor.getStatisticsHtml()%>
+			</TD>
+		</TR>
+		<TR>
+			<TD>
+				<tt:section-title>Background Queue</tt:section-title>
+			</TD>
+		</TR>
+		<TR>
+			<TD>
+				<%=LocalQueueProcessor.getStatisticsHtml()%>
+			</TD>
+		</TR>
 		<TR>
 			<TD>
 				<tt:section-title/>